@@ -2,12 +2,14 @@ package com.pei.pharmatest;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main application class for the PharmaTest application. This is the entry point for the Spring
  * Boot application.
  */
 @SpringBootApplication
+@EnableScheduling
 public class PharmaTestApplication {
 
   /**
@@ -1,57 +1,60 @@
 package com.pei.pharmatest.aspects;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import com.pei.pharmatest.audit.AuditLogStatistics;
+import com.pei.pharmatest.audit.AuditLogWriter;
+import com.pei.pharmatest.dto.PrescriptionBatchItemResponse;
 import com.pei.pharmatest.dto.PrescriptionRequest;
 import com.pei.pharmatest.dto.PrescriptionResponse;
 import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.exceptions.OutcomeUnknownException;
 import com.pei.pharmatest.exceptions.ResourceNotFoundException;
-import com.pei.pharmatest.repositories.AuditLogRepository;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 /**
  * Aspect for handling audit logging of prescription-related operations. This aspect intercepts
  * prescription creation and fulfillment operations to maintain an audit trail of all
- * prescription-related activities.
+ * prescription-related activities. Records are handed to the {@link AuditLogWriter}, which writes
+ * them in batches off the request thread, and counted in the {@link AuditLogStatistics}.
  */
 @Aspect
 @Component
 public class AuditLogAspect {
 
-  private static final Logger logger = LoggerFactory.getLogger(AuditLogAspect.class);
-  private final AuditLogRepository auditLogRepository;
-  private final PlatformTransactionManager transactionManager;
+  private final AuditLogWriter auditLogWriter;
+  private final AuditLogStatistics auditLogStatistics;
 
   /**
    * Constructs a new AuditLogAspect with the required dependencies.
    *
-   * @param auditLogRepository The repository for saving audit logs
-   * @param transactionManager The transaction manager for managing audit log transactions
+   * @param auditLogWriter     The writer the audit logs are handed to
+   * @param auditLogStatistics The counters the outcomes are counted in
    */
-  public AuditLogAspect(AuditLogRepository auditLogRepository,
-      PlatformTransactionManager transactionManager) {
-    this.auditLogRepository = auditLogRepository;
-    this.transactionManager = transactionManager;
+  public AuditLogAspect(AuditLogWriter auditLogWriter, AuditLogStatistics auditLogStatistics) {
+    this.auditLogWriter = auditLogWriter;
+    this.auditLogStatistics = auditLogStatistics;
   }
 
   private void handleAuditLogFailure(AuditLog log, Exception e, String errorType) {
+    markFailed(log, errorType + ": " + e.getMessage());
+    saveAuditLog(log);
+  }
+
+  private void markFailed(AuditLog log, String failureReason) {
     log.setStatus("FAILURE");
-    log.setFailureReason(errorType + ": " + e.getMessage());
+    log.setFailureReason(failureReason);
     if (log.getPatientId() == null)
       log.setPatientId(-1L);
     if (log.getPharmacyId() == null)
       log.setPharmacyId(-1L);
     if (log.getPrescriptionId() == null)
       log.setPrescriptionId(-1L);
-    saveAuditLog(log);
   }
 
   /**
@@ -90,6 +93,58 @@ public class AuditLogAspect {
     }
   }
 
+  /**
+   * Intercepts batch prescription creation and logs one audit record per request. All records of
+   * the call are queued together.
+   *
+   * @param joinPoint The join point representing the intercepted method
+   * @return The result of the intercepted method
+   * @throws Throwable If an error occurs during the operation
+   */
+  @Around("execution(* com.pei.pharmatest.services.impl.PharmacyServiceImpl.createPrescriptions(..))")
+  @SuppressWarnings("unchecked")
+  public Object logCreatePrescriptions(ProceedingJoinPoint joinPoint) throws Throwable {
+    Long pharmacyId = (Long) joinPoint.getArgs()[0];
+    List<PrescriptionRequest> requests = (List<PrescriptionRequest>) joinPoint.getArgs()[1];
+    List<AuditLog> logs = new ArrayList<>();
+    if (requests != null) {
+      for (PrescriptionRequest request : requests) {
+        AuditLog log = new AuditLog();
+        log.setPharmacyId(pharmacyId);
+        log.setPatientId(request == null ? null : request.getPatientId());
+        log.setDrugsRequested(request == null || request.getDrugs() == null
+            ? Collections.emptyList() : request.getDrugs());
+        log.setDrugsDispensed(Collections.emptyList());
+        logs.add(log);
+      }
+    }
+
+    try {
+      List<PrescriptionBatchItemResponse> results =
+          (List<PrescriptionBatchItemResponse>) joinPoint.proceed();
+      for (PrescriptionBatchItemResponse result : results) {
+        AuditLog log = logs.get(result.getIndex());
+        if (result.isSuccess()) {
+          log.setPrescriptionId(result.getPrescription().getId());
+          log.setDrugsDispensed(result.getPrescription().getDrugs());
+          log.setStatus("SUCCESS");
+        } else {
+          markFailed(log, "Rejected: " + result.getError());
+        }
+      }
+      saveAuditLogs(logs);
+      return results;
+    } catch (ResourceNotFoundException e) {
+      logs.forEach(log -> markFailed(log, "Resource not found: " + e.getMessage()));
+      saveAuditLogs(logs);
+      throw e;
+    } catch (Exception e) {
+      logs.forEach(log -> markFailed(log, "Unexpected error: " + e.getMessage()));
+      saveAuditLogs(logs);
+      throw e;
+    }
+  }
+
   /**
    * Intercepts prescription fulfillment operations and logs the audit information.
    *
@@ -107,12 +162,21 @@ public class AuditLogAspect {
 
     try {
       PrescriptionResponse response = (PrescriptionResponse) joinPoint.proceed();
-      log.setPatientId(response.getPatientId());
-      log.setPharmacyId(response.getPharmacyId());
-      log.setDrugsDispensed(response.getDrugs());
-      log.setStatus("SUCCESS");
-      saveAuditLog(log);
+      saveFulfilled(log, response);
       return response;
+    } catch (OutcomeUnknownException e) {
+      // Recorded once the fulfillment completes, rather than as a failure it may not be
+      e.getOutcome().whenComplete((response, error) -> {
+        if (error == null) {
+          saveFulfilled(log, (PrescriptionResponse) response);
+        } else {
+          Throwable cause = error instanceof CompletionException && error.getCause() != null
+              ? error.getCause() : error;
+          markFailed(log, failureType(cause) + ": " + cause.getMessage());
+          saveAuditLog(log);
+        }
+      });
+      throw e;
     } catch (ResourceNotFoundException e) {
       handleAuditLogFailure(log, e, "Resource not found");
       throw e;
@@ -125,26 +189,85 @@ public class AuditLogAspect {
     }
   }
 
+  private void saveFulfilled(AuditLog log, PrescriptionResponse response) {
+    log.setPatientId(response.getPatientId());
+    log.setPharmacyId(response.getPharmacyId());
+    log.setDrugsDispensed(response.getDrugs());
+    log.setStatus("SUCCESS");
+    saveAuditLog(log);
+  }
+
+  private static String failureType(Throwable error) {
+    if (error instanceof ResourceNotFoundException) {
+      return "Resource not found";
+    }
+    return error instanceof IllegalStateException ? "Invalid state" : "Unexpected error";
+  }
+
+  /**
+   * Intercepts batch prescription fulfillment and logs one audit record per prescription. All
+   * records of the call are queued together.
+   *
+   * @param joinPoint The join point representing the intercepted method
+   * @return The result of the intercepted method
+   * @throws Throwable If an error occurs during the operation
+   */
+  @Around("execution(* com.pei.pharmatest.services.impl.PharmacyServiceImpl.fulfillPrescriptions(..))")
+  @SuppressWarnings("unchecked")
+  public Object logFulfillPrescriptions(ProceedingJoinPoint joinPoint) throws Throwable {
+    List<Long> prescriptionIds = (List<Long>) joinPoint.getArgs()[0];
+    List<AuditLog> logs = new ArrayList<>();
+    if (prescriptionIds != null) {
+      for (Long prescriptionId : prescriptionIds) {
+        AuditLog log = new AuditLog();
+        log.setPrescriptionId(prescriptionId);
+        log.setDrugsRequested(Collections.emptyList());
+        log.setDrugsDispensed(Collections.emptyList());
+        logs.add(log);
+      }
+    }
+
+    try {
+      List<PrescriptionBatchItemResponse> results =
+          (List<PrescriptionBatchItemResponse>) joinPoint.proceed();
+      for (PrescriptionBatchItemResponse result : results) {
+        AuditLog log = logs.get(result.getIndex());
+        if (result.isSuccess()) {
+          PrescriptionResponse response = result.getPrescription();
+          log.setPatientId(response.getPatientId());
+          log.setPharmacyId(response.getPharmacyId());
+          log.setDrugsDispensed(response.getDrugs());
+          log.setStatus("SUCCESS");
+        } else {
+          markFailed(log, "Rejected: " + result.getError());
+        }
+      }
+      saveAuditLogs(logs);
+      return results;
+    } catch (Exception e) {
+      logs.forEach(log -> markFailed(log, "Unexpected error: " + e.getMessage()));
+      saveAuditLogs(logs);
+      throw e;
+    }
+  }
+
   /**
-   * Saves the audit log in a new transaction.
+   * Counts the audit log and hands it to the writer.
    *
    * @param log The audit log to be saved
    */
   protected void saveAuditLog(AuditLog log) {
-    TransactionStatus status = null;
-    try {
-      DefaultTransactionDefinition def = new DefaultTransactionDefinition();
-      def.setPropagationBehavior(Propagation.REQUIRES_NEW.value());
-      status = transactionManager.getTransaction(def);
-
-      auditLogRepository.save(log);
+    auditLogStatistics.record(log);
+    auditLogWriter.write(log);
+  }
 
-      transactionManager.commit(status);
-    } catch (Exception e) {
-      if (status != null) {
-        transactionManager.rollback(status);
-      }
-      logger.error("Failed to save audit log: {}", e.getMessage(), e);
-    }
+  /**
+   * Counts several audit logs and hands them to the writer together.
+   *
+   * @param logs The audit logs to be saved
+   */
+  protected void saveAuditLogs(List<AuditLog> logs) {
+    auditLogStatistics.recordAll(logs);
+    auditLogWriter.writeAll(logs);
   }
 }
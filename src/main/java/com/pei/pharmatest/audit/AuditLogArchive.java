@@ -0,0 +1,297 @@
+package com.pei.pharmatest.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
+import com.pei.pharmatest.dto.PrescriptionDrugResponse;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cold storage of aged audit logs: the {@link AuditLogSegment} files in a local directory, and
+ * queries over them.
+ *
+ * <p>The archive has a horizon, the creation time before which every audit log lives in the
+ * segments rather than in the database. Queries reaching below the horizon read the rows before
+ * it from the segments and the rest from the database, so the two never overlap.
+ *
+ * <p>A segment is published by renaming it from its temporary name, after a marker file recording
+ * that its rows are still to be deleted from the database. The marker is removed once they are,
+ * and segments whose marker is still there after a restart have their deletion resumed.
+ */
+@Component
+public class AuditLogArchive {
+
+  private static final Logger logger = LoggerFactory.getLogger(AuditLogArchive.class);
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  private static final String PENDING_DELETION_SUFFIX = ".deleting";
+
+  private static final Comparator<ArchivedAuditLog> NEWEST_FIRST =
+      Comparator.comparing(ArchivedAuditLog::getCreatedAt)
+          .thenComparingLong(ArchivedAuditLog::getId).reversed();
+
+  private static final TypeReference<List<PrescriptionDrugRequest>> DRUGS_REQUESTED =
+      new TypeReference<>() { };
+  private static final TypeReference<List<PrescriptionDrugResponse>> DRUGS_DISPENSED =
+      new TypeReference<>() { };
+
+  private final ObjectMapper objectMapper;
+  private final Path directory;
+  private final List<AuditLogSegment> segments = new CopyOnWriteArrayList<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private volatile LocalDateTime horizon;
+
+  /**
+   * Constructs a new AuditLogArchive.
+   *
+   * @param objectMapper The mapper for the drug lists of archived rows
+   * @param directory    The directory holding the segment files
+   */
+  public AuditLogArchive(ObjectMapper objectMapper,
+      @Value("${pharma.audit.archive.directory:audit-archive}") Path directory) {
+    this.objectMapper = objectMapper;
+    this.directory = directory;
+  }
+
+  /**
+   * Opens the segments in the archive directory and removes segments that were never published.
+   *
+   * @throws IOException if the directory cannot be read
+   */
+  @PostConstruct
+  public void load() throws IOException {
+    Files.createDirectories(directory);
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(TEMPORARY_SUFFIX)) {
+          Files.delete(file);
+        } else if (name.endsWith(SEGMENT_SUFFIX)) {
+          try {
+            add(AuditLogSegment.open(file));
+          } catch (IOException e) {
+            // Its rows are gone from the database; keep the file for manual recovery
+            logger.error("Skipping unreadable audit log segment {}", file, e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the creation time before which all audit logs are archived.
+   *
+   * @return The horizon, or null if nothing was archived
+   */
+  public LocalDateTime getHorizon() {
+    return horizon;
+  }
+
+  /**
+   * Returns a new temporary file name for a segment about to be written.
+   *
+   * @return The path of the temporary file, which does not exist yet
+   */
+  public Path newSegmentFile() {
+    return directory.resolve("audit-" + System.currentTimeMillis() + "-"
+        + sequence.incrementAndGet() + SEGMENT_SUFFIX + TEMPORARY_SUFFIX);
+  }
+
+  /**
+   * Publishes a finished segment, making its rows visible to queries and moving the horizon up to
+   * the segment's covered-before time. The segment is marked as pending deletion from the
+   * database.
+   *
+   * @param temporaryFile The finished segment under its temporary name
+   * @return The published segment
+   * @throws IOException if the segment cannot be renamed or opened
+   */
+  public AuditLogSegment publish(Path temporaryFile) throws IOException {
+    String name = temporaryFile.getFileName().toString();
+    Path file = temporaryFile.resolveSibling(
+        name.substring(0, name.length() - TEMPORARY_SUFFIX.length()));
+    Files.createFile(pendingDeletionMarker(file));
+    Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+    AuditLogSegment segment = AuditLogSegment.open(file);
+    add(segment);
+    return segment;
+  }
+
+  /**
+   * Returns the segments whose rows may still be in the database.
+   *
+   * @return The segments pending deletion
+   */
+  public List<AuditLogSegment> getSegmentsPendingDeletion() {
+    List<AuditLogSegment> pending = new ArrayList<>();
+    for (AuditLogSegment segment : segments) {
+      if (Files.exists(pendingDeletionMarker(segment.getFile()))) {
+        pending.add(segment);
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Records that the rows of a segment have been deleted from the database.
+   *
+   * @param segment The segment
+   * @throws IOException if the marker cannot be removed
+   */
+  public void markDeleted(AuditLogSegment segment) throws IOException {
+    Files.deleteIfExists(pendingDeletionMarker(segment.getFile()));
+  }
+
+  /**
+   * Finds archived audit logs, newest first.
+   *
+   * @param query  The filters
+   * @param offset The number of matching audit logs to skip
+   * @param limit  The maximum number of audit logs to return
+   * @param count  Whether to count all matching audit logs, which reads every block the filters
+   *               do not rule out instead of stopping once enough rows are found
+   * @return The audit logs, and their total if counted
+   */
+  public Matches search(AuditLogArchiveQuery query, long offset, int limit, boolean count) {
+    int wanted = (int) Math.min(Integer.MAX_VALUE - 1, offset + limit);
+    // Holds the newest rows found so far, with the oldest of them on top
+    PriorityQueue<ArchivedAuditLog> newest = new PriorityQueue<>(NEWEST_FIRST.reversed());
+    long[] total = {0};
+    // Once enough rows are found and no count is needed, older blocks cannot contribute
+    LongSupplier floor = () -> !count && wanted > 0 && newest.size() == wanted
+        ? AuditLogSegment.toMicros(newest.peek().getCreatedAt()) : Long.MIN_VALUE;
+    Consumer<ArchivedAuditLog> collector = row -> {
+      total[0]++;
+      if (wanted == 0) {
+        return;
+      }
+      if (newest.size() < wanted) {
+        newest.add(row);
+      } else if (NEWEST_FIRST.compare(row, newest.peek()) < 0) {
+        newest.poll();
+        newest.add(row);
+      }
+    };
+    List<AuditLogSegment> newestSegmentsFirst = new ArrayList<>(segments);
+    newestSegmentsFirst.sort(Comparator.comparing(AuditLogSegment::getCoveredBefore).reversed());
+    for (AuditLogSegment segment : newestSegmentsFirst) {
+      try {
+        segment.scan(query, floor, collector);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    List<ArchivedAuditLog> rows = new ArrayList<>(newest);
+    rows.sort(NEWEST_FIRST);
+    List<AuditLog> content = new ArrayList<>();
+    for (int i = (int) Math.min(offset, rows.size()); i < rows.size(); i++) {
+      content.add(toAuditLog(rows.get(i)));
+    }
+    return new Matches(content, count ? total[0] : -1);
+  }
+
+  /**
+   * Hands all archived audit logs matching a query to the sink, one block in memory at a time.
+   * Segments are read newest first and the rows of each newest first; a segment can hold rows
+   * that arrived late and are older than those of the segment before it.
+   *
+   * @param query The filters
+   * @param sink  Receives each matching audit log
+   */
+  public void export(AuditLogArchiveQuery query, Consumer<AuditLog> sink) {
+    List<AuditLogSegment> newestSegmentsFirst = new ArrayList<>(segments);
+    newestSegmentsFirst.sort(Comparator.comparing(AuditLogSegment::getCoveredBefore).reversed());
+    for (AuditLogSegment segment : newestSegmentsFirst) {
+      try {
+        segment.scan(query, () -> Long.MIN_VALUE, row -> sink.accept(toAuditLog(row)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void add(AuditLogSegment segment) {
+    segments.add(segment);
+    LocalDateTime coveredBefore = segment.getCoveredBefore();
+    synchronized (this) {
+      if (horizon == null || coveredBefore.isAfter(horizon)) {
+        horizon = coveredBefore;
+      }
+    }
+  }
+
+  private AuditLog toAuditLog(ArchivedAuditLog row) {
+    AuditLog log = new AuditLog();
+    log.setId(row.getId());
+    log.setPrescriptionId(row.getPrescriptionId());
+    log.setPatientId(row.getPatientId());
+    log.setPharmacyId(row.getPharmacyId());
+    log.setStatus(row.getStatus());
+    log.setFailureReason(row.getFailureReason());
+    log.setCreatedAt(row.getCreatedAt());
+    try {
+      log.setDrugsRequested(objectMapper.readValue(row.getDrugsRequested(), DRUGS_REQUESTED));
+      log.setDrugsDispensed(row.getDrugsDispensed() == null ? null
+          : objectMapper.readValue(row.getDrugsDispensed(), DRUGS_DISPENSED));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unreadable drug list in archived audit log "
+          + row.getId(), e);
+    }
+    return log;
+  }
+
+  private static Path pendingDeletionMarker(Path segmentFile) {
+    return segmentFile.resolveSibling(segmentFile.getFileName() + PENDING_DELETION_SUFFIX);
+  }
+
+  /**
+   * One page of archived audit logs.
+   */
+  public static final class Matches {
+
+    private final List<AuditLog> content;
+    private final long total;
+
+    public Matches(List<AuditLog> content, long total) {
+      this.content = content;
+      this.total = total;
+    }
+
+    public List<AuditLog> getContent() {
+      return content;
+    }
+
+    /**
+     * Returns the number of all matching audit logs, or -1 if they were not counted.
+     *
+     * @return The total
+     */
+    public long getTotal() {
+      return total;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.pei.pharmatest.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import java.time.LocalDateTime;
+import lombok.Getter;
+
+/**
+ * Filters of a query on the audit log archive: the same filters as the audit log listing, and
+ * optionally a keyset cursor that only lets through rows older than a given row.
+ */
+@Getter
+public class AuditLogArchiveQuery {
+
+  private static final ObjectMapper DRUG_READER = new ObjectMapper();
+
+  private final Long patientId;
+  private final Long pharmacyId;
+  private final Long drugId;
+  private final String status;
+  private final LocalDateTime from;
+  private final LocalDateTime to;
+  private LocalDateTime beforeCreatedAt;
+  private long beforeId;
+
+  /**
+   * Constructs a new AuditLogArchiveQuery.
+   *
+   * @param patientId  The patient ID, or null for any
+   * @param pharmacyId The pharmacy ID, or null for any
+   * @param drugId     The ID of a requested drug, or null for any
+   * @param status     The status, or null or empty for any
+   * @param from       The earliest creation time, inclusive, or null for no lower bound
+   * @param to         The latest creation time, exclusive, or null for no upper bound
+   */
+  public AuditLogArchiveQuery(Long patientId, Long pharmacyId, Long drugId, String status,
+      LocalDateTime from, LocalDateTime to) {
+    this.patientId = patientId;
+    this.pharmacyId = pharmacyId;
+    this.drugId = drugId;
+    this.status = status == null || status.isEmpty() ? null : status;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * Restricts the query to rows after the given one in {@code (created_at DESC, id DESC)} order.
+   *
+   * @param createdAt The creation time of the row
+   * @param id        The ID of the row
+   * @return This query
+   */
+  public AuditLogArchiveQuery before(LocalDateTime createdAt, long id) {
+    this.beforeCreatedAt = createdAt;
+    this.beforeId = id;
+    return this;
+  }
+
+  /**
+   * Tells whether any row created in the given range, in microseconds as stored in a segment,
+   * can match.
+   */
+  boolean overlaps(long minCreatedAt, long maxCreatedAt) {
+    if (from != null && maxCreatedAt < AuditLogSegment.toMicros(from)) {
+      return false;
+    }
+    if (to != null && minCreatedAt >= AuditLogSegment.toMicros(to)) {
+      return false;
+    }
+    return beforeCreatedAt == null || minCreatedAt <= AuditLogSegment.toMicros(beforeCreatedAt);
+  }
+
+  boolean matches(ArchivedAuditLog row) {
+    if (patientId != null && row.getPatientId() != patientId) {
+      return false;
+    }
+    if (pharmacyId != null && row.getPharmacyId() != pharmacyId) {
+      return false;
+    }
+    if (status != null && !status.equals(row.getStatus())) {
+      return false;
+    }
+    LocalDateTime createdAt = row.getCreatedAt();
+    if (from != null && createdAt.isBefore(from)) {
+      return false;
+    }
+    if (to != null && !createdAt.isBefore(to)) {
+      return false;
+    }
+    if (beforeCreatedAt != null) {
+      int order = createdAt.compareTo(beforeCreatedAt);
+      if (order > 0 || order == 0 && row.getId() >= beforeId) {
+        return false;
+      }
+    }
+    return drugId == null || requestsDrug(row);
+  }
+
+  /**
+   * Tells whether the drug is among the requested drugs of a row. Checked last, as the only
+   * filter that parses the drug list, and only for rows whose list mentions the number at all.
+   */
+  private boolean requestsDrug(ArchivedAuditLog row) {
+    String drugs = row.getDrugsRequested();
+    if (drugs == null || !drugs.contains(drugId.toString())) {
+      return false;
+    }
+    try {
+      for (JsonNode drug : DRUG_READER.readTree(drugs)) {
+        if (drug.path("drugId").asLong() == drugId) {
+          return true;
+        }
+      }
+      return false;
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unreadable drug list in archived audit log "
+          + row.getId(), e);
+    }
+  }
+}
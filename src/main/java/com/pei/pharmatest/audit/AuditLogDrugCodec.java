@@ -0,0 +1,373 @@
+package com.pei.pharmatest.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
+import com.pei.pharmatest.dto.PrescriptionDrugResponse;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compact encoding of the drug lists of audit logs, stored in {@code drugs_compact} instead of the
+ * two JSON documents when {@code pharma.audit.drugs.encoding} is {@code compact}.
+ *
+ * <p>An encoding starts with a version byte, followed by the requested and then the dispensed
+ * list. Each list is its size plus one, or zero for no list, followed by one tuple per drug: a
+ * flags byte telling which of the drug ID and quantity are present, those as zigzag varints, and
+ * the varint code of a dictionary entry. The entry holds the dosage of a requested drug, or the
+ * name, manufacturer and batch number of a dispensed one, as a JSON array; code zero stands for
+ * none. Entries are few and shared by many audit logs, and are cached in memory once read or
+ * added.
+ *
+ * <p>Audit logs are encoded into copies, so that the originals keep their lists for the spool, and
+ * expanded into copies, so that entities read through a persistence context are never changed.
+ */
+@Component
+public class AuditLogDrugCodec {
+
+  private static final int VERSION = 1;
+  private static final int HAS_DRUG_ID = 1;
+  private static final int HAS_QUANTITY = 2;
+  private static final int NO_ENTRY = 0;
+
+  /**
+   * How new audit logs store their drug lists.
+   */
+  public enum Encoding {
+    JSON,
+    COMPACT
+  }
+
+  private final AuditLogRepository auditLogRepository;
+  private final ObjectMapper objectMapper;
+  private final TransactionTemplate dictionaryTransaction;
+  private final Encoding encoding;
+  private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+  private final Map<Integer, String[]> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a new AuditLogDrugCodec with the required dependencies.
+   *
+   * @param auditLogRepository The repository for the dictionary
+   * @param objectMapper       The mapper for dictionary entries and expanded archived rows
+   * @param transactionManager The transaction manager for adding dictionary entries
+   * @param encoding           How new audit logs store their drug lists
+   */
+  public AuditLogDrugCodec(AuditLogRepository auditLogRepository, ObjectMapper objectMapper,
+      PlatformTransactionManager transactionManager,
+      @Value("${pharma.audit.drugs.encoding:json}") Encoding encoding) {
+    this.auditLogRepository = auditLogRepository;
+    this.objectMapper = objectMapper;
+    // Entries are committed before any audit log referring to them, whatever becomes of it
+    this.dictionaryTransaction = new TransactionTemplate(transactionManager);
+    this.dictionaryTransaction.setPropagationBehavior(
+        TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.encoding = encoding;
+  }
+
+  /**
+   * Loads the dictionary. Rows may have been stored in the compact encoding before, whatever the
+   * current setting.
+   */
+  @PostConstruct
+  public void load() {
+    auditLogRepository.findDrugDictionary().forEach(this::remember);
+  }
+
+  /**
+   * Tells whether new audit logs store their drug lists in the compact encoding.
+   *
+   * @return True in compact mode
+   */
+  public boolean isCompact() {
+    return encoding == Encoding.COMPACT;
+  }
+
+  /**
+   * Returns copies of audit logs for storage in the compact encoding.
+   *
+   * @param logs The audit logs
+   * @return The copies
+   * @see #compact(AuditLog)
+   */
+  public List<AuditLog> compactAll(List<AuditLog> logs) {
+    List<AuditLog> compacted = new ArrayList<>(logs.size());
+    for (AuditLog log : logs) {
+      compacted.add(compact(log));
+    }
+    return compacted;
+  }
+
+  /**
+   * Returns a copy of an audit log for storage in the compact encoding: without drug lists, but
+   * with their encoding and the distinct IDs of the requested drugs. Adds the dictionary entries
+   * that do not exist yet.
+   *
+   * @param log The audit log
+   * @return The copy
+   */
+  public AuditLog compact(AuditLog log) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+    out.write(VERSION);
+    List<PrescriptionDrugRequest> requested = log.getDrugsRequested();
+    writeSize(out, requested);
+    if (requested != null) {
+      for (PrescriptionDrugRequest drug : requested) {
+        writeTuple(out, drug.getDrugId(), drug.getQuantity(), code(drug.getDosage()));
+      }
+    }
+    List<PrescriptionDrugResponse> dispensed = log.getDrugsDispensed();
+    writeSize(out, dispensed);
+    if (dispensed != null) {
+      for (PrescriptionDrugResponse drug : dispensed) {
+        writeTuple(out, drug.getDrugId(), drug.getQuantity(),
+            code(drug.getName(), drug.getManufacturer(), drug.getBatchNumber()));
+      }
+    }
+
+    AuditLog compacted = copy(log);
+    compacted.setDrugsCompact(out.toByteArray());
+    compacted.setRequestedDrugIds(requested == null ? null : requested.stream()
+        .map(PrescriptionDrugRequest::getDrugId)
+        .filter(Objects::nonNull)
+        .distinct()
+        .toArray(Long[]::new));
+    return compacted;
+  }
+
+  /**
+   * Returns an audit log with its drug lists, expanded into a copy if it is stored in the compact
+   * encoding.
+   *
+   * @param log The audit log as read
+   * @return The audit log itself, or the expanded copy
+   */
+  public AuditLog expand(AuditLog log) {
+    if (log.getDrugsCompact() == null) {
+      return log;
+    }
+    Reader reader = new Reader(log.getId(), log.getDrugsCompact());
+    AuditLog expanded = copy(log);
+    expanded.setDrugsRequested(readRequested(reader));
+    expanded.setDrugsDispensed(readDispensed(reader));
+    return expanded;
+  }
+
+  /**
+   * Returns an archived row with its drug lists as JSON text, expanded into a copy if it is
+   * stored in the compact encoding.
+   *
+   * @param row The row as read from the database
+   * @return The row itself, or the expanded copy
+   */
+  public ArchivedAuditLog expand(ArchivedAuditLog row) {
+    if (row.getDrugsCompact() == null) {
+      return row;
+    }
+    Reader reader = new Reader(row.getId(), row.getDrugsCompact());
+    List<PrescriptionDrugRequest> requested = readRequested(reader);
+    List<PrescriptionDrugResponse> dispensed = readDispensed(reader);
+    return new ArchivedAuditLog(row.getId(), row.getPrescriptionId(), row.getPatientId(),
+        row.getPharmacyId(), toJson(requested), toJson(dispensed), row.getFailureReason(),
+        row.getStatus(), row.getCreatedAt());
+  }
+
+  private List<PrescriptionDrugRequest> readRequested(Reader reader) {
+    int size = reader.readSize();
+    if (size < 0) {
+      return null;
+    }
+    List<PrescriptionDrugRequest> drugs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      PrescriptionDrugRequest drug = new PrescriptionDrugRequest();
+      int flags = reader.readByte();
+      drug.setDrugId((flags & HAS_DRUG_ID) != 0 ? reader.readZigzag() : null);
+      drug.setQuantity((flags & HAS_QUANTITY) != 0 ? (int) reader.readZigzag() : null);
+      String[] entry = entry(reader.readCode(), reader.id);
+      drug.setDosage(entry == null ? null : entry[0]);
+      drugs.add(drug);
+    }
+    return drugs;
+  }
+
+  private List<PrescriptionDrugResponse> readDispensed(Reader reader) {
+    int size = reader.readSize();
+    if (size < 0) {
+      return null;
+    }
+    List<PrescriptionDrugResponse> drugs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      PrescriptionDrugResponse drug = new PrescriptionDrugResponse();
+      int flags = reader.readByte();
+      drug.setDrugId((flags & HAS_DRUG_ID) != 0 ? reader.readZigzag() : null);
+      drug.setQuantity((flags & HAS_QUANTITY) != 0 ? (int) reader.readZigzag() : null);
+      String[] entry = entry(reader.readCode(), reader.id);
+      if (entry != null) {
+        drug.setName(entry[0]);
+        drug.setManufacturer(entry[1]);
+        drug.setBatchNumber(entry[2]);
+      }
+      drugs.add(drug);
+    }
+    return drugs;
+  }
+
+  private int code(String... values) {
+    boolean empty = true;
+    for (String value : values) {
+      empty &= value == null;
+    }
+    if (empty) {
+      return NO_ENTRY;
+    }
+    String entry = toJson(values);
+    Integer code = codes.get(entry);
+    if (code == null) {
+      code = dictionaryTransaction.execute(
+          status -> auditLogRepository.saveDrugDictionaryEntry(entry));
+      remember(code, entry);
+    }
+    return code;
+  }
+
+  private String[] entry(int code, Long id) {
+    if (code == NO_ENTRY) {
+      return null;
+    }
+    String[] values = entries.get(code);
+    if (values == null) {
+      // Added by another node since the dictionary was loaded
+      String entry = auditLogRepository.findDrugDictionaryEntry(code);
+      if (entry == null) {
+        throw new IllegalStateException(
+            "Unknown drug dictionary code " + code + " in audit log " + id);
+      }
+      values = remember(code, entry);
+    }
+    return values;
+  }
+
+  private String[] remember(int code, String entry) {
+    String[] values;
+    try {
+      values = objectMapper.readValue(entry, String[].class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unreadable drug dictionary entry " + code, e);
+    }
+    entries.put(code, values);
+    codes.put(entry, code);
+    return values;
+  }
+
+  private String toJson(Object value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return objectMapper.writeValueAsString(value);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialize drug list", e);
+    }
+  }
+
+  private static AuditLog copy(AuditLog log) {
+    AuditLog copy = new AuditLog();
+    copy.setId(log.getId());
+    copy.setPrescriptionId(log.getPrescriptionId());
+    copy.setPatientId(log.getPatientId());
+    copy.setPharmacyId(log.getPharmacyId());
+    copy.setFailureReason(log.getFailureReason());
+    copy.setStatus(log.getStatus());
+    copy.setCreatedAt(log.getCreatedAt());
+    return copy;
+  }
+
+  private static void writeSize(ByteArrayOutputStream out, List<?> list) {
+    writeVarint(out, list == null ? 0 : list.size() + 1L);
+  }
+
+  private static void writeTuple(ByteArrayOutputStream out, Long drugId, Integer quantity,
+      int code) {
+    out.write((drugId != null ? HAS_DRUG_ID : 0) | (quantity != null ? HAS_QUANTITY : 0));
+    if (drugId != null) {
+      writeVarint(out, (drugId << 1) ^ (drugId >> 63));
+    }
+    if (quantity != null) {
+      writeVarint(out, ((long) quantity << 1) ^ ((long) quantity >> 63));
+    }
+    writeVarint(out, code);
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  /**
+   * Reads the values of one encoding in order.
+   */
+  private static final class Reader {
+
+    private final Long id;
+    private final byte[] data;
+    private int position;
+
+    private Reader(Long id, byte[] data) {
+      this.id = id;
+      this.data = data;
+      int version = readByte();
+      if (version != VERSION) {
+        throw new IllegalStateException(
+            "Unsupported drug list encoding " + version + " in audit log " + id);
+      }
+    }
+
+    private int readByte() {
+      if (position >= data.length) {
+        throw new IllegalStateException("Truncated drug list encoding in audit log " + id);
+      }
+      return data[position++] & 0xFF;
+    }
+
+    private long readVarint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalStateException("Malformed drug list encoding in audit log " + id);
+    }
+
+    private long readZigzag() {
+      long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readSize() {
+      return (int) readVarint() - 1;
+    }
+
+    private int readCode() {
+      return (int) readVarint();
+    }
+  }
+}
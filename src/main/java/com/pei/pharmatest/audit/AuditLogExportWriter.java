@@ -0,0 +1,166 @@
+package com.pei.pharmatest.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.exceptions.ValidationException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.springframework.http.MediaType;
+
+/**
+ * Writes audit logs to an export, one line each, as soon as they are read. The output is flushed
+ * every few hundred audit logs, so that a client sees the export arrive while it is being read and
+ * nothing but the current chunk is buffered.
+ */
+public class AuditLogExportWriter {
+
+  private static final int FLUSH_INTERVAL = 500;
+
+  private static final String CSV_HEADER = "id,prescription_id,patient_id,pharmacy_id,status,"
+      + "failure_reason,created_at,drugs_requested,drugs_dispensed";
+
+  private final Writer writer;
+  private final ObjectMapper objectMapper;
+  private final Format format;
+  private long written;
+
+  /**
+   * Starts an export, writing the CSV header if there is one.
+   *
+   * @param outputStream The stream the export is written to
+   * @param objectMapper The mapper for JSON lines and for the drug lists of CSV lines
+   * @param format       The format of the export
+   * @throws IOException if the header cannot be written
+   */
+  public AuditLogExportWriter(OutputStream outputStream, ObjectMapper objectMapper, Format format)
+      throws IOException {
+    this.writer = new BufferedWriter(
+        new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    this.objectMapper = objectMapper;
+    this.format = format;
+    if (format == Format.CSV) {
+      writer.write(CSV_HEADER);
+      writer.write("\r\n");
+    }
+  }
+
+  /**
+   * Writes one audit log.
+   *
+   * @param log The audit log
+   * @throws UncheckedIOException if the audit log cannot be written, so that the writer can serve
+   *                              as the sink of a stream of audit logs
+   */
+  public void write(AuditLog log) {
+    try {
+      if (format == Format.CSV) {
+        writeCsv(log);
+      } else {
+        writer.write(objectMapper.writeValueAsString(log));
+        writer.write('\n');
+      }
+      if (++written % FLUSH_INTERVAL == 0) {
+        writer.flush();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Flushes what is left of the export. The underlying stream is not closed.
+   *
+   * @throws IOException if the export cannot be written
+   */
+  public void finish() throws IOException {
+    writer.flush();
+  }
+
+  /**
+   * Writes one CSV record as RFC 4180 describes it; the drug lists are JSON arrays.
+   */
+  private void writeCsv(AuditLog log) throws IOException {
+    writer.write(String.valueOf(log.getId()));
+    writer.write(',');
+    writer.write(String.valueOf(log.getPrescriptionId()));
+    writer.write(',');
+    writer.write(String.valueOf(log.getPatientId()));
+    writer.write(',');
+    writer.write(String.valueOf(log.getPharmacyId()));
+    writer.write(',');
+    writeCsvField(log.getStatus());
+    writer.write(',');
+    writeCsvField(log.getFailureReason());
+    writer.write(',');
+    writeCsvField(log.getCreatedAt() == null ? null : log.getCreatedAt().toString());
+    writer.write(',');
+    writeCsvField(toJson(log.getDrugsRequested()));
+    writer.write(',');
+    writeCsvField(toJson(log.getDrugsDispensed()));
+    writer.write("\r\n");
+  }
+
+  private void writeCsvField(String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+        && value.indexOf('\r') < 0) {
+      writer.write(value);
+      return;
+    }
+    writer.write('"');
+    writer.write(value.replace("\"", "\"\""));
+    writer.write('"');
+  }
+
+  private String toJson(Object drugs) throws JsonProcessingException {
+    return drugs == null ? null : objectMapper.writeValueAsString(drugs);
+  }
+
+  /**
+   * The formats an export can be written in.
+   */
+  public enum Format {
+    CSV("csv", MediaType.parseMediaType("text/csv;charset=UTF-8")),
+    NDJSON("ndjson", MediaType.APPLICATION_NDJSON);
+
+    private final String extension;
+    private final MediaType mediaType;
+
+    Format(String extension, MediaType mediaType) {
+      this.extension = extension;
+      this.mediaType = mediaType;
+    }
+
+    public String getExtension() {
+      return extension;
+    }
+
+    public MediaType getMediaType() {
+      return mediaType;
+    }
+
+    /**
+     * Returns the format with the given name.
+     *
+     * @param name The name, {@code csv} or {@code ndjson}
+     * @return The format
+     * @throws ValidationException if there is no such format
+     */
+    public static Format of(String name) {
+      for (Format format : values()) {
+        if (format.extension.equalsIgnoreCase(name)) {
+          return format;
+        }
+      }
+      throw new ValidationException("Format must be one of csv or ndjson");
+    }
+  }
+}
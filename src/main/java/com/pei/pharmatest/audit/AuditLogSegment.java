@@ -0,0 +1,340 @@
+package com.pei.pharmatest.audit;
+
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only, memory-mapped segment file of archived audit logs, written by
+ * {@link AuditLogSegmentWriter}.
+ *
+ * <p>A segment holds rows in {@code (created_at, id)} order, in deflate-compressed blocks of a
+ * fixed number of rows. Its footer is a sparse index with one entry per block: the position and
+ * CRC32C checksum of the block, its first and last creation time, and its range and, when few
+ * enough, list of pharmacy IDs. Queries only inflate the blocks the index cannot rule out, and a
+ * block whose checksum does not match is reported instead of being read.
+ *
+ * <pre>
+ * magic | block 1 | ... | block n | index | trailer
+ * trailer: index offset, index length, index checksum, row count, covered-before, magic
+ * </pre>
+ */
+public final class AuditLogSegment {
+
+  static final byte[] MAGIC = "PAUDSEG1".getBytes(StandardCharsets.US_ASCII);
+  static final int TRAILER_LENGTH = 8 + 4 + 4 + 8 + 8 + MAGIC.length;
+
+  /**
+   * Blocks with more distinct pharmacies than this only index their smallest and largest ID.
+   */
+  static final int MAX_INDEXED_PHARMACIES = 64;
+
+  private final Path file;
+  private final MappedByteBuffer buffer;
+  private final List<Block> blocks;
+  private final long rowCount;
+  private final LocalDateTime coveredBefore;
+
+  private AuditLogSegment(Path file, MappedByteBuffer buffer, List<Block> blocks, long rowCount,
+      LocalDateTime coveredBefore) {
+    this.file = file;
+    this.buffer = buffer;
+    this.blocks = blocks;
+    this.rowCount = rowCount;
+    this.coveredBefore = coveredBefore;
+  }
+
+  /**
+   * Maps a segment file and reads its index.
+   *
+   * @param file The segment file
+   * @return The segment
+   * @throws IOException if the file cannot be read or is not a complete, intact segment
+   */
+  public static AuditLogSegment open(Path file) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < MAGIC.length + TRAILER_LENGTH) {
+        throw new IOException("Truncated audit log segment " + file);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (!hasMagic(buffer, 0) || !hasMagic(buffer, buffer.capacity() - MAGIC.length)) {
+      throw new IOException("Not an audit log segment: " + file);
+    }
+    ByteBuffer trailer = buffer.duplicate().position(buffer.capacity() - TRAILER_LENGTH);
+    long indexOffset = trailer.getLong();
+    int indexLength = trailer.getInt();
+    int indexChecksum = trailer.getInt();
+    long rowCount = trailer.getLong();
+    LocalDateTime coveredBefore = fromMicros(trailer.getLong());
+
+    ByteBuffer index = buffer.duplicate()
+        .position((int) indexOffset).limit((int) indexOffset + indexLength).slice();
+    if (checksum(index) != indexChecksum) {
+      throw new IOException("Corrupt index in audit log segment " + file);
+    }
+    int blockCount = index.getInt();
+    List<Block> blocks = new ArrayList<>(blockCount);
+    for (int i = 0; i < blockCount; i++) {
+      blocks.add(Block.read(index));
+    }
+    return new AuditLogSegment(file, buffer, Collections.unmodifiableList(blocks), rowCount,
+        coveredBefore);
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the creation time before which every audit log of the database was archived when this
+   * segment was written, exclusive.
+   *
+   * @return The covered-before time
+   */
+  public LocalDateTime getCoveredBefore() {
+    return coveredBefore;
+  }
+
+  /**
+   * Returns the latest creation time of any row in the segment.
+   *
+   * @return The latest creation time, or null for an empty segment
+   */
+  public LocalDateTime getLastCreatedAt() {
+    return blocks.isEmpty() ? null : fromMicros(blocks.get(blocks.size() - 1).maxCreatedAt);
+  }
+
+  /**
+   * Hands the rows matching a query to the sink, newest first. Blocks whose last creation time is
+   * below the floor are skipped, which lets a caller that already has enough newer rows stop
+   * reading.
+   *
+   * @param query The filters
+   * @param floor The creation time, in microseconds, below which rows are no longer needed
+   * @param sink  Receives the matching rows
+   * @throws IOException if a block is corrupt
+   */
+  void scan(AuditLogArchiveQuery query, LongSupplier floor, Consumer<ArchivedAuditLog> sink)
+      throws IOException {
+    for (int i = blocks.size() - 1; i >= 0; i--) {
+      Block block = blocks.get(i);
+      if (block.maxCreatedAt < floor.getAsLong()
+          || !query.overlaps(block.minCreatedAt, block.maxCreatedAt)
+          || query.getPharmacyId() != null && !block.mayContainPharmacy(query.getPharmacyId())) {
+        continue;
+      }
+      List<ArchivedAuditLog> rows = readBlock(block);
+      for (int j = rows.size() - 1; j >= 0; j--) {
+        if (query.matches(rows.get(j))) {
+          sink.accept(rows.get(j));
+        }
+      }
+    }
+  }
+
+  /**
+   * Hands every block of the segment to the sink, oldest first, as a list of its rows.
+   *
+   * @param sink Receives the rows of each block
+   * @throws IOException if a block is corrupt
+   */
+  public void forEachBlock(Consumer<List<ArchivedAuditLog>> sink) throws IOException {
+    for (Block block : blocks) {
+      sink.accept(readBlock(block));
+    }
+  }
+
+  private List<ArchivedAuditLog> readBlock(Block block) throws IOException {
+    ByteBuffer compressed = buffer.duplicate().position((int) block.offset)
+        .limit((int) block.offset + block.compressedLength).slice();
+    if (checksum(compressed) != block.checksum) {
+      throw new IOException("Corrupt block at offset " + block.offset + " in audit log segment "
+          + file);
+    }
+    byte[] raw = new byte[block.uncompressedLength];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      int length = 0;
+      while (length < raw.length && !inflater.finished()) {
+        int inflated = inflater.inflate(raw, length, raw.length - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated block in audit log segment " + file);
+        }
+        length += inflated;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt block in audit log segment " + file, e);
+    } finally {
+      inflater.end();
+    }
+
+    List<ArchivedAuditLog> rows = new ArrayList<>(block.rowCount);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+    for (int i = 0; i < block.rowCount; i++) {
+      long id = in.readLong();
+      long prescriptionId = in.readLong();
+      long patientId = in.readLong();
+      long pharmacyId = in.readLong();
+      LocalDateTime createdAt = fromMicros(in.readLong());
+      String status = readString(in);
+      String failureReason = readString(in);
+      String drugsRequested = readString(in);
+      String drugsDispensed = readString(in);
+      rows.add(new ArchivedAuditLog(id, prescriptionId, patientId, pharmacyId, drugsRequested,
+          drugsDispensed, failureReason, status, createdAt));
+    }
+    return rows;
+  }
+
+  static long toMicros(LocalDateTime time) {
+    Instant instant = time.toInstant(ZoneOffset.UTC);
+    return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1000;
+  }
+
+  static LocalDateTime fromMicros(long micros) {
+    return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+        (int) Math.floorMod(micros, 1_000_000) * 1000, ZoneOffset.UTC);
+  }
+
+  static int checksum(ByteBuffer bytes) {
+    CRC32C crc = new CRC32C();
+    crc.update(bytes.duplicate());
+    return (int) crc.getValue();
+  }
+
+  static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static boolean hasMagic(ByteBuffer buffer, int position) {
+    byte[] magic = new byte[MAGIC.length];
+    buffer.duplicate().position(position).get(magic);
+    return Arrays.equals(magic, MAGIC);
+  }
+
+  /**
+   * Sparse index entry of one block.
+   */
+  static final class Block {
+
+    final long offset;
+    final int compressedLength;
+    final int uncompressedLength;
+    final int rowCount;
+    final int checksum;
+    final long minCreatedAt;
+    final long maxCreatedAt;
+    final long minPharmacyId;
+    final long maxPharmacyId;
+
+    /**
+     * The sorted distinct pharmacy IDs of the block, or null when there are too many to list.
+     */
+    final long[] pharmacyIds;
+
+    Block(long offset, int compressedLength, int uncompressedLength, int rowCount, int checksum,
+        long minCreatedAt, long maxCreatedAt, long minPharmacyId, long maxPharmacyId,
+        long[] pharmacyIds) {
+      this.offset = offset;
+      this.compressedLength = compressedLength;
+      this.uncompressedLength = uncompressedLength;
+      this.rowCount = rowCount;
+      this.checksum = checksum;
+      this.minCreatedAt = minCreatedAt;
+      this.maxCreatedAt = maxCreatedAt;
+      this.minPharmacyId = minPharmacyId;
+      this.maxPharmacyId = maxPharmacyId;
+      this.pharmacyIds = pharmacyIds;
+    }
+
+    boolean mayContainPharmacy(long pharmacyId) {
+      if (pharmacyId < minPharmacyId || pharmacyId > maxPharmacyId) {
+        return false;
+      }
+      return pharmacyIds == null || Arrays.binarySearch(pharmacyIds, pharmacyId) >= 0;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeLong(offset);
+      out.writeInt(compressedLength);
+      out.writeInt(uncompressedLength);
+      out.writeInt(rowCount);
+      out.writeInt(checksum);
+      out.writeLong(minCreatedAt);
+      out.writeLong(maxCreatedAt);
+      out.writeLong(minPharmacyId);
+      out.writeLong(maxPharmacyId);
+      out.writeInt(pharmacyIds == null ? -1 : pharmacyIds.length);
+      if (pharmacyIds != null) {
+        for (long pharmacyId : pharmacyIds) {
+          out.writeLong(pharmacyId);
+        }
+      }
+    }
+
+    static Block read(ByteBuffer in) {
+      long offset = in.getLong();
+      int compressedLength = in.getInt();
+      int uncompressedLength = in.getInt();
+      int rowCount = in.getInt();
+      int checksum = in.getInt();
+      long minCreatedAt = in.getLong();
+      long maxCreatedAt = in.getLong();
+      long minPharmacyId = in.getLong();
+      long maxPharmacyId = in.getLong();
+      int pharmacyCount = in.getInt();
+      long[] pharmacyIds = null;
+      if (pharmacyCount >= 0) {
+        pharmacyIds = new long[pharmacyCount];
+        for (int i = 0; i < pharmacyCount; i++) {
+          pharmacyIds[i] = in.getLong();
+        }
+      }
+      return new Block(offset, compressedLength, uncompressedLength, rowCount, checksum,
+          minCreatedAt, maxCreatedAt, minPharmacyId, maxPharmacyId, pharmacyIds);
+    }
+  }
+}
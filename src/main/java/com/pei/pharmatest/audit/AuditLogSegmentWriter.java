@@ -0,0 +1,158 @@
+package com.pei.pharmatest.audit;
+
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes one {@link AuditLogSegment} file. Rows must be added in {@code (created_at, id)} order;
+ * they are buffered one block at a time, so memory use does not grow with the segment. Closing a
+ * writer that was not finished deletes the incomplete file.
+ */
+public class AuditLogSegmentWriter implements Closeable {
+
+  private final Path file;
+  private final int blockRows;
+  private final FileChannel channel;
+  private final List<AuditLogSegment.Block> blocks = new ArrayList<>();
+  private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+  private final DataOutputStream blockOut = new DataOutputStream(blockBytes);
+  private final TreeSet<Long> blockPharmacies = new TreeSet<>();
+  private int blockRowCount;
+  private long blockMinCreatedAt;
+  private long blockMaxCreatedAt;
+  private long position;
+  private long rowCount;
+  private boolean finished;
+
+  /**
+   * Creates a new segment file.
+   *
+   * @param file      The file, which must not exist yet
+   * @param blockRows The number of rows per compressed block
+   * @throws IOException if the file cannot be created
+   */
+  public AuditLogSegmentWriter(Path file, int blockRows) throws IOException {
+    this.file = file;
+    this.blockRows = blockRows;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE);
+    write(ByteBuffer.wrap(AuditLogSegment.MAGIC));
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Adds a row to the segment.
+   *
+   * @param row The archived audit log
+   * @throws IOException if a full block cannot be written
+   */
+  public void add(ArchivedAuditLog row) throws IOException {
+    long createdAt = AuditLogSegment.toMicros(row.getCreatedAt());
+    if (blockRowCount == 0) {
+      blockMinCreatedAt = createdAt;
+      blockMaxCreatedAt = createdAt;
+    }
+    blockMinCreatedAt = Math.min(blockMinCreatedAt, createdAt);
+    blockMaxCreatedAt = Math.max(blockMaxCreatedAt, createdAt);
+    blockOut.writeLong(row.getId());
+    blockOut.writeLong(row.getPrescriptionId());
+    blockOut.writeLong(row.getPatientId());
+    blockOut.writeLong(row.getPharmacyId());
+    blockOut.writeLong(createdAt);
+    AuditLogSegment.writeString(blockOut, row.getStatus());
+    AuditLogSegment.writeString(blockOut, row.getFailureReason());
+    AuditLogSegment.writeString(blockOut, row.getDrugsRequested());
+    AuditLogSegment.writeString(blockOut, row.getDrugsDispensed());
+    blockPharmacies.add(row.getPharmacyId());
+    blockRowCount++;
+    rowCount++;
+    if (blockRowCount == blockRows) {
+      writeBlock();
+    }
+  }
+
+  /**
+   * Writes the last block, the index and the trailer, and forces the file to disk.
+   *
+   * @param coveredBefore The creation time before which all audit logs of the database are
+   *                      archived once this segment is published, exclusive
+   * @throws IOException if the file cannot be written
+   */
+  public void finish(LocalDateTime coveredBefore) throws IOException {
+    if (blockRowCount > 0) {
+      writeBlock();
+    }
+    ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    DataOutputStream indexOut = new DataOutputStream(indexBytes);
+    indexOut.writeInt(blocks.size());
+    for (AuditLogSegment.Block block : blocks) {
+      block.write(indexOut);
+    }
+    ByteBuffer index = ByteBuffer.wrap(indexBytes.toByteArray());
+    long indexOffset = position;
+    write(index.duplicate());
+
+    ByteBuffer trailer = ByteBuffer.allocate(AuditLogSegment.TRAILER_LENGTH);
+    trailer.putLong(indexOffset);
+    trailer.putInt(index.remaining());
+    trailer.putInt(AuditLogSegment.checksum(index));
+    trailer.putLong(rowCount);
+    trailer.putLong(AuditLogSegment.toMicros(coveredBefore));
+    trailer.put(AuditLogSegment.MAGIC);
+    write(trailer.flip());
+    channel.force(true);
+    channel.close();
+    finished = true;
+  }
+
+  /**
+   * Closes the file, deleting it unless the segment was finished.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!finished) {
+      channel.close();
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream(blockBytes.size() / 4 + 64);
+    try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressedBytes)) {
+      blockBytes.writeTo(deflater);
+    }
+    ByteBuffer compressed = ByteBuffer.wrap(compressedBytes.toByteArray());
+    long[] pharmacyIds = blockPharmacies.size() > AuditLogSegment.MAX_INDEXED_PHARMACIES
+        ? null : blockPharmacies.stream().mapToLong(Long::longValue).toArray();
+    blocks.add(new AuditLogSegment.Block(position, compressed.remaining(), blockBytes.size(),
+        blockRowCount, AuditLogSegment.checksum(compressed), blockMinCreatedAt,
+        blockMaxCreatedAt, blockPharmacies.first(), blockPharmacies.last(), pharmacyIds));
+    write(compressed);
+
+    blockBytes.reset();
+    blockPharmacies.clear();
+    blockRowCount = 0;
+  }
+
+  private void write(ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      position += channel.write(bytes);
+    }
+  }
+}
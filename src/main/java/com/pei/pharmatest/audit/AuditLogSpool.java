@@ -0,0 +1,169 @@
+package com.pei.pharmatest.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.entities.AuditLog;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local append-only file holding audit logs that could not be written to the database, one JSON
+ * record per line. Records are appended when the database is slow or unavailable, or when the
+ * writer queue is full, and are replayed into the database once it accepts writes again.
+ *
+ * <p>A replay first renames the spool to a replay file, which is the only step that holds up
+ * appends, and then writes the replay file to the database with new records going to a fresh
+ * spool. The number of records the database accepted is kept next to the replay file after each
+ * chunk, so that a replay interrupted by a failure or a crash resumes after them; only the chunk
+ * in flight at a crash can be inserted twice.
+ */
+@Component
+public class AuditLogSpool {
+
+  private final ObjectMapper objectMapper;
+  private final Path file;
+  private final Path replayFile;
+  private final Path progressFile;
+  private final Object replayLock = new Object();
+  private final AtomicLong spoolBytes = new AtomicLong();
+  private final AtomicLong replayBytes = new AtomicLong();
+
+  /**
+   * Constructs a new AuditLogSpool on the given file, picking up records left by a previous run.
+   *
+   * @param objectMapper The mapper writing and reading the records
+   * @param file The spool file; it is created when the first record is appended
+   * @throws IOException if the size of an existing spool file cannot be read
+   */
+  public AuditLogSpool(ObjectMapper objectMapper,
+      @Value("${pharma.audit.writer.spool-file:audit-spool.ndjson}") Path file)
+      throws IOException {
+    this.objectMapper = objectMapper;
+    this.file = file;
+    this.replayFile = file.resolveSibling(file.getFileName() + ".replay");
+    this.progressFile = file.resolveSibling(file.getFileName() + ".replay.progress");
+    spoolBytes.set(Files.exists(file) ? Files.size(file) : 0);
+    replayBytes.set(Files.exists(replayFile) ? Files.size(replayFile) : 0);
+  }
+
+  /**
+   * Returns the current size of the spool, including a replay in progress, in bytes.
+   *
+   * @return The number of bytes waiting to be replayed
+   */
+  public long size() {
+    return spoolBytes.get() + replayBytes.get();
+  }
+
+  /**
+   * Appends audit logs to the spool file and forces them to disk. IDs assigned by a failed insert
+   * are cleared, so that the records are inserted afresh on replay.
+   *
+   * @param logs The audit logs to keep
+   * @throws IOException if the records cannot be written
+   */
+  public synchronized void append(List<AuditLog> logs) throws IOException {
+    if (logs.isEmpty()) {
+      return;
+    }
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.DSYNC)) {
+      StringBuilder lines = new StringBuilder();
+      for (AuditLog log : logs) {
+        log.setId(null);
+        lines.append(objectMapper.writeValueAsString(log)).append('\n');
+      }
+      out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    spoolBytes.set(Files.size(file));
+  }
+
+  /**
+   * Hands the spooled audit logs to the sink in chunks, in the order they were appended, and
+   * removes them once all of them are accepted. An unfinished earlier replay is resumed first;
+   * records appended meanwhile are left for the next replay. When the sink fails, the chunks it
+   * already accepted are not handed to it again.
+   *
+   * @param chunkSize The maximum number of records per chunk
+   * @param sink Writes one chunk to the database, throwing if it cannot
+   * @return The number of records replayed
+   * @throws IOException if the spool files cannot be read or written
+   */
+  public int replay(int chunkSize, Consumer<List<AuditLog>> sink) throws IOException {
+    synchronized (replayLock) {
+      synchronized (this) {
+        if (!Files.exists(replayFile)) {
+          if (!Files.exists(file)) {
+            return 0;
+          }
+          // Left behind when a crash interrupted the clean-up of the previous replay
+          Files.deleteIfExists(progressFile);
+          Files.move(file, replayFile, StandardCopyOption.ATOMIC_MOVE);
+          replayBytes.set(spoolBytes.getAndSet(0));
+        }
+      }
+
+      int accepted = readProgress();
+      int skipped = 0;
+      int replayed = 0;
+      try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+        List<AuditLog> chunk = new ArrayList<>(chunkSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.isBlank()) {
+            continue;
+          }
+          if (skipped < accepted) {
+            skipped++;
+            continue;
+          }
+          chunk.add(objectMapper.readValue(line, AuditLog.class));
+          if (chunk.size() == chunkSize) {
+            sink.accept(chunk);
+            replayed += chunk.size();
+            writeProgress(accepted + replayed);
+            chunk = new ArrayList<>(chunkSize);
+          }
+        }
+        if (!chunk.isEmpty()) {
+          sink.accept(chunk);
+          replayed += chunk.size();
+        }
+      }
+      // The replay file goes first, so that a leftover progress file is never applied to it
+      Files.delete(replayFile);
+      Files.deleteIfExists(progressFile);
+      replayBytes.set(0);
+      return replayed;
+    }
+  }
+
+  private int readProgress() throws IOException {
+    return Files.exists(progressFile)
+        ? Integer.parseInt(Files.readString(progressFile, StandardCharsets.UTF_8).trim()) : 0;
+  }
+
+  private void writeProgress(int accepted) throws IOException {
+    Path next = progressFile.resolveSibling(progressFile.getFileName() + ".tmp");
+    Files.writeString(next, Integer.toString(accepted), StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+        StandardOpenOption.DSYNC);
+    Files.move(next, progressFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
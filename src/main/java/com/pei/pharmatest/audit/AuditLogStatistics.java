@@ -0,0 +1,202 @@
+package com.pei.pharmatest.audit;
+
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.AuditLogStatisticsKey;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory counters of recorded audit logs by pharmacy, by hour of creation and by failure
+ * reason, each split by status. Every audit log is counted in a few {@link LongAdder}s as it is
+ * recorded, so reading the statistics never touches {@code audit_logs}. What was counted since
+ * the last checkpoint is collected separately until the checkpoint adds it to the rollup table.
+ *
+ * <p>A rebuild counts into a new set of counters while the current ones keep serving. Audit logs
+ * created from the start of the rebuild on are counted in both, and the new counters replace the
+ * current ones once the older audit logs have been counted from the database.
+ */
+@Component
+public class AuditLogStatistics {
+
+  private volatile Counters current = new Counters(null);
+  private volatile Counters rebuilt;
+
+  /**
+   * Counts a recorded audit log.
+   *
+   * @param log The audit log
+   */
+  public void record(AuditLog log) {
+    // Read before the current counters, so a log missed by the rebuilt ones is counted in them
+    Counters rebuilding = rebuilt;
+    Counters counters = current;
+    LocalDateTime createdAt = log.getCreatedAt() == null ? LocalDateTime.now() : log.getCreatedAt();
+    List<AuditLogStatisticsKey> keys = keys(log.getPharmacyId(), createdAt, log.getStatus(),
+        log.getFailureReason());
+    counters.increment(keys);
+    if (rebuilding != null && rebuilding != counters
+        && !createdAt.isBefore(rebuilding.since)) {
+      rebuilding.increment(keys);
+    }
+  }
+
+  /**
+   * Counts several recorded audit logs.
+   *
+   * @param logs The audit logs
+   */
+  public void recordAll(List<AuditLog> logs) {
+    logs.forEach(this::record);
+  }
+
+  /**
+   * Returns the counters an audit log is counted in.
+   *
+   * @param pharmacyId    The pharmacy ID, or null
+   * @param createdAt     The creation time
+   * @param status        The status
+   * @param failureReason The failure reason, or null
+   * @return The keys of the counters
+   */
+  public static List<AuditLogStatisticsKey> keys(Long pharmacyId, LocalDateTime createdAt,
+      String status, String failureReason) {
+    AuditLogStatisticsKey pharmacy =
+        AuditLogStatisticsKey.pharmacy(pharmacyId == null ? -1L : pharmacyId, status);
+    AuditLogStatisticsKey hour = AuditLogStatisticsKey.hour(createdAt, status);
+    if (!"FAILURE".equals(status)) {
+      return List.of(pharmacy, hour);
+    }
+    return List.of(pharmacy, hour, AuditLogStatisticsKey.failureReason(failureReason));
+  }
+
+  /**
+   * Returns the current count of every counter.
+   *
+   * @return The count per counter
+   */
+  public Map<AuditLogStatisticsKey, Long> counts() {
+    Map<AuditLogStatisticsKey, Long> counts = new HashMap<>();
+    current.counters.forEach((key, counter) -> counts.put(key, counter.total.sum()));
+    return counts;
+  }
+
+  /**
+   * Adds checkpointed counts loaded from the rollup table, without checkpointing them again.
+   *
+   * @param persisted The count per counter
+   */
+  public void load(Map<AuditLogStatisticsKey, Long> persisted) {
+    Counters counters = current;
+    persisted.forEach((key, count) -> counters.counter(key).total.add(count));
+  }
+
+  /**
+   * Resets every count to its checkpointed value, which includes what other instances sharing the
+   * rollup table have checkpointed, plus what this instance counted since its last checkpoint.
+   * Counters missing from the table, for instance after another instance rebuilt it, only keep
+   * their unflushed counts. An audit log counted while a counter is reset may be left out of it
+   * until the next reload, which corrects it once the log is checkpointed.
+   *
+   * @param persisted The checkpointed count per counter
+   */
+  public void reload(Map<AuditLogStatisticsKey, Long> persisted) {
+    Counters counters = current;
+    persisted.keySet().forEach(counters::counter);
+    counters.counters.forEach((key, counter) -> counter.total.add(
+        persisted.getOrDefault(key, 0L) + counter.unflushed.sum() - counter.total.sum()));
+  }
+
+  /**
+   * Takes all counts that have not been checkpointed yet. Audit logs counted while draining are
+   * either included or left for the next drain, never lost.
+   *
+   * @return The count to add per counter
+   */
+  public Map<AuditLogStatisticsKey, Long> drainUnflushed() {
+    Map<AuditLogStatisticsKey, Long> deltas = new HashMap<>();
+    current.counters.forEach((key, counter) -> {
+      long delta = counter.unflushed.sumThenReset();
+      if (delta != 0) {
+        deltas.put(key, delta);
+      }
+    });
+    return deltas;
+  }
+
+  /**
+   * Puts back drained counts after a checkpoint failed to persist them.
+   *
+   * @param deltas The counts that were drained
+   */
+  public void restoreUnflushed(Map<AuditLogStatisticsKey, Long> deltas) {
+    Counters counters = current;
+    deltas.forEach((key, delta) -> counters.counter(key).unflushed.add(delta));
+  }
+
+  /**
+   * Starts counting into new counters, alongside the current ones, every audit log created from
+   * now on.
+   *
+   * @return The creation time before which audit logs are left to the rebuild to count
+   */
+  public LocalDateTime startRebuild() {
+    Counters counters = new Counters(LocalDateTime.now());
+    rebuilt = counters;
+    return counters.since;
+  }
+
+  /**
+   * Adds the counts of the audit logs created before the rebuild started to the new counters and
+   * makes them the current ones. The counts are expected to be persisted already; the audit logs
+   * counted since the start are left for the next checkpoint.
+   *
+   * @param counts The count per counter of the audit logs created before the rebuild started
+   */
+  public void finishRebuild(Map<AuditLogStatisticsKey, Long> counts) {
+    Counters counters = rebuilt;
+    counts.forEach((key, count) -> counters.counter(key).total.add(count));
+    current = counters;
+    rebuilt = null;
+  }
+
+  /**
+   * Drops the new counters of a rebuild that failed, keeping the current ones.
+   */
+  public void abandonRebuild() {
+    rebuilt = null;
+  }
+
+  private static final class Counters {
+
+    private final Map<AuditLogStatisticsKey, Counter> counters = new ConcurrentHashMap<>();
+    private final LocalDateTime since;
+
+    private Counters(LocalDateTime since) {
+      this.since = since;
+    }
+
+    private void increment(List<AuditLogStatisticsKey> keys) {
+      for (AuditLogStatisticsKey key : keys) {
+        Counter counter = counter(key);
+        counter.total.increment();
+        counter.unflushed.increment();
+      }
+    }
+
+    private Counter counter(AuditLogStatisticsKey key) {
+      Counter counter = counters.get(key);
+      return counter != null ? counter : counters.computeIfAbsent(key, k -> new Counter());
+    }
+  }
+
+  private static final class Counter {
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder unflushed = new LongAdder();
+  }
+}
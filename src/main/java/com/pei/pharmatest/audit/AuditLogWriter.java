@@ -0,0 +1,278 @@
+package com.pei.pharmatest.audit;
+
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Asynchronous writer of audit logs. Records are handed to a bounded queue and a single writer
+ * thread inserts them in batches, each one committed in its own transaction once it holds the
+ * configured number of records or its first record has waited for the flush interval.
+ *
+ * <p>A batch that cannot be inserted within the flush timeout, because the database is slow or
+ * down, is appended to the {@link AuditLogSpool} and replayed when the writer is idle again. When
+ * the queue is full, callers wait up to the offer timeout for space and then append their records
+ * to the spool themselves, so audit logs are never dropped and requests are never held up for
+ * longer than a local file append. On shutdown the queue is drained into the database, or into
+ * the spool if the database does not accept it.
+ *
+ * <p>In the compact drug list encoding, copies of the audit logs are inserted, so that the spool
+ * still receives the drug lists of a batch that fails.
+ */
+@Component
+public class AuditLogWriter {
+
+  private static final Logger logger = LoggerFactory.getLogger(AuditLogWriter.class);
+
+  private final AuditLogRepository auditLogRepository;
+  private final AuditLogDrugCodec drugCodec;
+  private final TransactionTemplate transactionTemplate;
+  private final AuditLogSpool spool;
+  private final boolean enabled;
+  private final int maxBatchSize;
+  private final Duration flushInterval;
+  private final Duration offerTimeout;
+  private final Duration replayInterval;
+  private final Duration shutdownTimeout;
+  private final BlockingQueue<AuditLog> queue;
+  private final Timer flushLatency;
+  private final Counter spooled;
+  private Thread worker;
+  private volatile boolean running;
+
+  /**
+   * Constructs a new AuditLogWriter with the required dependencies.
+   *
+   * @param auditLogRepository The repository inserting the audit logs
+   * @param drugCodec The codec for the compact drug list encoding
+   * @param transactionManager The transaction manager for the insert transactions
+   * @param spool The spool for audit logs the database does not accept
+   * @param meterRegistry The registry for the writer metrics
+   * @param enabled Whether audit logs are written asynchronously at all
+   * @param queueCapacity The number of audit logs that may wait for the writer
+   * @param maxBatchSize The number of audit logs after which a batch is inserted immediately
+   * @param flushInterval How long the first audit log of a batch waits for more
+   * @param flushTimeout How long one insert transaction may take before it is given up
+   * @param offerTimeout How long a caller waits for space in a full queue before spooling
+   * @param replayInterval How long to wait before replaying the spool after a failed attempt
+   * @param shutdownTimeout How long shutdown waits for the queue to be drained
+   */
+  public AuditLogWriter(AuditLogRepository auditLogRepository, AuditLogDrugCodec drugCodec,
+      PlatformTransactionManager transactionManager, AuditLogSpool spool,
+      MeterRegistry meterRegistry,
+      @Value("${pharma.audit.writer.enabled:true}") boolean enabled,
+      @Value("${pharma.audit.writer.queue-capacity:10000}") int queueCapacity,
+      @Value("${pharma.audit.writer.max-batch-size:500}") int maxBatchSize,
+      @Value("${pharma.audit.writer.flush-interval:PT0.05S}") Duration flushInterval,
+      @Value("${pharma.audit.writer.flush-timeout:PT5S}") Duration flushTimeout,
+      @Value("${pharma.audit.writer.offer-timeout:PT0.01S}") Duration offerTimeout,
+      @Value("${pharma.audit.writer.replay-interval:PT10S}") Duration replayInterval,
+      @Value("${pharma.audit.writer.shutdown-timeout:PT30S}") Duration shutdownTimeout) {
+    this.auditLogRepository = auditLogRepository;
+    this.drugCodec = drugCodec;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.transactionTemplate.setPropagationBehavior(
+        TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.transactionTemplate.setTimeout((int) Math.max(1, flushTimeout.toSeconds()));
+    this.spool = spool;
+    this.enabled = enabled;
+    this.maxBatchSize = maxBatchSize;
+    this.flushInterval = flushInterval;
+    this.offerTimeout = offerTimeout;
+    this.replayInterval = replayInterval;
+    this.shutdownTimeout = shutdownTimeout;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    Gauge.builder("pharma.audit.writer.queue.depth", queue, BlockingQueue::size)
+        .description("Number of audit logs waiting for the writer")
+        .register(meterRegistry);
+    Gauge.builder("pharma.audit.writer.spool.size", spool, AuditLogSpool::size)
+        .description("Size of the audit log spool file waiting to be replayed")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    this.flushLatency = Timer.builder("pharma.audit.writer.flush")
+        .description("Time taken to insert one batch of audit logs")
+        .register(meterRegistry);
+    this.spooled = Counter.builder("pharma.audit.writer.spooled")
+        .description("Number of audit logs appended to the spool")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Starts the writer thread if asynchronous writing is enabled.
+   */
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    running = true;
+    worker = new Thread(this::runWorker, "audit-log-writer");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Stops accepting audit logs and waits for the writer thread to drain the queue. Whatever it
+   * could not write in time is spooled.
+   */
+  @PreDestroy
+  public void stop() {
+    running = false;
+    if (worker != null) {
+      try {
+        worker.join(shutdownTimeout.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      worker.interrupt();
+    }
+    List<AuditLog> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    spool(remaining);
+  }
+
+  /**
+   * Queues an audit log for writing.
+   *
+   * @param log The audit log to write
+   */
+  public void write(AuditLog log) {
+    writeAll(List.of(log));
+  }
+
+  /**
+   * Queues audit logs for writing. When asynchronous writing is disabled or the writer has
+   * stopped, they are written on the calling thread instead.
+   *
+   * @param logs The audit logs to write
+   */
+  public void writeAll(List<AuditLog> logs) {
+    if (logs.isEmpty()) {
+      return;
+    }
+    if (!enabled) {
+      try {
+        insert(logs);
+      } catch (RuntimeException e) {
+        logger.error("Failed to save {} audit logs: {}", logs.size(), e.getMessage(), e);
+      }
+      return;
+    }
+    if (!running) {
+      // Late records of a shutdown are spooled if they fail, and replayed after the restart
+      flush(logs);
+      return;
+    }
+    int queued = 0;
+    try {
+      while (queued < logs.size()
+          && queue.offer(logs.get(queued), offerTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+        queued++;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    List<AuditLog> overflow = logs.subList(queued, logs.size());
+    if (!overflow.isEmpty()) {
+      logger.warn("Audit log queue is full, spooling {} audit logs", overflow.size());
+      spool(overflow);
+    }
+  }
+
+  private void runWorker() {
+    List<AuditLog> batch = new ArrayList<>(maxBatchSize);
+    long nextReplay = System.nanoTime();
+    while (running || !queue.isEmpty()) {
+      try {
+        AuditLog first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          if (running && spool.size() > 0 && System.nanoTime() - nextReplay >= 0) {
+            nextReplay = System.nanoTime() + (replaySpool() ? 0 : replayInterval.toNanos());
+          }
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < maxBatchSize) {
+          // Once stopping, the queue is drained without waiting for more
+          long remaining = deadline - System.nanoTime();
+          AuditLog next = remaining > 0 && running
+              ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        flush(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        spool(batch);
+        return;
+      } finally {
+        batch = new ArrayList<>(maxBatchSize);
+      }
+    }
+  }
+
+  private void flush(List<AuditLog> batch) {
+    long startedAt = System.nanoTime();
+    try {
+      insert(batch);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to write {} audit logs, spooling them: {}", batch.size(),
+          e.getMessage());
+      spool(batch);
+    } finally {
+      flushLatency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void insert(List<AuditLog> logs) {
+    // Encoded before the transaction, which new dictionary entries are committed independently of
+    List<AuditLog> rows = drugCodec.isCompact() ? drugCodec.compactAll(logs) : logs;
+    transactionTemplate.executeWithoutResult(status -> auditLogRepository.saveAll(rows));
+  }
+
+  private boolean replaySpool() {
+    try {
+      int replayed = spool.replay(maxBatchSize, this::insert);
+      logger.info("Replayed {} spooled audit logs", replayed);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Failed to replay spooled audit logs: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  private void spool(List<AuditLog> logs) {
+    if (logs.isEmpty()) {
+      return;
+    }
+    try {
+      spool.append(logs);
+      spooled.increment(logs.size());
+    } catch (IOException e) {
+      logger.error("Failed to spool {} audit logs, they are lost: {}", logs.size(),
+          e.getMessage(), e);
+    }
+  }
+}
@@ -1,40 +1,209 @@
 package com.pei.pharmatest.controllers;
 
-import com.pei.pharmatest.entities.AuditLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.audit.AuditLogExportWriter;
+import com.pei.pharmatest.dto.AuditLogStatsResponse;
+import com.pei.pharmatest.exceptions.ValidationException;
 import com.pei.pharmatest.services.AuditLogService;
-import org.springframework.data.domain.Page;
+import com.pei.pharmatest.services.AuditLogStatisticsService;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/v1/audit-logs")
 public class AuditLogController {
 
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
     private final AuditLogService auditLogService;
+    private final AuditLogStatisticsService auditLogStatisticsService;
+    private final ObjectMapper objectMapper;
 
-    public AuditLogController(AuditLogService auditLogService) {
+    public AuditLogController(AuditLogService auditLogService,
+            AuditLogStatisticsService auditLogStatisticsService, ObjectMapper objectMapper) {
         this.auditLogService = auditLogService;
+        this.auditLogStatisticsService = auditLogStatisticsService;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * Retrieves audit logs, newest first. By default they are read by offset from {@code page}
+     * (the first page when absent), and {@code total} chooses between an exact count
+     * ({@code exact}, the default), no count at all ({@code none}) and an estimate from planner
+     * statistics ({@code estimated}). With {@code paging=keyset}, or with the opaque
+     * {@code cursor} of the previous keyset response, they are read by keyset instead; keyset
+     * pages accept {@code none} (the default) and {@code estimated}. A range on the creation
+     * time, {@code from} inclusive and {@code to} exclusive, limits the read to the monthly
+     * partitions it covers. {@code drugId} keeps the logs of prescriptions that requested the
+     * drug, whether it was dispensed or not.
+     */
     @GetMapping
-    public ResponseEntity<Page<AuditLog>> getAuditLogs(
+    public ResponseEntity<Object> getAuditLogs(
             @RequestParam(required = false) Long patientId,
             @RequestParam(required = false) Long pharmacyId,
+            @RequestParam(required = false) Long drugId,
             @RequestParam(required = false) String status,
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
-        
-        Page<AuditLog> auditLogs = auditLogService.getAuditLogs(
-            patientId,
-            pharmacyId, 
-            status, 
-            PageRequest.of(page, size)
-        );
-        
-        return ResponseEntity.ok(auditLogs);
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME)
+            LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME)
+            LocalDateTime to,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String paging,
+            @RequestParam(required = false) String total) {
+
+        if (isKeyset(paging) || cursor != null) {
+            if ("offset".equals(paging)) {
+                throw new ValidationException("Cursors are only available with keyset paging");
+            }
+            if (page != null) {
+                throw new ValidationException("Use either page or cursor, not both");
+            }
+            if ("exact".equals(total)) {
+                throw new ValidationException(
+                    "Exact totals are only available with page-based paging");
+            }
+            return ResponseEntity.ok(auditLogService.scrollAuditLogs(
+                patientId, pharmacyId, drugId, status, from, to, cursor, size,
+                isEstimated(total)));
+        }
+
+        Pageable pageable = PageRequest.of(page == null ? 0 : page, size,
+            Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+        if (total == null || "exact".equals(total)) {
+            return ResponseEntity.ok(auditLogService.getAuditLogs(
+                patientId, pharmacyId, drugId, status, from, to, pageable));
+        }
+        if (isEstimated(total)) {
+            return ResponseEntity.ok(auditLogService.getAuditLogsWithEstimatedTotal(
+                patientId, pharmacyId, drugId, status, from, to, pageable));
+        }
+        return ResponseEntity.ok(auditLogService.getAuditLogSlice(
+            patientId, pharmacyId, drugId, status, from, to, pageable));
+    }
+
+    /**
+     * Exports every audit log matching the filters, newest first, as CSV or newline-delimited
+     * JSON. The audit logs are read through a database cursor and written as they arrive, so
+     * memory use does not depend on the size of the export. The output is gzip-compressed when
+     * the client accepts it.
+     *
+     * @param format         {@code ndjson} (the default) or {@code csv}
+     * @param acceptEncoding The encodings the client accepts
+     * @return ResponseEntity streaming the export
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAuditLogs(
+            @RequestParam(required = false) Long patientId,
+            @RequestParam(required = false) Long pharmacyId,
+            @RequestParam(required = false) Long drugId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME)
+            LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME)
+            LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+            String acceptEncoding) {
+
+        // Rejected here, while an error status can still be sent
+        AuditLogExportWriter.Format exportFormat = AuditLogExportWriter.Format.of(format);
+        auditLogService.validateFilters(status, from, to);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        StreamingResponseBody body = outputStream -> {
+            // Sync flushes pass each chunk on to the client instead of holding it in the deflater
+            OutputStream out = gzip
+                ? new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE, true) : outputStream;
+            AuditLogExportWriter writer = new AuditLogExportWriter(out, objectMapper, exportFormat);
+            try {
+                auditLogService.exportAuditLogs(
+                    patientId, pharmacyId, drugId, status, from, to, writer::write);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.finish();
+            if (out instanceof GZIPOutputStream gzipStream) {
+                gzipStream.finish();
+            }
+            outputStream.flush();
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(exportFormat.getMediaType())
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("audit-logs." + exportFormat.getExtension()).build().toString())
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    /**
+     * Retrieves the number of successful and failed prescription attempts overall, per pharmacy,
+     * per failure reason and per hour. The counters are kept in memory as attempts are recorded,
+     * so the audit logs themselves are not read.
+     *
+     * @param hours The number of hours, up to and including the current one, to list per hour
+     * @return ResponseEntity containing the statistics
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<AuditLogStatsResponse> getStatistics(
+            @RequestParam(defaultValue = "24") int hours) {
+        return ResponseEntity.ok(auditLogStatisticsService.getStatistics(hours));
+    }
+
+    /**
+     * Counts the audit logs afresh, for instance after counters were lost in a crash, and returns
+     * the rebuilt statistics. Reads every audit log in the database and the archive.
+     *
+     * @param hours The number of hours, up to and including the current one, to list per hour
+     * @return ResponseEntity containing the rebuilt statistics
+     */
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<AuditLogStatsResponse> rebuildStatistics(
+            @RequestParam(defaultValue = "24") int hours) {
+        // Rejected here rather than after the rebuild
+        auditLogStatisticsService.validateHours(hours);
+        auditLogStatisticsService.rebuildStatistics();
+        return ResponseEntity.ok(auditLogStatisticsService.getStatistics(hours));
+    }
+
+    private static boolean isKeyset(String paging) {
+        if (paging == null || "offset".equals(paging)) {
+            return false;
+        }
+        if ("keyset".equals(paging)) {
+            return true;
+        }
+        throw new ValidationException("Paging must be one of offset or keyset");
+    }
+
+    private static boolean isEstimated(String total) {
+        if (total == null || "none".equals(total)) {
+            return false;
+        }
+        if ("estimated".equals(total)) {
+            return true;
+        }
+        throw new ValidationException("Total must be one of exact, none or estimated");
     }
 }
\ No newline at end of file
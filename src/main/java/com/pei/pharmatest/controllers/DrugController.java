@@ -1,19 +1,22 @@
 package com.pei.pharmatest.controllers;
 
 import com.pei.pharmatest.exceptions.ValidationException;
-import java.util.Optional;
 import com.pei.pharmatest.dto.DrugRequest;
 import com.pei.pharmatest.dto.DrugResponse;
 import com.pei.pharmatest.exceptions.ResourceNotFoundException;
 import com.pei.pharmatest.services.DrugService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * REST controller for managing drug-related operations. Provides endpoints for retrieving and
@@ -30,23 +33,31 @@ public class DrugController {
   }
 
   /**
-   * Retrieves a drug by its ID.
+   * Retrieves a drug by its ID. The response carries an ETag derived from the version of the drug
+   * and its stock. A conditional request is checked against the current version first and gets a
+   * 304 without the drug being loaded when its {@code If-None-Match} still matches.
    *
-   * @param id The ID of the drug to retrieve
-   * @return ResponseEntity containing the drug details if found, or an error response
+   * @param id         The ID of the drug to retrieve
+   * @param webRequest The current request, for its {@code If-None-Match} header
+   * @return ResponseEntity containing the drug details if found, or null when not modified
    */
   @GetMapping("/{id}")
-  public ResponseEntity<Object> getDrug(@PathVariable Long id) {
+  public ResponseEntity<Object> getDrug(@PathVariable Long id, WebRequest webRequest) {
     if (id == null || id <= 0) {
       throw new ValidationException("Drug ID must be a positive number");
     }
 
-    Optional<DrugResponse> drug = drugService.getDrug(id);
-    if (drug.isPresent()) {
-      return ResponseEntity.ok().body(drug.get());
+    if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+      String version = drugService.getDrugVersion(id).orElseThrow(() -> drugNotFound(id));
+      if (webRequest.checkNotModified(etag(id, version))) {
+        return null;
+      }
     }
-    throw new ResourceNotFoundException(
-        String.format("Drug with ID %d does not exist in the inventory", id));
+    DrugResponse drug = drugService.getDrug(id).orElseThrow(() -> drugNotFound(id));
+    if (drug.getVersion() == null) {
+      return ResponseEntity.ok().body(drug);
+    }
+    return ResponseEntity.ok().eTag(etag(id, drug.getVersion())).body(drug);
   }
 
   /**
@@ -60,4 +71,26 @@ public class DrugController {
     DrugResponse response = drugService.addDrug(request);
     return ResponseEntity.status(HttpStatus.CREATED).body(response);
   }
+
+  /**
+   * Splits the stock of a drug across stock shards, or merges it back with a count of zero.
+   *
+   * @param id    The ID of the drug
+   * @param count The number of stock shards
+   * @return ResponseEntity containing the updated drug details
+   */
+  @PutMapping("/{id}/stock-shards")
+  public ResponseEntity<DrugResponse> shardStock(@PathVariable Long id, @RequestParam int count) {
+    return drugService.shardStock(id, count).map(ResponseEntity::ok)
+        .orElseThrow(() -> drugNotFound(id));
+  }
+
+  private static String etag(Long id, String version) {
+    return "\"drug-" + id + "-" + version + "\"";
+  }
+
+  private static ResourceNotFoundException drugNotFound(Long id) {
+    return new ResourceNotFoundException(
+        String.format("Drug with ID %d does not exist in the inventory", id));
+  }
 }
@@ -1,18 +1,28 @@
 package com.pei.pharmatest.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pei.pharmatest.dto.PharmacyResponse;
+import com.pei.pharmatest.dto.PrescriptionBatchItemResponse;
 import com.pei.pharmatest.dto.PrescriptionRequest;
 import com.pei.pharmatest.dto.PrescriptionResponse;
 import com.pei.pharmatest.services.PharmacyService;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 /**
  * REST controller for managing pharmacy-related operations. Provides endpoints for retrieving
@@ -22,21 +32,94 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/v1/pharmacies")
 public class PharmacyController {
 
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int EXPORT_FLUSH_INTERVAL = 100;
+
   private final PharmacyService pharmacyService;
+  private final ObjectMapper objectMapper;
 
-  public PharmacyController(PharmacyService pharmacyService) {
+  public PharmacyController(PharmacyService pharmacyService, ObjectMapper objectMapper) {
     this.pharmacyService = pharmacyService;
+    this.objectMapper = objectMapper;
   }
 
   /**
-   * Retrieves all pharmacies in the system.
+   * Retrieves pharmacies in ID order. Without {@code afterId} and {@code size}, all pharmacies are
+   * returned, as before paging was introduced. With either of them, one page is returned, and when
+   * the page is full, a {@code Link} header with {@code rel="next"} points to the next page. The
+   * version of the pharmacies is read before the pharmacies themselves and sent as the ETag, so a
+   * request whose {@code If-None-Match} still matches gets a 304 without them being loaded.
    *
-   * @return ResponseEntity containing a list of pharmacy responses
+   * @param afterId          The last pharmacy ID of the previous page; omit for the first page
+   * @param size             The maximum number of pharmacies to return; defaults to 100 when
+   *                         only {@code afterId} is given
+   * @param includeContracts Whether to include the contracted drugs of each pharmacy
+   * @param webRequest       The current request, for its {@code If-None-Match} header
+   * @return ResponseEntity containing a list of pharmacy responses, or null when not modified
    */
   @GetMapping
-  public ResponseEntity<List<PharmacyResponse>> getAllPharmacies() {
-    List<PharmacyResponse> pharmacies = pharmacyService.getAllPharmacies();
-    return ResponseEntity.ok(pharmacies);
+  public ResponseEntity<List<PharmacyResponse>> getPharmacies(
+      @RequestParam(required = false) Long afterId,
+      @RequestParam(required = false) Integer size,
+      @RequestParam(defaultValue = "true") boolean includeContracts,
+      WebRequest webRequest) {
+    if (afterId == null && size == null) {
+      String etag = "\"pharmacies-"
+          + pharmacyService.getAllPharmaciesVersion(includeContracts) + "\"";
+      if (webRequest.checkNotModified(etag)) {
+        return null;
+      }
+      return ResponseEntity.ok().eTag(etag)
+          .body(pharmacyService.getAllPharmacies(includeContracts));
+    }
+    int pageSize = size == null ? DEFAULT_PAGE_SIZE : size;
+    String etag = "\"pharmacies-"
+        + pharmacyService.getPharmaciesVersion(afterId, pageSize, includeContracts) + "\"";
+    if (webRequest.checkNotModified(etag)) {
+      return null;
+    }
+    List<PharmacyResponse> pharmacies =
+        pharmacyService.getPharmacies(afterId, pageSize, includeContracts);
+    if (pharmacies.size() < pageSize) {
+      return ResponseEntity.ok().eTag(etag).body(pharmacies);
+    }
+    String next = ServletUriComponentsBuilder.fromCurrentRequest()
+        .replaceQueryParam("afterId", pharmacies.get(pharmacies.size() - 1).getId())
+        .toUriString();
+    return ResponseEntity.ok().eTag(etag)
+        .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+        .body(pharmacies);
+  }
+
+  /**
+   * Exports all pharmacies with their contracted drugs as newline-delimited JSON, one pharmacy per
+   * line. Each pharmacy is written as soon as it has been read and the output is flushed in
+   * chunks, so memory use does not depend on the size of the catalog.
+   *
+   * @return ResponseEntity streaming the pharmacy catalog
+   */
+  @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportPharmacies() {
+    StreamingResponseBody body = outputStream -> {
+      int[] written = {0};
+      try {
+        pharmacyService.exportPharmacies(pharmacy -> {
+          try {
+            outputStream.write(objectMapper.writeValueAsBytes(pharmacy));
+            outputStream.write('\n');
+            if (++written[0] % EXPORT_FLUSH_INTERVAL == 0) {
+              outputStream.flush();
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      outputStream.flush();
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
   }
 
   /**
@@ -54,6 +137,20 @@ public class PharmacyController {
     return ResponseEntity.status(HttpStatus.CREATED).body(prescription);
   }
 
+  /**
+   * Creates several prescriptions at a specific pharmacy in one call.
+   *
+   * @param pharmacyId The ID of the pharmacy
+   * @param requests   The prescription requests
+   * @return ResponseEntity containing one result per request, in request order
+   */
+  @PostMapping("/{pharmacyId}/prescriptions:batch")
+  public ResponseEntity<List<PrescriptionBatchItemResponse>> createPrescriptions(
+      @PathVariable Long pharmacyId,
+      @RequestBody List<PrescriptionRequest> requests) {
+    return ResponseEntity.ok(pharmacyService.createPrescriptions(pharmacyId, requests));
+  }
+
   /**
    * Fulfills a prescription by dispensing the prescribed drugs.
    *
@@ -66,4 +163,29 @@ public class PharmacyController {
     PrescriptionResponse prescription = pharmacyService.fulfillPrescription(prescriptionId);
     return ResponseEntity.ok(prescription);
   }
+
+  /**
+   * Fulfills several prescriptions in one call.
+   *
+   * @param prescriptionIds The IDs of the prescriptions to fulfill, in priority order
+   * @return ResponseEntity containing one result per prescription ID, in request order
+   */
+  @PostMapping("/prescriptions:fulfill")
+  public ResponseEntity<List<PrescriptionBatchItemResponse>> fulfillPrescriptions(
+      @RequestBody List<Long> prescriptionIds) {
+    return ResponseEntity.ok(pharmacyService.fulfillPrescriptions(prescriptionIds));
+  }
+
+  /**
+   * Cancels a prescription that has not been fulfilled yet.
+   *
+   * @param prescriptionId The ID of the prescription to cancel
+   * @return ResponseEntity containing the updated prescription details
+   */
+  @PostMapping("/prescriptions/{prescriptionId}/cancel")
+  public ResponseEntity<PrescriptionResponse> cancelPrescription(
+      @PathVariable Long prescriptionId) {
+    PrescriptionResponse prescription = pharmacyService.cancelPrescription(prescriptionId);
+    return ResponseEntity.ok(prescription);
+  }
 }
\ No newline at end of file
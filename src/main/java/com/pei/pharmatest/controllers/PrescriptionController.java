@@ -0,0 +1,62 @@
+package com.pei.pharmatest.controllers;
+
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache.CachedResponse;
+import com.pei.pharmatest.services.PrescriptionService;
+import java.util.Optional;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * REST controller for reading prescriptions independently of the pharmacy that created them.
+ */
+@RestController
+@RequestMapping("/api/v1/prescriptions")
+public class PrescriptionController {
+
+  private final PrescriptionService prescriptionService;
+
+  public PrescriptionController(PrescriptionService prescriptionService) {
+    this.prescriptionService = prescriptionService;
+  }
+
+  /**
+   * Retrieves a prescription by its ID. Fulfilled and cancelled prescriptions are served from
+   * their cached JSON. Every response carries a strong ETag, and a request whose
+   * {@code If-None-Match} matches it gets a 304 without a body. Such a request for a prescription
+   * that is not cached is checked against its current status before anything else is loaded.
+   *
+   * @param id         The ID of the prescription to retrieve
+   * @param webRequest The current request, for its {@code If-None-Match} header
+   * @return ResponseEntity containing the prescription details, or null when not modified
+   */
+  @GetMapping("/{id}")
+  public ResponseEntity<Object> getPrescription(@PathVariable Long id, WebRequest webRequest) {
+    if (id == null || id <= 0) {
+      throw new ValidationException("Prescription ID must be a positive number");
+    }
+
+    Optional<CachedResponse> cached = prescriptionService.getCachedPrescription(id);
+    if (cached.isPresent()) {
+      return ResponseEntity.ok().eTag(cached.get().getEtag())
+          .contentType(MediaType.APPLICATION_JSON).body(cached.get().getBody());
+    }
+    if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+        && webRequest.checkNotModified(
+            PrescriptionResponseCache.etag(id, prescriptionService.getPrescriptionStatus(id)))) {
+      return null;
+    }
+    PrescriptionResponse prescription = prescriptionService.getPrescription(id);
+    return ResponseEntity.ok()
+        .eTag(PrescriptionResponseCache.etag(prescription.getId(), prescription.getStatus()))
+        .body(prescription);
+  }
+}
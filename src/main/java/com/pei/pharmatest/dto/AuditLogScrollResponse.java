@@ -0,0 +1,20 @@
+package com.pei.pharmatest.dto;
+
+import com.pei.pharmatest.entities.AuditLog;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object representing one page of audit logs read by keyset. Carries an opaque
+ * cursor for the next page instead of a page number, and a total only when an estimate was asked
+ * for.
+ */
+@Getter
+@Setter
+public class AuditLogScrollResponse {
+
+  private List<AuditLog> content;
+  private String nextCursor;
+  private Long estimatedTotal;
+}
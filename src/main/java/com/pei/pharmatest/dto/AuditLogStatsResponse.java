@@ -0,0 +1,47 @@
+package com.pei.pharmatest.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object representing the audit log statistics. Contains the number of successful
+ * and failed prescription attempts overall, per pharmacy and per hour, and the number of failures
+ * per failure reason.
+ */
+@Getter
+@Setter
+public class AuditLogStatsResponse {
+
+  private long success;
+  private long failure;
+  private List<PharmacyStats> pharmacies;
+  private Map<String, Long> failureReasons;
+  private List<HourStats> hours;
+
+  /**
+   * The attempts at one pharmacy.
+   */
+  @Getter
+  @Setter
+  public static class PharmacyStats {
+
+    private Long pharmacyId;
+    private long success;
+    private long failure;
+  }
+
+  /**
+   * The attempts within one hour.
+   */
+  @Getter
+  @Setter
+  public static class HourStats {
+
+    private LocalDateTime hour;
+    private long success;
+    private long failure;
+  }
+}
@@ -1,5 +1,6 @@
 package com.pei.pharmatest.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -17,6 +18,12 @@ public class DrugResponse {
   private Integer stock;
   private LocalDateTime createdAt;
 
+  /**
+   * Version of the drug the response was read from; sent as the ETag rather than in the body.
+   */
+  @JsonIgnore
+  private String version;
+
   // Getters and Setters
   public Long getId() {
     return id;
@@ -73,4 +80,13 @@ public class DrugResponse {
   public void setCreatedAt(LocalDateTime createdAt) {
     this.createdAt = createdAt;
   }
-}
\ No newline at end of file
+
+  @JsonIgnore
+  public String getVersion() {
+    return version;
+  }
+
+  public void setVersion(String version) {
+    this.version = version;
+  }
+}
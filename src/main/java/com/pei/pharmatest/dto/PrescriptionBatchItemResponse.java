@@ -0,0 +1,54 @@
+package com.pei.pharmatest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object representing the outcome of one entry of a batch prescription operation.
+ * Successful entries carry the prescription; failed entries carry the reason they were skipped.
+ */
+@Getter
+@Setter
+public class PrescriptionBatchItemResponse {
+
+  private int index;
+  private Long prescriptionId;
+  private boolean success;
+  private PrescriptionResponse prescription;
+  private String error;
+
+  /**
+   * Creates the result of a successful batch entry.
+   *
+   * @param index        The position of the entry in the batch
+   * @param prescription The resulting prescription
+   * @return The batch entry result
+   */
+  public static PrescriptionBatchItemResponse success(int index,
+      PrescriptionResponse prescription) {
+    PrescriptionBatchItemResponse response = new PrescriptionBatchItemResponse();
+    response.setIndex(index);
+    response.setPrescriptionId(prescription.getId());
+    response.setSuccess(true);
+    response.setPrescription(prescription);
+    return response;
+  }
+
+  /**
+   * Creates the result of a batch entry that was skipped.
+   *
+   * @param index          The position of the entry in the batch
+   * @param prescriptionId The ID of the prescription, if the entry referred to one
+   * @param error          The reason the entry was skipped
+   * @return The batch entry result
+   */
+  public static PrescriptionBatchItemResponse failure(int index, Long prescriptionId,
+      String error) {
+    PrescriptionBatchItemResponse response = new PrescriptionBatchItemResponse();
+    response.setIndex(index);
+    response.setPrescriptionId(prescriptionId);
+    response.setSuccess(false);
+    response.setError(error);
+    return response;
+  }
+}
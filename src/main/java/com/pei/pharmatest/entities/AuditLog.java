@@ -1,5 +1,6 @@
 package com.pei.pharmatest.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.pei.pharmatest.dto.PrescriptionDrugRequest;
 import com.pei.pharmatest.dto.PrescriptionDrugResponse;
 import jakarta.persistence.Column;
@@ -7,6 +8,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -22,7 +24,9 @@ import org.hibernate.type.SqlTypes;
 public class AuditLog {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_logs_id_seq")
+  @SequenceGenerator(name = "audit_logs_id_seq", sequenceName = "audit_logs_id_seq",
+      allocationSize = 50)
   private Long id;
 
   private Long prescriptionId;
@@ -37,6 +41,21 @@ public class AuditLog {
   @Column(columnDefinition = "jsonb")
   private List<PrescriptionDrugResponse> drugsDispensed;
 
+  /**
+   * Both drug lists in the compact encoding of {@code AuditLogDrugCodec}, for rows stored that
+   * way instead of as JSON documents.
+   */
+  @JsonIgnore
+  private byte[] drugsCompact;
+
+  /**
+   * The IDs of the requested drugs of a row stored in the compact encoding, for the drug filter.
+   */
+  @JsonIgnore
+  @JdbcTypeCode(SqlTypes.ARRAY)
+  @Column(columnDefinition = "bigint[]")
+  private Long[] requestedDrugIds;
+
   private String failureReason;
   private String status;
 
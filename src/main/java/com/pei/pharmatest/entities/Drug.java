@@ -6,6 +6,7 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import lombok.Getter;
@@ -38,7 +39,56 @@ public class Drug {
   @Column(name = "stock", nullable = false)
   private Integer stock;
 
+  /**
+   * Number of {@code drug_stock_shards} rows the stock is split across, or zero when the stock is
+   * kept in the {@code stock} column.
+   */
+  @Column(name = "stock_shards", nullable = false)
+  private Integer stockShards = 0;
+
+  /**
+   * Stock summed over all shards. Not read with the drug; filled in by
+   * {@code DrugRepository#loadShardTotals} where the stock of a sharded drug is needed.
+   */
+  @Transient
+  private Integer shardedStock;
+
   @Column(name = "created_at")
   private LocalDateTime createdAt;
 
+  /**
+   * Row version, bumped by a database trigger on every update of the drug.
+   */
+  @Column(name = "version", insertable = false, updatable = false)
+  private Long version;
+
+  /**
+   * Shard versions summed over all shards, filled in together with {@link #shardedStock}.
+   */
+  @Transient
+  private Long shardVersion;
+
+  /**
+   * Returns the stock on hand, summed over all shards if the stock is sharded.
+   *
+   * @return The total stock on hand
+   */
+  public Integer getAvailableStock() {
+    return stockShards > 0 ? shardedStock : stock;
+  }
+
+  /**
+   * Returns the version of the drug together with its stock shards. Resharding bumps the drug's
+   * row version, and between reshards the shard versions only grow, so the same value is never
+   * seen for two different states. An unsharded drug has no shard rows, so its shard part is
+   * zero.
+   *
+   * @return The combined version, or null for a drug that has not been read back yet
+   */
+  public String getCombinedVersion() {
+    if (version == null) {
+      return null;
+    }
+    return version + "-" + (stockShards > 0 ? shardVersion : 0L);
+  }
 }
\ No newline at end of file
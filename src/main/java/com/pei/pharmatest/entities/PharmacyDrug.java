@@ -31,4 +31,7 @@ public class PharmacyDrug {
 
   @Column(name = "allocated_amount", nullable = false)
   private Integer allocatedAmount;
+
+  @Column(name = "consumed_amount", nullable = false)
+  private Integer consumedAmount = 0;
 }
\ No newline at end of file
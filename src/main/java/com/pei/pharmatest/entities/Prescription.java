@@ -11,6 +11,7 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import java.time.LocalDateTime;
 import java.util.HashSet;
@@ -25,7 +26,9 @@ import lombok.Setter;
 public class Prescription {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "prescriptions_id_seq")
+  @SequenceGenerator(name = "prescriptions_id_seq", sequenceName = "prescriptions_id_seq",
+      allocationSize = 50)
   private Long id;
 
   @ManyToOne
@@ -7,6 +7,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.Getter;
 import lombok.Setter;
@@ -18,7 +19,9 @@ import lombok.Setter;
 public class PrescriptionItem {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "prescription_items_id_seq")
+  @SequenceGenerator(name = "prescription_items_id_seq", sequenceName = "prescription_items_id_seq",
+      allocationSize = 50)
   private Long id;
 
   @ManyToOne
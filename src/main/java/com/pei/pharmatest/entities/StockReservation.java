@@ -0,0 +1,40 @@
+package com.pei.pharmatest.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Entity
+@Table(name = "stock_reservations")
+public class StockReservation {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_reservations_id_seq")
+  @SequenceGenerator(name = "stock_reservations_id_seq",
+      sequenceName = "stock_reservations_id_seq", allocationSize = 50)
+  private Long id;
+
+  @Column(name = "prescription_id", nullable = false)
+  private Long prescriptionId;
+
+  @Column(name = "drug_id", nullable = false)
+  private Long drugId;
+
+  @Column(name = "quantity", nullable = false)
+  private Integer quantity;
+
+  @Column(name = "expires_at", nullable = false)
+  private LocalDateTime expiresAt;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+}
@@ -56,6 +56,21 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
     return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
   }
 
+  /**
+   * Handles ServiceUnavailableException by returning a 503 Service Unavailable response with a
+   * Retry-After header.
+   */
+  @ExceptionHandler(ServiceUnavailableException.class)
+  public ResponseEntity<ErrorResponse> handleServiceUnavailableException(
+      ServiceUnavailableException ex) {
+    logger.warn("Service unavailable: {}", ex.getMessage());
+    ErrorResponse errorResponse = new ErrorResponse("Service unavailable", ex.getMessage());
+    long retryAfterSeconds = Math.max(1, ex.getRetryAfter().toSeconds());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+        .body(errorResponse);
+  }
+
   /**
    * Handles validation exceptions by returning a 400 Bad Request response with detailed field
    * errors.
@@ -0,0 +1,31 @@
+package com.pei.pharmatest.exceptions;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Exception thrown when the caller stopped waiting for work that had already started. The work
+ * may still succeed, so the client has to check the result before retrying, and the outcome
+ * completes once the work does.
+ */
+public class OutcomeUnknownException extends ServiceUnavailableException {
+
+  private final transient CompletionStage<?> outcome;
+
+  /**
+   * Constructs a new OutcomeUnknownException with the specified detail message.
+   *
+   * @param message    The detail message explaining what was not waited for
+   * @param outcome    Completes with the result of the work, or with its failure
+   * @param retryAfter How long the client should wait before checking the result
+   */
+  public OutcomeUnknownException(String message, CompletionStage<?> outcome,
+      Duration retryAfter) {
+    super(message, retryAfter);
+    this.outcome = outcome;
+  }
+
+  public CompletionStage<?> getOutcome() {
+    return outcome;
+  }
+}
@@ -0,0 +1,27 @@
+package com.pei.pharmatest.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when a request cannot be served right now, for instance because too many
+ * requests are in progress. The request may be retried after the suggested delay.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  /**
+   * Constructs a new ServiceUnavailableException with the specified detail message.
+   *
+   * @param message    The detail message explaining why the request was not served
+   * @param retryAfter How long the client should wait before retrying
+   */
+  public ServiceUnavailableException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
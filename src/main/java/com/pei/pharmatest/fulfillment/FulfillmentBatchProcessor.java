@@ -0,0 +1,187 @@
+package com.pei.pharmatest.fulfillment;
+
+import com.pei.pharmatest.entities.Drug;
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import com.pei.pharmatest.entities.Prescription;
+import com.pei.pharmatest.entities.Prescription.PrescriptionStatus;
+import com.pei.pharmatest.entities.PrescriptionItem;
+import com.pei.pharmatest.exceptions.BusinessException;
+import com.pei.pharmatest.exceptions.ResourceNotFoundException;
+import com.pei.pharmatest.mappers.PrescriptionMapper;
+import com.pei.pharmatest.repositories.DrugRepository;
+import com.pei.pharmatest.repositories.PrescriptionRepository;
+import com.pei.pharmatest.repositories.StockDecrement;
+import com.pei.pharmatest.services.AllocationService;
+import com.pei.pharmatest.services.StockReservationService;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fulfills several prescriptions in one transaction. The prescriptions, the stored allocations and
+ * the stock rows of all their drugs are locked up front in that order, each in ascending ID order,
+ * the same order a single fulfillment takes them in. Prescriptions are admitted greedily in
+ * the given order against the locked stock, and the stock taken by all admitted prescriptions is
+ * applied with one UPDATE per drug. A prescription that cannot be fulfilled is skipped and
+ * reported with the same exception the single-prescription path throws, without failing the
+ * others.
+ */
+@Component
+public class FulfillmentBatchProcessor {
+
+  private static final String ALREADY_PROCESSED =
+      "Prescription has already been fulfilled or cancelled";
+
+  private final PrescriptionRepository prescriptionRepository;
+  private final DrugRepository drugRepository;
+  private final StockReservationService stockReservationService;
+  private final AllocationService allocationService;
+
+  /**
+   * Constructs a new FulfillmentBatchProcessor with the required dependencies.
+   *
+   * @param prescriptionRepository The repository for prescription operations
+   * @param drugRepository The repository for drug operations
+   * @param stockReservationService The service holding stock for open prescriptions
+   * @param allocationService The service tracking consumed pharmacy allocations
+   */
+  public FulfillmentBatchProcessor(PrescriptionRepository prescriptionRepository,
+      DrugRepository drugRepository, StockReservationService stockReservationService,
+      AllocationService allocationService) {
+    this.prescriptionRepository = prescriptionRepository;
+    this.drugRepository = drugRepository;
+    this.stockReservationService = stockReservationService;
+    this.allocationService = allocationService;
+  }
+
+  /**
+   * Fulfills the given prescriptions. Must be called inside a transaction.
+   *
+   * @param prescriptionIds The IDs of the prescriptions to fulfill, in priority order; an ID given
+   *                        more than once is only fulfilled once
+   * @return One result per given ID, in the same order
+   */
+  public List<FulfillmentResult> fulfillAll(List<Long> prescriptionIds) {
+    FulfillmentResult[] results = new FulfillmentResult[prescriptionIds.size()];
+    Set<Long> distinctIds = new LinkedHashSet<>(prescriptionIds);
+    if (distinctIds.isEmpty()) {
+      return List.of();
+    }
+
+    Map<Long, Prescription> prescriptions = prescriptionRepository
+        .findAllWithItemsByIdIn(distinctIds).stream()
+        .collect(Collectors.toMap(Prescription::getId, Function.identity()));
+    Set<Long> lockable = prescriptions.isEmpty() ? Set.of()
+        : new HashSet<>(prescriptionRepository.lockCreated(prescriptions.keySet()));
+
+    // Reject what the single path would reject before looking at stock
+    LocalDate today = LocalDate.now();
+    List<Integer> candidates = new ArrayList<>();
+    Set<Long> seen = new HashSet<>();
+    Map<Long, Drug> drugs = new HashMap<>();
+    Set<PharmacyDrugId> contracts = new HashSet<>();
+    for (int i = 0; i < results.length; i++) {
+      Long prescriptionId = prescriptionIds.get(i);
+      Prescription prescription = prescriptions.get(prescriptionId);
+      if (prescription == null) {
+        results[i] = FulfillmentResult.failure(prescriptionId, new ResourceNotFoundException(
+            "Prescription not found with id: " + prescriptionId));
+      } else if (!seen.add(prescriptionId) || !lockable.contains(prescriptionId)) {
+        results[i] = FulfillmentResult.failure(prescriptionId,
+            new BusinessException(ALREADY_PROCESSED));
+      } else {
+        Optional<Drug> expired = prescription.getItems().stream().map(PrescriptionItem::getDrug)
+            .filter(drug -> drug.getExpiryDate().isBefore(today)).findFirst();
+        if (expired.isPresent()) {
+          results[i] = FulfillmentResult.failure(prescriptionId,
+              new BusinessException("Drug " + expired.get().getName() + " has expired"));
+        } else {
+          prescription.getItems().forEach(item -> {
+            drugs.put(item.getDrug().getId(), item.getDrug());
+            contracts.add(new PharmacyDrugId(prescription.getPharmacy().getId(),
+                item.getDrug().getId()));
+          });
+          candidates.add(i);
+        }
+      }
+    }
+    if (candidates.isEmpty()) {
+      return List.of(results);
+    }
+
+    // Allocations before stock, the order in which a single fulfillment takes its row locks
+    allocationService.lockAllocations(contracts);
+
+    // Admit prescriptions in order for as long as the locked stock and the allocations last
+    Map<Long, Integer> remaining = drugRepository.lockStock(drugs.keySet());
+    Map<Long, Integer> taken = new TreeMap<>();
+    List<Prescription> admitted = new ArrayList<>();
+    for (int i : candidates) {
+      Prescription prescription = prescriptions.get(prescriptionIds.get(i));
+      Map<Long, Integer> quantities = prescription.getItems().stream().collect(Collectors.toMap(
+          item -> item.getDrug().getId(), PrescriptionItem::getQuantity, Integer::sum));
+      Optional<Long> shortDrug = quantities.entrySet().stream()
+          .filter(entry -> entry.getValue() > remaining.getOrDefault(entry.getKey(), 0))
+          .map(Map.Entry::getKey).findFirst();
+      if (shortDrug.isPresent()) {
+        results[i] = FulfillmentResult.failure(prescription.getId(), new BusinessException(
+            "Insufficient stock for drug: " + drugs.get(shortDrug.get()).getName()));
+        continue;
+      }
+      Optional<Long> overAllocated =
+          allocationService.consume(prescription.getPharmacy().getId(), quantities);
+      if (overAllocated.isPresent()) {
+        results[i] = FulfillmentResult.failure(prescription.getId(), new BusinessException(
+            "Requested quantity exceeds pharmacy's allocation for drug: "
+                + drugs.get(overAllocated.get()).getName()));
+        continue;
+      }
+      quantities.forEach((drugId, quantity) -> {
+        remaining.merge(drugId, -quantity, Integer::sum);
+        taken.merge(drugId, quantity, Integer::sum);
+      });
+      admitted.add(prescription);
+    }
+    if (admitted.isEmpty()) {
+      return List.of(results);
+    }
+
+    // All rows are locked, so the status change and the decrements cannot miss
+    List<Long> admittedIds = admitted.stream().map(Prescription::getId)
+        .collect(Collectors.toList());
+    prescriptionRepository.transitionStatuses(admittedIds, PrescriptionStatus.CREATED,
+        PrescriptionStatus.FULFILLED);
+    List<StockDecrement> decrements = taken.entrySet().stream()
+        .map(entry -> new StockDecrement(entry.getKey(), entry.getValue(),
+            drugs.get(entry.getKey()).getStockShards()))
+        .collect(Collectors.toList());
+    int[] updateCounts = drugRepository.decrementStock(decrements, today);
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] == 0) {
+        throw new BusinessException("Insufficient stock for drug: "
+            + drugs.get(decrements.get(i).getDrugId()).getName());
+      }
+    }
+    admittedIds.forEach(stockReservationService::consume);
+
+    for (int i : candidates) {
+      if (results[i] == null) {
+        Prescription prescription = prescriptions.get(prescriptionIds.get(i));
+        prescription.setStatus(PrescriptionStatus.FULFILLED);
+        results[i] = FulfillmentResult.success(prescription.getId(),
+            PrescriptionMapper.toResponse(prescription));
+      }
+    }
+    return List.of(results);
+  }
+}
@@ -0,0 +1,265 @@
+package com.pei.pharmatest.fulfillment;
+
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.exceptions.BusinessException;
+import com.pei.pharmatest.exceptions.OutcomeUnknownException;
+import com.pei.pharmatest.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Group-commit stage for prescription fulfillment. Concurrent fulfill requests are queued and
+ * gathered by a small pool of workers, each of which waits up to the configured window, or until
+ * the batch is full, and then fulfills the whole batch with the {@link FulfillmentBatchProcessor}
+ * in a single transaction. Every caller blocks until its own result is known, or until the
+ * configured timeout.
+ */
+@Component
+public class FulfillmentGroupCommitter {
+
+  private static final Logger logger = LoggerFactory.getLogger(FulfillmentGroupCommitter.class);
+  private static final Duration RETRY_AFTER = Duration.ofSeconds(1);
+
+  private final FulfillmentBatchProcessor processor;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final Duration window;
+  private final int maxBatchSize;
+  private final int workerCount;
+  private final Duration timeout;
+  private final BlockingQueue<PendingFulfillment> queue;
+  private final DistributionSummary batchSizes;
+  private final Timer queueWait;
+  private final Object lifecycleLock = new Object();
+  private ExecutorService workers;
+  private volatile boolean running;
+
+  /**
+   * Constructs a new FulfillmentGroupCommitter with the required dependencies.
+   *
+   * @param processor The processor fulfilling a batch in one transaction
+   * @param transactionManager The transaction manager for the batch transactions
+   * @param meterRegistry The registry for the batching metrics
+   * @param enabled Whether fulfill requests are grouped at all
+   * @param window How long a worker waits for more requests after the first one
+   * @param maxBatchSize The number of requests after which a batch is processed immediately
+   * @param workerCount The number of batches processed concurrently
+   * @param queueCapacity The number of requests that may wait before new ones are rejected
+   * @param timeout How long a caller waits for its result
+   */
+  public FulfillmentGroupCommitter(FulfillmentBatchProcessor processor,
+      PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+      @Value("${pharma.fulfillment.group-commit.enabled:false}") boolean enabled,
+      @Value("${pharma.fulfillment.group-commit.window:PT0.005S}") Duration window,
+      @Value("${pharma.fulfillment.group-commit.max-batch-size:64}") int maxBatchSize,
+      @Value("${pharma.fulfillment.group-commit.workers:2}") int workerCount,
+      @Value("${pharma.fulfillment.group-commit.queue-capacity:10000}") int queueCapacity,
+      @Value("${pharma.fulfillment.group-commit.timeout:PT30S}") Duration timeout) {
+    this.processor = processor;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.enabled = enabled;
+    this.window = window;
+    this.maxBatchSize = maxBatchSize;
+    this.workerCount = workerCount;
+    this.timeout = timeout;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.batchSizes = DistributionSummary.builder("pharma.fulfillment.group.size")
+        .description("Number of fulfill requests committed together")
+        .register(meterRegistry);
+    this.queueWait = Timer.builder("pharma.fulfillment.group.wait")
+        .description("Time a fulfill request waits before its batch starts")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Starts the workers if grouping is enabled.
+   */
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    running = true;
+    AtomicInteger threadNumber = new AtomicInteger();
+    workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+      Thread thread = new Thread(runnable,
+          "fulfillment-group-commit-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (int i = 0; i < workerCount; i++) {
+      workers.execute(this::runWorker);
+    }
+  }
+
+  /**
+   * Stops the workers and fails the requests that are still queued.
+   */
+  @PreDestroy
+  public void stop() {
+    // Once this returns, no request can be queued behind the drain below
+    synchronized (lifecycleLock) {
+      running = false;
+    }
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+    List<PendingFulfillment> abandoned = new ArrayList<>();
+    queue.drainTo(abandoned);
+    abandoned.forEach(pending -> pending.result.completeExceptionally(
+        new IllegalStateException("Fulfillment stage is shutting down")));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Queues a prescription for fulfillment and waits for the batch it ends up in.
+   *
+   * @param prescriptionId The ID of the prescription to fulfill
+   * @return The fulfilled prescription
+   * @throws BusinessException if the prescription cannot be fulfilled
+   * @throws ServiceUnavailableException if the stage is shutting down, or the queue is full or
+   *     was not left in time
+   * @throws OutcomeUnknownException if the batch of the prescription did not finish in time
+   */
+  public PrescriptionResponse fulfill(Long prescriptionId) {
+    PendingFulfillment pending = new PendingFulfillment(prescriptionId);
+    synchronized (lifecycleLock) {
+      if (!running) {
+        throw new ServiceUnavailableException("Fulfillment stage is shutting down", RETRY_AFTER);
+      }
+      if (!queue.offer(pending)) {
+        throw overloaded();
+      }
+    }
+    try {
+      return pending.result.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      if (queue.remove(pending)) {
+        throw overloaded();
+      }
+      // Already in a batch, which may still commit
+      throw new OutcomeUnknownException("Timed out waiting for the fulfillment of prescription "
+          + prescriptionId + "; check its status before retrying", pending.result, RETRY_AFTER);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for fulfillment", e);
+    }
+  }
+
+  private static ServiceUnavailableException overloaded() {
+    return new ServiceUnavailableException("Too many fulfillments in progress, please retry",
+        RETRY_AFTER);
+  }
+
+  private void runWorker() {
+    List<PendingFulfillment> batch = new ArrayList<>(maxBatchSize);
+    while (running) {
+      try {
+        PendingFulfillment first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + window.toNanos();
+        while (batch.size() < maxBatchSize) {
+          long remaining = deadline - System.nanoTime();
+          PendingFulfillment next = remaining > 0
+              ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        recordBatch(batch);
+        process(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        batch.forEach(pending -> pending.result.completeExceptionally(
+            new IllegalStateException("Fulfillment stage is shutting down")));
+        return;
+      } catch (RuntimeException | Error e) {
+        // Fail the batch rather than leave its callers waiting, and keep the worker running
+        logger.error("Group commit of {} fulfillments failed", batch.size(), e);
+        batch.forEach(pending -> pending.result.completeExceptionally(e));
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void recordBatch(List<PendingFulfillment> batch) {
+    long startedAt = System.nanoTime();
+    batch.forEach(pending ->
+        queueWait.record(startedAt - pending.queuedAt, TimeUnit.NANOSECONDS));
+    batchSizes.record(batch.size());
+  }
+
+  private void process(List<PendingFulfillment> batch) {
+    List<Long> prescriptionIds = batch.stream().map(pending -> pending.prescriptionId)
+        .collect(Collectors.toList());
+    List<FulfillmentResult> results;
+    try {
+      results = transactionTemplate.execute(status -> processor.fulfillAll(prescriptionIds));
+    } catch (RuntimeException e) {
+      if (batch.size() == 1) {
+        batch.get(0).result.completeExceptionally(e);
+        return;
+      }
+      // A failure of the whole batch, such as a lost connection, is retried request by request
+      // so that one bad request cannot fail the others
+      logger.warn("Group commit of {} fulfillments failed, retrying one by one", batch.size(), e);
+      batch.forEach(pending -> process(List.of(pending)));
+      return;
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      FulfillmentResult result = results.get(i);
+      if (result.isSuccess()) {
+        batch.get(i).result.complete(result.getResponse());
+      } else {
+        batch.get(i).result.completeExceptionally(result.getError());
+      }
+    }
+  }
+
+  private static final class PendingFulfillment {
+
+    private final Long prescriptionId;
+    private final long queuedAt = System.nanoTime();
+    private final CompletableFuture<PrescriptionResponse> result = new CompletableFuture<>();
+
+    private PendingFulfillment(Long prescriptionId) {
+      this.prescriptionId = prescriptionId;
+    }
+  }
+}
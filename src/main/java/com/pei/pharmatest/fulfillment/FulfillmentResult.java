@@ -0,0 +1,32 @@
+package com.pei.pharmatest.fulfillment;
+
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The outcome of fulfilling a single prescription as part of a batch. Holds either the response
+ * of the fulfilled prescription or the exception that the single-prescription path would have
+ * thrown for it.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class FulfillmentResult {
+
+  private final Long prescriptionId;
+  private final PrescriptionResponse response;
+  private final RuntimeException error;
+
+  public static FulfillmentResult success(Long prescriptionId, PrescriptionResponse response) {
+    return new FulfillmentResult(prescriptionId, response, null);
+  }
+
+  public static FulfillmentResult failure(Long prescriptionId, RuntimeException error) {
+    return new FulfillmentResult(prescriptionId, null, error);
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+}
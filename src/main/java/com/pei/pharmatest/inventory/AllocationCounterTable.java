@@ -0,0 +1,136 @@
+package com.pei.pharmatest.inventory;
+
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory table of consumed pharmacy allocations, keyed by contract. Each counter is seeded
+ * from the persisted {@code consumed_amount} the first time it is used. Consumption is enforced
+ * with a compare-and-set loop on the counter, so concurrent prescriptions at the same pharmacy
+ * never wait on a lock, and committed consumption is collected in a {@link LongAdder} until the
+ * next checkpoint writes it back to the database.
+ */
+@Component
+public class AllocationCounterTable {
+
+  private final Map<PharmacyDrugId, Counter> counters = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the consumed amount of a contract, including consumption not yet checkpointed.
+   *
+   * @param id        The contract ID
+   * @param persisted Supplies the persisted consumed amount if the counter is not loaded yet
+   * @return The consumed amount
+   */
+  public long consumed(PharmacyDrugId id, LongSupplier persisted) {
+    return counter(id, persisted).consumed.get();
+  }
+
+  /**
+   * Consumes allocation if the result stays within the allocated amount.
+   *
+   * @param id        The contract ID
+   * @param allocated The allocated amount of the contract
+   * @param quantity  The quantity to consume
+   * @param persisted Supplies the persisted consumed amount if the counter is not loaded yet
+   * @return Whether the quantity was consumed
+   */
+  public boolean tryConsume(PharmacyDrugId id, long allocated, int quantity,
+      LongSupplier persisted) {
+    AtomicLong consumed = counter(id, persisted).consumed;
+    long current;
+    do {
+      current = consumed.get();
+      if (current + quantity > allocated) {
+        return false;
+      }
+    } while (!consumed.compareAndSet(current, current + quantity));
+    return true;
+  }
+
+  /**
+   * Gives back consumption whose transaction did not commit.
+   *
+   * @param id       The contract ID
+   * @param quantity The quantity to give back
+   */
+  public void refund(PharmacyDrugId id, int quantity) {
+    Counter counter = counters.get(id);
+    if (counter != null) {
+      counter.consumed.addAndGet(-quantity);
+    }
+  }
+
+  /**
+   * Marks consumption as committed, so the next checkpoint persists it.
+   *
+   * @param id       The contract ID
+   * @param quantity The committed quantity
+   */
+  public void recordCommitted(PharmacyDrugId id, int quantity) {
+    Counter counter = counters.get(id);
+    if (counter != null) {
+      counter.unflushed.add(quantity);
+    }
+  }
+
+  /**
+   * Takes all committed consumption that has not been checkpointed yet. Consumption recorded
+   * while draining is either included or left for the next drain, never lost.
+   *
+   * @return The consumption to persist per contract
+   */
+  public Map<PharmacyDrugId, Long> drainUnflushed() {
+    Map<PharmacyDrugId, Long> deltas = new HashMap<>();
+    counters.forEach((id, counter) -> {
+      long delta = counter.unflushed.sumThenReset();
+      if (delta != 0) {
+        deltas.put(id, delta);
+      }
+    });
+    return deltas;
+  }
+
+  /**
+   * Puts back drained consumption after a checkpoint failed to persist it.
+   *
+   * @param deltas The consumption that was drained
+   */
+  public void restoreUnflushed(Map<PharmacyDrugId, Long> deltas) {
+    deltas.forEach((id, delta) -> {
+      Counter counter = counters.get(id);
+      if (counter != null) {
+        counter.unflushed.add(delta);
+      }
+    });
+  }
+
+  private Counter counter(PharmacyDrugId id, LongSupplier persisted) {
+    Counter counter = counters.get(id);
+    if (counter == null) {
+      // Read the persisted value outside the map, then keep whichever counter got in first
+      Counter loaded = new Counter(persisted.getAsLong());
+      counter = counters.putIfAbsent(id, loaded);
+      if (counter == null) {
+        counter = loaded;
+      }
+    }
+    return counter;
+  }
+
+  private static final class Counter {
+
+    private final AtomicLong consumed;
+    private final LongAdder unflushed = new LongAdder();
+
+    private Counter(long persistedConsumed) {
+      this.consumed = new AtomicLong(persistedConsumed);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package com.pei.pharmatest.inventory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of pharmacy contracts, keyed by pharmacy and drug ID. Contracts are held in an
+ * open-addressing table of primitive arrays, so a contract or allocation check is a handful of
+ * array reads, without boxing keys or loading contract entities. The table is rebuilt from
+ * {@code pharmacy_drugs} and swapped in as a whole, while consumption committed on this node is
+ * added to the current table as it happens. Consumption committed while a rebuild is being read
+ * can be missed until the next rebuild, which is acceptable because allocation is enforced
+ * exactly when a prescription is fulfilled.
+ */
+@Component
+public class ContractIndex {
+
+  private volatile Table table = new Table(0);
+
+  /**
+   * Returns whether a pharmacy has contracted a drug.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param drugId     The drug ID
+   * @return Whether the contract exists
+   */
+  public boolean isContracted(long pharmacyId, long drugId) {
+    return table.slot(pharmacyId, drugId) >= 0;
+  }
+
+  /**
+   * Returns the part of a contract's allocation that has not been consumed yet.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param drugId     The drug ID
+   * @return The remaining allocation, or zero if the drug is not contracted
+   */
+  public long remainingAllocation(long pharmacyId, long drugId) {
+    Table current = table;
+    int slot = current.slot(pharmacyId, drugId);
+    return slot < 0 ? 0 : (long) current.allocated[slot] - current.consumed.get(slot);
+  }
+
+  /**
+   * Adds committed consumption to a contract.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param drugId     The drug ID
+   * @param quantity   The committed quantity
+   */
+  public void addConsumed(long pharmacyId, long drugId, int quantity) {
+    Table current = table;
+    int slot = current.slot(pharmacyId, drugId);
+    if (slot >= 0) {
+      current.consumed.addAndGet(slot, quantity);
+    }
+  }
+
+  /**
+   * Returns the number of indexed contracts.
+   *
+   * @return The number of contracts
+   */
+  public int size() {
+    return table.size;
+  }
+
+  /**
+   * Replaces all contracts with the ones collected by a builder.
+   *
+   * @param builder The builder holding the contract rows
+   */
+  public void replaceAll(Builder builder) {
+    Table rebuilt = new Table(builder.size);
+    for (int i = 0; i < builder.size; i++) {
+      rebuilt.insert(builder.pharmacyIds[i], builder.drugIds[i], builder.allocated[i],
+          builder.consumed[i]);
+    }
+    table = rebuilt;
+  }
+
+  /**
+   * Collects contract rows for {@link #replaceAll(Builder)} in growable primitive arrays.
+   */
+  public static class Builder {
+
+    private long[] pharmacyIds = new long[1024];
+    private long[] drugIds = new long[1024];
+    private int[] allocated = new int[1024];
+    private int[] consumed = new int[1024];
+    private int size;
+
+    /**
+     * Adds one contract.
+     *
+     * @param pharmacyId      The pharmacy ID
+     * @param drugId          The drug ID
+     * @param allocatedAmount The allocated amount of the contract
+     * @param consumedAmount  The consumed amount of the contract
+     */
+    public void add(long pharmacyId, long drugId, int allocatedAmount, int consumedAmount) {
+      if (size == pharmacyIds.length) {
+        int capacity = size * 2;
+        pharmacyIds = Arrays.copyOf(pharmacyIds, capacity);
+        drugIds = Arrays.copyOf(drugIds, capacity);
+        allocated = Arrays.copyOf(allocated, capacity);
+        consumed = Arrays.copyOf(consumed, capacity);
+      }
+      pharmacyIds[size] = pharmacyId;
+      drugIds[size] = drugId;
+      allocated[size] = allocatedAmount;
+      consumed[size] = consumedAmount;
+      size++;
+    }
+  }
+
+  /**
+   * Open-addressing table with linear probing. A zero pharmacy ID marks an empty slot, which is
+   * safe because IDs start at one. Keys and allocations never change once a table is published.
+   */
+  private static final class Table {
+
+    private final long[] pharmacyIds;
+    private final long[] drugIds;
+    private final int[] allocated;
+    private final AtomicIntegerArray consumed;
+    private final int mask;
+    private int size;
+
+    private Table(int expectedSize) {
+      // Keep the load factor at or below one half so that probe sequences stay short
+      int capacity = 2;
+      while (capacity < expectedSize * 2) {
+        capacity <<= 1;
+      }
+      pharmacyIds = new long[capacity];
+      drugIds = new long[capacity];
+      allocated = new int[capacity];
+      consumed = new AtomicIntegerArray(capacity);
+      mask = capacity - 1;
+    }
+
+    private int slot(long pharmacyId, long drugId) {
+      for (int slot = hash(pharmacyId, drugId) & mask; ; slot = (slot + 1) & mask) {
+        long slotPharmacyId = pharmacyIds[slot];
+        if (slotPharmacyId == 0) {
+          return -1;
+        }
+        if (slotPharmacyId == pharmacyId && drugIds[slot] == drugId) {
+          return slot;
+        }
+      }
+    }
+
+    private void insert(long pharmacyId, long drugId, int allocatedAmount, int consumedAmount) {
+      int slot = hash(pharmacyId, drugId) & mask;
+      while (pharmacyIds[slot] != 0
+          && (pharmacyIds[slot] != pharmacyId || drugIds[slot] != drugId)) {
+        slot = (slot + 1) & mask;
+      }
+      if (pharmacyIds[slot] == 0) {
+        size++;
+      }
+      pharmacyIds[slot] = pharmacyId;
+      drugIds[slot] = drugId;
+      allocated[slot] = allocatedAmount;
+      consumed.set(slot, consumedAmount);
+    }
+
+    private static int hash(long pharmacyId, long drugId) {
+      long h = pharmacyId * 0x9E3779B97F4A7C15L + drugId;
+      h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+}
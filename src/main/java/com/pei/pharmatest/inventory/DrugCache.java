@@ -0,0 +1,103 @@
+package com.pei.pharmatest.inventory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pei.pharmatest.dto.DrugResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded read-through cache of drug responses by drug ID. Entries are evicted once their stock or
+ * expiry changes, and in any case after the configured maximum staleness. Hits, misses and
+ * evictions are published as the {@code cache.*} metrics of the {@code drugs} cache.
+ *
+ * <p>A read that races with a stock change must not put the old stock back after the eviction.
+ * Every drug ID therefore maps to a version stripe that is bumped on eviction, and a loaded value
+ * is only cached if its stripe did not move while it was being read.
+ */
+@Component
+public class DrugCache {
+
+  private static final int VERSION_STRIPES = 256;
+
+  private final Cache<Long, DrugResponse> cache;
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+  /**
+   * Creates the cache and registers its metrics.
+   *
+   * @param meterRegistry The registry for cache metrics
+   * @param maximumSize   The maximum number of cached drugs
+   * @param maxStaleness  The longest time a cached drug is served before it is read again
+   */
+  public DrugCache(MeterRegistry meterRegistry,
+      @Value("${pharma.drug-cache.maximum-size:1000}") long maximumSize,
+      @Value("${pharma.drug-cache.max-staleness:PT5S}") Duration maxStaleness) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(maxStaleness)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "drugs");
+  }
+
+  /**
+   * Returns the cached drug, or reads it with the loader and caches it. Drugs that do not exist
+   * are not cached.
+   *
+   * @param drugId The drug ID
+   * @param loader Reads the drug when it is not cached
+   * @return The drug, if it exists
+   */
+  public Optional<DrugResponse> get(Long drugId, Function<Long, Optional<DrugResponse>> loader) {
+    DrugResponse cached = cache.getIfPresent(drugId);
+    if (cached != null) {
+      return Optional.of(cached);
+    }
+    int stripe = stripe(drugId);
+    long version = versions.get(stripe);
+    Optional<DrugResponse> loaded = loader.apply(drugId);
+    loaded.ifPresent(response -> cache.asMap().compute(drugId,
+        (id, current) -> versions.get(stripe) == version ? response : current));
+    return loaded;
+  }
+
+  /**
+   * Evicts drugs whose stock or expiry the current transaction changed, once it has committed.
+   * Until then the cached values still match the committed state.
+   *
+   * @param drugIds The IDs of the changed drugs
+   */
+  public void evictAfterCommit(Collection<Long> drugIds) {
+    if (drugIds.isEmpty()) {
+      return;
+    }
+    List<Long> ids = List.copyOf(drugIds);
+    TransactionCallbacks.afterCommit(() -> evict(ids));
+  }
+
+  /**
+   * Evicts the given drugs right away.
+   *
+   * @param drugIds The IDs of the drugs to evict
+   */
+  public void evict(Collection<Long> drugIds) {
+    for (Long drugId : drugIds) {
+      // Bump first, so that a read finishing after this point cannot cache what it read
+      versions.incrementAndGet(stripe(drugId));
+      cache.invalidate(drugId);
+    }
+  }
+
+  private int stripe(Long drugId) {
+    return Long.hashCode(drugId) & (VERSION_STRIPES - 1);
+  }
+}
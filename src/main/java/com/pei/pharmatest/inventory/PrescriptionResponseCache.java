@@ -0,0 +1,119 @@
+package com.pei.pharmatest.inventory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.entities.Prescription.PrescriptionStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of the serialized JSON of prescriptions in a terminal status. A fulfilled or cancelled
+ * prescription never changes again, so its response is serialized once and served as stored bytes
+ * with a strong ETag, without reading the database. The cache is bounded by the total size of the
+ * stored bodies and published as the {@code cache.*} metrics of the {@code prescriptions} cache.
+ */
+@Component
+public class PrescriptionResponseCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(PrescriptionResponseCache.class);
+
+  private final Cache<Long, CachedResponse> cache;
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Creates the cache and registers its metrics.
+   *
+   * @param objectMapper  The mapper serializing responses as the web layer does
+   * @param meterRegistry The registry for cache metrics
+   * @param maximumBytes  The maximum total size of the cached response bodies
+   */
+  public PrescriptionResponseCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+      @Value("${pharma.prescription-cache.maximum-bytes:67108864}") long maximumBytes) {
+    this.objectMapper = objectMapper;
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(maximumBytes)
+        .<Long, CachedResponse>weigher((id, response) -> response.getBody().length)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "prescriptions");
+  }
+
+  /**
+   * Returns the stored response of a prescription in a terminal status.
+   *
+   * @param prescriptionId The prescription ID
+   * @return The stored response, if cached
+   */
+  public Optional<CachedResponse> get(Long prescriptionId) {
+    return Optional.ofNullable(cache.getIfPresent(prescriptionId));
+  }
+
+  /**
+   * Stores the response of a prescription if it is in a terminal status. Responses of
+   * prescriptions that can still change are ignored.
+   *
+   * @param response The prescription response
+   */
+  public void put(PrescriptionResponse response) {
+    if (!isTerminal(response.getStatus())) {
+      return;
+    }
+    try {
+      cache.put(response.getId(), new CachedResponse(objectMapper.writeValueAsBytes(response),
+          etag(response.getId(), response.getStatus())));
+    } catch (JsonProcessingException e) {
+      // The response is still served, just serialized on every read
+      logger.warn("Failed to serialize prescription {} for the cache", response.getId(), e);
+    }
+  }
+
+  /**
+   * Stores the response of a prescription once the current transaction has committed, so that a
+   * status change that rolls back is never served.
+   *
+   * @param response The prescription response
+   */
+  public void putAfterCommit(PrescriptionResponse response) {
+    if (isTerminal(response.getStatus())) {
+      TransactionCallbacks.afterCommit(() -> put(response));
+    }
+  }
+
+  /**
+   * Returns the strong ETag of a prescription in the given status. Only the status of a
+   * prescription changes after it is created, so the pair identifies one exact response.
+   *
+   * @param prescriptionId The prescription ID
+   * @param status         The prescription status
+   * @return The quoted ETag
+   */
+  public static String etag(Long prescriptionId, String status) {
+    return "\"prescription-" + prescriptionId + "-" + status + "\"";
+  }
+
+  private static boolean isTerminal(String status) {
+    return PrescriptionStatus.FULFILLED.name().equals(status)
+        || PrescriptionStatus.CANCELLED.name().equals(status);
+  }
+
+  /**
+   * A serialized prescription response with its ETag.
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class CachedResponse {
+
+    private final byte[] body;
+    private final String etag;
+  }
+}
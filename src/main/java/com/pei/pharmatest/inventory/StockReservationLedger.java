@@ -0,0 +1,135 @@
+package com.pei.pharmatest.inventory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory ledger of the stock held by open reservations, keyed by drug ID. Drug IDs are spread
+ * over a fixed number of lock stripes, so holds on different drugs rarely contend, while a hold
+ * spanning several drugs is still placed all-or-nothing. The ledger mirrors the
+ * {@code stock_reservations} table and lets available-to-promise checks run without a query.
+ */
+@Component
+public class StockReservationLedger {
+
+  private final Stripe[] stripes;
+
+  /**
+   * Creates a ledger with at least the given number of lock stripes.
+   *
+   * @param stripeCount The minimum number of stripes; rounded up to a power of two
+   */
+  public StockReservationLedger(@Value("${pharma.reservations.stripes:64}") int stripeCount) {
+    int size = 1;
+    while (size < stripeCount) {
+      size <<= 1;
+    }
+    stripes = new Stripe[size];
+    for (int i = 0; i < size; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Returns the quantity of a drug currently held by reservations.
+   *
+   * @param drugId The drug ID
+   * @return The reserved quantity
+   */
+  public int reserved(long drugId) {
+    Stripe stripe = stripes[stripeIndex(drugId)];
+    stripe.lock.lock();
+    try {
+      return stripe.reserved.getOrDefault(drugId, 0);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Places holds for all given quantities, or for none of them if any drug does not have enough
+   * unreserved stock.
+   *
+   * @param quantities  The quantity to hold per drug ID
+   * @param stockOnHand The current stock per drug ID
+   * @return The ID of the first drug that could not be held, or null if all holds were placed
+   */
+  public Long tryReserve(Map<Long, Integer> quantities, Map<Long, Integer> stockOnHand) {
+    int[] indexes = quantities.keySet().stream().mapToInt(this::stripeIndex).distinct().sorted()
+        .toArray();
+    for (int index : indexes) {
+      stripes[index].lock.lock();
+    }
+    try {
+      for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+        long drugId = entry.getKey();
+        int available = stockOnHand.getOrDefault(drugId, 0)
+            - stripes[stripeIndex(drugId)].reserved.getOrDefault(drugId, 0);
+        if (entry.getValue() > available) {
+          return drugId;
+        }
+      }
+      quantities.forEach((drugId, quantity) ->
+          stripes[stripeIndex(drugId)].reserved.merge(drugId, quantity, Integer::sum));
+      return null;
+    } finally {
+      for (int i = indexes.length - 1; i >= 0; i--) {
+        stripes[indexes[i]].lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Releases previously placed holds.
+   *
+   * @param quantities The quantity to release per drug ID
+   */
+  public void release(Map<Long, Integer> quantities) {
+    quantities.forEach((drugId, quantity) -> {
+      Stripe stripe = stripes[stripeIndex(drugId)];
+      stripe.lock.lock();
+      try {
+        stripe.reserved.computeIfPresent(drugId, (id, held) -> held > quantity
+            ? held - quantity : null);
+      } finally {
+        stripe.lock.unlock();
+      }
+    });
+  }
+
+  /**
+   * Replaces the content of the ledger, typically with the active reservations read from the
+   * database at startup.
+   *
+   * @param reservedByDrug The reserved quantity per drug ID
+   */
+  public void replaceAll(Map<Long, Integer> reservedByDrug) {
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+    }
+    try {
+      for (Stripe stripe : stripes) {
+        stripe.reserved.clear();
+      }
+      reservedByDrug.forEach((drugId, quantity) ->
+          stripes[stripeIndex(drugId)].reserved.put(drugId, quantity));
+    } finally {
+      for (int i = stripes.length - 1; i >= 0; i--) {
+        stripes[i].lock.unlock();
+      }
+    }
+  }
+
+  private int stripeIndex(long drugId) {
+    return Long.hashCode(drugId * 0x9E3779B97F4A7C15L) & (stripes.length - 1);
+  }
+
+  private static final class Stripe {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, Integer> reserved = new HashMap<>();
+  }
+}
@@ -0,0 +1,53 @@
+package com.pei.pharmatest.inventory;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Helpers for keeping in-memory inventory state in step with the outcome of the current database
+ * transaction.
+ */
+public final class TransactionCallbacks {
+
+  private TransactionCallbacks() {
+  }
+
+  /**
+   * Runs the action once the current transaction has committed, or immediately when no
+   * transaction is active.
+   *
+   * @param action The action to run
+   */
+  public static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+
+  /**
+   * Runs the action if the current transaction rolls back. Does nothing when no transaction is
+   * active, since there is nothing to roll back.
+   *
+   * @param action The compensating action to run
+   */
+  public static void afterRollback(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCompletion(int status) {
+        if (status == STATUS_ROLLED_BACK) {
+          action.run();
+        }
+      }
+    });
+  }
+}
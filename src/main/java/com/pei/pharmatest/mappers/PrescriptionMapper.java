@@ -0,0 +1,48 @@
+package com.pei.pharmatest.mappers;
+
+import com.pei.pharmatest.dto.PrescriptionDrugResponse;
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.entities.Prescription;
+import com.pei.pharmatest.entities.PrescriptionItem;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps prescription entities to their response DTOs.
+ */
+public final class PrescriptionMapper {
+
+  private PrescriptionMapper() {
+  }
+
+  /**
+   * Maps a Prescription entity to a PrescriptionResponse DTO.
+   *
+   * @param prescription The prescription entity to map
+   * @return A PrescriptionResponse containing the prescription details
+   */
+  public static PrescriptionResponse toResponse(Prescription prescription) {
+    PrescriptionResponse response = new PrescriptionResponse();
+    response.setId(prescription.getId());
+    response.setPharmacyId(prescription.getPharmacy().getId());
+    response.setPharmacyName(prescription.getPharmacy().getName());
+    response.setPatientId(prescription.getPatient().getId());
+    response.setPatientName(prescription.getPatient().getName());
+    response.setCreatedAt(prescription.getCreatedAt());
+    response.setStatus(prescription.getStatus().name());
+
+    List<PrescriptionDrugResponse> drugs = new ArrayList<>();
+    for (PrescriptionItem item : prescription.getItems()) {
+      PrescriptionDrugResponse drugResponse = new PrescriptionDrugResponse();
+      drugResponse.setDrugId(item.getDrug().getId());
+      drugResponse.setName(item.getDrug().getName());
+      drugResponse.setManufacturer(item.getDrug().getManufacturer());
+      drugResponse.setBatchNumber(item.getDrug().getBatchNumber());
+      drugResponse.setQuantity(item.getQuantity());
+      drugs.add(drugResponse);
+    }
+
+    response.setDrugs(drugs);
+    return response;
+  }
+}
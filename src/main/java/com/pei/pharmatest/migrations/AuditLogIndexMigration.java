@@ -0,0 +1,136 @@
+package com.pei.pharmatest.migrations;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.migration.Context;
+import org.flywaydb.core.api.migration.JavaMigration;
+
+/**
+ * Migration creating an index on the partitioned {@code audit_logs} table without blocking audit
+ * writes. {@code CREATE INDEX CONCURRENTLY} is not available on partitioned tables, so the index
+ * is created on the parent only, where it stays invalid, then built concurrently on each
+ * partition and attached to it. The parent index becomes valid once every partition has its own,
+ * and partitions created meanwhile get theirs from the parent. Concurrent builds cannot run in a
+ * transaction, and neither does this migration.
+ *
+ * <p>The migration can be rerun after an interruption: partitions whose index is attached are
+ * skipped, a valid index left unattached is attached, and an invalid one left by a failed
+ * concurrent build is dropped and built again.
+ */
+public abstract class AuditLogIndexMigration implements JavaMigration {
+
+  private static final String PARTITIONS_SQL =
+      "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid"
+          + " WHERE i.inhparent = 'audit_logs'::regclass ORDER BY c.relname";
+
+  private static final String ATTACHED_SQL =
+      "SELECT 1 FROM pg_inherits i JOIN pg_index x ON x.indexrelid = i.inhrelid"
+          + " WHERE i.inhparent = ?::regclass AND x.indrelid = ?::regclass";
+
+  private static final String VALID_SQL =
+      "SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)";
+
+  private final MigrationVersion version;
+  private final String description;
+  private final String suffix;
+  private final String definition;
+
+  /**
+   * Constructs a new AuditLogIndexMigration.
+   *
+   * @param version     The migration version
+   * @param description The migration description
+   * @param suffix      The index name after the table name, such as {@code drugs_requested_idx}
+   * @param definition  The index definition after the table name, such as
+   *                    {@code USING GIN (drugs_requested jsonb_path_ops)}
+   */
+  protected AuditLogIndexMigration(String version, String description, String suffix,
+      String definition) {
+    this.version = MigrationVersion.fromVersion(version);
+    this.description = description;
+    this.suffix = suffix;
+    this.definition = definition;
+  }
+
+  @Override
+  public MigrationVersion getVersion() {
+    return version;
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  @Override
+  public Integer getChecksum() {
+    return (suffix + " " + definition).hashCode();
+  }
+
+  @Override
+  public boolean canExecuteInTransaction() {
+    return false;
+  }
+
+  @Override
+  public void migrate(Context context) throws SQLException {
+    Connection connection = context.getConnection();
+    String parentIndex = "audit_logs_" + suffix;
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          "CREATE INDEX IF NOT EXISTS " + parentIndex + " ON ONLY audit_logs " + definition);
+      for (String partition : partitions(connection)) {
+        if (isAttached(connection, parentIndex, partition)) {
+          continue;
+        }
+        String index = partition + "_" + suffix;
+        Boolean valid = isValid(connection, index);
+        if (Boolean.FALSE.equals(valid)) {
+          statement.execute("DROP INDEX CONCURRENTLY " + index);
+        }
+        if (!Boolean.TRUE.equals(valid)) {
+          statement.execute(
+              "CREATE INDEX CONCURRENTLY " + index + " ON " + partition + " " + definition);
+        }
+        statement.execute("ALTER INDEX " + parentIndex + " ATTACH PARTITION " + index);
+      }
+    }
+  }
+
+  private static List<String> partitions(Connection connection) throws SQLException {
+    List<String> partitions = new ArrayList<>();
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery(PARTITIONS_SQL)) {
+      while (rs.next()) {
+        partitions.add(rs.getString(1));
+      }
+    }
+    return partitions;
+  }
+
+  private static boolean isAttached(Connection connection, String parentIndex,
+      String partition) throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement(ATTACHED_SQL)) {
+      ps.setString(1, parentIndex);
+      ps.setString(2, partition);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  private static Boolean isValid(Connection connection, String index) throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement(VALID_SQL)) {
+      ps.setString(1, index);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getBoolean(1) : null;
+      }
+    }
+  }
+}
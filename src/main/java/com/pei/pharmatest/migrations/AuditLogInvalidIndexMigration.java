@@ -0,0 +1,91 @@
+package com.pei.pharmatest.migrations;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.migration.Context;
+import org.flywaydb.core.api.migration.JavaMigration;
+import org.springframework.stereotype.Component;
+
+/**
+ * Repairs the audit log indexes that {@code V13} and {@code V14} built with
+ * {@code CREATE INDEX CONCURRENTLY IF NOT EXISTS}. A failed concurrent build leaves an invalid
+ * index behind, which a rerun keeps because the name exists, and which is maintained on every
+ * audit write without ever being used for reads. {@code V15} then either attached it to the
+ * partitioned index or built a valid one next to it.
+ *
+ * <p>Invalid indexes of the audit log partitions that are attached to a partitioned index are
+ * rebuilt with {@code REINDEX INDEX CONCURRENTLY}, since an attached index cannot be dropped on
+ * its own; unattached ones are dropped concurrently. The migration fails if any invalid index is
+ * left afterwards. Like the index builds, it cannot run in a transaction. Registered with Flyway
+ * as a bean, as version 19.1.
+ */
+@Component
+public class AuditLogInvalidIndexMigration implements JavaMigration {
+
+  private static final String INVALID_INDEXES_SQL =
+      "SELECT c.relname, i.inhparent IS NOT NULL AS attached"
+          + " FROM pg_index x JOIN pg_class c ON c.oid = x.indexrelid"
+          + " LEFT JOIN pg_inherits i ON i.inhrelid = x.indexrelid"
+          + " WHERE NOT x.indisvalid AND c.relkind = 'i' AND x.indrelid IN"
+          + "   (SELECT inhrelid FROM pg_inherits WHERE inhparent = 'audit_logs'::regclass)"
+          + " ORDER BY c.relname";
+
+  @Override
+  public MigrationVersion getVersion() {
+    return MigrationVersion.fromVersion("19.1");
+  }
+
+  @Override
+  public String getDescription() {
+    return "repair invalid audit log indexes";
+  }
+
+  @Override
+  public Integer getChecksum() {
+    return INVALID_INDEXES_SQL.hashCode();
+  }
+
+  @Override
+  public boolean canExecuteInTransaction() {
+    return false;
+  }
+
+  @Override
+  public void migrate(Context context) throws SQLException {
+    Connection connection = context.getConnection();
+    try (Statement statement = connection.createStatement()) {
+      for (Map.Entry<String, Boolean> index : invalidIndexes(connection).entrySet()) {
+        if (index.getValue()) {
+          statement.execute("REINDEX INDEX CONCURRENTLY " + quote(index.getKey()));
+        } else {
+          statement.execute("DROP INDEX CONCURRENTLY " + quote(index.getKey()));
+        }
+      }
+    }
+    Map<String, Boolean> remaining = invalidIndexes(connection);
+    if (!remaining.isEmpty()) {
+      throw new IllegalStateException(
+          "Audit log indexes are still invalid after the repair: " + remaining.keySet());
+    }
+  }
+
+  private static Map<String, Boolean> invalidIndexes(Connection connection) throws SQLException {
+    Map<String, Boolean> indexes = new LinkedHashMap<>();
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery(INVALID_INDEXES_SQL)) {
+      while (rs.next()) {
+        indexes.put(rs.getString(1), rs.getBoolean(2));
+      }
+    }
+    return indexes;
+  }
+
+  private static String quote(String identifier) {
+    return '"' + identifier.replace("\"", "\"\"") + '"';
+  }
+}
@@ -0,0 +1,26 @@
+package com.pei.pharmatest.migrations;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Index for the drug filter of the audit log listing, which matches drugs_requested with the
+ * containment operator: {@code drugs_requested @> '[{"drugId": 17}]'}. Every dispensed drug is
+ * also a requested one, so the requested list alone finds dispenses and failures alike.
+ * {@code jsonb_path_ops} only supports {@code @>}, and in exchange indexes a hash per path and
+ * value, several times smaller than the default operator class.
+ *
+ * <p>A separate table of drug lines could serve the keyset order as well, but would have to be
+ * written with every audit log and partitioned, retired and archived along with audit_logs. The
+ * index is defined on the partitioned table, so every future month gets its own; the existing
+ * partitions are indexed concurrently, without blocking audit writes. Registered with Flyway as a
+ * bean, as version 16.
+ */
+@Component
+public class DrugsRequestedIndexMigration extends AuditLogIndexMigration {
+
+  public static final String DEFINITION = "USING GIN (drugs_requested jsonb_path_ops)";
+
+  public DrugsRequestedIndexMigration() {
+    super("16", "index audit logs by drug", "drugs_requested_idx", DEFINITION);
+  }
+}
@@ -0,0 +1,19 @@
+package com.pei.pharmatest.migrations;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Index for the drug filter on audit logs stored in the compact drug list encoding, which matches
+ * {@code requested_drug_ids @> '{17}'}. Built concurrently per partition after {@code V18} added
+ * the column. Registered with Flyway as a bean, as version 18.1.
+ */
+@Component
+public class RequestedDrugIdsIndexMigration extends AuditLogIndexMigration {
+
+  public static final String DEFINITION = "USING GIN (requested_drug_ids)";
+
+  public RequestedDrugIdsIndexMigration() {
+    super("18.1", "index audit logs by requested drug ids", "requested_drug_ids_idx",
+        DEFINITION);
+  }
+}
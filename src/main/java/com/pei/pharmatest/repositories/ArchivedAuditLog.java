@@ -0,0 +1,37 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * An audit log row as it is moved to the archive. The drug lists are kept as the JSON text of
+ * their {@code jsonb} columns, so they are archived exactly as stored and only parsed when an
+ * archived row is returned by a query. Rows stored in the compact encoding carry it in
+ * {@link #getDrugsCompact()} instead, and are expanded to JSON text before they are archived.
+ */
+@Getter
+@AllArgsConstructor
+public class ArchivedAuditLog {
+
+  private final long id;
+  private final long prescriptionId;
+  private final long patientId;
+  private final long pharmacyId;
+  private final String drugsRequested;
+  private final String drugsDispensed;
+  private final String failureReason;
+  private final String status;
+  private final LocalDateTime createdAt;
+  private final byte[] drugsCompact;
+
+  /**
+   * Creates a row whose drug lists are JSON text.
+   */
+  public ArchivedAuditLog(long id, long prescriptionId, long patientId, long pharmacyId,
+      String drugsRequested, String drugsDispensed, String failureReason, String status,
+      LocalDateTime createdAt) {
+    this(id, prescriptionId, patientId, pharmacyId, drugsRequested, drugsDispensed,
+        failureReason, status, createdAt, null);
+  }
+}
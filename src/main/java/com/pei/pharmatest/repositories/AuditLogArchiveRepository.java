@@ -0,0 +1,35 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository fragment for moving aged audit logs to the archive.
+ */
+public interface AuditLogArchiveRepository {
+
+  /**
+   * Reads the next batch of audit logs created before a point in time, oldest first and by ID
+   * within the same creation time, continuing after the last audit log of the previous batch.
+   *
+   * @param cutoff         The creation time before which audit logs are read, exclusive
+   * @param afterCreatedAt The creation time of the last audit log read, or null for the first
+   *                       batch
+   * @param afterId        The ID of the last audit log read; ignored for the first batch
+   * @param limit          The maximum number of audit logs to read
+   * @return The audit logs read, in order
+   */
+  List<ArchivedAuditLog> findCreatedBefore(LocalDateTime cutoff, LocalDateTime afterCreatedAt,
+      long afterId, int limit);
+
+  /**
+   * Deletes archived audit logs by ID. The creation time bounds only narrow the partitions that
+   * are searched.
+   *
+   * @param ids            The IDs of the archived audit logs
+   * @param firstCreatedAt The earliest creation time among them
+   * @param lastCreatedAt  The latest creation time among them
+   * @return The number of audit logs deleted
+   */
+  int deleteArchived(long[] ids, LocalDateTime firstCreatedAt, LocalDateTime lastCreatedAt);
+}
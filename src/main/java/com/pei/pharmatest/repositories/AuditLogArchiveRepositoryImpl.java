@@ -0,0 +1,67 @@
+package com.pei.pharmatest.repositories;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * JDBC implementation of {@link AuditLogArchiveRepository}. Aged audit logs are read by keyset on
+ * {@code (created_at, id)}, so each batch is a short query of its own.
+ */
+public class AuditLogArchiveRepositoryImpl implements AuditLogArchiveRepository {
+
+  private static final String CREATED_BEFORE_SQL =
+      "SELECT id, prescription_id, patient_id, pharmacy_id, drugs_requested::text,"
+          + " drugs_dispensed::text, failure_reason, status, created_at, drugs_compact"
+          + " FROM audit_logs WHERE created_at < ? ORDER BY created_at, id LIMIT ?";
+
+  private static final String CREATED_BEFORE_AFTER_SQL =
+      "SELECT id, prescription_id, patient_id, pharmacy_id, drugs_requested::text,"
+          + " drugs_dispensed::text, failure_reason, status, created_at, drugs_compact"
+          + " FROM audit_logs WHERE created_at < ? AND (created_at, id) > (?, ?)"
+          + " ORDER BY created_at, id LIMIT ?";
+
+  private static final RowMapper<ArchivedAuditLog> ROW_MAPPER = (rs, rowNum) ->
+      new ArchivedAuditLog(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4),
+          rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8),
+          rs.getTimestamp(9).toLocalDateTime(), rs.getBytes(10));
+
+  private static final String DELETE_ARCHIVED_SQL =
+      "DELETE FROM audit_logs WHERE created_at >= ? AND created_at <= ? AND id = ANY(?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public AuditLogArchiveRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public List<ArchivedAuditLog> findCreatedBefore(LocalDateTime cutoff,
+      LocalDateTime afterCreatedAt, long afterId, int limit) {
+    if (afterCreatedAt == null) {
+      return jdbcTemplate.query(CREATED_BEFORE_SQL, ROW_MAPPER, Timestamp.valueOf(cutoff), limit);
+    }
+    return jdbcTemplate.query(CREATED_BEFORE_AFTER_SQL, ROW_MAPPER, Timestamp.valueOf(cutoff),
+        Timestamp.valueOf(afterCreatedAt), afterId, limit);
+  }
+
+  @Override
+  public int deleteArchived(long[] ids, LocalDateTime firstCreatedAt,
+      LocalDateTime lastCreatedAt) {
+    return jdbcTemplate.execute((PreparedStatementCreator) connection -> {
+      PreparedStatement ps = connection.prepareStatement(DELETE_ARCHIVED_SQL);
+      ps.setTimestamp(1, Timestamp.valueOf(firstCreatedAt));
+      ps.setTimestamp(2, Timestamp.valueOf(lastCreatedAt));
+      Array array = connection.createArrayOf("bigint",
+          Arrays.stream(ids).boxed().toArray(Long[]::new));
+      ps.setArray(3, array);
+      return ps;
+    }, PreparedStatement::executeUpdate);
+  }
+}
@@ -0,0 +1,19 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The drug lists of an audit log row still stored as JSON documents, as read for conversion to
+ * the compact encoding.
+ */
+@Getter
+@AllArgsConstructor
+public class AuditLogDrugLists {
+
+  private final long id;
+  private final LocalDateTime createdAt;
+  private final String drugsRequested;
+  private final String drugsDispensed;
+}
@@ -0,0 +1,60 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.AuditLog;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository fragment for the compact encoding of audit log drug lists: the dictionary of the
+ * dosages and dispensed drug details it refers to, and the conversion of rows stored as JSON
+ * documents.
+ */
+public interface AuditLogDrugRepository {
+
+  /**
+   * Reads the whole dictionary.
+   *
+   * @return The entry per code
+   */
+  Map<Integer, String> findDrugDictionary();
+
+  /**
+   * Reads one dictionary entry.
+   *
+   * @param code The code of the entry
+   * @return The entry, or null if there is none with the code
+   */
+  String findDrugDictionaryEntry(int code);
+
+  /**
+   * Adds an entry to the dictionary unless it is there already. Safe to call concurrently for the
+   * same entry, from this and other nodes.
+   *
+   * @param entry The entry
+   * @return The code of the entry
+   */
+  int saveDrugDictionaryEntry(String entry);
+
+  /**
+   * Reads the next rows whose drug lists are still stored as JSON documents, oldest first and by
+   * ID within the same creation time.
+   *
+   * @param lastCreatedAt The creation time of the last row read before, or null to start over
+   * @param lastId        The ID of the last row read before
+   * @param before        The creation time before which rows are read, exclusive
+   * @param limit         The maximum number of rows
+   * @return The rows
+   */
+  List<AuditLogDrugLists> findDrugListsAfter(LocalDateTime lastCreatedAt, long lastId,
+      LocalDateTime before, int limit);
+
+  /**
+   * Replaces the JSON documents of rows with their compact encoding in a single JDBC batch. Rows
+   * that were converted or deleted meanwhile are left alone.
+   *
+   * @param logs The rows, with their ID, creation time and compact encoding
+   * @return The number of rows converted
+   */
+  int compactDrugLists(List<AuditLog> logs);
+}
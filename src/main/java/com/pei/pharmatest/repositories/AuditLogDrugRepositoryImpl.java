@@ -0,0 +1,102 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.AuditLog;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * JDBC implementation of {@link AuditLogDrugRepository}.
+ */
+public class AuditLogDrugRepositoryImpl implements AuditLogDrugRepository {
+
+  private static final String SAVE_ENTRY_SQL =
+      "INSERT INTO audit_drug_dictionary (entry) VALUES (?) ON CONFLICT (entry) DO NOTHING";
+
+  // A row inserted concurrently by another transaction is visible to this separate statement
+  private static final String SELECT_CODE_SQL =
+      "SELECT code FROM audit_drug_dictionary WHERE entry = ?";
+
+  private static final String SELECT_DRUG_LISTS_SQL =
+      "SELECT id, created_at, drugs_requested::text, drugs_dispensed::text FROM audit_logs"
+          + " WHERE created_at < ? AND drugs_compact IS NULL%s"
+          + " ORDER BY created_at, id LIMIT ?";
+
+  private static final String COMPACT_DRUG_LISTS_SQL =
+      "UPDATE audit_logs SET drugs_compact = ?, requested_drug_ids = ?,"
+          + " drugs_requested = NULL, drugs_dispensed = NULL"
+          + " WHERE created_at = ? AND id = ? AND drugs_compact IS NULL";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public AuditLogDrugRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public Map<Integer, String> findDrugDictionary() {
+    Map<Integer, String> dictionary = new HashMap<>();
+    jdbcTemplate.query("SELECT code, entry FROM audit_drug_dictionary",
+        (RowCallbackHandler) rs -> dictionary.put(rs.getInt(1), rs.getString(2)));
+    return dictionary;
+  }
+
+  @Override
+  public String findDrugDictionaryEntry(int code) {
+    List<String> entries = jdbcTemplate.queryForList(
+        "SELECT entry FROM audit_drug_dictionary WHERE code = ?", String.class, code);
+    return entries.isEmpty() ? null : entries.get(0);
+  }
+
+  @Override
+  public int saveDrugDictionaryEntry(String entry) {
+    jdbcTemplate.update(SAVE_ENTRY_SQL, entry);
+    return jdbcTemplate.queryForObject(SELECT_CODE_SQL, Integer.class, entry);
+  }
+
+  @Override
+  public List<AuditLogDrugLists> findDrugListsAfter(LocalDateTime lastCreatedAt, long lastId,
+      LocalDateTime before, int limit) {
+    String sql = String.format(SELECT_DRUG_LISTS_SQL,
+        lastCreatedAt == null ? "" : " AND (created_at, id) > (?, ?)");
+    Object[] args = lastCreatedAt == null
+        ? new Object[] {Timestamp.valueOf(before), limit}
+        : new Object[] {Timestamp.valueOf(before), Timestamp.valueOf(lastCreatedAt), lastId,
+            limit};
+    return jdbcTemplate.query(sql, (rs, rowNum) -> new AuditLogDrugLists(rs.getLong(1),
+        rs.getTimestamp(2).toLocalDateTime(), rs.getString(3), rs.getString(4)), args);
+  }
+
+  @Override
+  public int compactDrugLists(List<AuditLog> logs) {
+    int[] counts = jdbcTemplate.batchUpdate(COMPACT_DRUG_LISTS_SQL,
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            AuditLog log = logs.get(i);
+            ps.setBytes(1, log.getDrugsCompact());
+            ps.setArray(2, log.getRequestedDrugIds() == null ? null
+                : ps.getConnection().createArrayOf("bigint", log.getRequestedDrugIds()));
+            ps.setTimestamp(3, Timestamp.valueOf(log.getCreatedAt()));
+            ps.setLong(4, log.getId());
+          }
+
+          @Override
+          public int getBatchSize() {
+            return logs.size();
+          }
+        });
+    int converted = 0;
+    for (int count : counts) {
+      converted += Math.max(count, 0);
+    }
+    return converted;
+  }
+}
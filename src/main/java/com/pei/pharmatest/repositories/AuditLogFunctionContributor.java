@@ -0,0 +1,51 @@
+package com.pei.pharmatest.repositories;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers the SQL functions that the audit log specifications need beyond standard JPQL.
+ * Registered with Hibernate through {@code META-INF/services}.
+ */
+public class AuditLogFunctionContributor implements FunctionContributor {
+
+  /**
+   * Tells whether the requested drugs of a row include a drug, whether they are stored as a JSONB
+   * document or in the compact encoding: {@code requests_drug(drugsRequested, '[{"drugId": 17}]',
+   * requestedDrugIds, '{17}')}, with the documents of {@link #requestedDrug(long)} and
+   * {@link #requestedDrugIds(long)}. Rendered as {@code @>} operators rather than the
+   * {@code jsonb_contains} and {@code arraycontains} functions, since only the operators can use
+   * the GIN indexes on the columns.
+   */
+  public static final String REQUESTS_DRUG = "requests_drug";
+
+  @Override
+  public void contributeFunctions(FunctionContributions functionContributions) {
+    functionContributions.getFunctionRegistry().registerPattern(REQUESTS_DRUG,
+        "(?1 @> cast(?2 as jsonb) or ?3 @> cast(?4 as bigint[]))",
+        functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+            .resolve(StandardBasicTypes.BOOLEAN));
+  }
+
+  /**
+   * Returns the JSONB document that a drug list contains when it includes the given drug.
+   *
+   * @param drugId The drug ID
+   * @return The document, for the {@code @>} operator
+   */
+  public static String requestedDrug(long drugId) {
+    return "[{\"drugId\": " + drugId + "}]";
+  }
+
+  /**
+   * Returns the array that the requested drug IDs of a row contain when they include the given
+   * drug.
+   *
+   * @param drugId The drug ID
+   * @return The array literal, for the {@code @>} operator
+   */
+  public static String requestedDrugIds(long drugId) {
+    return "{" + drugId + "}";
+  }
+}
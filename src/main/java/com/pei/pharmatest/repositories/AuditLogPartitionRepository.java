@@ -0,0 +1,51 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Repository fragment for managing the monthly partitions of {@code audit_logs}. Months run from
+ * midnight UTC on the first day to midnight UTC on the first day of the next month.
+ */
+public interface AuditLogPartitionRepository {
+
+  /**
+   * Limits how long the statements of the current transaction wait for a lock. Partition DDL
+   * needs an ACCESS EXCLUSIVE lock on {@code audit_logs}, and while it waits, every read and
+   * write of the audit log queues behind it.
+   *
+   * @param timeout The longest wait for a lock
+   */
+  void setLocalLockTimeout(Duration timeout);
+
+  /**
+   * Creates the partition of a month unless it exists already.
+   *
+   * @param month The month
+   */
+  void createMonthlyPartition(YearMonth month);
+
+  /**
+   * Finds the partitions that only hold rows created before a month. The default partition is
+   * never included.
+   *
+   * @param month The first month to keep
+   * @return The names of the partitions, oldest first
+   */
+  List<String> findPartitionsEndingBefore(YearMonth month);
+
+  /**
+   * Detaches a partition, leaving it as a table of its own.
+   *
+   * @param partition The partition name
+   */
+  void detachPartition(String partition);
+
+  /**
+   * Drops a detached partition.
+   *
+   * @param partition The partition name
+   */
+  void dropDetachedPartition(String partition);
+}
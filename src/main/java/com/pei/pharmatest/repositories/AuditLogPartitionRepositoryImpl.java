@@ -0,0 +1,72 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * JDBC implementation of {@link AuditLogPartitionRepository}. Partition bounds are read back from
+ * the catalog, so the partition that took over the table's history before partitioning is retired
+ * like any month once everything in it is old enough.
+ */
+public class AuditLogPartitionRepositoryImpl implements AuditLogPartitionRepository {
+
+  private static final DateTimeFormatter PARTITION_SUFFIX =
+      DateTimeFormatter.ofPattern("yyyy_MM");
+
+  private static final String ENDING_BEFORE_SQL =
+      "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid"
+          + " CROSS JOIN LATERAL (SELECT substring(pg_get_expr(c.relpartbound, c.oid)"
+          + "   FROM 'TO \\(''([^'']+)''\\)')::timestamptz AS upper_bound) b"
+          + " WHERE i.inhparent = 'audit_logs'::regclass AND b.upper_bound <= ?::timestamptz"
+          + " ORDER BY b.upper_bound";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public AuditLogPartitionRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void setLocalLockTimeout(Duration timeout) {
+    jdbcTemplate.execute("SET LOCAL lock_timeout = '" + timeout.toMillis() + "ms'");
+  }
+
+  @Override
+  public void createMonthlyPartition(YearMonth month) {
+    // Fails if the default partition already holds rows of the month
+    jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + quote(partitionName(month))
+        + " PARTITION OF audit_logs (PRIMARY KEY (id))"
+        + " FOR VALUES FROM ('" + start(month) + "') TO ('" + start(month.plusMonths(1)) + "')");
+  }
+
+  @Override
+  public List<String> findPartitionsEndingBefore(YearMonth month) {
+    return jdbcTemplate.queryForList(ENDING_BEFORE_SQL, String.class, start(month));
+  }
+
+  @Override
+  public void detachPartition(String partition) {
+    jdbcTemplate.execute("ALTER TABLE audit_logs DETACH PARTITION " + quote(partition));
+  }
+
+  @Override
+  public void dropDetachedPartition(String partition) {
+    jdbcTemplate.execute("DROP TABLE " + quote(partition));
+  }
+
+  private static String partitionName(YearMonth month) {
+    return "audit_logs_p" + month.format(PARTITION_SUFFIX);
+  }
+
+  private static String start(YearMonth month) {
+    return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC).toString();
+  }
+
+  private static String quote(String identifier) {
+    return '"' + identifier.replace("\"", "\"\"") + '"';
+  }
+}
@@ -0,0 +1,52 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.AuditLog;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Repository fragment for reading audit logs without counting them, and for streaming them.
+ */
+public interface AuditLogQueryRepository {
+
+  /**
+   * Reads one page of audit logs matching a specification, without the count query of a
+   * {@code Page}. One row more than the page size is read to tell whether another page follows.
+   *
+   * @param spec     The filter
+   * @param pageable The page, including its sort order
+   * @return The audit logs of the page
+   */
+  Slice<AuditLog> findSlice(Specification<AuditLog> spec, Pageable pageable);
+
+  /**
+   * Streams all audit logs matching a specification through a database cursor. The persistence
+   * context is cleared at regular intervals, so memory use does not grow with the number of rows
+   * and the audit logs are detached once the sink has them. Must be called within a transaction.
+   *
+   * @param spec The filter
+   * @param sort The order in which the audit logs are read
+   * @param sink Receives each audit log as it is read
+   */
+  void streamAll(Specification<AuditLog> spec, Sort sort, Consumer<AuditLog> sink);
+
+  /**
+   * Estimates the number of audit logs matching the given filters from the planner statistics of
+   * PostgreSQL, without reading the table. The estimate can be off by a wide margin for rare
+   * combinations of filters, and is only as fresh as the last {@code ANALYZE}.
+   *
+   * @param patientId  The patient ID, or null for any
+   * @param pharmacyId The pharmacy ID, or null for any
+   * @param drugId     The ID of a requested drug, or null for any
+   * @param status     The status, or null for any
+   * @param from       The earliest creation time, inclusive, or null for no lower bound
+   * @param to         The latest creation time, exclusive, or null for no upper bound
+   * @return The estimated number of matching audit logs
+   */
+  long estimateCount(Long patientId, Long pharmacyId, Long drugId, String status,
+      LocalDateTime from, LocalDateTime to);
+}
@@ -0,0 +1,127 @@
+package com.pei.pharmatest.repositories;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.entities.AuditLog;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Implementation of {@link AuditLogQueryRepository}. Slices and streams are read through the
+ * criteria API so that they accept the same specifications as the generated repository methods;
+ * estimates read the row estimate of the top plan node from {@code EXPLAIN}.
+ */
+public class AuditLogQueryRepositoryImpl implements AuditLogQueryRepository {
+
+  private static final ObjectMapper PLAN_READER = new ObjectMapper();
+  private static final int FETCH_SIZE = 1000;
+
+  private final EntityManager entityManager;
+  private final JdbcTemplate jdbcTemplate;
+
+  public AuditLogQueryRepositoryImpl(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+    this.entityManager = entityManager;
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public Slice<AuditLog> findSlice(Specification<AuditLog> spec, Pageable pageable) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<AuditLog> query = cb.createQuery(AuditLog.class);
+    Root<AuditLog> root = query.from(AuditLog.class);
+    if (spec != null) {
+      query.where(spec.toPredicate(root, query, cb));
+    }
+    query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+
+    List<AuditLog> rows = entityManager.createQuery(query)
+        .setFirstResult((int) pageable.getOffset())
+        .setMaxResults(pageable.getPageSize() + 1)
+        .getResultList();
+    boolean hasNext = rows.size() > pageable.getPageSize();
+    List<AuditLog> content = hasNext ? rows.subList(0, pageable.getPageSize()) : rows;
+    return new SliceImpl<>(content, pageable, hasNext);
+  }
+
+  @Override
+  public void streamAll(Specification<AuditLog> spec, Sort sort, Consumer<AuditLog> sink) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<AuditLog> query = cb.createQuery(AuditLog.class);
+    Root<AuditLog> root = query.from(AuditLog.class);
+    if (spec != null) {
+      query.where(spec.toPredicate(root, query, cb));
+    }
+    query.orderBy(QueryUtils.toOrders(sort, root, cb));
+
+    // A forward-only cursor, read one fetch at a time; read-only entities keep no snapshots
+    try (Stream<AuditLog> rows = entityManager.createQuery(query)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+        .setHint(HibernateHints.HINT_READ_ONLY, true)
+        .getResultStream()) {
+      Iterator<AuditLog> iterator = rows.iterator();
+      long read = 0;
+      while (iterator.hasNext()) {
+        sink.accept(iterator.next());
+        if (++read % FETCH_SIZE == 0) {
+          entityManager.clear();
+        }
+      }
+    }
+  }
+
+  @Override
+  public long estimateCount(Long patientId, Long pharmacyId, Long drugId, String status,
+      LocalDateTime from, LocalDateTime to) {
+    StringBuilder sql =
+        new StringBuilder("EXPLAIN (FORMAT JSON) SELECT 1 FROM audit_logs WHERE TRUE");
+    List<Object> args = new ArrayList<>();
+    if (patientId != null) {
+      sql.append(" AND patient_id = ?");
+      args.add(patientId);
+    }
+    if (pharmacyId != null) {
+      sql.append(" AND pharmacy_id = ?");
+      args.add(pharmacyId);
+    }
+    if (drugId != null) {
+      sql.append(" AND (drugs_requested @> ?::jsonb OR requested_drug_ids @> ?::bigint[])");
+      args.add(AuditLogFunctionContributor.requestedDrug(drugId));
+      args.add(AuditLogFunctionContributor.requestedDrugIds(drugId));
+    }
+    if (status != null) {
+      sql.append(" AND status = ?");
+      args.add(status);
+    }
+    if (from != null) {
+      sql.append(" AND created_at >= ?");
+      args.add(from);
+    }
+    if (to != null) {
+      sql.append(" AND created_at < ?");
+      args.add(to);
+    }
+    String plan = jdbcTemplate.queryForObject(sql.toString(), String.class, args.toArray());
+    try {
+      return PLAN_READER.readTree(plan).get(0).get("Plan").get("Plan Rows").asLong();
+    } catch (JsonProcessingException e) {
+      throw new DataRetrievalFailureException("Unreadable query plan: " + plan, e);
+    }
+  }
+}
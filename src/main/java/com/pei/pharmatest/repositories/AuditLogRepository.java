@@ -6,5 +6,7 @@ import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface AuditLogRepository extends JpaRepository<AuditLog, Long>, JpaSpecificationExecutor<AuditLog> {
+public interface AuditLogRepository extends JpaRepository<AuditLog, Long>, JpaSpecificationExecutor<AuditLog>,
+    AuditLogQueryRepository, AuditLogPartitionRepository, AuditLogArchiveRepository,
+    AuditLogStatisticsRepository, AuditLogDrugRepository {
 }
\ No newline at end of file
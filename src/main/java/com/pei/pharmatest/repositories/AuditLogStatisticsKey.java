@@ -0,0 +1,83 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Identifies one audit log counter: a status within one bucket of a dimension, as stored in
+ * {@code audit_log_stats}.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor
+public final class AuditLogStatisticsKey {
+
+  /**
+   * The bucket of failures without a reason.
+   */
+  public static final String UNKNOWN_REASON = "Unknown";
+
+  private static final String FAILURE = "FAILURE";
+
+  private final Dimension dimension;
+  private final String bucket;
+  private final String status;
+
+  /**
+   * Returns the key counting the audit logs of a pharmacy with a status.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param status     The status
+   * @return The key
+   */
+  public static AuditLogStatisticsKey pharmacy(long pharmacyId, String status) {
+    return new AuditLogStatisticsKey(Dimension.PHARMACY, Long.toString(pharmacyId), status);
+  }
+
+  /**
+   * Returns the key counting the audit logs created within an hour with a status.
+   *
+   * @param createdAt Any time within the hour
+   * @param status    The status
+   * @return The key
+   */
+  public static AuditLogStatisticsKey hour(LocalDateTime createdAt, String status) {
+    return new AuditLogStatisticsKey(Dimension.HOUR,
+        createdAt.truncatedTo(ChronoUnit.HOURS).toString(), status);
+  }
+
+  /**
+   * Returns the key counting the failures with a reason. Reasons are counted up to their first
+   * colon, the kind of error the audit aspect puts in front of the error message.
+   *
+   * @param failureReason The failure reason, or null
+   * @return The key
+   */
+  public static AuditLogStatisticsKey failureReason(String failureReason) {
+    return new AuditLogStatisticsKey(Dimension.FAILURE_REASON, reasonBucket(failureReason),
+        FAILURE);
+  }
+
+  private static String reasonBucket(String failureReason) {
+    if (failureReason == null) {
+      return UNKNOWN_REASON;
+    }
+    int colon = failureReason.indexOf(':');
+    String reason = colon < 0 ? failureReason : failureReason.substring(0, colon);
+    return reason.isBlank() ? UNKNOWN_REASON : reason;
+  }
+
+  /**
+   * The dimensions audit logs are counted by.
+   */
+  public enum Dimension {
+    PHARMACY,
+    HOUR,
+    FAILURE_REASON
+  }
+}
@@ -0,0 +1,54 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Repository fragment for the checkpointed audit log counters in {@code audit_log_stats}, and for
+ * counting them afresh from {@code audit_logs}.
+ */
+public interface AuditLogStatisticsRepository {
+
+  /**
+   * Reads all checkpointed counters.
+   *
+   * @return The count per counter
+   */
+  Map<AuditLogStatisticsKey, Long> findStatistics();
+
+  /**
+   * Adds counts to the checkpointed counters in a single JDBC batch, creating the counters that
+   * do not exist yet.
+   *
+   * @param deltas The count to add per counter
+   */
+  void addStatistics(Map<AuditLogStatisticsKey, Long> deltas);
+
+  /**
+   * Replaces all checkpointed counters. Must run in a transaction, so that readers never see the
+   * table empty.
+   *
+   * @param counts The count per counter
+   */
+  void replaceStatistics(Map<AuditLogStatisticsKey, Long> counts);
+
+  /**
+   * Counts the audit logs created within a range by pharmacy, by hour and by failure reason, in a
+   * single scan of the partitions the range covers.
+   *
+   * @param from    The inclusive start of the range, or null for no start
+   * @param to      The exclusive end of the range
+   * @param handler Receives each count; missing and blank failure reasons arrive as separate
+   *                counts of the same key
+   */
+  void countAuditLogs(LocalDateTime from, LocalDateTime to, StatisticsRowHandler handler);
+
+  /**
+   * Receives one count of audit logs.
+   */
+  @FunctionalInterface
+  interface StatisticsRowHandler {
+
+    void accept(AuditLogStatisticsKey key, long count);
+  }
+}
@@ -0,0 +1,84 @@
+package com.pei.pharmatest.repositories;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * JDBC implementation of {@link AuditLogStatisticsRepository}.
+ */
+public class AuditLogStatisticsRepositoryImpl implements AuditLogStatisticsRepository {
+
+  private static final String SELECT_STATISTICS_SQL =
+      "SELECT dimension, bucket, status, count FROM audit_log_stats";
+
+  private static final String ADD_STATISTICS_SQL =
+      "INSERT INTO audit_log_stats (dimension, bucket, status, count) VALUES (?, ?, ?, ?)"
+          + " ON CONFLICT (dimension, bucket, status)"
+          + " DO UPDATE SET count = audit_log_stats.count + EXCLUDED.count";
+
+  // Pharmacy and creation time are never null, which tells the three grouping sets apart
+  private static final String COUNT_AUDIT_LOGS_SQL =
+      "SELECT pharmacy_id, date_trunc('hour', created_at) AS hour,"
+          + " split_part(failure_reason, ':', 1) AS reason, status, count(*) AS count"
+          + " FROM audit_logs WHERE created_at < ?%s"
+          + " GROUP BY GROUPING SETS ((pharmacy_id, status),"
+          + "   (date_trunc('hour', created_at), status),"
+          + "   (split_part(failure_reason, ':', 1), status))";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public AuditLogStatisticsRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public Map<AuditLogStatisticsKey, Long> findStatistics() {
+    Map<AuditLogStatisticsKey, Long> statistics = new HashMap<>();
+    jdbcTemplate.query(SELECT_STATISTICS_SQL, (RowCallbackHandler) rs -> statistics.put(
+        new AuditLogStatisticsKey(AuditLogStatisticsKey.Dimension.valueOf(rs.getString(1)),
+            rs.getString(2), rs.getString(3)), rs.getLong(4)));
+    return statistics;
+  }
+
+  @Override
+  public void addStatistics(Map<AuditLogStatisticsKey, Long> deltas) {
+    List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+    deltas.forEach((key, delta) -> batchArgs.add(new Object[] {
+        key.getDimension().name(), key.getBucket(), key.getStatus(), delta}));
+    jdbcTemplate.batchUpdate(ADD_STATISTICS_SQL, batchArgs);
+  }
+
+  @Override
+  public void replaceStatistics(Map<AuditLogStatisticsKey, Long> counts) {
+    jdbcTemplate.update("DELETE FROM audit_log_stats");
+    addStatistics(counts);
+  }
+
+  @Override
+  public void countAuditLogs(LocalDateTime from, LocalDateTime to,
+      StatisticsRowHandler handler) {
+    String sql = String.format(COUNT_AUDIT_LOGS_SQL, from == null ? "" : " AND created_at >= ?");
+    Object[] args = from == null
+        ? new Object[] {Timestamp.valueOf(to)}
+        : new Object[] {Timestamp.valueOf(to), Timestamp.valueOf(from)};
+    jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+      String status = rs.getString("status");
+      long count = rs.getLong("count");
+      long pharmacyId = rs.getLong("pharmacy_id");
+      if (!rs.wasNull()) {
+        handler.accept(AuditLogStatisticsKey.pharmacy(pharmacyId, status), count);
+      } else if (rs.getTimestamp("hour") != null) {
+        handler.accept(AuditLogStatisticsKey.hour(
+            rs.getTimestamp("hour").toLocalDateTime(), status), count);
+      } else if ("FAILURE".equals(status)) {
+        handler.accept(AuditLogStatisticsKey.failureReason(rs.getString("reason")), count);
+      }
+    }, args);
+  }
+}
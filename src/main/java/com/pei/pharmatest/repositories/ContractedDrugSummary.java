@@ -0,0 +1,30 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDate;
+
+/**
+ * Projection of a pharmacy contract joined with the contracted drug.
+ */
+public interface ContractedDrugSummary {
+
+  Long getPharmacyId();
+
+  Long getDrugId();
+
+  String getName();
+
+  String getManufacturer();
+
+  String getBatchNumber();
+
+  LocalDate getExpiryDate();
+
+  /**
+   * Returns the stock on hand, summed over all shards if the stock is sharded.
+   *
+   * @return The total stock on hand
+   */
+  Integer getStock();
+
+  Integer getAllocatedAmount();
+}
@@ -1,8 +1,22 @@
 package com.pei.pharmatest.repositories;
 
 import com.pei.pharmatest.entities.Drug;
+import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface DrugRepository extends JpaRepository<Drug, Long> {
+public interface DrugRepository extends JpaRepository<Drug, Long>, DrugStockRepository {
 
-}
\ No newline at end of file
+  /**
+   * Reads the combined version of a drug and its stock shards without loading the drug, in the
+   * format of {@link Drug#getCombinedVersion()}.
+   *
+   * @param id The drug ID
+   * @return The combined version, if the drug exists
+   */
+  @Query(value = "SELECT CONCAT(d.version, '-', COALESCE((SELECT SUM(s.version)"
+      + " FROM drug_stock_shards s WHERE s.drug_id = d.id), 0)) FROM drugs d WHERE d.id = :id",
+      nativeQuery = true)
+  Optional<String> findCombinedVersionById(@Param("id") Long id);
+}
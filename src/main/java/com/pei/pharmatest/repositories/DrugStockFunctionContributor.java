@@ -0,0 +1,27 @@
+package com.pei.pharmatest.repositories;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers the SQL functions that queries on sharded drug stock need beyond standard JPQL.
+ * Registered with Hibernate through {@code META-INF/services}.
+ */
+public class DrugStockFunctionContributor implements FunctionContributor {
+
+  /**
+   * The stock of a drug summed over its shards: {@code sharded_stock(d.id)}. Only evaluated where
+   * a query uses it, unlike a formula on the drug entity, which every load of a drug would pay
+   * for.
+   */
+  public static final String SHARDED_STOCK = "sharded_stock";
+
+  @Override
+  public void contributeFunctions(FunctionContributions functionContributions) {
+    functionContributions.getFunctionRegistry().registerPattern(SHARDED_STOCK,
+        "(SELECT COALESCE(SUM(s.stock), 0) FROM drug_stock_shards s WHERE s.drug_id = ?1)",
+        functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+            .resolve(StandardBasicTypes.INTEGER));
+  }
+}
@@ -0,0 +1,59 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.Drug;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository fragment for stock mutations on the drugs table. Stock is changed with conditional
+ * UPDATE statements instead of a read-modify-write on the entity, so concurrent writers can never
+ * oversell a drug. Any new way of changing stock, such as a restock, belongs here too, so that
+ * cached drug responses are evicted whenever stock changes.
+ */
+public interface DrugStockRepository {
+
+  /**
+   * Decrements stock for all given entries. Unsharded drugs are decremented in a single JDBC
+   * batch. Each statement only applies when the drug still has enough stock and has not expired on
+   * the given date. Sharded drugs take their quantity from a random shard among those that can
+   * cover it, and only spread it over several shards when none can.
+   *
+   * @param decrements The drug quantities to take out of stock
+   * @param asOf       The date used for the expiry guard
+   * @return The update count of each decrement, in order; zero means the guard did not hold
+   */
+  int[] decrementStock(List<StockDecrement> decrements, LocalDate asOf);
+
+  /**
+   * Moves the total stock of a drug into the given number of equally filled shards, or back into
+   * the {@code drugs.stock} column when the shard count is zero. Takes the locks of the drug row
+   * and of all its shards, so it waits for fulfillments in flight. A fulfillment that loaded the
+   * drug before the change may fail with insufficient stock and can be retried.
+   *
+   * @param drugId     The drug ID
+   * @param shardCount The new number of shards
+   * @return Whether the drug exists
+   */
+  boolean reshardStock(long drugId, int shardCount);
+
+  /**
+   * Locks the rows holding the stock of the given drugs, in ascending drug ID order, for the rest
+   * of the current transaction. Locking every row up front in a fixed order keeps callers that
+   * touch several drugs from deadlocking on each other.
+   *
+   * @param drugIds The drug IDs
+   * @return The stock on hand per existing drug ID, summed over shards for sharded drugs
+   */
+  Map<Long, Integer> lockStock(Collection<Long> drugIds);
+
+  /**
+   * Fills in the stock and version totals of the sharded drugs among the given ones with a single
+   * query, so that their available stock and combined version can be read. Drugs are loaded
+   * without these totals; nothing is queried when none of the drugs is sharded.
+   *
+   * @param drugs The loaded drugs
+   */
+  void loadShardTotals(Collection<Drug> drugs);
+}
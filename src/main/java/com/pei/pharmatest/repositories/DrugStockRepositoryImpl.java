@@ -0,0 +1,216 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.Drug;
+import com.pei.pharmatest.inventory.DrugCache;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * JDBC implementation of {@link DrugStockRepository}. Runs on the connection of the surrounding
+ * JPA transaction, so a failed guard can roll back every statement of the batch. Drugs whose stock
+ * changed are evicted from the {@link DrugCache} once the transaction commits.
+ */
+public class DrugStockRepositoryImpl implements DrugStockRepository {
+
+  private static final String DECREMENT_STOCK_SQL =
+      "UPDATE drugs SET stock = stock - ? WHERE id = ? AND stock >= ? AND expiry_date >= ?";
+
+  // Picks one of the shards that can cover the quantity at random, so the load spreads over the
+  // shards that still hold stock instead of hitting empty ones
+  private static final String DECREMENT_RANDOM_SHARD_SQL =
+      "UPDATE drug_stock_shards s SET stock = s.stock - ? "
+          + "FROM (SELECT shard_no FROM drug_stock_shards WHERE drug_id = ? AND stock >= ?"
+          + "  ORDER BY random() LIMIT 1) pick "
+          + "WHERE s.drug_id = ? AND s.shard_no = pick.shard_no AND s.stock >= ? "
+          + "AND EXISTS (SELECT 1 FROM drugs d WHERE d.id = s.drug_id AND d.expiry_date >= ?)";
+
+  // Locks the non-empty shards in shard order and takes from each until the quantity is covered.
+  // Nothing is taken unless the shards hold enough in total.
+  private static final String DECREMENT_ACROSS_SHARDS_SQL =
+      "WITH locked AS ("
+          + "  SELECT shard_no, stock FROM drug_stock_shards"
+          + "  WHERE drug_id = ? AND stock > 0 ORDER BY shard_no FOR UPDATE"
+          + "), plan AS ("
+          + "  SELECT shard_no,"
+          + "    LEAST(stock, ? - (SUM(stock) OVER (ORDER BY shard_no) - stock)) AS take"
+          + "  FROM locked"
+          + "  WHERE (SELECT SUM(stock) FROM locked) >= ?"
+          + "    AND EXISTS (SELECT 1 FROM drugs WHERE id = ? AND expiry_date >= ?)"
+          + ") "
+          + "UPDATE drug_stock_shards s SET stock = s.stock - p.take FROM plan p "
+          + "WHERE s.drug_id = ? AND s.shard_no = p.shard_no AND p.take > 0";
+
+  private static final String SHARD_TOTALS_SQL =
+      "SELECT drug_id, SUM(stock) AS stock, SUM(version) AS version FROM drug_stock_shards "
+          + "WHERE drug_id = ANY(?) GROUP BY drug_id";
+
+  // Random picks that find their shard drained by a concurrent writer before the spread fallback
+  private static final int RANDOM_SHARD_ATTEMPTS = 3;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final DrugCache drugCache;
+
+  public DrugStockRepositoryImpl(JdbcTemplate jdbcTemplate, DrugCache drugCache) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.drugCache = drugCache;
+  }
+
+  @Override
+  public int[] decrementStock(List<StockDecrement> decrements, LocalDate asOf) {
+    int[] updateCounts = applyDecrements(decrements, asOf);
+    List<Long> changed = new ArrayList<>();
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] > 0) {
+        changed.add(decrements.get(i).getDrugId());
+      }
+    }
+    drugCache.evictAfterCommit(changed);
+    return updateCounts;
+  }
+
+  private int[] applyDecrements(List<StockDecrement> decrements, LocalDate asOf) {
+    int[] updateCounts = new int[decrements.size()];
+    List<Integer> unsharded = new ArrayList<>();
+    for (int i = 0; i < decrements.size(); i++) {
+      StockDecrement decrement = decrements.get(i);
+      if (decrement.getStockShards() > 0) {
+        updateCounts[i] = decrementShardedStock(decrement, asOf) ? 1 : 0;
+      } else {
+        unsharded.add(i);
+      }
+    }
+    if (unsharded.isEmpty()) {
+      return updateCounts;
+    }
+
+    int[] batchCounts = jdbcTemplate.batchUpdate(DECREMENT_STOCK_SQL,
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            StockDecrement decrement = decrements.get(unsharded.get(i));
+            ps.setInt(1, decrement.getQuantity());
+            ps.setLong(2, decrement.getDrugId());
+            ps.setInt(3, decrement.getQuantity());
+            ps.setObject(4, asOf);
+          }
+
+          @Override
+          public int getBatchSize() {
+            return unsharded.size();
+          }
+        });
+    for (int i = 0; i < batchCounts.length; i++) {
+      updateCounts[unsharded.get(i)] = batchCounts[i];
+    }
+    return updateCounts;
+  }
+
+  /**
+   * Takes the quantity from a random shard that can cover it, which only locks that one row. A
+   * pick can lose its stock to a concurrent writer before the update gets the row, so a few picks
+   * are tried before the quantity is spread across all shards.
+   */
+  private boolean decrementShardedStock(StockDecrement decrement, LocalDate asOf) {
+    long drugId = decrement.getDrugId();
+    int quantity = decrement.getQuantity();
+    for (int attempt = 0; attempt < RANDOM_SHARD_ATTEMPTS; attempt++) {
+      if (jdbcTemplate.update(DECREMENT_RANDOM_SHARD_SQL,
+          quantity, drugId, quantity, drugId, quantity, asOf) > 0) {
+        return true;
+      }
+    }
+    return jdbcTemplate.update(DECREMENT_ACROSS_SHARDS_SQL,
+        drugId, quantity, quantity, drugId, asOf, drugId) > 0;
+  }
+
+  @Override
+  public boolean reshardStock(long drugId, int shardCount) {
+    List<Integer> stock = jdbcTemplate.queryForList(
+        "SELECT stock FROM drugs WHERE id = ? FOR UPDATE", Integer.class, drugId);
+    if (stock.isEmpty()) {
+      return false;
+    }
+    Integer shardedStock = jdbcTemplate.queryForObject(
+        "SELECT COALESCE(SUM(stock), 0) FROM "
+            + "(SELECT stock FROM drug_stock_shards WHERE drug_id = ? FOR UPDATE) s",
+        Integer.class, drugId);
+    int total = stock.get(0) + shardedStock;
+
+    jdbcTemplate.update("DELETE FROM drug_stock_shards WHERE drug_id = ?", drugId);
+    if (shardCount == 0) {
+      jdbcTemplate.update("UPDATE drugs SET stock = ?, stock_shards = 0 WHERE id = ?",
+          total, drugId);
+      return true;
+    }
+
+    List<Object[]> shards = new ArrayList<>(shardCount);
+    for (int shardNo = 0; shardNo < shardCount; shardNo++) {
+      int shardStock = total / shardCount + (shardNo < total % shardCount ? 1 : 0);
+      shards.add(new Object[] {drugId, shardNo, shardStock});
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO drug_stock_shards (drug_id, shard_no, stock) VALUES (?, ?, ?)", shards);
+    jdbcTemplate.update("UPDATE drugs SET stock = 0, stock_shards = ? WHERE id = ?",
+        shardCount, drugId);
+    return true;
+  }
+
+  @Override
+  public Map<Long, Integer> lockStock(Collection<Long> drugIds) {
+    Map<Long, Integer> stock = new HashMap<>();
+    if (drugIds.isEmpty()) {
+      return stock;
+    }
+    Long[] ids = drugIds.toArray(new Long[0]);
+    List<Long> sharded = new ArrayList<>();
+    RowCallbackHandler drugRows = rs -> {
+      long drugId = rs.getLong("id");
+      stock.put(drugId, rs.getInt("stock"));
+      if (rs.getInt("stock_shards") > 0) {
+        sharded.add(drugId);
+      }
+    };
+    jdbcTemplate.query("SELECT id, stock, stock_shards FROM drugs WHERE id = ANY(?) "
+        + "ORDER BY id FOR UPDATE", drugRows, (Object) ids);
+    if (sharded.isEmpty()) {
+      return stock;
+    }
+
+    RowCallbackHandler shardRows = rs -> stock.merge(rs.getLong("drug_id"), rs.getInt("stock"),
+        Integer::sum);
+    jdbcTemplate.query("SELECT drug_id, stock FROM drug_stock_shards WHERE drug_id = ANY(?) "
+            + "ORDER BY drug_id, shard_no FOR UPDATE", shardRows,
+        (Object) sharded.toArray(new Long[0]));
+    return stock;
+  }
+
+  @Override
+  public void loadShardTotals(Collection<Drug> drugs) {
+    Map<Long, Drug> sharded = new HashMap<>();
+    for (Drug drug : drugs) {
+      if (drug.getStockShards() > 0) {
+        drug.setShardedStock(0);
+        drug.setShardVersion(0L);
+        sharded.put(drug.getId(), drug);
+      }
+    }
+    if (sharded.isEmpty()) {
+      return;
+    }
+    RowCallbackHandler totals = rs -> {
+      Drug drug = sharded.get(rs.getLong("drug_id"));
+      drug.setShardedStock(rs.getInt("stock"));
+      drug.setShardVersion(rs.getLong("version"));
+    };
+    jdbcTemplate.query(SHARD_TOTALS_SQL, totals, (Object) sharded.keySet().toArray(new Long[0]));
+  }
+}
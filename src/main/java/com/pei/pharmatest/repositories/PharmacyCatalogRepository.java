@@ -0,0 +1,19 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.dto.PharmacyResponse;
+import java.util.function.Consumer;
+
+/**
+ * Repository fragment for reading the whole pharmacy catalog without holding it in memory.
+ */
+public interface PharmacyCatalogRepository {
+
+  /**
+   * Reads all pharmacies with their contracted drugs in ID order through a forward-only cursor and
+   * hands each pharmacy to the sink as soon as its last contract has been read. Must be called
+   * inside a transaction, otherwise the driver reads the whole result at once.
+   *
+   * @param sink Receives each pharmacy with its contracted drugs
+   */
+  void streamCatalog(Consumer<PharmacyResponse> sink);
+}
@@ -0,0 +1,80 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.dto.ContractedDrugResponse;
+import com.pei.pharmatest.dto.PharmacyResponse;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.function.Consumer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * JDBC implementation of {@link PharmacyCatalogRepository}. Only one fetch of rows and the
+ * pharmacy being assembled are in memory at any time.
+ */
+public class PharmacyCatalogRepositoryImpl implements PharmacyCatalogRepository {
+
+  private static final int FETCH_SIZE = 500;
+
+  private static final String CATALOG_SQL =
+      "SELECT p.id AS pharmacy_id, p.name AS pharmacy_name, p.address,"
+          + " d.id AS drug_id, d.name AS drug_name, d.manufacturer, d.batch_number,"
+          + " d.expiry_date, pd.allocated_amount,"
+          + " CASE WHEN d.stock_shards > 0 THEN (SELECT COALESCE(SUM(s.stock), 0)"
+          + "   FROM drug_stock_shards s WHERE s.drug_id = d.id) ELSE d.stock END AS stock"
+          + " FROM pharmacies p"
+          + " LEFT JOIN pharmacy_drugs pd ON pd.pharmacy_id = p.id"
+          + " LEFT JOIN drugs d ON d.id = pd.drug_id"
+          + " ORDER BY p.id, d.id";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public PharmacyCatalogRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void streamCatalog(Consumer<PharmacyResponse> sink) {
+    PreparedStatementCreator statement = connection -> {
+      PreparedStatement ps = connection.prepareStatement(CATALOG_SQL,
+          ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      ps.setFetchSize(FETCH_SIZE);
+      return ps;
+    };
+    PharmacyResponse[] current = new PharmacyResponse[1];
+    RowCallbackHandler rows = rs -> {
+      long pharmacyId = rs.getLong("pharmacy_id");
+      if (current[0] == null || current[0].getId() != pharmacyId) {
+        // Rows are ordered by pharmacy, so the previous pharmacy is complete
+        if (current[0] != null) {
+          sink.accept(current[0]);
+        }
+        current[0] = new PharmacyResponse();
+        current[0].setId(pharmacyId);
+        current[0].setName(rs.getString("pharmacy_name"));
+        current[0].setAddress(rs.getString("address"));
+        current[0].setContractedDrugs(new LinkedHashSet<>());
+      }
+      long drugId = rs.getLong("drug_id");
+      if (rs.wasNull()) {
+        return;
+      }
+      ContractedDrugResponse drug = new ContractedDrugResponse();
+      drug.setId(drugId);
+      drug.setName(rs.getString("drug_name"));
+      drug.setManufacturer(rs.getString("manufacturer"));
+      drug.setBatchNumber(rs.getString("batch_number"));
+      drug.setExpiryDate(rs.getObject("expiry_date", LocalDate.class));
+      drug.setStock(rs.getInt("stock"));
+      drug.setAllocatedAmount(rs.getInt("allocated_amount"));
+      current[0].getContractedDrugs().add(drug);
+    };
+    jdbcTemplate.query(statement, rows);
+    if (current[0] != null) {
+      sink.accept(current[0]);
+    }
+  }
+}
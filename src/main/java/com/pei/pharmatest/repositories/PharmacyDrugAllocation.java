@@ -0,0 +1,13 @@
+package com.pei.pharmatest.repositories;
+
+/**
+ * Projection of the allocation columns of a pharmacy contract for a single drug.
+ */
+public interface PharmacyDrugAllocation {
+
+  Long getDrugId();
+
+  Integer getAllocatedAmount();
+
+  Integer getConsumedAmount();
+}
@@ -0,0 +1,55 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository fragment for set-based updates of consumed pharmacy allocations.
+ */
+public interface PharmacyDrugAllocationRepository {
+
+  /**
+   * Adds checkpointed consumption to the consumed amount of each contract in a single JDBC batch.
+   *
+   * @param deltas The consumed quantity to add per contract
+   */
+  void addConsumedAmounts(Map<PharmacyDrugId, Long> deltas);
+
+  /**
+   * Consumes allocation directly in the database with conditional updates, for deployments where
+   * several nodes share the allocations. An update only applies when it stays within the
+   * allocated amount. The rows are updated in drug ID order, like stock.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param quantities The quantity to consume per drug ID
+   * @return The IDs of the drugs whose allocation would have been exceeded
+   */
+  List<Long> consumeAllocations(long pharmacyId, Map<Long, Integer> quantities);
+
+  /**
+   * Locks the rows of the given contracts in pharmacy and drug order until the end of the
+   * current transaction.
+   *
+   * @param ids The contracts to lock
+   */
+  void lockAllocations(Collection<PharmacyDrugId> ids);
+
+  /**
+   * Reads every contract and hands each row to the handler as primitives, without creating
+   * entities. Inside a transaction, the rows are fetched through a cursor in bounded batches.
+   *
+   * @param handler Receives one contract at a time
+   */
+  void forEachContract(ContractRowHandler handler);
+
+  /**
+   * Receives the allocation columns of one contract.
+   */
+  @FunctionalInterface
+  interface ContractRowHandler {
+
+    void accept(long pharmacyId, long drugId, int allocatedAmount, int consumedAmount);
+  }
+}
@@ -0,0 +1,96 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * JDBC implementation of {@link PharmacyDrugAllocationRepository}.
+ */
+public class PharmacyDrugAllocationRepositoryImpl implements PharmacyDrugAllocationRepository {
+
+  private static final String ADD_CONSUMED_SQL =
+      "UPDATE pharmacy_drugs SET consumed_amount = consumed_amount + ? "
+          + "WHERE pharmacy_id = ? AND drug_id = ?";
+
+  private static final String CONSUME_ALLOCATION_SQL =
+      "UPDATE pharmacy_drugs SET consumed_amount = consumed_amount + ? "
+          + "WHERE pharmacy_id = ? AND drug_id = ? AND consumed_amount + ? <= allocated_amount";
+
+  private static final String LOCK_ALLOCATIONS_SQL =
+      "SELECT pharmacy_id, drug_id FROM pharmacy_drugs "
+          + "JOIN unnest(?::bigint[], ?::bigint[]) AS locked(pharmacy_id, drug_id) "
+          + "USING (pharmacy_id, drug_id) ORDER BY pharmacy_id, drug_id "
+          + "FOR UPDATE OF pharmacy_drugs";
+
+  private static final String SELECT_CONTRACTS_SQL =
+      "SELECT pharmacy_id, drug_id, allocated_amount, consumed_amount FROM pharmacy_drugs";
+
+  private static final int CONTRACT_FETCH_SIZE = 1000;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public PharmacyDrugAllocationRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void addConsumedAmounts(Map<PharmacyDrugId, Long> deltas) {
+    List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+    deltas.forEach((id, delta) ->
+        batchArgs.add(new Object[] {delta, id.getPharmacyId(), id.getDrugId()}));
+    jdbcTemplate.batchUpdate(ADD_CONSUMED_SQL, batchArgs);
+  }
+
+  @Override
+  public List<Long> consumeAllocations(long pharmacyId, Map<Long, Integer> quantities) {
+    // In drug order, so that concurrent fulfillments take the row locks in the same order
+    List<Long> drugIds = new ArrayList<>(quantities.keySet());
+    Collections.sort(drugIds);
+    List<Object[]> batchArgs = new ArrayList<>(drugIds.size());
+    for (Long drugId : drugIds) {
+      Integer quantity = quantities.get(drugId);
+      batchArgs.add(new Object[] {quantity, pharmacyId, drugId, quantity});
+    }
+    int[] updateCounts = jdbcTemplate.batchUpdate(CONSUME_ALLOCATION_SQL, batchArgs);
+
+    List<Long> exceeded = new ArrayList<>();
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] == 0) {
+        exceeded.add(drugIds.get(i));
+      }
+    }
+    return exceeded;
+  }
+
+  @Override
+  public void lockAllocations(Collection<PharmacyDrugId> ids) {
+    Long[] pharmacyIds = new Long[ids.size()];
+    Long[] drugIds = new Long[ids.size()];
+    int i = 0;
+    for (PharmacyDrugId id : ids) {
+      pharmacyIds[i] = id.getPharmacyId();
+      drugIds[i++] = id.getDrugId();
+    }
+    jdbcTemplate.query(LOCK_ALLOCATIONS_SQL, (RowCallbackHandler) rs -> { },
+        pharmacyIds, drugIds);
+  }
+
+  @Override
+  public void forEachContract(ContractRowHandler handler) {
+    jdbcTemplate.query(connection -> {
+      PreparedStatement statement = connection.prepareStatement(SELECT_CONTRACTS_SQL,
+          ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      statement.setFetchSize(CONTRACT_FETCH_SIZE);
+      return statement;
+    }, (RowCallbackHandler) rs -> handler.accept(rs.getLong("pharmacy_id"), rs.getLong("drug_id"),
+        rs.getInt("allocated_amount"), rs.getInt("consumed_amount")));
+  }
+}
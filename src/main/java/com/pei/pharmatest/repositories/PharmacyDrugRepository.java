@@ -2,8 +2,34 @@ package com.pei.pharmatest.repositories;
 
 import com.pei.pharmatest.entities.PharmacyDrug;
 import com.pei.pharmatest.entities.PharmacyDrugId;
+import java.util.Collection;
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface PharmacyDrugRepository extends JpaRepository<PharmacyDrug, PharmacyDrugId> {
+public interface PharmacyDrugRepository extends JpaRepository<PharmacyDrug, PharmacyDrugId>,
+    PharmacyDrugAllocationRepository {
 
-}
\ No newline at end of file
+  /**
+   * Reads the allocation of the given drugs at a pharmacy without loading contract entities.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param drugIds    The contracted drug IDs
+   * @return One allocation per contracted drug; drugs without a contract are left out
+   */
+  @Query("SELECT pd.id.drugId AS drugId, pd.allocatedAmount AS allocatedAmount, "
+      + "pd.consumedAmount AS consumedAmount FROM PharmacyDrug pd "
+      + "WHERE pd.id.pharmacyId = :pharmacyId AND pd.id.drugId IN :drugIds")
+  List<PharmacyDrugAllocation> findAllocations(@Param("pharmacyId") Long pharmacyId,
+      @Param("drugIds") Collection<Long> drugIds);
+
+  /**
+   * Reads the version of the pharmacies and contracts, which changes with every change to either.
+   * Consumption of allocations does not change it.
+   *
+   * @return The catalog version
+   */
+  @Query(value = "SELECT version FROM catalog_version WHERE id = 1", nativeQuery = true)
+  long findCatalogVersion();
+}
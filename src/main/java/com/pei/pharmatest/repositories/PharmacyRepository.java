@@ -1,8 +1,71 @@
 package com.pei.pharmatest.repositories;
 
 import com.pei.pharmatest.entities.Pharmacy;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface PharmacyRepository extends JpaRepository<Pharmacy, Long> {
+public interface PharmacyRepository extends JpaRepository<Pharmacy, Long>,
+    PharmacyCatalogRepository {
 
-}
\ No newline at end of file
+  /**
+   * Reads one page of pharmacies in ID order, starting after the given ID. Seeks on the primary
+   * key instead of skipping rows, so every page costs the same.
+   *
+   * @param afterId  The last ID of the previous page, or zero for the first page
+   * @param pageable The page size; the page number must be zero
+   * @return The pharmacies of the page
+   */
+  List<PharmacySummary> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+  /**
+   * Reads the contracts of several pharmacies together with the contracted drugs in one query.
+   *
+   * @param pharmacyIds The pharmacy IDs
+   * @return The contracts, ordered by pharmacy and drug ID
+   */
+  @Query("SELECT pd.id.pharmacyId AS pharmacyId, d.id AS drugId, d.name AS name, "
+      + "d.manufacturer AS manufacturer, d.batchNumber AS batchNumber, "
+      + "d.expiryDate AS expiryDate, "
+      + "CASE WHEN d.stockShards > 0 THEN " + DrugStockFunctionContributor.SHARDED_STOCK
+      + "(d.id) ELSE d.stock END AS stock, "
+      + "pd.allocatedAmount AS allocatedAmount "
+      + "FROM PharmacyDrug pd JOIN pd.drug d WHERE pd.id.pharmacyId IN :pharmacyIds "
+      + "ORDER BY pd.id.pharmacyId, d.id")
+  List<ContractedDrugSummary> findContractedDrugs(
+      @Param("pharmacyIds") Collection<Long> pharmacyIds);
+
+  /**
+   * Reads the version of the pharmacies and contracts, which changes with every change to either.
+   * Consumption of allocations does not change it.
+   *
+   * @return The catalog version
+   */
+  @Query(value = "SELECT CAST(version AS VARCHAR) FROM catalog_version WHERE id = 1",
+      nativeQuery = true)
+  String findCatalogVersion();
+
+  /**
+   * Reads the version of one page of pharmacies with their contracted drugs and stock, without
+   * loading any of them. Combines the catalog version with the sums of the drug and stock shard
+   * versions of the page; every version only grows, and contract changes and resharding bump the
+   * catalog or drug version, so a changed page never reports a version it had before.
+   *
+   * @param afterId The last ID of the previous page, or zero for the first page
+   * @param size    The page size
+   * @return The page version
+   */
+  @Query(value = "WITH page AS (SELECT id FROM pharmacies WHERE id > :afterId ORDER BY id"
+      + " LIMIT :size) "
+      + "SELECT CONCAT((SELECT version FROM catalog_version WHERE id = 1), '-',"
+      + " COALESCE(SUM(d.version), 0), '-', COALESCE(SUM(s.version), 0)) "
+      + "FROM page JOIN pharmacy_drugs pd ON pd.pharmacy_id = page.id"
+      + " JOIN drugs d ON d.id = pd.drug_id"
+      + " LEFT JOIN LATERAL (SELECT SUM(version) AS version FROM drug_stock_shards"
+      + " WHERE drug_id = d.id) s ON TRUE",
+      nativeQuery = true)
+  String findPageVersion(@Param("afterId") Long afterId, @Param("size") int size);
+}
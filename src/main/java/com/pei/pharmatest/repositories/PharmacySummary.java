@@ -0,0 +1,13 @@
+package com.pei.pharmatest.repositories;
+
+/**
+ * Projection of the columns of a pharmacy, read without its contracts.
+ */
+public interface PharmacySummary {
+
+  Long getId();
+
+  String getName();
+
+  String getAddress();
+}
@@ -1,18 +1,96 @@
 package com.pei.pharmatest.repositories;
 
 import com.pei.pharmatest.entities.Prescription;
-import jakarta.persistence.LockModeType;
+import com.pei.pharmatest.entities.Prescription.PrescriptionStatus;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
-import org.springframework.lang.NonNull;
 
-public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
+public interface PrescriptionRepository extends JpaRepository<Prescription, Long>,
+    PrescriptionValidationRepository {
 
-  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  /**
+   * Loads a prescription together with its items without taking any row lock.
+   *
+   * @param id The prescription ID
+   * @return The prescription with its items, if found
+   */
   @Query("SELECT p FROM Prescription p LEFT JOIN FETCH p.items WHERE p.id = :id")
-  @NonNull
-  Optional<Prescription> findById(@Param("id") Long id);
-}
\ No newline at end of file
+  Optional<Prescription> findWithItemsById(@Param("id") Long id);
+
+  /**
+   * Loads a prescription with its pharmacy, patient, items and their drugs in one query, for
+   * reading only. No row lock is taken and the loaded entities are not dirty checked.
+   *
+   * @param id The prescription ID
+   * @return The prescription with everything its response needs, if found
+   */
+  @EntityGraph(attributePaths = {"pharmacy", "patient", "items", "items.drug"})
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+  Optional<Prescription> findReadOnlyById(Long id);
+
+  /**
+   * Reads only the status of a prescription, which is all its ETag depends on.
+   *
+   * @param id The prescription ID
+   * @return The status, if the prescription exists
+   */
+  @Query("SELECT p.status FROM Prescription p WHERE p.id = :id")
+  Optional<PrescriptionStatus> findStatusById(@Param("id") Long id);
+
+  /**
+   * Moves a prescription from one status to another with a single compare-and-set UPDATE. The
+   * persistence context is cleared afterwards so that no stale status is flushed back.
+   *
+   * @param id   The prescription ID
+   * @param from The status the prescription must currently have
+   * @param to   The new status
+   * @return The number of updated rows; zero if the prescription was not in the expected status
+   */
+  @Modifying(clearAutomatically = true)
+  @Query("UPDATE Prescription p SET p.status = :to WHERE p.id = :id AND p.status = :from")
+  int transitionStatus(@Param("id") Long id, @Param("from") PrescriptionStatus from,
+      @Param("to") PrescriptionStatus to);
+
+  /**
+   * Loads several prescriptions together with their items without taking any row lock.
+   *
+   * @param ids The prescription IDs
+   * @return The prescriptions that exist, in no particular order
+   */
+  @Query("SELECT DISTINCT p FROM Prescription p LEFT JOIN FETCH p.items WHERE p.id IN :ids")
+  List<Prescription> findAllWithItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+  /**
+   * Locks the given prescriptions that are still in the CREATED status, in ascending ID order so
+   * that concurrent batches cannot deadlock on each other.
+   *
+   * @param ids The prescription IDs
+   * @return The IDs of the locked prescriptions
+   */
+  @Query(value = "SELECT CAST(id AS BIGINT) FROM prescriptions "
+      + "WHERE id IN (:ids) AND status = 'CREATED' ORDER BY id FOR UPDATE", nativeQuery = true)
+  List<Long> lockCreated(@Param("ids") Collection<Long> ids);
+
+  /**
+   * Moves several prescriptions from one status to another with a single UPDATE. The persistence
+   * context is cleared afterwards so that no stale status is flushed back.
+   *
+   * @param ids  The prescription IDs
+   * @param from The status the prescriptions must currently have
+   * @param to   The new status
+   * @return The number of updated rows
+   */
+  @Modifying(clearAutomatically = true)
+  @Query("UPDATE Prescription p SET p.status = :to WHERE p.id IN :ids AND p.status = :from")
+  int transitionStatuses(@Param("ids") Collection<Long> ids,
+      @Param("from") PrescriptionStatus from, @Param("to") PrescriptionStatus to);
+}
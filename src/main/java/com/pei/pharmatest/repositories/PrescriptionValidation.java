@@ -0,0 +1,43 @@
+package com.pei.pharmatest.repositories;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * What needs to be read to validate a new prescription, in one query: whether the pharmacy and
+ * the patient exist, and the stock of the requested drugs. Contracts and allocations are checked
+ * against the in-memory contract index instead.
+ */
+@Getter
+@AllArgsConstructor
+public class PrescriptionValidation {
+
+  private final boolean pharmacyFound;
+  private final String pharmacyName;
+  private final boolean patientFound;
+  private final String patientName;
+
+  /**
+   * The requested drugs that exist, by drug ID.
+   */
+  private final Map<Long, RequestedDrug> requestedDrugs;
+
+  /**
+   * Description and stock of a single requested drug.
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class RequestedDrug {
+
+    private final long drugId;
+    private final String name;
+    private final String manufacturer;
+    private final String batchNumber;
+
+    /**
+     * Stock on hand, summed over all shards if the stock is sharded.
+     */
+    private final int availableStock;
+  }
+}
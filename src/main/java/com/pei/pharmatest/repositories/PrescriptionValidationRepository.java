@@ -0,0 +1,22 @@
+package com.pei.pharmatest.repositories;
+
+import java.util.Collection;
+
+/**
+ * Repository fragment for reading everything a new prescription is validated against in a single
+ * round trip.
+ */
+public interface PrescriptionValidationRepository {
+
+  /**
+   * Checks that the pharmacy and the patient exist and reads description and stock of the given
+   * drugs.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param patientId  The patient ID
+   * @param drugIds    The requested drug IDs
+   * @return The validation data; drugs that do not exist are left out
+   */
+  PrescriptionValidation loadValidation(long pharmacyId, long patientId,
+      Collection<Long> drugIds);
+}
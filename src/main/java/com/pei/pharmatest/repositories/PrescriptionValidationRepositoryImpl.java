@@ -0,0 +1,62 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.repositories.PrescriptionValidation.RequestedDrug;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+/**
+ * JDBC implementation of {@link PrescriptionValidationRepository}.
+ */
+public class PrescriptionValidationRepositoryImpl implements PrescriptionValidationRepository {
+
+  // Always returns at least one row: the pharmacy and patient columns are null when they do not
+  // exist and the drug columns are null when none of the requested drugs exists
+  private static final String LOAD_VALIDATION_SQL =
+      "SELECT ph.id AS pharmacy_id, ph.name AS pharmacy_name,"
+          + " pa.id AS patient_id, pa.name AS patient_name,"
+          + " d.id AS drug_id, d.name AS drug_name, d.manufacturer, d.batch_number,"
+          + " CASE WHEN d.stock_shards > 0 THEN (SELECT COALESCE(SUM(s.stock), 0)"
+          + "   FROM drug_stock_shards s WHERE s.drug_id = d.id) ELSE d.stock END"
+          + "   AS available_stock"
+          + " FROM (VALUES (1)) AS one (x)"
+          + " LEFT JOIN pharmacies ph ON ph.id = ?"
+          + " LEFT JOIN patients pa ON pa.id = ?"
+          + " LEFT JOIN drugs d ON d.id = ANY(?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public PrescriptionValidationRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public PrescriptionValidation loadValidation(long pharmacyId, long patientId,
+      Collection<Long> drugIds) {
+    ResultSetExtractor<PrescriptionValidation> extractor = rs -> {
+      boolean pharmacyFound = false;
+      String pharmacyName = null;
+      boolean patientFound = false;
+      String patientName = null;
+      Map<Long, RequestedDrug> requestedDrugs = new HashMap<>();
+      while (rs.next()) {
+        pharmacyFound = rs.getObject("pharmacy_id") != null;
+        pharmacyName = rs.getString("pharmacy_name");
+        patientFound = rs.getObject("patient_id") != null;
+        patientName = rs.getString("patient_name");
+        long drugId = rs.getLong("drug_id");
+        if (!rs.wasNull()) {
+          requestedDrugs.put(drugId, new RequestedDrug(drugId, rs.getString("drug_name"),
+              rs.getString("manufacturer"), rs.getString("batch_number"),
+              rs.getInt("available_stock")));
+        }
+      }
+      return new PrescriptionValidation(pharmacyFound, pharmacyName, patientFound, patientName,
+          requestedDrugs);
+    };
+    return jdbcTemplate.query(LOAD_VALIDATION_SQL, extractor, pharmacyId, patientId,
+        drugIds.toArray(new Long[0]));
+  }
+}
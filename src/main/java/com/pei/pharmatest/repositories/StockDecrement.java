@@ -0,0 +1,25 @@
+package com.pei.pharmatest.repositories;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A quantity of a single drug to take out of stock. Used by the set-based stock mutation API so
+ * that callers do not need to load or modify {@code Drug} entities.
+ */
+@Getter
+@AllArgsConstructor
+public class StockDecrement {
+
+  private final long drugId;
+  private final int quantity;
+
+  /**
+   * Number of stock shards of the drug, or zero when its stock is not sharded.
+   */
+  private final int stockShards;
+
+  public StockDecrement(long drugId, int quantity) {
+    this(drugId, quantity, 0);
+  }
+}
@@ -0,0 +1,35 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Repository fragment for set-based operations on stock reservations. Every method returns the
+ * affected quantities summed per drug ID, which is what the in-memory ledger needs to stay in sync.
+ */
+public interface StockReservationBulkRepository {
+
+  /**
+   * Deletes all reservations held for a prescription.
+   *
+   * @param prescriptionId The prescription ID
+   * @return The released quantity per drug ID
+   */
+  Map<Long, Integer> deleteByPrescriptionId(long prescriptionId);
+
+  /**
+   * Deletes all reservations that expired before the given time.
+   *
+   * @param now The current time
+   * @return The released quantity per drug ID
+   */
+  Map<Long, Integer> deleteExpired(LocalDateTime now);
+
+  /**
+   * Sums the quantities of all reservations that are still active at the given time.
+   *
+   * @param now The current time
+   * @return The reserved quantity per drug ID
+   */
+  Map<Long, Integer> sumActiveByDrug(LocalDateTime now);
+}
@@ -0,0 +1,57 @@
+package com.pei.pharmatest.repositories;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * JDBC implementation of {@link StockReservationBulkRepository}. Deletes use {@code RETURNING} so
+ * that the released quantities come back in the same round trip.
+ */
+public class StockReservationBulkRepositoryImpl implements StockReservationBulkRepository {
+
+  private static final String DELETE_BY_PRESCRIPTION_SQL =
+      "WITH released AS (DELETE FROM stock_reservations WHERE prescription_id = ? "
+          + "RETURNING drug_id, quantity) "
+          + "SELECT drug_id, SUM(quantity) AS quantity FROM released GROUP BY drug_id";
+
+  private static final String DELETE_EXPIRED_SQL =
+      "WITH released AS (DELETE FROM stock_reservations WHERE expires_at < ? "
+          + "RETURNING drug_id, quantity) "
+          + "SELECT drug_id, SUM(quantity) AS quantity FROM released GROUP BY drug_id";
+
+  private static final String SUM_ACTIVE_SQL =
+      "SELECT drug_id, SUM(quantity) AS quantity FROM stock_reservations "
+          + "WHERE expires_at >= ? GROUP BY drug_id";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public StockReservationBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public Map<Long, Integer> deleteByPrescriptionId(long prescriptionId) {
+    return quantitiesByDrug(DELETE_BY_PRESCRIPTION_SQL, prescriptionId);
+  }
+
+  @Override
+  public Map<Long, Integer> deleteExpired(LocalDateTime now) {
+    return quantitiesByDrug(DELETE_EXPIRED_SQL, now);
+  }
+
+  @Override
+  public Map<Long, Integer> sumActiveByDrug(LocalDateTime now) {
+    return quantitiesByDrug(SUM_ACTIVE_SQL, now);
+  }
+
+  private Map<Long, Integer> quantitiesByDrug(String sql, Object parameter) {
+    Map<Long, Integer> quantities = new HashMap<>();
+    RowCallbackHandler collector =
+        rs -> quantities.put(rs.getLong("drug_id"), rs.getInt("quantity"));
+    jdbcTemplate.query(sql, collector, parameter);
+    return quantities;
+  }
+}
@@ -0,0 +1,9 @@
+package com.pei.pharmatest.repositories;
+
+import com.pei.pharmatest.entities.StockReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long>,
+    StockReservationBulkRepository {
+
+}
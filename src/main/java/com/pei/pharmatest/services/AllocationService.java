@@ -0,0 +1,66 @@
+package com.pei.pharmatest.services;
+
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Service interface for tracking how much of a pharmacy's drug allocation has been dispensed.
+ */
+public interface AllocationService {
+
+  /**
+   * Returns whether a pharmacy has contracted a drug, from the in-memory contract index.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param drugId     The drug ID
+   * @return Whether the contract exists
+   */
+  boolean isContracted(long pharmacyId, long drugId);
+
+  /**
+   * Returns the part of a contract's allocation that has not been consumed yet, from the
+   * in-memory contract index.
+   *
+   * @param pharmacyId The pharmacy ID
+   * @param drugId     The drug ID
+   * @return The remaining allocation, or zero if the drug is not contracted
+   */
+  long remainingAllocation(long pharmacyId, long drugId);
+
+  /**
+   * Consumes allocation for dispensed drugs. Either all quantities are consumed or none of them,
+   * and the consumption is given back if the current transaction rolls back.
+   *
+   * @param pharmacyId The ID of the dispensing pharmacy
+   * @param quantities The dispensed quantity per drug ID
+   * @return The ID of a drug whose allocation would be exceeded, or empty if all was consumed
+   */
+  Optional<Long> consume(Long pharmacyId, Map<Long, Integer> quantities);
+
+  /**
+   * Locks the stored allocations of the given contracts in pharmacy and drug order, when
+   * consumption takes row locks at all. Fulfillments consume allocation before they touch stock,
+   * so a caller that locks stock up front takes these locks first to keep the same order.
+   *
+   * @param contracts The contracts about to be consumed from
+   */
+  void lockAllocations(Collection<PharmacyDrugId> contracts);
+
+  /**
+   * Persists consumption that has only been recorded in memory so far.
+   */
+  void checkpoint();
+
+  /**
+   * Rebuilds the in-memory contract index from the stored contracts.
+   */
+  void refreshContracts();
+
+  /**
+   * Rebuilds the in-memory contract index if the pharmacies or contracts changed since it was last
+   * built.
+   */
+  void refreshContractsIfChanged();
+}
@@ -0,0 +1,13 @@
+package com.pei.pharmatest.services;
+
+/**
+ * Service interface for moving aged audit logs out of the database into the audit log archive.
+ */
+public interface AuditLogArchiveService {
+
+  /**
+   * Writes the audit logs older than the configured age to archive segments and deletes them from
+   * the database. Deletions left unfinished by an earlier run are completed first.
+   */
+  void archive();
+}
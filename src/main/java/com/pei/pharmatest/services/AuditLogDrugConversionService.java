@@ -0,0 +1,15 @@
+package com.pei.pharmatest.services;
+
+/**
+ * Service interface for converting the drug lists of existing audit logs from JSON documents to
+ * the compact encoding.
+ */
+public interface AuditLogDrugConversionService {
+
+  /**
+   * Converts the next batch of audit logs created before the application started, oldest first.
+   * Does nothing unless new audit logs are written in the compact encoding and conversion is
+   * enabled, or once every audit log has been visited.
+   */
+  void convertBatch();
+}
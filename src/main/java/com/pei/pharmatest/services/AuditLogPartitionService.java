@@ -0,0 +1,14 @@
+package com.pei.pharmatest.services;
+
+/**
+ * Service interface for the monthly partitions of the audit log. Partitions are created ahead of
+ * the months they cover, and months past the retention period are removed as a whole.
+ */
+public interface AuditLogPartitionService {
+
+  /**
+   * Creates the partitions of the current and the coming months, then detaches, and unless
+   * configured to keep them drops, the partitions of months past the retention period.
+   */
+  void maintainPartitions();
+}
@@ -1,9 +1,73 @@
 package com.pei.pharmatest.services;
 
+import com.pei.pharmatest.dto.AuditLogScrollResponse;
 import com.pei.pharmatest.entities.AuditLog;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 public interface AuditLogService {
     Page<AuditLog> getAuditLogs(Long patientId, Long pharmacyId, String status, Pageable pageable);
+
+    /**
+     * Reads one page of audit logs created in a date range. The audit log is partitioned by
+     * month, and only the months the range covers are read.
+     *
+     * @param drugId The ID of a drug the prescription requested, or null for any
+     * @param from The earliest creation time, inclusive, or null for no lower bound
+     * @param to   The latest creation time, exclusive, or null for no upper bound
+     */
+    Page<AuditLog> getAuditLogs(Long patientId, Long pharmacyId, Long drugId, String status,
+            LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    /**
+     * Reads one page of audit logs by page number without counting the matching rows.
+     */
+    Slice<AuditLog> getAuditLogSlice(Long patientId, Long pharmacyId, Long drugId,
+            String status, LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    /**
+     * Reads one page of audit logs by page number with a total estimated from planner statistics
+     * instead of counted.
+     */
+    Page<AuditLog> getAuditLogsWithEstimatedTotal(Long patientId, Long pharmacyId, Long drugId,
+            String status, LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    /**
+     * Reads the audit logs that follow a cursor, newest first, seeking on {@code (created_at, id)}
+     * so that every page costs the same however deep it is.
+     *
+     * @param drugId        The ID of a drug the prescription requested, or null for any
+     * @param from          The earliest creation time, inclusive, or null for no lower bound
+     * @param to            The latest creation time, exclusive, or null for no upper bound
+     * @param cursor        The cursor returned with the previous page, or null for the first page
+     * @param size          The maximum number of audit logs to return
+     * @param estimateTotal Whether to include a total estimated from planner statistics
+     */
+    AuditLogScrollResponse scrollAuditLogs(Long patientId, Long pharmacyId, Long drugId,
+            String status, LocalDateTime from, LocalDateTime to, String cursor, int size,
+            boolean estimateTotal);
+
+    /**
+     * Streams every audit log matching the filters to the sink, newest first, without holding
+     * more than one fetch of them in memory. Audit logs from the archive follow those from the
+     * database.
+     *
+     * @param drugId The ID of a drug the prescription requested, or null for any
+     * @param from   The earliest creation time, inclusive, or null for no lower bound
+     * @param to     The latest creation time, exclusive, or null for no upper bound
+     * @param sink   Receives each audit log
+     */
+    void exportAuditLogs(Long patientId, Long pharmacyId, Long drugId, String status,
+            LocalDateTime from, LocalDateTime to, Consumer<AuditLog> sink);
+
+    /**
+     * Checks the filters of an export before it starts, so that invalid ones are rejected with an
+     * error status rather than part way through a streamed response.
+     *
+     * @throws com.pei.pharmatest.exceptions.ValidationException if a filter is invalid
+     */
+    void validateFilters(String status, LocalDateTime from, LocalDateTime to);
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.pei.pharmatest.services;
+
+import com.pei.pharmatest.dto.AuditLogStatsResponse;
+
+/**
+ * Service interface for the audit log statistics, which are kept up to date as audit logs are
+ * recorded instead of being counted from the audit log on request.
+ */
+public interface AuditLogStatisticsService {
+
+  /**
+   * Returns the statistics from the in-memory counters.
+   *
+   * @param hours The number of hours, up to and including the current one, to list per hour
+   * @return The statistics
+   * @throws com.pei.pharmatest.exceptions.ValidationException if hours is out of range
+   */
+  AuditLogStatsResponse getStatistics(int hours);
+
+  /**
+   * Checks the number of hours to list per hour without reading the statistics.
+   *
+   * @param hours The number of hours
+   * @throws com.pei.pharmatest.exceptions.ValidationException if hours is out of range
+   */
+  void validateHours(int hours);
+
+  /**
+   * Adds the audit logs counted since the last checkpoint to the rollup table.
+   */
+  void checkpoint();
+
+  /**
+   * Checkpoints and then reloads the counters from the rollup table, so that counts checkpointed
+   * by other instances, and a rebuild made by one of them, are served here as well.
+   */
+  void reloadStatistics();
+
+  /**
+   * Counts the audit logs in the database and the archive afresh and replaces both the counters
+   * and the rollup table with the result.
+   */
+  void rebuildStatistics();
+}
@@ -18,6 +18,15 @@ public interface DrugService {
    */
   Optional<DrugResponse> getDrug(Long id);
 
+  /**
+   * Reads the current version of a drug and its stock without loading the drug. The version
+   * changes with every update of the drug or its stock.
+   *
+   * @param id The ID of the drug
+   * @return An Optional containing the version if the drug exists, empty otherwise
+   */
+  Optional<String> getDrugVersion(Long id);
+
   /**
    * Adds a new drug to the system.
    *
@@ -26,4 +35,16 @@ public interface DrugService {
    * @throws IllegalArgumentException if the request validation fails
    */
   DrugResponse addDrug(DrugRequest request);
-}
\ No newline at end of file
+
+  /**
+   * Splits the stock of a drug across the given number of shards, so that concurrent
+   * fulfillments of a heavily prescribed drug do not all queue on one row. A shard count of zero
+   * moves the stock back into a single counter.
+   *
+   * @param id         The ID of the drug
+   * @param shardCount The number of stock shards, or zero to stop sharding
+   * @return An Optional containing the updated drug response if found, empty otherwise
+   * @throws com.pei.pharmatest.exceptions.ValidationException if the shard count is out of range
+   */
+  Optional<DrugResponse> shardStock(Long id, int shardCount);
+}
@@ -1,7 +1,9 @@
 package com.pei.pharmatest.services;
 
 import java.util.List;
+import java.util.function.Consumer;
 import com.pei.pharmatest.dto.PharmacyResponse;
+import com.pei.pharmatest.dto.PrescriptionBatchItemResponse;
 import com.pei.pharmatest.dto.PrescriptionRequest;
 import com.pei.pharmatest.dto.PrescriptionResponse;
 import com.pei.pharmatest.exceptions.BusinessException;
@@ -15,11 +17,54 @@ import com.pei.pharmatest.exceptions.ValidationException;
 public interface PharmacyService {
 
   /**
-   * Retrieves all pharmacies in the system.
+   * Retrieves all pharmacies in ID order.
    *
-   * @return A list of pharmacy responses
+   * @param includeContracts Whether to include the contracted drugs of each pharmacy; when false,
+   *                         the contracted drugs of each pharmacy are left null
+   * @return All pharmacies
    */
-  List<PharmacyResponse> getAllPharmacies();
+  List<PharmacyResponse> getAllPharmacies(boolean includeContracts);
+
+  /**
+   * Reads the current version of the full pharmacy list without loading it. The version changes
+   * whenever the list returned by {@link #getAllPharmacies} would change.
+   *
+   * @param includeContracts Whether the list includes the contracted drugs of each pharmacy
+   * @return The version of the list
+   */
+  String getAllPharmaciesVersion(boolean includeContracts);
+
+  /**
+   * Retrieves one page of pharmacies in ID order.
+   *
+   * @param afterId The last pharmacy ID of the previous page, or null for the first page
+   * @param size The maximum number of pharmacies to return
+   * @param includeContracts Whether to include the contracted drugs of each pharmacy; when false,
+   *                         the contracted drugs of each pharmacy are left null
+   * @return The pharmacies of the page
+   * @throws ValidationException if the page size is out of range
+   */
+  List<PharmacyResponse> getPharmacies(Long afterId, int size, boolean includeContracts);
+
+  /**
+   * Reads the current version of one page of pharmacies without loading it. The version changes
+   * whenever the content of the page returned by {@link #getPharmacies} would change.
+   *
+   * @param afterId The last pharmacy ID of the previous page, or null for the first page
+   * @param size The maximum number of pharmacies to return
+   * @param includeContracts Whether the page includes the contracted drugs of each pharmacy
+   * @return The version of the page
+   * @throws ValidationException if the page size is out of range
+   */
+  String getPharmaciesVersion(Long afterId, int size, boolean includeContracts);
+
+  /**
+   * Streams all pharmacies with their contracted drugs in ID order. Each pharmacy is handed to the
+   * sink as soon as it has been read, so the catalog is never held in memory as a whole.
+   *
+   * @param sink Receives each pharmacy with its contracted drugs
+   */
+  void exportPharmacies(Consumer<PharmacyResponse> sink);
 
   /**
    * Creates a prescription for a patient at a specific pharmacy. Validates that: 1. The pharmacy
@@ -35,6 +80,20 @@ public interface PharmacyService {
    */
   PrescriptionResponse createPrescription(Long pharmacyId, PrescriptionRequest request);
 
+  /**
+   * Creates several prescriptions at a specific pharmacy. Each request is validated like in
+   * {@link #createPrescription(Long, PrescriptionRequest)}; invalid requests are skipped and
+   * reported instead of failing the whole batch.
+   *
+   * @param pharmacyId The ID of the pharmacy
+   * @param requests The prescription requests
+   * @return One result per request, in request order
+   * @throws ValidationException if the batch is empty or too large
+   * @throws ResourceNotFoundException if the pharmacy is not found
+   */
+  List<PrescriptionBatchItemResponse> createPrescriptions(Long pharmacyId,
+      List<PrescriptionRequest> requests);
+
   /**
    * Fulfills a prescription by dispensing the prescribed drugs. Updates the prescription status and
    * reduces drug stock accordingly.
@@ -45,4 +104,25 @@ public interface PharmacyService {
    * @throws BusinessException if prescription cannot be fulfilled
    */
   PrescriptionResponse fulfillPrescription(Long prescriptionId);
+
+  /**
+   * Fulfills several prescriptions together. Each prescription is checked like in
+   * {@link #fulfillPrescription(Long)}; prescriptions that cannot be fulfilled are skipped and
+   * reported instead of failing the whole batch.
+   *
+   * @param prescriptionIds The IDs of the prescriptions to fulfill, in priority order
+   * @return One result per prescription ID, in request order
+   * @throws ValidationException if the batch is empty or too large
+   */
+  List<PrescriptionBatchItemResponse> fulfillPrescriptions(List<Long> prescriptionIds);
+
+  /**
+   * Cancels a prescription that has not been fulfilled yet.
+   *
+   * @param prescriptionId The ID of the prescription to cancel
+   * @return The updated prescription details
+   * @throws ResourceNotFoundException if prescription not found
+   * @throws BusinessException if prescription has already been fulfilled or cancelled
+   */
+  PrescriptionResponse cancelPrescription(Long prescriptionId);
 }
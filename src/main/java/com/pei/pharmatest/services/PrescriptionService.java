@@ -2,6 +2,8 @@ package com.pei.pharmatest.services;
 
 import com.pei.pharmatest.dto.PrescriptionRequest;
 import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache.CachedResponse;
+import java.util.Optional;
 
 /**
  * Service interface for managing prescriptions in the system. Provides operations for creating and
@@ -25,4 +27,23 @@ public interface PrescriptionService {
    * @return The prescription details
    */
   PrescriptionResponse getPrescription(Long id);
-}
\ No newline at end of file
+
+  /**
+   * Reads the current status of a prescription without loading it.
+   *
+   * @param id The prescription ID
+   * @return The status
+   * @throws com.pei.pharmatest.exceptions.ResourceNotFoundException If the prescription is not
+   *                                                                  found
+   */
+  String getPrescriptionStatus(Long id);
+
+  /**
+   * Returns the serialized response of a fulfilled or cancelled prescription if it is cached,
+   * without reading the database.
+   *
+   * @param id The prescription ID
+   * @return The serialized response with its ETag, if cached
+   */
+  Optional<CachedResponse> getCachedPrescription(Long id);
+}
@@ -0,0 +1,60 @@
+package com.pei.pharmatest.services;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Service interface for time-limited stock reservations. A reservation holds stock for a
+ * prescription from creation until it is fulfilled, cancelled or expires.
+ */
+public interface StockReservationService {
+
+  /**
+   * Holds stock for a new prescription. Either all quantities are held or none of them.
+   *
+   * @param prescriptionId The ID of the prescription the stock is held for
+   * @param quantities     The quantity to hold per drug ID
+   * @param stockOnHand    The current stock per drug ID
+   * @return The ID of a drug without enough unreserved stock, or empty if the stock is held
+   */
+  Optional<Long> reserve(Long prescriptionId, Map<Long, Integer> quantities,
+      Map<Long, Integer> stockOnHand);
+
+  /**
+   * Holds stock for a new prescription that is not saved yet. Either all quantities are held or
+   * none of them. The holds are only kept in memory, and released if the transaction rolls back,
+   * until {@link #recordHolds} persists them for the saved prescription.
+   *
+   * @param quantities  The quantity to hold per drug ID
+   * @param stockOnHand The current stock per drug ID
+   * @return The ID of a drug without enough unreserved stock, or empty if the stock is held
+   */
+  Optional<Long> hold(Map<Long, Integer> quantities, Map<Long, Integer> stockOnHand);
+
+  /**
+   * Persists holds placed with {@link #hold} once their prescriptions are saved, with batched
+   * inserts.
+   *
+   * @param quantitiesByPrescription The held quantity per drug ID, per prescription ID
+   */
+  void recordHolds(Map<Long, Map<Long, Integer>> quantitiesByPrescription);
+
+  /**
+   * Turns the holds of a prescription into the stock decrement made by the current transaction.
+   *
+   * @param prescriptionId The ID of the fulfilled prescription
+   */
+  void consume(Long prescriptionId);
+
+  /**
+   * Releases the holds of a prescription that will not be fulfilled.
+   *
+   * @param prescriptionId The ID of the cancelled prescription
+   */
+  void release(Long prescriptionId);
+
+  /**
+   * Releases all holds whose time limit has passed.
+   */
+  void releaseExpired();
+}
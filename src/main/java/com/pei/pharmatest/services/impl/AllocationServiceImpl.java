@@ -0,0 +1,196 @@
+package com.pei.pharmatest.services.impl;
+
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import com.pei.pharmatest.inventory.AllocationCounterTable;
+import com.pei.pharmatest.inventory.ContractIndex;
+import com.pei.pharmatest.inventory.TransactionCallbacks;
+import com.pei.pharmatest.repositories.PharmacyDrugAllocation;
+import com.pei.pharmatest.repositories.PharmacyDrugRepository;
+import com.pei.pharmatest.services.AllocationService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Implementation of the AllocationService interface. In {@link Mode#LOCAL} mode, allocation is
+ * enforced against the in-memory {@link AllocationCounterTable} and checkpointed to the
+ * {@code consumed_amount} column in the background, which is only correct while a single node
+ * dispenses for a pharmacy. {@link Mode#DATABASE} mode consumes allocation with conditional
+ * updates instead, so several nodes can share the allocations. Contract and allocation checks at
+ * prescription creation read the {@link ContractIndex}, which is rebuilt in the background as
+ * soon as the catalog version shows a change to the contracts, and periodically to pick up
+ * consumption committed on other nodes.
+ */
+@Service
+public class AllocationServiceImpl implements AllocationService {
+
+  private static final Logger logger = LoggerFactory.getLogger(AllocationServiceImpl.class);
+
+  /**
+   * Where allocation consumption is enforced.
+   */
+  public enum Mode {
+    LOCAL,
+    DATABASE
+  }
+
+  private final PharmacyDrugRepository pharmacyDrugRepository;
+  private final AllocationCounterTable counters;
+  private final ContractIndex contractIndex;
+  private final TransactionTemplate readTransaction;
+  private final Mode mode;
+
+  private volatile long catalogVersion = -1;
+
+  /**
+   * Constructs a new AllocationServiceImpl with the required dependencies.
+   *
+   * @param pharmacyDrugRepository The repository for pharmacy drug operations
+   * @param counters The in-memory table of consumed allocations
+   * @param contractIndex The in-memory index of contracts used for checks at creation
+   * @param transactionManager The transaction manager for reading the contracts
+   * @param mode Where allocation consumption is enforced
+   */
+  public AllocationServiceImpl(PharmacyDrugRepository pharmacyDrugRepository,
+      AllocationCounterTable counters, ContractIndex contractIndex,
+      PlatformTransactionManager transactionManager,
+      @Value("${pharma.allocations.mode:local}") Mode mode) {
+    this.pharmacyDrugRepository = pharmacyDrugRepository;
+    this.counters = counters;
+    this.contractIndex = contractIndex;
+    this.readTransaction = new TransactionTemplate(transactionManager);
+    this.readTransaction.setReadOnly(true);
+    this.mode = mode;
+  }
+
+  @Override
+  public boolean isContracted(long pharmacyId, long drugId) {
+    return contractIndex.isContracted(pharmacyId, drugId);
+  }
+
+  @Override
+  public long remainingAllocation(long pharmacyId, long drugId) {
+    return contractIndex.remainingAllocation(pharmacyId, drugId);
+  }
+
+  @Override
+  public Optional<Long> consume(Long pharmacyId, Map<Long, Integer> quantities) {
+    if (mode == Mode.DATABASE) {
+      List<Long> exceeded = pharmacyDrugRepository.consumeAllocations(pharmacyId, quantities);
+      if (exceeded.isEmpty()) {
+        TransactionCallbacks.afterCommit(() -> quantities.forEach((drugId, quantity) ->
+            contractIndex.addConsumed(pharmacyId, drugId, quantity)));
+        return Optional.empty();
+      }
+      // Undo the updates that did apply, so a rejected prescription consumes nothing even when
+      // the caller carries on with the transaction
+      Map<PharmacyDrugId, Long> applied = new HashMap<>();
+      quantities.forEach((drugId, quantity) -> {
+        if (!exceeded.contains(drugId)) {
+          applied.put(new PharmacyDrugId(pharmacyId, drugId), (long) -quantity);
+        }
+      });
+      if (!applied.isEmpty()) {
+        pharmacyDrugRepository.addConsumedAmounts(applied);
+      }
+      return Optional.of(exceeded.get(0));
+    }
+
+    Map<Long, PharmacyDrugAllocation> allocations = pharmacyDrugRepository
+        .findAllocations(pharmacyId, quantities.keySet()).stream()
+        .collect(Collectors.toMap(PharmacyDrugAllocation::getDrugId, Function.identity()));
+    Map<PharmacyDrugId, Integer> consumed = new HashMap<>();
+    for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+      PharmacyDrugAllocation allocation = allocations.get(entry.getKey());
+      PharmacyDrugId id = new PharmacyDrugId(pharmacyId, entry.getKey());
+      if (allocation == null || !counters.tryConsume(id, allocation.getAllocatedAmount(),
+          entry.getValue(), allocation::getConsumedAmount)) {
+        consumed.forEach(counters::refund);
+        return Optional.of(entry.getKey());
+      }
+      consumed.put(id, entry.getValue());
+    }
+
+    TransactionCallbacks.afterRollback(() -> consumed.forEach(counters::refund));
+    TransactionCallbacks.afterCommit(() -> consumed.forEach((id, quantity) -> {
+      counters.recordCommitted(id, quantity);
+      contractIndex.addConsumed(id.getPharmacyId(), id.getDrugId(), quantity);
+    }));
+    return Optional.empty();
+  }
+
+  @Override
+  public void lockAllocations(Collection<PharmacyDrugId> contracts) {
+    // Local consumption only reads the stored allocations
+    if (mode == Mode.DATABASE && !contracts.isEmpty()) {
+      pharmacyDrugRepository.lockAllocations(contracts);
+    }
+  }
+
+  @Override
+  @PreDestroy
+  @Scheduled(fixedDelayString = "${pharma.allocations.checkpoint-interval:PT5S}")
+  public void checkpoint() {
+    if (mode == Mode.DATABASE) {
+      return;
+    }
+    Map<PharmacyDrugId, Long> deltas = counters.drainUnflushed();
+    if (deltas.isEmpty()) {
+      return;
+    }
+    try {
+      pharmacyDrugRepository.addConsumedAmounts(deltas);
+    } catch (RuntimeException e) {
+      counters.restoreUnflushed(deltas);
+      logger.warn("Failed to checkpoint allocation consumption, will retry", e);
+    }
+  }
+
+  /**
+   * Rebuilds the contract index. In {@link Mode#LOCAL} mode, committed consumption is checkpointed
+   * first, so that the stored consumed amounts the index is rebuilt from include it. The catalog
+   * version is read before the contracts, so a change committed in between triggers one more
+   * rebuild rather than being missed.
+   */
+  @Override
+  @PostConstruct
+  @Scheduled(fixedDelayString = "${pharma.contracts.refresh-interval:PT1M}")
+  public void refreshContracts() {
+    checkpoint();
+    ContractIndex.Builder builder = new ContractIndex.Builder();
+    // Within a transaction, so that the driver fetches the rows in batches instead of all at once
+    Long version = readTransaction.execute(status -> {
+      long current = pharmacyDrugRepository.findCatalogVersion();
+      pharmacyDrugRepository.forEachContract(builder::add);
+      return current;
+    });
+    contractIndex.replaceAll(builder);
+    catalogVersion = version;
+    logger.debug("Loaded {} contracts into the contract index", contractIndex.size());
+  }
+
+  /**
+   * Polls the one-row catalog version, which the database bumps on every change to the pharmacies
+   * and contracts, and rebuilds the contract index only when it moved.
+   */
+  @Override
+  @Scheduled(fixedDelayString = "${pharma.contracts.version-poll-interval:PT1S}")
+  public void refreshContractsIfChanged() {
+    if (pharmacyDrugRepository.findCatalogVersion() != catalogVersion) {
+      refreshContracts();
+    }
+  }
+}
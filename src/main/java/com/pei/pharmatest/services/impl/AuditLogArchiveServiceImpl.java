@@ -0,0 +1,183 @@
+package com.pei.pharmatest.services.impl;
+
+import com.pei.pharmatest.audit.AuditLogArchive;
+import com.pei.pharmatest.audit.AuditLogDrugCodec;
+import com.pei.pharmatest.audit.AuditLogSegment;
+import com.pei.pharmatest.audit.AuditLogSegmentWriter;
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import com.pei.pharmatest.services.AuditLogArchiveService;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Implementation of the AuditLogArchiveService interface. Aged rows are read by keyset one block
+ * at a time, each block in a short read-only transaction, into segments of about the configured
+ * number of rows. Each segment is published as soon as it is complete, and its rows are then
+ * deleted from the database one block at a time, each block in a short transaction of its own,
+ * so that no lock, transaction or snapshot is held for the whole run.
+ */
+@Service
+public class AuditLogArchiveServiceImpl implements AuditLogArchiveService {
+
+  private static final Logger logger = LoggerFactory.getLogger(AuditLogArchiveServiceImpl.class);
+
+  private final AuditLogRepository auditLogRepository;
+  private final AuditLogArchive auditLogArchive;
+  private final AuditLogDrugCodec drugCodec;
+  private final TransactionTemplate readTransaction;
+  private final TransactionTemplate deleteTransaction;
+  private final boolean enabled;
+  private final Duration age;
+  private final int segmentRows;
+  private final int blockRows;
+
+  /**
+   * Constructs a new AuditLogArchiveServiceImpl with the required dependencies.
+   *
+   * @param auditLogRepository The repository for audit log operations
+   * @param auditLogArchive    The archive the segments are published to
+   * @param drugCodec          The codec expanding compact drug lists before they are archived
+   * @param transactionManager The transaction manager for reading and deleting rows
+   * @param enabled            Whether aged audit logs are archived at all
+   * @param age                The age after which audit logs are archived
+   * @param segmentRows        The number of rows after which a new segment is started
+   * @param blockRows          The number of rows per compressed block, per read and per
+   *                           delete
+   */
+  public AuditLogArchiveServiceImpl(AuditLogRepository auditLogRepository,
+      AuditLogArchive auditLogArchive, AuditLogDrugCodec drugCodec,
+      PlatformTransactionManager transactionManager,
+      @Value("${pharma.audit.archive.enabled:false}") boolean enabled,
+      @Value("${pharma.audit.archive.age:P90D}") Duration age,
+      @Value("${pharma.audit.archive.segment-rows:1000000}") int segmentRows,
+      @Value("${pharma.audit.archive.block-rows:1000}") int blockRows) {
+    this.auditLogRepository = auditLogRepository;
+    this.auditLogArchive = auditLogArchive;
+    this.drugCodec = drugCodec;
+    this.readTransaction = new TransactionTemplate(transactionManager);
+    this.readTransaction.setReadOnly(true);
+    this.deleteTransaction = new TransactionTemplate(transactionManager);
+    this.deleteTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.enabled = enabled;
+    this.age = age;
+    this.segmentRows = segmentRows;
+    this.blockRows = blockRows;
+  }
+
+  @Override
+  @Scheduled(fixedDelayString = "${pharma.audit.archive.interval:PT6H}",
+      initialDelayString = "${pharma.audit.archive.initial-delay:PT5M}")
+  public synchronized void archive() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      for (AuditLogSegment segment : auditLogArchive.getSegmentsPendingDeletion()) {
+        deleteArchivedRows(segment);
+      }
+
+      ArchiveRun run = new ArchiveRun(LocalDateTime.now().minus(age));
+      try {
+        // A snapshot held across the whole history would keep vacuum from reclaiming even the
+        // rows deleted here, so each block is read in a transaction of its own
+        List<ArchivedAuditLog> rows;
+        do {
+          ArchivedAuditLog last = run.lastRow;
+          rows = readTransaction.execute(status -> auditLogRepository.findCreatedBefore(
+              run.cutoff, last == null ? null : last.getCreatedAt(),
+              last == null ? 0 : last.getId(), blockRows));
+          rows.forEach(run::add);
+        } while (rows.size() == blockRows);
+        run.finish();
+      } finally {
+        run.abort();
+      }
+      if (run.archived > 0) {
+        logger.info("Archived {} audit logs created before {}", run.archived, run.cutoff);
+      }
+    } catch (IOException | UncheckedIOException | DataAccessException e) {
+      // Published segments stay pending deletion and are completed by the next run
+      logger.warn("Archiving audit logs failed", e);
+    }
+  }
+
+  private void deleteArchivedRows(AuditLogSegment segment) throws IOException {
+    segment.forEachBlock(rows -> {
+      long[] ids = rows.stream().mapToLong(ArchivedAuditLog::getId).toArray();
+      deleteTransaction.executeWithoutResult(status -> auditLogRepository.deleteArchived(ids,
+          rows.get(0).getCreatedAt(), rows.get(rows.size() - 1).getCreatedAt()));
+    });
+    auditLogArchive.markDeleted(segment);
+  }
+
+  /**
+   * State of one archiving run: the segment being written and the rows archived so far.
+   */
+  private final class ArchiveRun {
+
+    private final LocalDateTime cutoff;
+    private Path file;
+    private AuditLogSegmentWriter writer;
+    private ArchivedAuditLog lastRow;
+    private long archived;
+
+    private ArchiveRun(LocalDateTime cutoff) {
+      this.cutoff = cutoff;
+    }
+
+    private void add(ArchivedAuditLog row) {
+      try {
+        // Segments end between two creation times, so that each one covers everything before
+        // the first row of the next
+        if (writer != null && writer.getRowCount() >= segmentRows
+            && row.getCreatedAt().isAfter(lastRow.getCreatedAt())) {
+          publish(row.getCreatedAt());
+        }
+        if (writer == null) {
+          file = auditLogArchive.newSegmentFile();
+          writer = new AuditLogSegmentWriter(file, blockRows);
+        }
+        // Segments hold JSON text only, whatever the encoding in the database
+        writer.add(drugCodec.expand(row));
+        lastRow = row;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void finish() throws IOException {
+      if (writer != null) {
+        publish(cutoff);
+      }
+    }
+
+    private void abort() throws IOException {
+      if (writer != null) {
+        writer.close();
+        writer = null;
+      }
+    }
+
+    private void publish(LocalDateTime coveredBefore) throws IOException {
+      writer.finish(coveredBefore);
+      writer = null;
+      AuditLogSegment segment = auditLogArchive.publish(file);
+      archived += segment.getRowCount();
+      deleteArchivedRows(segment);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.pei.pharmatest.services.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.audit.AuditLogDrugCodec;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
+import com.pei.pharmatest.dto.PrescriptionDrugResponse;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.AuditLogDrugLists;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import com.pei.pharmatest.services.AuditLogDrugConversionService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Implementation of the AuditLogDrugConversionService interface. Rows are visited in
+ * {@code (created_at, id)} order from a position kept in memory, one short transaction per batch,
+ * so that conversion runs alongside the audit log writer and the archive without holding locks
+ * for long. A restart starts over, skipping the rows already converted. Rows whose documents
+ * cannot be read are left as they are.
+ */
+@Service
+public class AuditLogDrugConversionServiceImpl implements AuditLogDrugConversionService {
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(AuditLogDrugConversionServiceImpl.class);
+
+  private static final TypeReference<List<PrescriptionDrugRequest>> DRUGS_REQUESTED =
+      new TypeReference<>() { };
+  private static final TypeReference<List<PrescriptionDrugResponse>> DRUGS_DISPENSED =
+      new TypeReference<>() { };
+
+  private final AuditLogRepository auditLogRepository;
+  private final AuditLogDrugCodec drugCodec;
+  private final ObjectMapper objectMapper;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final int batchSize;
+  private final LocalDateTime convertBefore = LocalDateTime.now();
+  private LocalDateTime lastCreatedAt;
+  private long lastId;
+  private long converted;
+  private boolean finished;
+
+  /**
+   * Constructs a new AuditLogDrugConversionServiceImpl with the required dependencies.
+   *
+   * @param auditLogRepository The repository for audit log operations
+   * @param drugCodec          The codec for the compact encoding
+   * @param objectMapper       The mapper for the JSON documents
+   * @param transactionManager The transaction manager for converting batches
+   * @param convertExisting    Whether existing audit logs are converted in compact mode
+   * @param batchSize          The number of audit logs converted per transaction
+   */
+  public AuditLogDrugConversionServiceImpl(AuditLogRepository auditLogRepository,
+      AuditLogDrugCodec drugCodec, ObjectMapper objectMapper,
+      PlatformTransactionManager transactionManager,
+      @Value("${pharma.audit.drugs.convert-existing:true}") boolean convertExisting,
+      @Value("${pharma.audit.drugs.convert-batch-size:1000}") int batchSize) {
+    this.auditLogRepository = auditLogRepository;
+    this.drugCodec = drugCodec;
+    this.objectMapper = objectMapper;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.enabled = convertExisting && drugCodec.isCompact();
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  @Scheduled(fixedDelayString = "${pharma.audit.drugs.convert-interval:PT1S}",
+      initialDelayString = "${pharma.audit.drugs.convert-initial-delay:PT1M}")
+  public synchronized void convertBatch() {
+    if (!enabled || finished) {
+      return;
+    }
+    try {
+      List<AuditLogDrugLists> rows = auditLogRepository.findDrugListsAfter(lastCreatedAt, lastId,
+          convertBefore, batchSize);
+      if (rows.isEmpty()) {
+        finished = true;
+        logger.info("Converted the drug lists of {} audit logs created before {}", converted,
+            convertBefore);
+        return;
+      }
+      List<AuditLog> compacted = new ArrayList<>(rows.size());
+      for (AuditLogDrugLists row : rows) {
+        AuditLog log = parse(row);
+        if (log != null) {
+          compacted.add(drugCodec.compact(log));
+        }
+      }
+      Integer updated = transactionTemplate.execute(
+          status -> auditLogRepository.compactDrugLists(compacted));
+      converted += updated == null ? 0 : updated;
+      AuditLogDrugLists last = rows.get(rows.size() - 1);
+      lastCreatedAt = last.getCreatedAt();
+      lastId = last.getId();
+    } catch (DataAccessException e) {
+      // The batch is read again by the next run
+      logger.warn("Converting audit log drug lists failed, will retry", e);
+    }
+  }
+
+  private AuditLog parse(AuditLogDrugLists row) {
+    AuditLog log = new AuditLog();
+    log.setId(row.getId());
+    log.setCreatedAt(row.getCreatedAt());
+    try {
+      log.setDrugsRequested(row.getDrugsRequested() == null ? null
+          : objectMapper.readValue(row.getDrugsRequested(), DRUGS_REQUESTED));
+      log.setDrugsDispensed(row.getDrugsDispensed() == null ? null
+          : objectMapper.readValue(row.getDrugsDispensed(), DRUGS_DISPENSED));
+      return log;
+    } catch (JsonProcessingException e) {
+      logger.warn("Skipping audit log {} with unreadable drug lists: {}", row.getId(),
+          e.getMessage());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.pei.pharmatest.services.impl;
+
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import com.pei.pharmatest.services.AuditLogPartitionService;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Implementation of the AuditLogPartitionService interface. Retention never deletes rows; a month
+ * leaves the audit log by detaching its partition, which takes a brief lock instead of a scan, and
+ * is then either dropped or left as a table of its own for archiving.
+ *
+ * <p>Creating and detaching a partition both need an ACCESS EXCLUSIVE lock on {@code audit_logs}.
+ * Each runs in its own transaction with a short {@code lock_timeout}, so a long-running query on
+ * the audit log makes the DDL give up and retry on the next run instead of queueing every audit
+ * read and write behind it. {@code DETACH PARTITION CONCURRENTLY} would avoid the exclusive lock,
+ * but PostgreSQL rejects it while the table has a default partition, which
+ * {@code audit_logs_default} is.
+ */
+@Service
+public class AuditLogPartitionServiceImpl implements AuditLogPartitionService {
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(AuditLogPartitionServiceImpl.class);
+
+  private final AuditLogRepository auditLogRepository;
+  private final int monthsAhead;
+  private final int retentionMonths;
+  private final boolean dropExpired;
+  private final TransactionTemplate ddlTransaction;
+  private final Duration lockTimeout;
+
+  /**
+   * Constructs a new AuditLogPartitionServiceImpl with the required dependencies.
+   *
+   * @param auditLogRepository The repository for audit log operations
+   * @param monthsAhead The number of months after the current one to create partitions for
+   * @param retentionMonths The number of months to keep, including the current one; zero keeps
+   *                        every month
+   * @param retentionAction {@code drop} to drop expired months, or {@code detach} to only detach
+   *                        them
+   * @param transactionManager The transaction manager for the partition DDL
+   * @param lockTimeout How long partition DDL waits for its lock before it is retried on the next
+   *                    run
+   */
+  public AuditLogPartitionServiceImpl(AuditLogRepository auditLogRepository,
+      @Value("${pharma.audit.partitions.months-ahead:3}") int monthsAhead,
+      @Value("${pharma.audit.retention-months:0}") int retentionMonths,
+      @Value("${pharma.audit.retention-action:drop}") String retentionAction,
+      PlatformTransactionManager transactionManager,
+      @Value("${pharma.audit.partitions.lock-timeout:PT2S}") Duration lockTimeout) {
+    if (!"drop".equals(retentionAction) && !"detach".equals(retentionAction)) {
+      throw new IllegalArgumentException(
+          "pharma.audit.retention-action must be drop or detach, not " + retentionAction);
+    }
+    this.auditLogRepository = auditLogRepository;
+    this.monthsAhead = monthsAhead;
+    this.retentionMonths = retentionMonths;
+    this.dropExpired = "drop".equals(retentionAction);
+    this.ddlTransaction = new TransactionTemplate(transactionManager);
+    this.lockTimeout = lockTimeout;
+  }
+
+  @Override
+  @PostConstruct
+  @Scheduled(fixedDelayString = "${pharma.audit.partitions.maintenance-interval:PT1H}")
+  public void maintainPartitions() {
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    for (int i = 0; i <= monthsAhead; i++) {
+      YearMonth month = current.plusMonths(i);
+      try {
+        ddlTransaction.executeWithoutResult(status -> {
+          auditLogRepository.setLocalLockTimeout(lockTimeout);
+          auditLogRepository.createMonthlyPartition(month);
+        });
+      } catch (DataAccessException e) {
+        // Rows of the month go to the default partition until a later run creates it; they stay
+        // readable there
+        logger.warn("Could not create the audit log partition of {}, will retry", month, e);
+      }
+    }
+
+    if (retentionMonths <= 0) {
+      return;
+    }
+    YearMonth firstKept = current.minusMonths(retentionMonths - 1L);
+    for (String partition : auditLogRepository.findPartitionsEndingBefore(firstKept)) {
+      try {
+        // Detached and dropped together, so a partition is never left detached by a failed drop
+        ddlTransaction.executeWithoutResult(status -> {
+          auditLogRepository.setLocalLockTimeout(lockTimeout);
+          auditLogRepository.detachPartition(partition);
+          if (dropExpired) {
+            auditLogRepository.dropDetachedPartition(partition);
+          }
+        });
+      } catch (DataAccessException e) {
+        logger.warn("Could not retire audit log partition {}, will retry", partition, e);
+        return;
+      }
+      if (dropExpired) {
+        logger.info("Dropped audit log partition {} past retention", partition);
+      } else {
+        logger.info("Detached audit log partition {} past retention", partition);
+      }
+    }
+  }
+}
@@ -1,29 +1,231 @@
 package com.pei.pharmatest.services.impl;
 
+import com.pei.pharmatest.audit.AuditLogArchive;
+import com.pei.pharmatest.audit.AuditLogArchiveQuery;
+import com.pei.pharmatest.audit.AuditLogDrugCodec;
+import com.pei.pharmatest.dto.AuditLogScrollResponse;
 import com.pei.pharmatest.entities.AuditLog;
 import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.repositories.AuditLogFunctionContributor;
 import com.pei.pharmatest.repositories.AuditLogRepository;
 import com.pei.pharmatest.services.AuditLogService;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Implementation of the AuditLogService interface. Audit logs created before the horizon of the
+ * {@link AuditLogArchive} are no longer in the database; listings by page with an exact total and
+ * scrolling by cursor read them from the archive, after the newer rows from the database.
+ * Database rows stored in the compact drug list encoding are expanded by the
+ * {@link AuditLogDrugCodec} before they are returned.
+ */
 @Service
 public class AuditLogServiceImpl implements AuditLogService {
 
+    private static final int MAX_SCROLL_SIZE = 1000;
+    private static final Sort SCROLL_ORDER =
+            Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+
     private final AuditLogRepository auditLogRepository;
+    private final AuditLogArchive auditLogArchive;
+    private final AuditLogDrugCodec drugCodec;
 
-    public AuditLogServiceImpl(AuditLogRepository auditLogRepository) {
+    public AuditLogServiceImpl(AuditLogRepository auditLogRepository,
+            AuditLogArchive auditLogArchive, AuditLogDrugCodec drugCodec) {
         this.auditLogRepository = auditLogRepository;
+        this.auditLogArchive = auditLogArchive;
+        this.drugCodec = drugCodec;
     }
 
     @Override
     public Page<AuditLog> getAuditLogs(Long patientId, Long pharmacyId, String status,
             Pageable pageable) {
+        return getAuditLogs(patientId, pharmacyId, null, status, null, null, pageable);
+    }
+
+    @Override
+    public Page<AuditLog> getAuditLogs(Long patientId, Long pharmacyId, Long drugId,
+            String status, LocalDateTime from, LocalDateTime to, Pageable pageable) {
         validatePageable(pageable);
         validateStatus(status);
+        validateRange(from, to);
+
+        LocalDateTime horizon = auditLogArchive.getHorizon();
+        if (!reachesArchive(horizon, from)) {
+            return auditLogRepository.findAll(
+                    filter(patientId, pharmacyId, drugId, status, from, to), pageable)
+                    .map(drugCodec::expand);
+        }
+
+        // Every archived row is older than every row left in the database, so newest first the
+        // archived rows follow the database rows
+        List<AuditLog> content = new ArrayList<>();
+        long recentTotal = 0;
+        if (to == null || to.isAfter(horizon)) {
+            Page<AuditLog> recent = auditLogRepository.findAll(
+                    filter(patientId, pharmacyId, drugId, status, horizon, to), pageable);
+            content.addAll(expand(recent.getContent()));
+            recentTotal = recent.getTotalElements();
+        }
+        AuditLogArchive.Matches archived = auditLogArchive.search(
+                archiveQuery(patientId, pharmacyId, drugId, status, from, to, horizon),
+                Math.max(0, pageable.getOffset() - recentTotal),
+                pageable.getPageSize() - content.size(), true);
+        content.addAll(archived.getContent());
+        return new PageImpl<>(content, pageable, recentTotal + archived.getTotal());
+    }
+
+    @Override
+    public Slice<AuditLog> getAuditLogSlice(Long patientId, Long pharmacyId, Long drugId,
+            String status, LocalDateTime from, LocalDateTime to, Pageable pageable) {
+        validatePageable(pageable);
+        validateStatus(status);
+        validateRange(from, to);
+
+        return auditLogRepository.findSlice(
+                filter(patientId, pharmacyId, drugId, status, from, to), pageable)
+                .map(drugCodec::expand);
+    }
+
+    @Override
+    public Page<AuditLog> getAuditLogsWithEstimatedTotal(Long patientId, Long pharmacyId,
+            Long drugId, String status, LocalDateTime from, LocalDateTime to,
+            Pageable pageable) {
+        Slice<AuditLog> slice =
+                getAuditLogSlice(patientId, pharmacyId, drugId, status, from, to, pageable);
+        long estimate = auditLogRepository.estimateCount(patientId, pharmacyId, drugId,
+                emptyToNull(status), from, to);
+        // Never report fewer rows than the pages read so far prove to exist
+        long seen = pageable.getOffset() + slice.getNumberOfElements() + (slice.hasNext() ? 1 : 0);
+        return new PageImpl<>(slice.getContent(), pageable, Math.max(estimate, seen));
+    }
+
+    @Override
+    public AuditLogScrollResponse scrollAuditLogs(Long patientId, Long pharmacyId, Long drugId,
+            String status, LocalDateTime from, LocalDateTime to, String cursor, int size,
+            boolean estimateTotal) {
+        if (size < 1 || size > MAX_SCROLL_SIZE) {
+            throw new ValidationException("Page size must be between 1 and " + MAX_SCROLL_SIZE);
+        }
+        validateStatus(status);
+        validateRange(from, to);
+
+        CursorPosition position =
+                cursor == null || cursor.isEmpty() ? null : CursorPosition.decode(cursor);
+        LocalDateTime horizon = auditLogArchive.getHorizon();
+        boolean reachesArchive = reachesArchive(horizon, from);
+        List<AuditLog> content = new ArrayList<>();
+        boolean hasNext = false;
+
+        if (!reachesArchive || (to == null || to.isAfter(horizon))
+                && (position == null || !position.createdAt.isBefore(horizon))) {
+            Specification<AuditLog> spec = filter(patientId, pharmacyId, drugId, status,
+                    reachesArchive ? horizon : from, to);
+            if (position != null) {
+                spec = spec.and(olderThan(position));
+            }
+            Slice<AuditLog> slice =
+                    auditLogRepository.findSlice(spec, PageRequest.of(0, size, SCROLL_ORDER));
+            content.addAll(expand(slice.getContent()));
+            hasNext = slice.hasNext();
+        }
+        if (reachesArchive && !hasNext) {
+            // The database rows are exhausted; continue with the archived ones
+            AuditLogArchiveQuery query =
+                    archiveQuery(patientId, pharmacyId, drugId, status, from, to, horizon);
+            if (position != null && position.createdAt.isBefore(horizon)) {
+                query.before(position.createdAt, position.id);
+            }
+            int remaining = size - content.size();
+            List<AuditLog> archived =
+                    auditLogArchive.search(query, 0, remaining + 1, false).getContent();
+            hasNext = archived.size() > remaining;
+            content.addAll(archived.subList(0, Math.min(remaining, archived.size())));
+        }
+
+        AuditLogScrollResponse response = new AuditLogScrollResponse();
+        response.setContent(content);
+        if (hasNext) {
+            response.setNextCursor(encodeCursor(content.get(content.size() - 1)));
+        }
+        if (estimateTotal) {
+            long estimate = auditLogRepository.estimateCount(patientId, pharmacyId, drugId,
+                    emptyToNull(status), reachesArchive ? horizon : from, to);
+            if (reachesArchive) {
+                estimate += auditLogArchive.search(
+                        archiveQuery(patientId, pharmacyId, drugId, status, from, to, horizon),
+                        0, 0, true).getTotal();
+            }
+            response.setEstimatedTotal(estimate);
+        }
+        return response;
+    }
+
+    /**
+     * Streams the audit logs from the database first. The archive keeps every audit log created
+     * before the horizon that was read, so none is lost if an archive run deletes rows from the
+     * database meanwhile; the database cursor still sees them in any case.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAuditLogs(Long patientId, Long pharmacyId, Long drugId, String status,
+            LocalDateTime from, LocalDateTime to, Consumer<AuditLog> sink) {
+        validateFilters(status, from, to);
+
+        LocalDateTime horizon = auditLogArchive.getHorizon();
+        boolean reachesArchive = reachesArchive(horizon, from);
+        if (!reachesArchive || to == null || to.isAfter(horizon)) {
+            auditLogRepository.streamAll(filter(patientId, pharmacyId, drugId, status,
+                    reachesArchive ? horizon : from, to), SCROLL_ORDER,
+                    log -> sink.accept(drugCodec.expand(log)));
+        }
+        if (reachesArchive) {
+            auditLogArchive.export(
+                    archiveQuery(patientId, pharmacyId, drugId, status, from, to, horizon), sink);
+        }
+    }
+
+    @Override
+    public void validateFilters(String status, LocalDateTime from, LocalDateTime to) {
+        validateStatus(status);
+        validateRange(from, to);
+    }
 
+    private List<AuditLog> expand(List<AuditLog> logs) {
+        List<AuditLog> expanded = new ArrayList<>(logs.size());
+        for (AuditLog log : logs) {
+            expanded.add(drugCodec.expand(log));
+        }
+        return expanded;
+    }
+
+    private static boolean reachesArchive(LocalDateTime horizon, LocalDateTime from) {
+        return horizon != null && (from == null || from.isBefore(horizon));
+    }
+
+    private static AuditLogArchiveQuery archiveQuery(Long patientId, Long pharmacyId,
+            Long drugId, String status, LocalDateTime from, LocalDateTime to,
+            LocalDateTime horizon) {
+        return new AuditLogArchiveQuery(patientId, pharmacyId, drugId, status, from,
+                to == null || to.isAfter(horizon) ? horizon : to);
+    }
+
+    private static Specification<AuditLog> filter(Long patientId, Long pharmacyId, Long drugId,
+            String status, LocalDateTime from, LocalDateTime to) {
         Specification<AuditLog> spec = Specification.where(null);
 
         if (patientId != null) {
@@ -34,11 +236,56 @@ public class AuditLogServiceImpl implements AuditLogService {
             spec = spec.and((root, query, cb) -> cb.equal(root.get("pharmacyId"), pharmacyId));
         }
 
+        // Every dispensed drug was requested, so the requested drugs cover dispenses and failures
+        if (drugId != null) {
+            String requestedDrug = AuditLogFunctionContributor.requestedDrug(drugId);
+            String requestedDrugIds = AuditLogFunctionContributor.requestedDrugIds(drugId);
+            spec = spec.and((root, query, cb) -> cb.isTrue(cb.function(
+                    AuditLogFunctionContributor.REQUESTS_DRUG, Boolean.class,
+                    root.get("drugsRequested"), cb.literal(requestedDrug),
+                    root.get("requestedDrugIds"), cb.literal(requestedDrugIds))));
+        }
+
         if (status != null && !status.isEmpty()) {
             spec = spec.and((root, query, cb) -> cb.equal(root.get("status"), status));
         }
 
-        return auditLogRepository.findAll(spec, pageable);
+        // Bounds on created_at let the database skip the partitions of other months
+        if (from != null) {
+            spec = spec.and((root, query, cb) ->
+                    cb.greaterThanOrEqualTo(root.<LocalDateTime>get("createdAt"), from));
+        }
+
+        if (to != null) {
+            spec = spec.and((root, query, cb) ->
+                    cb.lessThan(root.<LocalDateTime>get("createdAt"), to));
+        }
+
+        return spec;
+    }
+
+    /**
+     * Matches the rows after the cursor in {@code (created_at DESC, id DESC)} order. The redundant
+     * {@code created_at <= ?} bound lets the database start the index scan at the cursor instead of
+     * filtering every newer row.
+     */
+    private static Specification<AuditLog> olderThan(CursorPosition position) {
+        LocalDateTime createdAt = position.createdAt;
+        long id = position.id;
+        return (root, query, cb) -> cb.and(
+                cb.lessThanOrEqualTo(root.<LocalDateTime>get("createdAt"), createdAt),
+                cb.or(cb.lessThan(root.<LocalDateTime>get("createdAt"), createdAt),
+                        cb.lessThan(root.<Long>get("id"), id)));
+    }
+
+    private static String encodeCursor(AuditLog last) {
+        String key = last.getCreatedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String emptyToNull(String status) {
+        return status == null || status.isEmpty() ? null : status;
     }
 
     private void validatePageable(Pageable pageable) {
@@ -53,6 +300,12 @@ public class AuditLogServiceImpl implements AuditLogService {
         }
     }
 
+    private void validateRange(LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new ValidationException("The start of the date range must be before its end");
+        }
+    }
+
     private void validateStatus(String status) {
         if (status != null && !status.isEmpty()) {
             if (!status.matches("^[A-Z_]+$")) {
@@ -61,4 +314,36 @@ public class AuditLogServiceImpl implements AuditLogService {
             }
         }
     }
-}
+
+    /**
+     * The {@code (created_at, id)} key of the last row of a page, as carried by a cursor.
+     */
+    private static final class CursorPosition {
+
+        private final LocalDateTime createdAt;
+        private final long id;
+
+        private CursorPosition(LocalDateTime createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        private static CursorPosition decode(String cursor) {
+            String[] parts;
+            try {
+                parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                        .split("\\|");
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException("Invalid cursor");
+            }
+            if (parts.length != 2) {
+                throw new ValidationException("Invalid cursor");
+            }
+            try {
+                return new CursorPosition(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new ValidationException("Invalid cursor");
+            }
+        }
+    }
+}
\ No newline at end of file
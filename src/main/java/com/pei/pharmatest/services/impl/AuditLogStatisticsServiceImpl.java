@@ -0,0 +1,194 @@
+package com.pei.pharmatest.services.impl;
+
+import com.pei.pharmatest.audit.AuditLogArchive;
+import com.pei.pharmatest.audit.AuditLogArchiveQuery;
+import com.pei.pharmatest.audit.AuditLogStatistics;
+import com.pei.pharmatest.dto.AuditLogStatsResponse;
+import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import com.pei.pharmatest.repositories.AuditLogStatisticsKey;
+import com.pei.pharmatest.services.AuditLogStatisticsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Implementation of the AuditLogStatisticsService interface. Statistics are served from the
+ * {@link AuditLogStatistics} counters, which the audit aspect updates as it records outcomes, and
+ * are checkpointed to {@code audit_log_stats} in the background. They are loaded from there on
+ * startup, so a restart loses at most what was counted since the last checkpoint, and nothing
+ * after a graceful shutdown. They are also reloaded from there periodically, so instances that
+ * share the table converge on the same counts. Only a rebuild reads {@code audit_logs}.
+ */
+@Service
+public class AuditLogStatisticsServiceImpl implements AuditLogStatisticsService {
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(AuditLogStatisticsServiceImpl.class);
+
+  static final int MAX_HOURS = 24 * 366;
+
+  private final AuditLogRepository auditLogRepository;
+  private final AuditLogStatistics statistics;
+  private final AuditLogArchive auditLogArchive;
+  private final TransactionTemplate transactionTemplate;
+
+  /**
+   * Constructs a new AuditLogStatisticsServiceImpl with the required dependencies.
+   *
+   * @param auditLogRepository The repository for audit log operations
+   * @param statistics         The in-memory counters
+   * @param auditLogArchive    The archive whose audit logs a rebuild counts as well
+   * @param transactionManager The transaction manager for replacing the rollup table
+   */
+  public AuditLogStatisticsServiceImpl(AuditLogRepository auditLogRepository,
+      AuditLogStatistics statistics, AuditLogArchive auditLogArchive,
+      PlatformTransactionManager transactionManager) {
+    this.auditLogRepository = auditLogRepository;
+    this.statistics = statistics;
+    this.auditLogArchive = auditLogArchive;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Loads the checkpointed counters.
+   */
+  @PostConstruct
+  public void load() {
+    statistics.load(auditLogRepository.findStatistics());
+  }
+
+  @Override
+  public AuditLogStatsResponse getStatistics(int hours) {
+    validateHours(hours);
+    LocalDateTime firstHour =
+        LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(hours - 1L);
+    Map<Long, AuditLogStatsResponse.PharmacyStats> pharmacies = new TreeMap<>();
+    Map<LocalDateTime, AuditLogStatsResponse.HourStats> hourly = new LinkedHashMap<>();
+    for (int i = 0; i < hours; i++) {
+      AuditLogStatsResponse.HourStats hour = new AuditLogStatsResponse.HourStats();
+      hour.setHour(firstHour.plusHours(i));
+      hourly.put(hour.getHour(), hour);
+    }
+    Map<String, Long> failureReasons = new HashMap<>();
+    AuditLogStatsResponse response = new AuditLogStatsResponse();
+
+    statistics.counts().forEach((key, count) -> {
+      boolean failure = "FAILURE".equals(key.getStatus());
+      if (key.getDimension() == AuditLogStatisticsKey.Dimension.PHARMACY) {
+        AuditLogStatsResponse.PharmacyStats pharmacy = pharmacies.computeIfAbsent(
+            Long.parseLong(key.getBucket()), id -> {
+              AuditLogStatsResponse.PharmacyStats stats = new AuditLogStatsResponse.PharmacyStats();
+              stats.setPharmacyId(id);
+              return stats;
+            });
+        if (failure) {
+          pharmacy.setFailure(pharmacy.getFailure() + count);
+          response.setFailure(response.getFailure() + count);
+        } else {
+          pharmacy.setSuccess(pharmacy.getSuccess() + count);
+          response.setSuccess(response.getSuccess() + count);
+        }
+      } else if (key.getDimension() == AuditLogStatisticsKey.Dimension.HOUR) {
+        AuditLogStatsResponse.HourStats hour = hourly.get(LocalDateTime.parse(key.getBucket()));
+        if (hour != null && failure) {
+          hour.setFailure(hour.getFailure() + count);
+        } else if (hour != null) {
+          hour.setSuccess(hour.getSuccess() + count);
+        }
+      } else {
+        failureReasons.merge(key.getBucket(), count, Long::sum);
+      }
+    });
+
+    response.setPharmacies(new ArrayList<>(pharmacies.values()));
+    response.setHours(new ArrayList<>(hourly.values()));
+    // Most frequent first
+    Map<String, Long> sortedReasons = new LinkedHashMap<>();
+    failureReasons.entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed()
+            .thenComparing(Map.Entry.comparingByKey()))
+        .forEach(entry -> sortedReasons.put(entry.getKey(), entry.getValue()));
+    response.setFailureReasons(sortedReasons);
+    return response;
+  }
+
+  @Override
+  public void validateHours(int hours) {
+    if (hours < 1 || hours > MAX_HOURS) {
+      throw new ValidationException("Hours must be between 1 and " + MAX_HOURS);
+    }
+  }
+
+  @Override
+  @PreDestroy
+  @Scheduled(fixedDelayString = "${pharma.audit.stats.checkpoint-interval:PT10S}")
+  public synchronized void checkpoint() {
+    Map<AuditLogStatisticsKey, Long> deltas = statistics.drainUnflushed();
+    if (deltas.isEmpty()) {
+      return;
+    }
+    try {
+      auditLogRepository.addStatistics(deltas);
+    } catch (RuntimeException e) {
+      statistics.restoreUnflushed(deltas);
+      logger.warn("Failed to checkpoint audit log statistics, will retry", e);
+    }
+  }
+
+  @Override
+  @Scheduled(fixedDelayString = "${pharma.audit.stats.reload-interval:PT1M}")
+  public synchronized void reloadStatistics() {
+    checkpoint();
+    try {
+      statistics.reload(auditLogRepository.findStatistics());
+    } catch (RuntimeException e) {
+      logger.warn("Failed to reload audit log statistics, will retry", e);
+    }
+  }
+
+  /**
+   * Counts the audit logs created before the rebuild started from the database, and from the
+   * archive below its horizon, while the audit logs recorded meanwhile are counted in the new
+   * counters. Audit logs created before the start that are still waiting in the writer's queue or
+   * spool are not counted.
+   */
+  @Override
+  public synchronized void rebuildStatistics() {
+    LocalDateTime since = statistics.startRebuild();
+    Map<AuditLogStatisticsKey, Long> counts = new HashMap<>();
+    try {
+      LocalDateTime horizon = auditLogArchive.getHorizon();
+      if (horizon != null && horizon.isAfter(since)) {
+        horizon = since;
+      }
+      auditLogRepository.countAuditLogs(horizon, since,
+          (key, count) -> counts.merge(key, count, Long::sum));
+      if (horizon != null) {
+        auditLogArchive.export(new AuditLogArchiveQuery(null, null, null, null, null, horizon),
+            log -> AuditLogStatistics.keys(log.getPharmacyId(), log.getCreatedAt(),
+                    log.getStatus(), log.getFailureReason())
+                .forEach(key -> counts.merge(key, 1L, Long::sum)));
+      }
+      transactionTemplate.executeWithoutResult(
+          status -> auditLogRepository.replaceStatistics(counts));
+    } catch (RuntimeException e) {
+      statistics.abandonRebuild();
+      throw e;
+    }
+    statistics.finishRebuild(counts);
+    logger.info("Rebuilt {} audit log statistics counters", counts.size());
+  }
+}
@@ -2,14 +2,18 @@ package com.pei.pharmatest.services.impl;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import com.pei.pharmatest.dto.DrugRequest;
 import com.pei.pharmatest.dto.DrugResponse;
 import com.pei.pharmatest.entities.Drug;
 import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.inventory.DrugCache;
 import com.pei.pharmatest.repositories.DrugRepository;
 import com.pei.pharmatest.services.DrugService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Implementation of the DrugService interface. Handles drug-related operations including retrieval
@@ -19,20 +23,38 @@ import org.springframework.stereotype.Service;
 public class DrugServiceImpl implements DrugService {
 
   private final DrugRepository drugRepository;
+  private final DrugCache drugCache;
+  private final int maxStockShards;
 
-  public DrugServiceImpl(DrugRepository drugRepository) {
+  public DrugServiceImpl(DrugRepository drugRepository, DrugCache drugCache,
+      @Value("${pharma.stock.max-shards:64}") int maxStockShards) {
     this.drugRepository = drugRepository;
+    this.drugCache = drugCache;
+    this.maxStockShards = maxStockShards;
   }
 
   /**
-   * Retrieves a drug by its ID.
+   * Retrieves a drug by its ID, from the drug cache if it holds a current copy.
    *
    * @param id The ID of the drug to retrieve
    * @return An Optional containing the drug response if found, empty otherwise
    */
   @Override
   public Optional<DrugResponse> getDrug(Long id) {
-    return drugRepository.findById(id).map(this::convertToResponse);
+    return drugCache.get(id,
+        drugId -> drugRepository.findById(drugId).map(this::convertWithShardTotals));
+  }
+
+  /**
+   * Reads the current version of a drug and its stock shards with one query, bypassing the drug
+   * cache.
+   *
+   * @param id The ID of the drug
+   * @return An Optional containing the version if the drug exists, empty otherwise
+   */
+  @Override
+  public Optional<String> getDrugVersion(Long id) {
+    return drugRepository.findCombinedVersionById(id);
   }
 
   /**
@@ -47,9 +69,30 @@ public class DrugServiceImpl implements DrugService {
     validateRequest(request);
     Drug drug = convertToEntity(request);
     Drug savedDrug = drugRepository.save(drug);
+    drugCache.evictAfterCommit(List.of(savedDrug.getId()));
     return convertToResponse(savedDrug);
   }
 
+  /**
+   * Splits the stock of a drug across the given number of shards.
+   *
+   * @param id         The ID of the drug
+   * @param shardCount The number of stock shards, or zero to stop sharding
+   * @return An Optional containing the updated drug response if found, empty otherwise
+   * @throws ValidationException if the shard count is out of range
+   */
+  @Override
+  @Transactional
+  public Optional<DrugResponse> shardStock(Long id, int shardCount) {
+    if (shardCount < 0 || shardCount > maxStockShards) {
+      throw new ValidationException("Shard count must be between 0 and " + maxStockShards);
+    }
+    if (!drugRepository.reshardStock(id, shardCount)) {
+      return Optional.empty();
+    }
+    return drugRepository.findById(id).map(this::convertWithShardTotals);
+  }
+
   /**
    * Validates the drug request.
    *
@@ -99,6 +142,18 @@ public class DrugServiceImpl implements DrugService {
     return drug;
   }
 
+  /**
+   * Converts a loaded drug entity to a drug response, reading the shard totals first if its stock
+   * is sharded.
+   *
+   * @param drug The drug entity to convert
+   * @return The created drug response
+   */
+  private DrugResponse convertWithShardTotals(Drug drug) {
+    drugRepository.loadShardTotals(List.of(drug));
+    return convertToResponse(drug);
+  }
+
   /**
    * Converts a drug entity to a drug response.
    *
@@ -112,8 +167,9 @@ public class DrugServiceImpl implements DrugService {
     response.setManufacturer(drug.getManufacturer());
     response.setBatchNumber(drug.getBatchNumber());
     response.setExpiryDate(drug.getExpiryDate());
-    response.setStock(drug.getStock());
+    response.setStock(drug.getAvailableStock());
     response.setCreatedAt(drug.getCreatedAt());
+    response.setVersion(drug.getCombinedVersion());
     return response;
   }
 }
@@ -3,13 +3,21 @@ package com.pei.pharmatest.services.impl;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import com.pei.pharmatest.dto.ContractedDrugResponse;
 import com.pei.pharmatest.dto.PharmacyResponse;
+import com.pei.pharmatest.dto.PrescriptionBatchItemResponse;
 import com.pei.pharmatest.dto.PrescriptionDrugRequest;
 import com.pei.pharmatest.dto.PrescriptionDrugResponse;
 import com.pei.pharmatest.dto.PrescriptionRequest;
@@ -17,20 +25,37 @@ import com.pei.pharmatest.dto.PrescriptionResponse;
 import com.pei.pharmatest.entities.Drug;
 import com.pei.pharmatest.entities.Patient;
 import com.pei.pharmatest.entities.Pharmacy;
-import com.pei.pharmatest.entities.PharmacyDrug;
 import com.pei.pharmatest.entities.Prescription;
 import com.pei.pharmatest.entities.PrescriptionItem;
 import com.pei.pharmatest.exceptions.BusinessException;
 import com.pei.pharmatest.exceptions.ResourceNotFoundException;
 import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.fulfillment.FulfillmentBatchProcessor;
+import com.pei.pharmatest.fulfillment.FulfillmentGroupCommitter;
+import com.pei.pharmatest.fulfillment.FulfillmentResult;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache;
+import com.pei.pharmatest.mappers.PrescriptionMapper;
+import com.pei.pharmatest.repositories.ContractedDrugSummary;
 import com.pei.pharmatest.repositories.DrugRepository;
 import com.pei.pharmatest.repositories.PatientRepository;
 import com.pei.pharmatest.repositories.PharmacyRepository;
+import com.pei.pharmatest.repositories.PharmacySummary;
 import com.pei.pharmatest.repositories.PrescriptionRepository;
+import com.pei.pharmatest.repositories.PrescriptionValidation;
+import com.pei.pharmatest.repositories.PrescriptionValidation.RequestedDrug;
+import com.pei.pharmatest.repositories.StockDecrement;
+import com.pei.pharmatest.services.AllocationService;
 import com.pei.pharmatest.services.PharmacyService;
+import com.pei.pharmatest.services.StockReservationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Implementation of the PharmacyService interface. Handles pharmacy-related operations including
@@ -39,10 +64,20 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 public class PharmacyServiceImpl implements PharmacyService {
 
+  private static final int MAX_BATCH_SIZE = 5000;
+  private static final int MAX_PAGE_SIZE = 1000;
+
   private final PharmacyRepository pharmacyRepository;
   private final PatientRepository patientRepository;
   private final PrescriptionRepository prescriptionRepository;
   private final DrugRepository drugRepository;
+  private final StockReservationService stockReservationService;
+  private final AllocationService allocationService;
+  private final TransactionTemplate transactionTemplate;
+  private final FulfillmentGroupCommitter groupCommitter;
+  private final FulfillmentBatchProcessor batchProcessor;
+  private final PrescriptionResponseCache responseCache;
+  private final MeterRegistry meterRegistry;
 
   /**
    * Constructs a new PharmacyServiceImpl with the required dependencies.
@@ -51,70 +86,165 @@ public class PharmacyServiceImpl implements PharmacyService {
    * @param patientRepository The repository for patient operations
    * @param prescriptionRepository The repository for prescription operations
    * @param drugRepository The repository for drug operations
+   * @param stockReservationService The service holding stock for open prescriptions
+   * @param allocationService The service tracking consumed pharmacy allocations
+   * @param transactionManager The transaction manager for single fulfillments
+   * @param groupCommitter The stage that commits concurrent fulfillments together
+   * @param batchProcessor The processor fulfilling several prescriptions in one transaction
+   * @param responseCache The cache of responses of fulfilled and cancelled prescriptions
+   * @param meterRegistry The registry for fulfillment metrics
    */
   public PharmacyServiceImpl(PharmacyRepository pharmacyRepository,
       PatientRepository patientRepository, PrescriptionRepository prescriptionRepository,
-      DrugRepository drugRepository) {
+      DrugRepository drugRepository, StockReservationService stockReservationService,
+      AllocationService allocationService, PlatformTransactionManager transactionManager,
+      FulfillmentGroupCommitter groupCommitter, FulfillmentBatchProcessor batchProcessor,
+      PrescriptionResponseCache responseCache, MeterRegistry meterRegistry) {
     this.pharmacyRepository = pharmacyRepository;
     this.patientRepository = patientRepository;
     this.prescriptionRepository = prescriptionRepository;
     this.drugRepository = drugRepository;
+    this.stockReservationService = stockReservationService;
+    this.allocationService = allocationService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.groupCommitter = groupCommitter;
+    this.batchProcessor = batchProcessor;
+    this.responseCache = responseCache;
+    this.meterRegistry = meterRegistry;
   }
 
   /**
-   * Retrieves all pharmacies in the system.
+   * Retrieves one page of pharmacies in ID order. The page takes one query for the pharmacies and,
+   * if contracts are included, one more for the contracts and drugs of all of them, however many
+   * pharmacies and contracts there are.
    *
-   * @return A list of pharmacy responses containing pharmacy information
+   * @param afterId The last pharmacy ID of the previous page, or null for the first page
+   * @param size The maximum number of pharmacies to return
+   * @param includeContracts Whether to include the contracted drugs of each pharmacy
+   * @return The pharmacies of the page
+   * @throws ValidationException If the page size is out of range
    */
   @Override
-  public List<PharmacyResponse> getAllPharmacies() {
-    return pharmacyRepository.findAll().stream().map(this::mapToPharmacyResponse)
-        .collect(Collectors.toList());
+  @Transactional(readOnly = true)
+  public List<PharmacyResponse> getPharmacies(Long afterId, int size, boolean includeContracts) {
+    validatePageSize(size);
+    return loadPage(afterId == null ? 0L : afterId, size, includeContracts);
   }
 
   /**
-   * Maps a Pharmacy entity to a PharmacyResponse DTO.
+   * Retrieves all pharmacies in ID order, reading them in pages of the largest page size so that
+   * no single query has to carry the IDs of the whole catalog. All pages are read from one
+   * snapshot, so the list is as consistent as a single query would be.
    *
-   * @param pharmacy The pharmacy entity to map
-   * @return A PharmacyResponse containing the pharmacy information
+   * @param includeContracts Whether to include the contracted drugs of each pharmacy
+   * @return All pharmacies
    */
-  private PharmacyResponse mapToPharmacyResponse(Pharmacy pharmacy) {
-    PharmacyResponse response = new PharmacyResponse();
-    response.setId(pharmacy.getId());
-    response.setName(pharmacy.getName());
-    response.setAddress(pharmacy.getAddress());
-    response.setContractedDrugs(mapToContractedDrugs(pharmacy.getPharmacyDrugs()));
-    return response;
+  @Override
+  @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+  public List<PharmacyResponse> getAllPharmacies(boolean includeContracts) {
+    List<PharmacyResponse> pharmacies = new ArrayList<>();
+    List<PharmacyResponse> page = loadPage(0L, MAX_PAGE_SIZE, includeContracts);
+    pharmacies.addAll(page);
+    while (page.size() == MAX_PAGE_SIZE) {
+      page = loadPage(page.get(page.size() - 1).getId(), MAX_PAGE_SIZE, includeContracts);
+      pharmacies.addAll(page);
+    }
+    return pharmacies;
+  }
+
+  private List<PharmacyResponse> loadPage(long afterId, int size, boolean includeContracts) {
+    Map<Long, PharmacyResponse> responses = new LinkedHashMap<>();
+    for (PharmacySummary pharmacy : pharmacyRepository.findByIdGreaterThanOrderByIdAsc(
+        afterId, PageRequest.of(0, size))) {
+      PharmacyResponse response = new PharmacyResponse();
+      response.setId(pharmacy.getId());
+      response.setName(pharmacy.getName());
+      response.setAddress(pharmacy.getAddress());
+      if (includeContracts) {
+        response.setContractedDrugs(new LinkedHashSet<>());
+      }
+      responses.put(pharmacy.getId(), response);
+    }
+    if (!includeContracts || responses.isEmpty()) {
+      return new ArrayList<>(responses.values());
+    }
+
+    for (ContractedDrugSummary contract : pharmacyRepository.findContractedDrugs(
+        responses.keySet())) {
+      responses.get(contract.getPharmacyId()).getContractedDrugs()
+          .add(mapToContractedDrugResponse(contract));
+    }
+    return new ArrayList<>(responses.values());
   }
 
   /**
-   * Maps a set of PharmacyDrug entities to a set of ContractedDrugResponse DTOs.
+   * Reads the current version of one page of pharmacies with a single query. Without contracts the
+   * page only depends on the pharmacies, so the catalog version alone is enough.
    *
-   * @param pharmacyDrugs The set of pharmacy drugs to map
-   * @return A set of ContractedDrugResponse containing the contracted drug information
+   * @param afterId The last pharmacy ID of the previous page, or null for the first page
+   * @param size The maximum number of pharmacies to return
+   * @param includeContracts Whether the page includes the contracted drugs of each pharmacy
+   * @return The version of the page
+   * @throws ValidationException If the page size is out of range
    */
-  private java.util.Set<ContractedDrugResponse> mapToContractedDrugs(
-      java.util.Set<PharmacyDrug> pharmacyDrugs) {
-    return pharmacyDrugs.stream().map(this::mapToContractedDrugResponse)
-        .collect(Collectors.toSet());
+  @Override
+  @Transactional(readOnly = true)
+  public String getPharmaciesVersion(Long afterId, int size, boolean includeContracts) {
+    validatePageSize(size);
+    if (!includeContracts) {
+      return pharmacyRepository.findCatalogVersion();
+    }
+    return pharmacyRepository.findPageVersion(afterId == null ? 0L : afterId, size);
   }
 
   /**
-   * Maps a PharmacyDrug entity to a ContractedDrugResponse DTO.
+   * Reads the current version of the full pharmacy list with a single query.
    *
-   * @param pharmacyDrug The pharmacy drug entity to map
+   * @param includeContracts Whether the list includes the contracted drugs of each pharmacy
+   * @return The version of the list
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public String getAllPharmaciesVersion(boolean includeContracts) {
+    if (!includeContracts) {
+      return pharmacyRepository.findCatalogVersion();
+    }
+    return pharmacyRepository.findPageVersion(0L, Integer.MAX_VALUE);
+  }
+
+  private static void validatePageSize(int size) {
+    if (size < 1 || size > MAX_PAGE_SIZE) {
+      throw new ValidationException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+    }
+  }
+
+  /**
+   * Streams all pharmacies with their contracted drugs. Runs in a read-only transaction, which lets
+   * the driver read the rows through a cursor in bounded fetches.
+   *
+   * @param sink Receives each pharmacy with its contracted drugs
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public void exportPharmacies(Consumer<PharmacyResponse> sink) {
+    pharmacyRepository.streamCatalog(sink);
+  }
+
+  /**
+   * Maps a contract projection to a ContractedDrugResponse DTO.
+   *
+   * @param contract The contract with its drug
    * @return A ContractedDrugResponse containing the contracted drug information
    */
-  private ContractedDrugResponse mapToContractedDrugResponse(PharmacyDrug pharmacyDrug) {
-    Drug drug = pharmacyDrug.getDrug();
+  private ContractedDrugResponse mapToContractedDrugResponse(ContractedDrugSummary contract) {
     ContractedDrugResponse response = new ContractedDrugResponse();
-    response.setId(drug.getId());
-    response.setName(drug.getName());
-    response.setManufacturer(drug.getManufacturer());
-    response.setBatchNumber(drug.getBatchNumber());
-    response.setExpiryDate(drug.getExpiryDate());
-    response.setStock(drug.getStock());
-    response.setAllocatedAmount(pharmacyDrug.getAllocatedAmount());
+    response.setId(contract.getDrugId());
+    response.setName(contract.getName());
+    response.setManufacturer(contract.getManufacturer());
+    response.setBatchNumber(contract.getBatchNumber());
+    response.setExpiryDate(contract.getExpiryDate());
+    response.setStock(contract.getStock());
+    response.setAllocatedAmount(contract.getAllocatedAmount());
     return response;
   }
 
@@ -132,38 +262,205 @@ public class PharmacyServiceImpl implements PharmacyService {
   public PrescriptionResponse createPrescription(Long pharmacyId, PrescriptionRequest request) {
     validatePrescriptionRequest(request);
 
-    // Validate pharmacy exists
+    // Read pharmacy, patient and the requested drugs with their stock in one round trip
+    Map<Long, Integer> quantities = sumQuantities(request);
+    PrescriptionValidation validation = prescriptionRepository.loadValidation(pharmacyId,
+        request.getPatientId(), quantities.keySet());
+    if (!validation.isPharmacyFound()) {
+      throw new ResourceNotFoundException("Pharmacy not found with id: " + pharmacyId);
+    }
+    if (!validation.isPatientFound()) {
+      throw new ResourceNotFoundException(
+          "Patient not found with id: " + request.getPatientId());
+    }
+
+    // Validate contracts and allocation against the contract index, and stock of the summed
+    // quantities
+    Map<Long, RequestedDrug> requestedDrugs = validation.getRequestedDrugs();
+    for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+      RequestedDrug drug = requestedDrugs.get(entry.getKey());
+      if (drug == null || !allocationService.isContracted(pharmacyId, entry.getKey())) {
+        throw notContracted(entry.getKey());
+      }
+      if (entry.getValue() > allocationService.remainingAllocation(pharmacyId, entry.getKey())) {
+        throw allocationExceeded(drug.getName());
+      }
+      if (entry.getValue() > drug.getAvailableStock()) {
+        throw stockExceeded(drug.getName());
+      }
+    }
+
+    // Save the prescription against references, so no entity needs to be loaded
+    Prescription prescription = new Prescription();
+    prescription.setPharmacy(pharmacyRepository.getReferenceById(pharmacyId));
+    prescription.setPatient(patientRepository.getReferenceById(request.getPatientId()));
+    prescription.setCreatedAt(LocalDateTime.now());
+    prescription.setStatus(Prescription.PrescriptionStatus.CREATED);
+    prescription.setItems(request.getDrugs().stream()
+        .map(drugRequest -> buildItem(prescription,
+            drugRepository.getReferenceById(drugRequest.getDrugId()), drugRequest))
+        .collect(Collectors.toSet()));
+    Prescription savedPrescription = prescriptionRepository.save(prescription);
+
+    // Hold the requested stock until the prescription is fulfilled, cancelled or the hold expires
+    Map<Long, Integer> stockOnHand = quantities.keySet().stream().collect(Collectors.toMap(
+        Function.identity(), drugId -> requestedDrugs.get(drugId).getAvailableStock()));
+    stockReservationService.reserve(savedPrescription.getId(), quantities, stockOnHand)
+        .ifPresent(drugId -> {
+          throw stockExceeded(requestedDrugs.get(drugId).getName());
+        });
+
+    // Map to response from what was read up front
+    return mapToCreatedResponse(savedPrescription, pharmacyId, request, validation);
+  }
+
+  /**
+   * Maps a newly created prescription to its response without touching the referenced entities.
+   */
+  private PrescriptionResponse mapToCreatedResponse(Prescription prescription, Long pharmacyId,
+      PrescriptionRequest request, PrescriptionValidation validation) {
+    PrescriptionResponse response = new PrescriptionResponse();
+    response.setId(prescription.getId());
+    response.setPharmacyId(pharmacyId);
+    response.setPharmacyName(validation.getPharmacyName());
+    response.setPatientId(request.getPatientId());
+    response.setPatientName(validation.getPatientName());
+    response.setCreatedAt(prescription.getCreatedAt());
+    response.setStatus(prescription.getStatus().name());
+    response.setDrugs(request.getDrugs().stream().map(drugRequest -> {
+      RequestedDrug drug = validation.getRequestedDrugs().get(drugRequest.getDrugId());
+      PrescriptionDrugResponse drugResponse = new PrescriptionDrugResponse();
+      drugResponse.setDrugId(drug.getDrugId());
+      drugResponse.setName(drug.getName());
+      drugResponse.setManufacturer(drug.getManufacturer());
+      drugResponse.setBatchNumber(drug.getBatchNumber());
+      drugResponse.setQuantity(drugRequest.getQuantity());
+      return drugResponse;
+    }).collect(Collectors.toList()));
+    return response;
+  }
+
+  /**
+   * Creates several prescriptions at a specific pharmacy in one transaction. Contracts are
+   * checked against the contract index, the requested drugs and the patients are loaded once for
+   * the whole batch and stock is held before anything is saved, so only prescriptions whose stock
+   * is held are written. IDs come from pooled sequences and the prescriptions and reservations are
+   * written with batched inserts. An invalid request is skipped and reported without affecting
+   * the others.
+   *
+   * @param pharmacyId The ID of the pharmacy
+   * @param requests The prescription requests
+   * @return One result per request, in request order
+   * @throws ResourceNotFoundException If the pharmacy is not found
+   * @throws ValidationException If the batch is empty or too large
+   */
+  @Override
+  @Transactional
+  public List<PrescriptionBatchItemResponse> createPrescriptions(Long pharmacyId,
+      List<PrescriptionRequest> requests) {
+    if (requests == null || requests.isEmpty()) {
+      throw new ValidationException("At least one prescription must be specified in the batch");
+    }
+    if (requests.size() > MAX_BATCH_SIZE) {
+      throw new ValidationException(
+          "A batch cannot contain more than " + MAX_BATCH_SIZE + " prescriptions");
+    }
+
     Pharmacy pharmacy = pharmacyRepository.findById(pharmacyId).orElseThrow(
         () -> new ResourceNotFoundException("Pharmacy not found with id: " + pharmacyId));
+    Set<Long> patientIds = requests.stream().filter(Objects::nonNull)
+        .map(PrescriptionRequest::getPatientId).filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+    Map<Long, Patient> patients = patientRepository.findAllById(patientIds).stream()
+        .collect(Collectors.toMap(Patient::getId, Function.identity()));
+    Set<Long> drugIds = requests.stream().filter(Objects::nonNull)
+        .map(PrescriptionRequest::getDrugs).filter(Objects::nonNull).flatMap(List::stream)
+        .filter(Objects::nonNull).map(PrescriptionDrugRequest::getDrugId).filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+    Map<Long, Drug> drugs = drugRepository.findAllById(drugIds).stream()
+        .collect(Collectors.toMap(Drug::getId, Function.identity()));
+    drugRepository.loadShardTotals(drugs.values());
+
+    PrescriptionBatchItemResponse[] results = new PrescriptionBatchItemResponse[requests.size()];
+    List<Prescription> prescriptions = new ArrayList<>();
+    List<Integer> indexes = new ArrayList<>();
+    for (int i = 0; i < requests.size(); i++) {
+      PrescriptionRequest request = requests.get(i);
+      try {
+        validatePrescriptionRequest(request);
+        Patient patient = patients.get(request.getPatientId());
+        if (patient == null) {
+          throw new ResourceNotFoundException(
+              "Patient not found with id: " + request.getPatientId());
+        }
+        prescriptions.add(buildPrescription(pharmacy, patient, request, drugs));
+        indexes.add(i);
+      } catch (ValidationException | ResourceNotFoundException | BusinessException e) {
+        results[i] = PrescriptionBatchItemResponse.failure(i, null, e.getMessage());
+      }
+    }
 
-    // Validate patient exists
-    Patient patient = patientRepository.findById(request.getPatientId())
-        .orElseThrow(() -> new ResourceNotFoundException(
-            "Patient not found with id: " + request.getPatientId()));
+    // Stock is held before anything is saved, so prescriptions without stock are never written
+    List<Prescription> accepted = new ArrayList<>();
+    List<Integer> acceptedIndexes = new ArrayList<>();
+    for (int j = 0; j < prescriptions.size(); j++) {
+      int index = indexes.get(j);
+      Optional<Long> unavailableDrugId = holdStock(requests.get(index), drugs);
+      if (unavailableDrugId.isPresent()) {
+        results[index] = PrescriptionBatchItemResponse.failure(index, null,
+            stockExceeded(drugs.get(unavailableDrugId.get()).getName()).getMessage());
+      } else {
+        accepted.add(prescriptions.get(j));
+        acceptedIndexes.add(index);
+      }
+    }
+    if (accepted.isEmpty()) {
+      return List.of(results);
+    }
 
-    // Create a map of pharmacy drugs for easy lookup
-    Map<Long, PharmacyDrug> pharmacyDrugMap = pharmacy.getPharmacyDrugs().stream()
-        .collect(Collectors.toMap(pd -> pd.getDrug().getId(), Function.identity()));
+    // IDs are assigned here; the inserts are sent as batches when the transaction flushes
+    prescriptionRepository.saveAll(accepted);
+    Map<Long, Map<Long, Integer>> holds = new LinkedHashMap<>();
+    for (int j = 0; j < accepted.size(); j++) {
+      Prescription prescription = accepted.get(j);
+      int index = acceptedIndexes.get(j);
+      holds.put(prescription.getId(), sumQuantities(requests.get(index)));
+      results[index] = PrescriptionBatchItemResponse.success(index,
+          PrescriptionMapper.toResponse(prescription));
+    }
+    stockReservationService.recordHolds(holds);
+    return List.of(results);
+  }
 
-    // Validate all drugs are contracted with the pharmacy
-    for (PrescriptionDrugRequest drugRequest : request.getDrugs()) {
-      if (!pharmacyDrugMap.containsKey(drugRequest.getDrugId())) {
-        throw new BusinessException(
-            "Drug with ID " + drugRequest.getDrugId() + " is not contracted with this pharmacy");
+  /**
+   * Validates the requested drugs against the pharmacy's contracts, remaining allocation and stock
+   * and builds the prescription with its items.
+   *
+   * @param pharmacy The pharmacy
+   * @param patient The patient
+   * @param request The validated prescription request
+   * @param drugs The requested drugs of the whole batch by ID
+   * @return The new, unsaved prescription
+   * @throws BusinessException If a drug is not contracted or not available in the quantity
+   */
+  private Prescription buildPrescription(Pharmacy pharmacy, Patient patient,
+      PrescriptionRequest request, Map<Long, Drug> drugs) {
+    // Validate all drugs are contracted with the pharmacy, summing drugs listed more than once
+    for (Map.Entry<Long, Integer> entry : sumQuantities(request).entrySet()) {
+      Drug drug = drugs.get(entry.getKey());
+      if (drug == null || !allocationService.isContracted(pharmacy.getId(), entry.getKey())) {
+        throw notContracted(entry.getKey());
       }
 
-      PharmacyDrug pharmacyDrug = pharmacyDrugMap.get(drugRequest.getDrugId());
-
-      // Validate drug is within allocation limits
-      if (drugRequest.getQuantity() > pharmacyDrug.getAllocatedAmount()) {
-        throw new BusinessException("Requested quantity exceeds pharmacy's allocation for drug: "
-            + pharmacyDrug.getDrug().getName());
+      // Validate drug is within what is left of the allocation
+      if (entry.getValue() > allocationService.remainingAllocation(pharmacy.getId(),
+          entry.getKey())) {
+        throw allocationExceeded(drug.getName());
       }
 
       // Validate drug is available in stock
-      if (drugRequest.getQuantity() > pharmacyDrug.getDrug().getStock()) {
-        throw new BusinessException("Requested quantity exceeds available stock for drug: "
-            + pharmacyDrug.getDrug().getName());
+      if (entry.getValue() > drug.getAvailableStock()) {
+        throw stockExceeded(drug.getName());
       }
     }
 
@@ -175,22 +472,59 @@ public class PharmacyServiceImpl implements PharmacyService {
     prescription.setStatus(Prescription.PrescriptionStatus.CREATED);
 
     // Create prescription items
-    Set<PrescriptionItem> items = request.getDrugs().stream().map(drugRequest -> {
-      PrescriptionItem item = new PrescriptionItem();
-      item.setPrescription(prescription);
-      item.setDrug(pharmacyDrugMap.get(drugRequest.getDrugId()).getDrug());
-      item.setQuantity(drugRequest.getQuantity());
-      item.setDosage(drugRequest.getDosage());
-      return item;
-    }).collect(Collectors.toSet());
+    Set<PrescriptionItem> items = request.getDrugs().stream()
+        .map(drugRequest -> buildItem(prescription, drugs.get(drugRequest.getDrugId()),
+            drugRequest))
+        .collect(Collectors.toSet());
 
     prescription.setItems(items);
+    return prescription;
+  }
 
-    // Save prescription
-    Prescription savedPrescription = prescriptionRepository.save(prescription);
+  private PrescriptionItem buildItem(Prescription prescription, Drug drug,
+      PrescriptionDrugRequest drugRequest) {
+    PrescriptionItem item = new PrescriptionItem();
+    item.setPrescription(prescription);
+    item.setDrug(drug);
+    item.setQuantity(drugRequest.getQuantity());
+    item.setDosage(drugRequest.getDosage());
+    return item;
+  }
+
+  /**
+   * Sums the requested quantity per drug, for drugs that are listed more than once.
+   */
+  private Map<Long, Integer> sumQuantities(PrescriptionRequest request) {
+    return request.getDrugs().stream().collect(Collectors.toMap(
+        PrescriptionDrugRequest::getDrugId, PrescriptionDrugRequest::getQuantity, Integer::sum,
+        LinkedHashMap::new));
+  }
+
+  /**
+   * Holds the requested stock for a prescription that is not saved yet.
+   *
+   * @return The ID of a drug without enough unreserved stock, or empty if the stock is held
+   */
+  private Optional<Long> holdStock(PrescriptionRequest request, Map<Long, Drug> drugs) {
+    Map<Long, Integer> quantities = sumQuantities(request);
+    Map<Long, Integer> stockOnHand = quantities.keySet().stream().collect(Collectors.toMap(
+        Function.identity(), drugId -> drugs.get(drugId).getAvailableStock()));
+    return stockReservationService.hold(quantities, stockOnHand);
+  }
 
-    // Map to response
-    return mapToPrescriptionResponse(savedPrescription);
+  private BusinessException notContracted(Long drugId) {
+    return new BusinessException(
+        "Drug with ID " + drugId + " is not contracted with this pharmacy");
+  }
+
+  private BusinessException allocationExceeded(String drugName) {
+    return new BusinessException(
+        "Requested quantity exceeds pharmacy's allocation for drug: " + drugName);
+  }
+
+  private BusinessException stockExceeded(String drugName) {
+    return new BusinessException(
+        "Requested quantity exceeds available stock for drug: " + drugName);
   }
 
   private void validatePrescriptionRequest(PrescriptionRequest request) {
@@ -217,50 +551,76 @@ public class PharmacyServiceImpl implements PharmacyService {
   }
 
   /**
-   * Maps a Prescription entity to a PrescriptionResponse DTO.
+   * Fulfills a prescription by dispensing the requested drugs. With group commit enabled, the
+   * request is committed together with other concurrent fulfillments; otherwise it runs in its
+   * own transaction. The transaction is started here rather than declared, so that a request
+   * waiting for its group does not hold a database connection. The committed response is cached,
+   * since a fulfilled prescription never changes again.
    *
-   * @param prescription The prescription entity to map
-   * @return A PrescriptionResponse containing the prescription details
+   * @param prescriptionId The ID of the prescription to fulfill
+   * @return A PrescriptionResponse containing the updated prescription details
+   * @throws ResourceNotFoundException If the prescription is not found
+   * @throws BusinessException If the prescription cannot be fulfilled
    */
-  private PrescriptionResponse mapToPrescriptionResponse(Prescription prescription) {
-    PrescriptionResponse response = new PrescriptionResponse();
-    response.setId(prescription.getId());
-    response.setPharmacyId(prescription.getPharmacy().getId());
-    response.setPharmacyName(prescription.getPharmacy().getName());
-    response.setPatientId(prescription.getPatient().getId());
-    response.setPatientName(prescription.getPatient().getName());
-    response.setCreatedAt(prescription.getCreatedAt());
-    response.setStatus(prescription.getStatus().name());
-
-    List<PrescriptionDrugResponse> drugs = new ArrayList<>();
-    for (PrescriptionItem item : prescription.getItems()) {
-      PrescriptionDrugResponse drugResponse = new PrescriptionDrugResponse();
-      drugResponse.setDrugId(item.getDrug().getId());
-      drugResponse.setName(item.getDrug().getName());
-      drugResponse.setManufacturer(item.getDrug().getManufacturer());
-      drugResponse.setBatchNumber(item.getDrug().getBatchNumber());
-      drugResponse.setQuantity(item.getQuantity());
-      drugs.add(drugResponse);
+  @Override
+  public PrescriptionResponse fulfillPrescription(Long prescriptionId) {
+    boolean grouped = groupCommitter.isEnabled();
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "failure";
+    try {
+      PrescriptionResponse response = grouped ? groupCommitter.fulfill(prescriptionId)
+          : transactionTemplate.execute(status -> doFulfillPrescription(prescriptionId));
+      responseCache.put(response);
+      outcome = "success";
+      return response;
+    } finally {
+      sample.stop(meterRegistry.timer("pharma.fulfillment",
+          "mode", grouped ? "grouped" : "single", "outcome", outcome));
     }
-
-    response.setDrugs(drugs);
-    return response;
   }
 
   /**
-   * Fulfills a prescription by dispensing the requested drugs.
+   * Fulfills several prescriptions in one transaction. The stock rows of all affected drugs are
+   * locked in ascending ID order and decremented once per drug. A prescription that cannot be
+   * fulfilled is skipped without rolling back the others.
    *
-   * @param prescriptionId The ID of the prescription to fulfill
-   * @return A PrescriptionResponse containing the updated prescription details
-   * @throws ResourceNotFoundException If the prescription is not found
-   * @throws BusinessException If the prescription cannot be fulfilled
+   * @param prescriptionIds The IDs of the prescriptions to fulfill, in priority order
+   * @return One result per prescription ID, in request order
+   * @throws ValidationException If the batch is empty or too large
    */
-  @Transactional
-  public PrescriptionResponse fulfillPrescription(Long prescriptionId) {
+  @Override
+  public List<PrescriptionBatchItemResponse> fulfillPrescriptions(List<Long> prescriptionIds) {
+    if (prescriptionIds == null || prescriptionIds.isEmpty()) {
+      throw new ValidationException("At least one prescription must be specified in the batch");
+    }
+    if (prescriptionIds.size() > MAX_BATCH_SIZE) {
+      throw new ValidationException(
+          "A batch cannot contain more than " + MAX_BATCH_SIZE + " prescriptions");
+    }
+    if (prescriptionIds.stream().anyMatch(Objects::isNull)) {
+      throw new ValidationException("Prescription IDs in the batch must not be null");
+    }
+
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "failure";
     try {
-      return doFulfillPrescription(prescriptionId);
-    } catch (BusinessException e) {
-      throw e;
+      List<FulfillmentResult> results =
+          transactionTemplate.execute(status -> batchProcessor.fulfillAll(prescriptionIds));
+      List<PrescriptionBatchItemResponse> responses = new ArrayList<>(results.size());
+      for (int i = 0; i < results.size(); i++) {
+        FulfillmentResult result = results.get(i);
+        if (result.isSuccess()) {
+          responseCache.put(result.getResponse());
+        }
+        responses.add(result.isSuccess()
+            ? PrescriptionBatchItemResponse.success(i, result.getResponse())
+            : PrescriptionBatchItemResponse.failure(i, result.getPrescriptionId(),
+                result.getError().getMessage()));
+      }
+      outcome = "success";
+      return responses;
+    } finally {
+      sample.stop(meterRegistry.timer("pharma.fulfillment", "mode", "batch", "outcome", outcome));
     }
   }
 
@@ -274,43 +634,104 @@ public class PharmacyServiceImpl implements PharmacyService {
    */
   @Transactional(propagation = Propagation.REQUIRES_NEW)
   protected PrescriptionResponse doFulfillPrescription(Long prescriptionId) {
-    // Find prescription with pessimistic lock to prevent concurrent modifications
-    Prescription prescription = prescriptionRepository.findById(prescriptionId).orElseThrow(
-        () -> new ResourceNotFoundException("Prescription not found with id: " + prescriptionId));
+    // Find prescription without locking; the status transition below guards concurrent fulfills
+    Prescription prescription = findPrescriptionWithItems(prescriptionId);
 
     // Validate prescription status
     if (prescription.getStatus() != Prescription.PrescriptionStatus.CREATED) {
       throw new BusinessException("Prescription has already been fulfilled or cancelled");
     }
 
-    // Check each drug's expiry and stock
-    for (PrescriptionItem item : prescription.getItems()) {
+    // Reject expired drugs before touching stock; the batch below re-checks expiry atomically
+    LocalDate today = LocalDate.now();
+    List<PrescriptionItem> items = new ArrayList<>(prescription.getItems());
+    for (PrescriptionItem item : items) {
       Drug drug = item.getDrug();
-
-      // Check expiry
-      if (drug.getExpiryDate().isBefore(LocalDate.now())) {
+      if (drug.getExpiryDate().isBefore(today)) {
         throw new BusinessException("Drug " + drug.getName() + " has expired");
       }
+    }
 
-      // Check stock
-      if (drug.getStock() < item.getQuantity()) {
-        throw new BusinessException("Insufficient stock for drug: " + drug.getName());
+    // Claim the prescription before reducing stock so only one fulfill can get past this point
+    transitionStatus(prescription, Prescription.PrescriptionStatus.FULFILLED);
+
+    // Consume pharmacy drug allocation; given back automatically if the transaction rolls back
+    Map<Long, Integer> quantities = items.stream().collect(Collectors.toMap(
+        item -> item.getDrug().getId(), PrescriptionItem::getQuantity, Integer::sum,
+        TreeMap::new));
+    allocationService.consume(prescription.getPharmacy().getId(), quantities)
+        .ifPresent(drugId -> {
+          throw allocationExceeded(drugName(items, drugId));
+        });
+
+    // Reduce stock of all items with conditional updates, in drug order so that concurrent
+    // fulfillments take row locks in the same order
+    items.sort(Comparator.comparing(item -> item.getDrug().getId()));
+    List<StockDecrement> decrements = items.stream()
+        .map(item -> new StockDecrement(item.getDrug().getId(), item.getQuantity(),
+            item.getDrug().getStockShards()))
+        .collect(Collectors.toList());
+    int[] updateCounts = drugRepository.decrementStock(decrements, today);
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] == 0) {
+        throw new BusinessException(
+            "Insufficient stock for drug: " + items.get(i).getDrug().getName());
       }
+    }
 
-      // Reduce stock
-      drug.setStock(drug.getStock() - item.getQuantity());
+    // The decremented stock was held for this prescription, so its holds can go
+    stockReservationService.consume(prescriptionId);
 
-      // Save the updated drug stock and pharmacy drug allocation
-      drugRepository.save(drug);
-    }
+    // Return response
+    return PrescriptionMapper.toResponse(prescription);
+  }
+
+  /**
+   * Cancels a prescription that has not been fulfilled yet.
+   *
+   * @param prescriptionId The ID of the prescription to cancel
+   * @return A PrescriptionResponse containing the updated prescription details
+   * @throws ResourceNotFoundException If the prescription is not found
+   * @throws BusinessException If the prescription has already been fulfilled or cancelled
+   */
+  @Override
+  @Transactional
+  public PrescriptionResponse cancelPrescription(Long prescriptionId) {
+    Prescription prescription = findPrescriptionWithItems(prescriptionId);
+    transitionStatus(prescription, Prescription.PrescriptionStatus.CANCELLED);
+    stockReservationService.release(prescriptionId);
+    PrescriptionResponse response = PrescriptionMapper.toResponse(prescription);
+    responseCache.putAfterCommit(response);
+    return response;
+  }
 
-    // Update prescription status
-    prescription.setStatus(Prescription.PrescriptionStatus.FULFILLED);
+  private String drugName(List<PrescriptionItem> items, Long drugId) {
+    return items.stream().map(PrescriptionItem::getDrug)
+        .filter(drug -> drug.getId().equals(drugId)).findFirst()
+        .map(Drug::getName).orElse(String.valueOf(drugId));
+  }
 
-    // Save changes
-    Prescription savedPrescription = prescriptionRepository.save(prescription);
+  private Prescription findPrescriptionWithItems(Long prescriptionId) {
+    return prescriptionRepository.findWithItemsById(prescriptionId).orElseThrow(
+        () -> new ResourceNotFoundException("Prescription not found with id: " + prescriptionId));
+  }
 
-    // Return response
-    return mapToPrescriptionResponse(savedPrescription);
+  /**
+   * Moves a prescription out of the CREATED status with a compare-and-set update. Concurrent
+   * transitions of the same prescription serialize on the row update, and every caller but the
+   * first sees zero updated rows.
+   *
+   * @param prescription The prescription to transition
+   * @param target The terminal status to move to
+   * @throws BusinessException If the prescription is no longer in the CREATED status
+   */
+  private void transitionStatus(Prescription prescription,
+      Prescription.PrescriptionStatus target) {
+    if (prescription.getStatus() != Prescription.PrescriptionStatus.CREATED
+        || prescriptionRepository.transitionStatus(prescription.getId(),
+        Prescription.PrescriptionStatus.CREATED, target) == 0) {
+      throw new BusinessException("Prescription has already been fulfilled or cancelled");
+    }
+    prescription.setStatus(target);
   }
 }
@@ -0,0 +1,90 @@
+package com.pei.pharmatest.services.impl;
+
+import com.pei.pharmatest.dto.PrescriptionRequest;
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.exceptions.ResourceNotFoundException;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache.CachedResponse;
+import com.pei.pharmatest.mappers.PrescriptionMapper;
+import com.pei.pharmatest.repositories.PrescriptionRepository;
+import com.pei.pharmatest.services.PharmacyService;
+import com.pei.pharmatest.services.PrescriptionService;
+import java.util.Optional;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Implementation of the PrescriptionService interface. Creation is handled by the
+ * {@link PharmacyService}; lookups read prescriptions without locks, so that polling a
+ * prescription's status never waits for or blocks its fulfillment.
+ */
+@Service
+public class PrescriptionServiceImpl implements PrescriptionService {
+
+  private final PrescriptionRepository prescriptionRepository;
+  private final PharmacyService pharmacyService;
+  private final PrescriptionResponseCache responseCache;
+
+  /**
+   * Constructs a new PrescriptionServiceImpl with the required dependencies.
+   *
+   * @param prescriptionRepository The repository for prescription operations
+   * @param pharmacyService The service creating prescriptions at a pharmacy
+   * @param responseCache The cache of responses of fulfilled and cancelled prescriptions
+   */
+  public PrescriptionServiceImpl(PrescriptionRepository prescriptionRepository,
+      PharmacyService pharmacyService, PrescriptionResponseCache responseCache) {
+    this.prescriptionRepository = prescriptionRepository;
+    this.pharmacyService = pharmacyService;
+    this.responseCache = responseCache;
+  }
+
+  /**
+   * Creates a new prescription for a patient at a specific pharmacy.
+   *
+   * @param pharmacyId The ID of the pharmacy
+   * @param request The prescription request containing patient and drug information
+   * @return A PrescriptionResponse containing the created prescription details
+   */
+  @Override
+  public PrescriptionResponse createPrescription(Long pharmacyId, PrescriptionRequest request) {
+    return pharmacyService.createPrescription(pharmacyId, request);
+  }
+
+  /**
+   * Retrieves a prescription by its ID. The prescription, its pharmacy, patient, items and drugs
+   * are read in one query in a read-only transaction, without row locks or dirty checking. A
+   * fulfilled or cancelled prescription read this way is cached for later reads.
+   *
+   * @param id The prescription ID
+   * @return A PrescriptionResponse containing the prescription details
+   * @throws ResourceNotFoundException If the prescription is not found
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public PrescriptionResponse getPrescription(Long id) {
+    PrescriptionResponse response = prescriptionRepository.findReadOnlyById(id)
+        .map(PrescriptionMapper::toResponse)
+        .orElseThrow(() -> new ResourceNotFoundException("Prescription not found with id: " + id));
+    responseCache.put(response);
+    return response;
+  }
+
+  /**
+   * Reads the current status of a prescription with one query, without loading the prescription.
+   *
+   * @param id The prescription ID
+   * @return The status
+   * @throws ResourceNotFoundException If the prescription is not found
+   */
+  @Override
+  public String getPrescriptionStatus(Long id) {
+    return prescriptionRepository.findStatusById(id).map(Enum::name)
+        .orElseThrow(() -> new ResourceNotFoundException("Prescription not found with id: " + id));
+  }
+
+  @Override
+  public Optional<CachedResponse> getCachedPrescription(Long id) {
+    return responseCache.get(id);
+  }
+}
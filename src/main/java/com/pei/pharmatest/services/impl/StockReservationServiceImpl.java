@@ -0,0 +1,127 @@
+package com.pei.pharmatest.services.impl;
+
+import com.pei.pharmatest.entities.StockReservation;
+import com.pei.pharmatest.inventory.StockReservationLedger;
+import com.pei.pharmatest.inventory.TransactionCallbacks;
+import com.pei.pharmatest.repositories.StockReservationRepository;
+import com.pei.pharmatest.services.StockReservationService;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Implementation of the StockReservationService interface. Holds are placed in the in-memory
+ * {@link StockReservationLedger} first and then persisted to the {@code stock_reservations} table,
+ * which is the source the ledger is rebuilt from on startup.
+ */
+@Service
+public class StockReservationServiceImpl implements StockReservationService {
+
+  private static final Logger logger = LoggerFactory.getLogger(StockReservationServiceImpl.class);
+
+  private final StockReservationRepository stockReservationRepository;
+  private final StockReservationLedger ledger;
+  private final Duration ttl;
+
+  /**
+   * Constructs a new StockReservationServiceImpl with the required dependencies.
+   *
+   * @param stockReservationRepository The repository for reservation operations
+   * @param ledger The in-memory ledger of reserved stock
+   * @param ttl How long a reservation holds stock before it expires
+   */
+  public StockReservationServiceImpl(StockReservationRepository stockReservationRepository,
+      StockReservationLedger ledger,
+      @Value("${pharma.reservations.ttl:PT15M}") Duration ttl) {
+    this.stockReservationRepository = stockReservationRepository;
+    this.ledger = ledger;
+    this.ttl = ttl;
+  }
+
+  /**
+   * Loads the reservations that are still active into the ledger.
+   */
+  @PostConstruct
+  public void loadActiveReservations() {
+    ledger.replaceAll(stockReservationRepository.sumActiveByDrug(LocalDateTime.now()));
+  }
+
+  @Override
+  public Optional<Long> reserve(Long prescriptionId, Map<Long, Integer> quantities,
+      Map<Long, Integer> stockOnHand) {
+    Optional<Long> unavailableDrugId = hold(quantities, stockOnHand);
+    if (unavailableDrugId.isEmpty()) {
+      recordHolds(Map.of(prescriptionId, quantities));
+    }
+    return unavailableDrugId;
+  }
+
+  @Override
+  public Optional<Long> hold(Map<Long, Integer> quantities, Map<Long, Integer> stockOnHand) {
+    Long unavailableDrugId = ledger.tryReserve(quantities, stockOnHand);
+    if (unavailableDrugId != null) {
+      return Optional.of(unavailableDrugId);
+    }
+    TransactionCallbacks.afterRollback(() -> ledger.release(quantities));
+    return Optional.empty();
+  }
+
+  @Override
+  public void recordHolds(Map<Long, Map<Long, Integer>> quantitiesByPrescription) {
+    LocalDateTime now = LocalDateTime.now();
+    List<StockReservation> reservations = new ArrayList<>();
+    quantitiesByPrescription.forEach((prescriptionId, quantities) ->
+        quantities.forEach((drugId, quantity) -> {
+          StockReservation reservation = new StockReservation();
+          reservation.setPrescriptionId(prescriptionId);
+          reservation.setDrugId(drugId);
+          reservation.setQuantity(quantity);
+          reservation.setCreatedAt(now);
+          reservation.setExpiresAt(now.plus(ttl));
+          reservations.add(reservation);
+        }));
+    stockReservationRepository.saveAll(reservations);
+  }
+
+  @Override
+  public void consume(Long prescriptionId) {
+    releaseHolds(prescriptionId);
+  }
+
+  @Override
+  public void release(Long prescriptionId) {
+    releaseHolds(prescriptionId);
+  }
+
+  /**
+   * Deletes the reservation rows of a prescription and releases their holds once the deletion is
+   * committed. If the hold already expired, there is nothing left to release.
+   *
+   * @param prescriptionId The prescription ID
+   */
+  private void releaseHolds(Long prescriptionId) {
+    Map<Long, Integer> released = stockReservationRepository.deleteByPrescriptionId(prescriptionId);
+    if (!released.isEmpty()) {
+      TransactionCallbacks.afterCommit(() -> ledger.release(released));
+    }
+  }
+
+  @Override
+  @Scheduled(fixedDelayString = "${pharma.reservations.sweep-interval:PT30S}")
+  public void releaseExpired() {
+    Map<Long, Integer> released = stockReservationRepository.deleteExpired(LocalDateTime.now());
+    if (!released.isEmpty()) {
+      ledger.release(released);
+      logger.info("Released expired stock reservations for drugs: {}", released.keySet());
+    }
+  }
+}
@@ -0,0 +1,11 @@
+-- Number of shards the stock of a drug is split across; 0 keeps the stock in drugs.stock
+ALTER TABLE drugs
+    ADD COLUMN stock_shards INTEGER NOT NULL DEFAULT 0 CHECK (stock_shards >= 0);
+
+CREATE TABLE drug_stock_shards
+(
+    drug_id  BIGINT  NOT NULL,
+    shard_no INTEGER NOT NULL,
+    stock    INTEGER NOT NULL CHECK (stock >= 0),
+    PRIMARY KEY (drug_id, shard_no)
+);
@@ -0,0 +1,5 @@
+-- Hibernate allocates IDs for these tables in blocks of 50 (pooled-lo), which lets it batch the
+-- inserts. The sequences keep backing the column defaults, so plain SQL inserts still work.
+ALTER SEQUENCE prescriptions_id_seq INCREMENT BY 50;
+ALTER SEQUENCE prescription_items_id_seq INCREMENT BY 50;
+ALTER SEQUENCE audit_logs_id_seq INCREMENT BY 50;
@@ -0,0 +1,48 @@
+-- Versions behind the ETags of drug and pharmacy reads. They are maintained by triggers, so that
+-- updates made outside the application change the ETags as well.
+CREATE FUNCTION bump_row_version() RETURNS trigger AS
+$$
+BEGIN
+    NEW.version := OLD.version + 1;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+ALTER TABLE drugs
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE drug_stock_shards
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+-- Each stock update bumps the version of the row it already updates, so sharded stock stays
+-- free of a shared hot row
+CREATE TRIGGER drugs_bump_version
+    BEFORE UPDATE ON drugs
+    FOR EACH ROW EXECUTE FUNCTION bump_row_version();
+CREATE TRIGGER drug_stock_shards_bump_version
+    BEFORE UPDATE ON drug_stock_shards
+    FOR EACH ROW EXECUTE FUNCTION bump_row_version();
+
+-- A single counter for the pharmacies and their contracts, which rarely change. Consumption
+-- updates of pharmacy_drugs do not touch it.
+CREATE TABLE catalog_version
+(
+    id      INTEGER PRIMARY KEY CHECK (id = 1),
+    version BIGINT NOT NULL
+);
+INSERT INTO catalog_version (id, version)
+VALUES (1, 0);
+
+CREATE FUNCTION bump_catalog_version() RETURNS trigger AS
+$$
+BEGIN
+    UPDATE catalog_version SET version = version + 1 WHERE id = 1;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER pharmacies_bump_catalog_version
+    AFTER INSERT OR UPDATE OR DELETE ON pharmacies
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_catalog_version();
+CREATE TRIGGER pharmacy_drugs_bump_catalog_version
+    AFTER INSERT OR DELETE OR UPDATE OF pharmacy_id, drug_id, allocated_amount ON pharmacy_drugs
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_catalog_version();
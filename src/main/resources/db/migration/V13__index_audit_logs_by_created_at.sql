@@ -0,0 +1,5 @@
+-- Keyset pagination of audit logs seeks on (created_at, id), newest first. Built concurrently so
+-- that audit writes are not blocked while the index is created on a large table; Flyway runs a
+-- migration with a concurrent index build outside a transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS audit_logs_created_at_id_idx
+    ON audit_logs (created_at DESC, id DESC);
@@ -0,0 +1,17 @@
+-- Prepares audit_logs for becoming the first partition in V15. Setting created_at NOT NULL and
+-- attaching the table as the partition up to the end of the current month would each scan the
+-- whole history under an exclusive lock; a valid check constraint that implies both lets them skip
+-- their scans. It is added here without checking the existing rows, which only takes the lock
+-- briefly, and validated by V14_2 in a transaction of its own, which does not block reads or
+-- writes. V15 computes the same bound, or a later one if the month rolls over in between.
+UPDATE audit_logs SET created_at = to_timestamp(0) WHERE created_at IS NULL;
+
+DO
+$$
+    BEGIN
+        EXECUTE format('ALTER TABLE audit_logs ADD CONSTRAINT audit_logs_partition_bound_check'
+                           || ' CHECK (created_at IS NOT NULL AND created_at < %L) NOT VALID',
+                       (date_trunc('month', now() AT TIME ZONE 'UTC') + INTERVAL '1 month')
+                           || '+00');
+    END
+$$;
@@ -0,0 +1,2 @@
+-- Scans the history for the check of V14_1 while audit logs are still read and written
+ALTER TABLE audit_logs VALIDATE CONSTRAINT audit_logs_partition_bound_check;
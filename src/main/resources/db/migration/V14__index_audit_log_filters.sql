@@ -0,0 +1,20 @@
+-- Indexes for the patient, pharmacy and status filters of the audit log listing. Every filter
+-- combination is read newest first on (created_at, id), so each index ends in those columns and
+-- serves the filter and the keyset order at once. A patient together with a pharmacy uses the
+-- patient index, and SUCCESS, which most rows have, is filtered on the way. Built concurrently so
+-- that audit writes are not blocked, which Flyway does outside a transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS audit_logs_pharmacy_id_created_at_idx
+    ON audit_logs (pharmacy_id, created_at DESC, id DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS audit_logs_patient_id_created_at_idx
+    ON audit_logs (patient_id, created_at DESC, id DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS audit_logs_prescription_id_idx
+    ON audit_logs (prescription_id);
+
+-- Failures are a small share of all logs, and are looked at far more often than successes
+CREATE INDEX CONCURRENTLY IF NOT EXISTS audit_logs_failure_created_at_idx
+    ON audit_logs (created_at DESC, id DESC) WHERE status = 'FAILURE';
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS audit_logs_pharmacy_id_failure_idx
+    ON audit_logs (pharmacy_id, created_at DESC, id DESC) WHERE status = 'FAILURE';
@@ -0,0 +1,75 @@
+-- Range partitioning of audit_logs by month of created_at (UTC). Queries with a date range only
+-- read the months they cover, retention drops whole months instead of deleting rows, and
+-- vacuuming and index maintenance of the current month do not grow with the history kept.
+--
+-- The existing table becomes the partition for everything up to the end of the current month, so
+-- none of its rows are copied and its indexes are attached as they are. Audit logs of the current
+-- month therefore keep going to audit_logs_legacy until the month rolls over. Later months are
+-- created ahead of time by the application. Uniqueness of IDs, which come from one sequence, is
+-- enforced per partition, since a key on the parent would have to include created_at and would
+-- have to be built over the whole history here.
+ALTER TABLE audit_logs RENAME TO audit_logs_legacy;
+ALTER INDEX audit_logs_pkey RENAME TO audit_logs_legacy_pkey;
+ALTER INDEX audit_logs_created_at_id_idx RENAME TO audit_logs_legacy_created_at_id_idx;
+ALTER INDEX audit_logs_pharmacy_id_created_at_idx
+    RENAME TO audit_logs_legacy_pharmacy_id_created_at_idx;
+ALTER INDEX audit_logs_patient_id_created_at_idx
+    RENAME TO audit_logs_legacy_patient_id_created_at_idx;
+ALTER INDEX audit_logs_prescription_id_idx RENAME TO audit_logs_legacy_prescription_id_idx;
+ALTER INDEX audit_logs_failure_created_at_idx RENAME TO audit_logs_legacy_failure_created_at_idx;
+ALTER INDEX audit_logs_pharmacy_id_failure_idx RENAME TO audit_logs_legacy_pharmacy_id_failure_idx;
+
+-- The partition key cannot be null; the check validated by V14_2 proves it without a scan
+ALTER TABLE audit_logs_legacy ALTER COLUMN created_at SET NOT NULL;
+
+CREATE TABLE audit_logs
+(
+    id              BIGINT                   NOT NULL DEFAULT nextval('audit_logs_id_seq'),
+    prescription_id BIGINT                   NOT NULL,
+    patient_id      BIGINT                   NOT NULL,
+    pharmacy_id     BIGINT                   NOT NULL,
+    drugs_requested JSONB                    NOT NULL,
+    drugs_dispensed JSONB,
+    failure_reason  TEXT,
+    status          VARCHAR(20)              NOT NULL
+        CONSTRAINT audit_logs_status_check CHECK (status IN ('SUCCESS', 'FAILURE')),
+    created_at      TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+) PARTITION BY RANGE (created_at);
+ALTER SEQUENCE audit_logs_id_seq OWNED BY audit_logs.id;
+
+DO
+$$
+    DECLARE
+        next_month TIMESTAMP := date_trunc('month', now() AT TIME ZONE 'UTC') + INTERVAL '1 month';
+        month_start TIMESTAMP;
+    BEGIN
+        -- Implied by the check of V14_1, so the rows are not scanned again
+        EXECUTE format('ALTER TABLE audit_logs ATTACH PARTITION audit_logs_legacy'
+                           || ' FOR VALUES FROM (MINVALUE) TO (%L)', next_month || '+00');
+        ALTER TABLE audit_logs_legacy DROP CONSTRAINT audit_logs_partition_bound_check;
+        FOR i IN 0..2
+            LOOP
+                month_start := next_month + make_interval(months => i);
+                EXECUTE format('CREATE TABLE %I PARTITION OF audit_logs (PRIMARY KEY (id))'
+                                   || ' FOR VALUES FROM (%L) TO (%L)',
+                               'audit_logs_p' || to_char(month_start, 'YYYY_MM'),
+                               month_start || '+00',
+                               (month_start + INTERVAL '1 month') || '+00');
+            END LOOP;
+    END
+$$;
+
+-- Catches rows of a month that was not created in time, so that no audit record is rejected
+CREATE TABLE audit_logs_default PARTITION OF audit_logs (PRIMARY KEY (id)) DEFAULT;
+
+-- The same indexes as before; the ones of audit_logs_legacy are attached instead of rebuilt
+CREATE INDEX audit_logs_created_at_id_idx ON audit_logs (created_at DESC, id DESC);
+CREATE INDEX audit_logs_pharmacy_id_created_at_idx
+    ON audit_logs (pharmacy_id, created_at DESC, id DESC);
+CREATE INDEX audit_logs_patient_id_created_at_idx
+    ON audit_logs (patient_id, created_at DESC, id DESC);
+CREATE INDEX audit_logs_prescription_id_idx ON audit_logs (prescription_id);
+CREATE INDEX audit_logs_failure_created_at_idx
+    ON audit_logs (created_at DESC, id DESC) WHERE status = 'FAILURE';
+CREATE INDEX audit_logs_pharmacy_id_failure_idx
+    ON audit_logs (pharmacy_id, created_at DESC, id DESC) WHERE status = 'FAILURE';
@@ -0,0 +1,16 @@
+-- Checkpointed audit log counters behind GET /api/v1/audit-logs/stats. Each row counts the audit
+-- logs of one status in one bucket of a dimension: the pharmacy ID, the hour of creation in the
+-- server's time zone as an ISO date-time, or the failure reason up to its first colon. The
+-- application adds what it counted since the last checkpoint to these rows, so several instances
+-- can share the table, and replaces them all when the counters are rebuilt from audit_logs.
+CREATE TABLE audit_log_stats
+(
+    dimension VARCHAR(20) NOT NULL
+        CONSTRAINT audit_log_stats_dimension_check
+            CHECK (dimension IN ('PHARMACY', 'HOUR', 'FAILURE_REASON')),
+    bucket    TEXT        NOT NULL,
+    status    VARCHAR(20) NOT NULL
+        CONSTRAINT audit_log_stats_status_check CHECK (status IN ('SUCCESS', 'FAILURE')),
+    count     BIGINT      NOT NULL,
+    PRIMARY KEY (dimension, bucket, status)
+);
@@ -0,0 +1,19 @@
+-- Compact storage of the drug lists of audit logs, written with pharma.audit.drugs.encoding=compact
+-- instead of the drugs_requested and drugs_dispensed documents. drugs_compact holds both lists as
+-- varint-encoded (drugId, quantity, code) tuples, where the code refers to an entry of
+-- audit_drug_dictionary: the dosage of a requested drug, or the name, manufacturer and batch
+-- number of a dispensed one. The entries are copied rather than referenced from drugs, so that an
+-- audit log keeps what was dispensed even after the drug changes. A row holds either the documents
+-- or drugs_compact; existing rows are converted by the application in the background.
+ALTER TABLE audit_logs ALTER COLUMN drugs_requested DROP NOT NULL;
+ALTER TABLE audit_logs ADD COLUMN drugs_compact BYTEA;
+
+-- The requested drug IDs of compact rows, for the drug filter; the tuples cannot be indexed.
+-- Indexed by RequestedDrugIdsIndexMigration, one partition at a time without blocking writes.
+ALTER TABLE audit_logs ADD COLUMN requested_drug_ids BIGINT[];
+
+CREATE TABLE audit_drug_dictionary
+(
+    code  SERIAL PRIMARY KEY,
+    entry TEXT NOT NULL UNIQUE
+);
@@ -0,0 +1,3 @@
+-- Stock reservation IDs are allocated in pooled-lo blocks of 50 like those of prescriptions (V11),
+-- so the reservations of a prescription batch go out as batched inserts.
+ALTER SEQUENCE stock_reservations_id_seq INCREMENT BY 50;
@@ -0,0 +1,12 @@
+CREATE TABLE stock_reservations
+(
+    id              BIGSERIAL PRIMARY KEY,
+    prescription_id BIGINT    NOT NULL,
+    drug_id         BIGINT    NOT NULL,
+    quantity        INTEGER   NOT NULL CHECK (quantity > 0),
+    expires_at      TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    created_at      TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_stock_reservations_prescription_id ON stock_reservations (prescription_id);
+CREATE INDEX idx_stock_reservations_expires_at ON stock_reservations (expires_at);
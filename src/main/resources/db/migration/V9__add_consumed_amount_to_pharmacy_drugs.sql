@@ -0,0 +1,2 @@
+ALTER TABLE pharmacy_drugs
+    ADD COLUMN consumed_amount INTEGER NOT NULL DEFAULT 0;
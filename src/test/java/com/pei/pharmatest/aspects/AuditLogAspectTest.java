@@ -0,0 +1,89 @@
+package com.pei.pharmatest.aspects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.pei.pharmatest.audit.AuditLogStatistics;
+import com.pei.pharmatest.audit.AuditLogWriter;
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.exceptions.BusinessException;
+import com.pei.pharmatest.exceptions.OutcomeUnknownException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogAspectTest {
+
+  @Mock
+  private AuditLogWriter auditLogWriter;
+
+  @Mock
+  private AuditLogStatistics auditLogStatistics;
+
+  @Mock
+  private ProceedingJoinPoint joinPoint;
+
+  @Captor
+  private ArgumentCaptor<AuditLog> logCaptor;
+
+  private AuditLogAspect aspect;
+  private CompletableFuture<PrescriptionResponse> outcome;
+
+  @BeforeEach
+  void setUp() throws Throwable {
+    aspect = new AuditLogAspect(auditLogWriter, auditLogStatistics);
+    outcome = new CompletableFuture<>();
+    when(joinPoint.getArgs()).thenReturn(new Object[] {7L});
+    when(joinPoint.proceed()).thenThrow(new OutcomeUnknownException(
+        "Timed out waiting for the fulfillment of prescription 7", outcome,
+        Duration.ofSeconds(1)));
+  }
+
+  @Test
+  void logFulfillPrescription_WhenOutcomeUnknown_ShouldRecordTheLaterSuccess() {
+    // When
+    assertThatThrownBy(() -> aspect.logFulfillPrescription(joinPoint))
+        .isInstanceOf(OutcomeUnknownException.class);
+
+    // Then nothing is recorded until the fulfillment completes
+    verify(auditLogWriter, never()).write(any());
+    PrescriptionResponse response = new PrescriptionResponse();
+    response.setId(7L);
+    response.setPatientId(2L);
+    response.setPharmacyId(3L);
+    response.setDrugs(List.of());
+    outcome.complete(response);
+    verify(auditLogWriter).write(logCaptor.capture());
+    assertThat(logCaptor.getValue().getStatus()).isEqualTo("SUCCESS");
+    assertThat(logCaptor.getValue().getPrescriptionId()).isEqualTo(7L);
+    assertThat(logCaptor.getValue().getPharmacyId()).isEqualTo(3L);
+  }
+
+  @Test
+  void logFulfillPrescription_WhenOutcomeUnknown_ShouldRecordTheLaterFailure() {
+    // When
+    assertThatThrownBy(() -> aspect.logFulfillPrescription(joinPoint))
+        .isInstanceOf(OutcomeUnknownException.class);
+    outcome.completeExceptionally(new BusinessException("Insufficient stock for drug: Aspirin"));
+
+    // Then
+    verify(auditLogWriter).write(logCaptor.capture());
+    assertThat(logCaptor.getValue().getStatus()).isEqualTo("FAILURE");
+    assertThat(logCaptor.getValue().getFailureReason())
+        .isEqualTo("Unexpected error: Insufficient stock for drug: Aspirin");
+  }
+}
@@ -0,0 +1,218 @@
+package com.pei.pharmatest.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AuditLogArchiveTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0, 0, 123_456_000);
+
+  @TempDir
+  private Path directory;
+
+  private AuditLogArchive archive;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    archive = new AuditLogArchive(new ObjectMapper().findAndRegisterModules(), directory);
+    archive.load();
+  }
+
+  @Test
+  void publish_ShouldMoveHorizonAndKeepRowsPendingDeletion() throws Exception {
+    // When
+    AuditLogSegment segment = writeSegment(1, 10, START.plusDays(1));
+
+    // Then
+    assertThat(archive.getHorizon()).isEqualTo(START.plusDays(1));
+    assertThat(segment.getRowCount()).isEqualTo(10);
+    assertThat(archive.getSegmentsPendingDeletion()).containsExactly(segment);
+
+    archive.markDeleted(segment);
+    assertThat(archive.getSegmentsPendingDeletion()).isEmpty();
+  }
+
+  @Test
+  void search_ShouldReturnMatchingRowsNewestFirstAcrossSegments() throws Exception {
+    // Given
+    writeSegment(1, 50, START.plusDays(1));
+    writeSegment(51, 100, START.plusDays(2));
+
+    // When
+    AuditLogArchive.Matches matches =
+        archive.search(new AuditLogArchiveQuery(null, 3L, null, null, null, null), 2, 3, true);
+
+    // Then
+    assertThat(matches.getTotal()).isEqualTo(20);
+    assertThat(matches.getContent()).extracting(AuditLog::getId).containsExactly(88L, 83L, 78L);
+    AuditLog log = matches.getContent().get(0);
+    assertThat(log.getCreatedAt()).isEqualTo(START.plusMinutes(88));
+    assertThat(log.getDrugsRequested()).hasSize(1);
+    assertThat(log.getDrugsRequested().get(0).getDosage()).isEqualTo("500mg");
+    assertThat(log.getDrugsDispensed()).isNull();
+  }
+
+  @Test
+  void search_ShouldApplyDateRangeStatusAndCursor() throws Exception {
+    // Given
+    writeSegment(1, 100, START.plusDays(1));
+    AuditLogArchiveQuery query = new AuditLogArchiveQuery(null, null, null, "FAILURE",
+        START.plusMinutes(10), START.plusMinutes(60))
+        .before(START.plusMinutes(40), 40L);
+
+    // When
+    AuditLogArchive.Matches matches = archive.search(query, 0, 100, true);
+
+    // Then
+    assertThat(matches.getContent()).extracting(AuditLog::getId)
+        .containsExactly(30L, 20L, 10L);
+    assertThat(matches.getTotal()).isEqualTo(3);
+  }
+
+  @Test
+  void search_ShouldMatchRequestedDrugOnly() throws Exception {
+    // Given
+    writeSegment(1, 10, START.plusDays(1));
+
+    // When
+    long requested = archive.search(new AuditLogArchiveQuery(null, null, 1L, null, null, null),
+        0, 10, true).getTotal();
+    // The quantity of every row is 2, which must not count as drug 2
+    long quantity = archive.search(new AuditLogArchiveQuery(null, null, 2L, null, null, null),
+        0, 10, true).getTotal();
+
+    // Then
+    assertThat(requested).isEqualTo(10);
+    assertThat(quantity).isZero();
+  }
+
+  @Test
+  void search_WithoutCount_ShouldStillReturnNewestRows() throws Exception {
+    // Given
+    writeSegment(1, 100, START.plusDays(1));
+
+    // When
+    AuditLogArchive.Matches matches =
+        archive.search(new AuditLogArchiveQuery(null, null, null, null, null, null), 0, 2,
+            false);
+
+    // Then
+    assertThat(matches.getContent()).extracting(AuditLog::getId).containsExactly(100L, 99L);
+    assertThat(matches.getTotal()).isEqualTo(-1);
+  }
+
+  @Test
+  void export_ShouldStreamEveryMatchingRowNewestFirst() throws Exception {
+    // Given
+    writeSegment(1, 30, START.plusDays(1));
+    writeSegment(31, 60, START.plusDays(2));
+
+    // When
+    List<Long> ids = new ArrayList<>();
+    archive.export(new AuditLogArchiveQuery(null, null, null, "FAILURE", null, null),
+        log -> ids.add(log.getId()));
+
+    // Then
+    assertThat(ids).containsExactly(60L, 50L, 40L, 30L, 20L, 10L);
+  }
+
+  @Test
+  void load_ShouldReopenPublishedSegmentsAndDropUnfinishedOnes() throws Exception {
+    // Given
+    writeSegment(1, 10, START.plusDays(1));
+    try (AuditLogSegmentWriter unfinished =
+        new AuditLogSegmentWriter(archive.newSegmentFile(), 4)) {
+      unfinished.add(row(11));
+    }
+    AuditLogSegmentWriter abandoned = new AuditLogSegmentWriter(archive.newSegmentFile(), 4);
+    abandoned.add(row(12));
+
+    // When
+    AuditLogArchive reloaded =
+        new AuditLogArchive(new ObjectMapper().findAndRegisterModules(), directory);
+    reloaded.load();
+
+    // Then
+    assertThat(reloaded.getHorizon()).isEqualTo(START.plusDays(1));
+    assertThat(reloaded.getSegmentsPendingDeletion()).hasSize(1);
+    assertThat(reloaded.search(new AuditLogArchiveQuery(null, null, null, null, null, null), 0,
+        100, true).getTotal()).isEqualTo(10);
+    abandoned.close();
+  }
+
+  @Test
+  void search_WhenBlockIsCorrupt_ShouldFail() throws Exception {
+    // Given
+    AuditLogSegment segment = writeSegment(1, 10, START.plusDays(1));
+    try (FileChannel channel = FileChannel.open(segment.getFile(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 0}), AuditLogSegment.MAGIC.length + 2);
+    }
+    AuditLogArchive reloaded =
+        new AuditLogArchive(new ObjectMapper().findAndRegisterModules(), directory);
+    reloaded.load();
+
+    // When & Then
+    assertThatThrownBy(() -> reloaded.search(
+        new AuditLogArchiveQuery(null, null, null, null, null, null), 0, 10, true))
+        .isInstanceOf(UncheckedIOException.class)
+        .hasMessageContaining("Corrupt block");
+  }
+
+  @Test
+  void forEachBlock_ShouldReturnEveryRowInOrder() throws Exception {
+    // Given
+    AuditLogSegment segment = writeSegment(1, 20, START.plusDays(1));
+
+    // When
+    List<Long> ids = new ArrayList<>();
+    List<Integer> blockSizes = new ArrayList<>();
+    segment.forEachBlock(rows -> {
+      blockSizes.add(rows.size());
+      rows.forEach(row -> ids.add(row.getId()));
+    });
+
+    // Then
+    assertThat(blockSizes).containsExactly(8, 8, 4);
+    assertThat(ids).hasSize(20).isSorted();
+  }
+
+  /**
+   * Archives rows with IDs from first to last, one minute apart, spread over five pharmacies and
+   * failing every tenth.
+   */
+  private AuditLogSegment writeSegment(long first, long last, LocalDateTime coveredBefore)
+      throws IOException {
+    Path file = archive.newSegmentFile();
+    try (AuditLogSegmentWriter writer = new AuditLogSegmentWriter(file, 8)) {
+      for (long id = first; id <= last; id++) {
+        writer.add(row(id));
+      }
+      writer.finish(coveredBefore);
+    }
+    return archive.publish(file);
+  }
+
+  private static ArchivedAuditLog row(long id) {
+    boolean failure = id % 10 == 0;
+    return new ArchivedAuditLog(id, id, id % 7, id % 5,
+        "[{\"drugId\": 1, \"quantity\": 2, \"dosage\": \"500mg\"}]", null,
+        failure ? "Insufficient stock" : null, failure ? "FAILURE" : "SUCCESS",
+        START.plusMinutes(id));
+  }
+}
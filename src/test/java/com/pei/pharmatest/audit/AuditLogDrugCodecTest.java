@@ -0,0 +1,190 @@
+package com.pei.pharmatest.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
+import com.pei.pharmatest.dto.PrescriptionDrugResponse;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogDrugCodecTest {
+
+  private static final LocalDateTime CREATED_AT = LocalDateTime.of(2025, 5, 17, 22, 10);
+
+  @Mock
+  private AuditLogRepository auditLogRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  private AuditLogDrugCodec codec;
+
+  @BeforeEach
+  void setUp() {
+    codec = new AuditLogDrugCodec(auditLogRepository, new ObjectMapper(), transactionManager,
+        AuditLogDrugCodec.Encoding.COMPACT);
+  }
+
+  @Test
+  void compact_ShouldRoundTripBothDrugLists() {
+    // Given
+    when(auditLogRepository.saveDrugDictionaryEntry("[\"500mg\"]")).thenReturn(1);
+    when(auditLogRepository.saveDrugDictionaryEntry("[\"Aspirin\",\"Bayer\",\"B-42\"]"))
+        .thenReturn(2);
+    AuditLog log = auditLog(
+        List.of(requested(17L, 2, "500mg"), requested(3_000_000_000L, -1, "500mg")),
+        List.of(dispensed(17L, 2, "Aspirin", "Bayer", "B-42")));
+
+    // When
+    AuditLog stored = codec.compact(log);
+    AuditLog expanded = codec.expand(stored);
+
+    // Then
+    assertThat(stored.getDrugsRequested()).isNull();
+    assertThat(stored.getDrugsDispensed()).isNull();
+    assertThat(stored.getRequestedDrugIds()).containsExactly(17L, 3_000_000_000L);
+    assertThat(log.getDrugsRequested()).hasSize(2);
+    assertThat(expanded).isNotSameAs(stored);
+    assertThat(expanded.getId()).isEqualTo(5L);
+    assertThat(expanded.getCreatedAt()).isEqualTo(CREATED_AT);
+    assertThat(expanded.getDrugsRequested())
+        .extracting(PrescriptionDrugRequest::getDrugId, PrescriptionDrugRequest::getQuantity,
+            PrescriptionDrugRequest::getDosage)
+        .containsExactly(tuple(17L, 2, "500mg"), tuple(3_000_000_000L, -1, "500mg"));
+    PrescriptionDrugResponse drug = expanded.getDrugsDispensed().get(0);
+    assertThat(drug.getDrugId()).isEqualTo(17L);
+    assertThat(drug.getQuantity()).isEqualTo(2);
+    assertThat(drug.getName()).isEqualTo("Aspirin");
+    assertThat(drug.getManufacturer()).isEqualTo("Bayer");
+    assertThat(drug.getBatchNumber()).isEqualTo("B-42");
+    // Each entry is added once and cached
+    verify(auditLogRepository, times(1)).saveDrugDictionaryEntry("[\"500mg\"]");
+  }
+
+  @Test
+  void compact_ShouldKeepMissingValuesAndLists() {
+    // Given
+    PrescriptionDrugRequest empty = new PrescriptionDrugRequest();
+    AuditLog log = auditLog(Arrays.asList(empty, requested(9L, null, null)), null);
+
+    // When
+    AuditLog expanded = codec.expand(codec.compact(log));
+
+    // Then
+    assertThat(expanded.getDrugsRequested()).hasSize(2);
+    assertThat(expanded.getDrugsRequested().get(0).getDrugId()).isNull();
+    assertThat(expanded.getDrugsRequested().get(0).getQuantity()).isNull();
+    assertThat(expanded.getDrugsRequested().get(1).getDrugId()).isEqualTo(9L);
+    assertThat(expanded.getDrugsRequested().get(1).getDosage()).isNull();
+    assertThat(expanded.getDrugsDispensed()).isNull();
+  }
+
+  @Test
+  void expand_ShouldLookUpEntriesAddedByOtherNodes() {
+    // Given
+    when(auditLogRepository.findDrugDictionary()).thenReturn(Map.of(1, "[\"500mg\"]"));
+    codec.load();
+    byte[] compact = codec.compact(auditLog(List.of(requested(17L, 2, "500mg")), null))
+        .getDrugsCompact();
+    AuditLogDrugCodec other = new AuditLogDrugCodec(auditLogRepository, new ObjectMapper(),
+        transactionManager, AuditLogDrugCodec.Encoding.JSON);
+    when(auditLogRepository.findDrugDictionaryEntry(1)).thenReturn("[\"500mg\"]");
+    AuditLog stored = auditLog(null, null);
+    stored.setDrugsCompact(compact);
+
+    // When
+    AuditLog expanded = other.expand(stored);
+
+    // Then
+    assertThat(expanded.getDrugsRequested().get(0).getDosage()).isEqualTo("500mg");
+    assertThat(other.isCompact()).isFalse();
+  }
+
+  @Test
+  void expand_WithUnknownCode_ShouldFail() {
+    // Given
+    when(auditLogRepository.saveDrugDictionaryEntry("[\"500mg\"]")).thenReturn(1);
+    byte[] compact = codec.compact(auditLog(List.of(requested(17L, 2, "500mg")), null))
+        .getDrugsCompact();
+    AuditLog stored = auditLog(null, null);
+    stored.setDrugsCompact(compact);
+    AuditLogDrugCodec other = new AuditLogDrugCodec(auditLogRepository, new ObjectMapper(),
+        transactionManager, AuditLogDrugCodec.Encoding.JSON);
+
+    // When & Then
+    assertThatThrownBy(() -> other.expand(stored)).isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("code 1");
+  }
+
+  @Test
+  void expand_ShouldReturnArchivedRowWithJsonText() {
+    // Given
+    when(auditLogRepository.saveDrugDictionaryEntry("[\"500mg\"]")).thenReturn(1);
+    byte[] compact = codec.compact(auditLog(List.of(requested(17L, 2, "500mg")), List.of()))
+        .getDrugsCompact();
+    ArchivedAuditLog json = new ArchivedAuditLog(5, 1, 2, 3, "[]", null, null, "SUCCESS",
+        CREATED_AT);
+
+    // When
+    ArchivedAuditLog expanded = codec.expand(new ArchivedAuditLog(5, 1, 2, 3, null, null,
+        "Invalid input", "FAILURE", CREATED_AT, compact));
+
+    // Then
+    assertThat(codec.expand(json)).isSameAs(json);
+    assertThat(expanded.getDrugsRequested())
+        .isEqualTo("[{\"drugId\":17,\"quantity\":2,\"dosage\":\"500mg\"}]");
+    assertThat(expanded.getDrugsDispensed()).isEqualTo("[]");
+    assertThat(expanded.getDrugsCompact()).isNull();
+    assertThat(expanded.getFailureReason()).isEqualTo("Invalid input");
+    assertThat(expanded.getPharmacyId()).isEqualTo(3);
+  }
+
+  private static AuditLog auditLog(List<PrescriptionDrugRequest> requested,
+      List<PrescriptionDrugResponse> dispensed) {
+    AuditLog log = new AuditLog();
+    log.setId(5L);
+    log.setStatus("SUCCESS");
+    log.setCreatedAt(CREATED_AT);
+    log.setDrugsRequested(requested);
+    log.setDrugsDispensed(dispensed);
+    return log;
+  }
+
+  private static PrescriptionDrugRequest requested(Long drugId, Integer quantity,
+      String dosage) {
+    PrescriptionDrugRequest drug = new PrescriptionDrugRequest();
+    drug.setDrugId(drugId);
+    drug.setQuantity(quantity);
+    drug.setDosage(dosage);
+    return drug;
+  }
+
+  private static PrescriptionDrugResponse dispensed(Long drugId, Integer quantity, String name,
+      String manufacturer, String batchNumber) {
+    PrescriptionDrugResponse drug = new PrescriptionDrugResponse();
+    drug.setDrugId(drugId);
+    drug.setQuantity(quantity);
+    drug.setName(name);
+    drug.setManufacturer(manufacturer);
+    drug.setBatchNumber(batchNumber);
+    return drug;
+  }
+}
@@ -0,0 +1,129 @@
+package com.pei.pharmatest.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.entities.AuditLog;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AuditLogSpoolTest {
+
+  @TempDir
+  private Path spoolDir;
+
+  private AuditLogSpool spool;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    spool = new AuditLogSpool(new ObjectMapper().findAndRegisterModules(),
+        spoolDir.resolve("audit-spool.ndjson"));
+  }
+
+  @Test
+  void replay_ShouldReturnAppendedLogsInOrderAndEmptyTheSpool() throws Exception {
+    // Given
+    AuditLog failed = auditLog(1L);
+    failed.setId(51L);
+    spool.append(List.of(failed, auditLog(2L)));
+    spool.append(List.of(auditLog(3L)));
+
+    // When
+    List<AuditLog> replayed = new ArrayList<>();
+    int count = spool.replay(2, replayed::addAll);
+
+    // Then
+    assertThat(count).isEqualTo(3);
+    assertThat(replayed).extracting(AuditLog::getPrescriptionId).containsExactly(1L, 2L, 3L);
+    assertThat(replayed).extracting(AuditLog::getId).containsOnlyNulls();
+    assertThat(replayed.get(0).getCreatedAt()).isEqualTo(failed.getCreatedAt());
+    assertThat(spool.size()).isZero();
+  }
+
+  @Test
+  void replay_WhenSinkFails_ShouldKeepOnlyTheRecordsNotAccepted() throws Exception {
+    // Given
+    spool.append(List.of(auditLog(1L), auditLog(2L), auditLog(3L)));
+    List<AuditLog> accepted = new ArrayList<>();
+
+    // When
+    assertThatThrownBy(() -> spool.replay(2, chunk -> {
+      if (!accepted.isEmpty()) {
+        throw new IllegalStateException("Database unavailable");
+      }
+      accepted.addAll(chunk);
+    })).isInstanceOf(IllegalStateException.class);
+
+    // Then
+    List<AuditLog> remaining = new ArrayList<>();
+    assertThat(spool.replay(2, remaining::addAll)).isEqualTo(1);
+    assertThat(remaining).extracting(AuditLog::getPrescriptionId).containsExactly(3L);
+  }
+
+  @Test
+  void replay_AfterRestartMidReplay_ShouldResumeAfterTheAcceptedRecords() throws Exception {
+    // Given
+    spool.append(List.of(auditLog(1L), auditLog(2L), auditLog(3L)));
+    List<AuditLog> accepted = new ArrayList<>();
+    assertThatThrownBy(() -> spool.replay(2, chunk -> {
+      if (!accepted.isEmpty()) {
+        throw new IllegalStateException("Killed");
+      }
+      accepted.addAll(chunk);
+    })).isInstanceOf(IllegalStateException.class);
+    spool.append(List.of(auditLog(4L)));
+
+    // When
+    AuditLogSpool restarted = new AuditLogSpool(new ObjectMapper().findAndRegisterModules(),
+        spoolDir.resolve("audit-spool.ndjson"));
+    List<AuditLog> resumed = new ArrayList<>();
+    List<AuditLog> next = new ArrayList<>();
+    restarted.replay(2, resumed::addAll);
+    restarted.replay(2, next::addAll);
+
+    // Then
+    assertThat(resumed).extracting(AuditLog::getPrescriptionId).containsExactly(3L);
+    assertThat(next).extracting(AuditLog::getPrescriptionId).containsExactly(4L);
+    assertThat(restarted.size()).isZero();
+  }
+
+  @Test
+  void append_DuringReplay_ShouldNotWaitForTheSink() throws Exception {
+    // Given
+    spool.append(List.of(auditLog(1L)));
+    ExecutorService appender = Executors.newSingleThreadExecutor();
+
+    // When
+    spool.replay(10, chunk -> {
+      // The sink stands for a slow database; an append must still finish meanwhile
+      Future<?> append = appender.submit(() -> {
+        spool.append(List.of(auditLog(2L)));
+        return null;
+      });
+      assertThatCode(() -> append.get(5, TimeUnit.SECONDS)).doesNotThrowAnyException();
+    });
+    appender.shutdown();
+
+    // Then
+    List<AuditLog> next = new ArrayList<>();
+    assertThat(spool.replay(10, next::addAll)).isEqualTo(1);
+    assertThat(next).extracting(AuditLog::getPrescriptionId).containsExactly(2L);
+  }
+
+  private static AuditLog auditLog(Long prescriptionId) {
+    AuditLog log = new AuditLog();
+    log.setPrescriptionId(prescriptionId);
+    log.setStatus("SUCCESS");
+    return log;
+  }
+}
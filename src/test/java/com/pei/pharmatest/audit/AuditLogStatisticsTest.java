@@ -0,0 +1,130 @@
+package com.pei.pharmatest.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.AuditLogStatisticsKey;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AuditLogStatisticsTest {
+
+  private static final LocalDateTime TEN_PAST = LocalDateTime.of(2025, 5, 17, 22, 10);
+
+  private AuditLogStatistics statistics;
+
+  @BeforeEach
+  void setUp() {
+    statistics = new AuditLogStatistics();
+  }
+
+  @Test
+  void record_ShouldCountByPharmacyHourAndFailureReason() {
+    // When
+    statistics.recordAll(List.of(
+        auditLog(3L, "SUCCESS", null, TEN_PAST),
+        auditLog(3L, "FAILURE", "Resource not found: Drug not found with id: 9",
+            TEN_PAST.plusMinutes(30)),
+        auditLog(4L, "FAILURE", "Resource not found: Pharmacy not found with id: 4",
+            TEN_PAST.plusHours(1))));
+
+    // Then
+    Map<AuditLogStatisticsKey, Long> counts = statistics.counts();
+    assertThat(counts).containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 1L)
+        .containsEntry(AuditLogStatisticsKey.pharmacy(3L, "FAILURE"), 1L)
+        .containsEntry(AuditLogStatisticsKey.pharmacy(4L, "FAILURE"), 1L)
+        .containsEntry(AuditLogStatisticsKey.hour(TEN_PAST, "SUCCESS"), 1L)
+        .containsEntry(AuditLogStatisticsKey.hour(TEN_PAST, "FAILURE"), 1L)
+        .containsEntry(AuditLogStatisticsKey.hour(TEN_PAST.plusHours(1), "FAILURE"), 1L)
+        .containsEntry(AuditLogStatisticsKey.failureReason("Resource not found"), 2L)
+        .hasSize(7);
+    assertThat(AuditLogStatisticsKey.hour(TEN_PAST, "SUCCESS").getBucket())
+        .isEqualTo("2025-05-17T22:00");
+  }
+
+  @Test
+  void drainUnflushed_ShouldTakeOnlyWhatWasCountedSinceLoading() {
+    // Given
+    statistics.load(Map.of(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 40L));
+    statistics.record(auditLog(3L, "SUCCESS", null, TEN_PAST));
+
+    // When
+    Map<AuditLogStatisticsKey, Long> deltas = statistics.drainUnflushed();
+
+    // Then
+    assertThat(deltas).containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 1L)
+        .hasSize(2);
+    assertThat(statistics.counts())
+        .containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 41L);
+    assertThat(statistics.drainUnflushed()).isEmpty();
+
+    statistics.restoreUnflushed(deltas);
+    assertThat(statistics.drainUnflushed()).isEqualTo(deltas);
+  }
+
+  @Test
+  void finishRebuild_ShouldReplaceCountersAndKeepLogsRecordedMeanwhile() {
+    // Given
+    statistics.record(auditLog(3L, "SUCCESS", null, TEN_PAST));
+    LocalDateTime since = statistics.startRebuild();
+    statistics.record(auditLog(3L, "SUCCESS", null, since.minusMinutes(1)));
+    statistics.record(auditLog(3L, "SUCCESS", null, since));
+
+    // When
+    statistics.finishRebuild(Map.of(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 10L));
+
+    // Then
+    assertThat(statistics.counts())
+        .containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 11L);
+    // The rebuilt counts are persisted by the rebuild itself
+    assertThat(statistics.drainUnflushed())
+        .containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 1L);
+  }
+
+  @Test
+  void reload_ShouldServeStoredCountsPlusWhatIsNotCheckpointed() {
+    // Given
+    AuditLogStatisticsKey pharmacy3 = AuditLogStatisticsKey.pharmacy(3L, "SUCCESS");
+    AuditLogStatisticsKey pharmacy4 = AuditLogStatisticsKey.pharmacy(4L, "SUCCESS");
+    statistics.load(Map.of(pharmacy3, 5L, pharmacy4, 2L));
+    statistics.record(auditLog(3L, "SUCCESS", null, TEN_PAST));
+
+    // When another instance checkpointed more, and pharmacy 4 was rebuilt away
+    statistics.reload(Map.of(pharmacy3, 9L));
+
+    // Then
+    assertThat(statistics.counts()).containsEntry(pharmacy3, 10L)
+        .containsEntry(pharmacy4, 0L);
+    assertThat(statistics.drainUnflushed()).containsEntry(pharmacy3, 1L);
+  }
+
+  @Test
+  void abandonRebuild_ShouldKeepCurrentCounters() {
+    // Given
+    LocalDateTime since = statistics.startRebuild();
+    statistics.record(auditLog(3L, "FAILURE", null, since));
+
+    // When
+    statistics.abandonRebuild();
+
+    // Then
+    assertThat(statistics.counts())
+        .containsEntry(AuditLogStatisticsKey.pharmacy(3L, "FAILURE"), 1L)
+        .containsEntry(AuditLogStatisticsKey.failureReason(null), 1L);
+    assertThat(AuditLogStatisticsKey.failureReason(null).getBucket())
+        .isEqualTo(AuditLogStatisticsKey.UNKNOWN_REASON);
+  }
+
+  private static AuditLog auditLog(Long pharmacyId, String status, String failureReason,
+      LocalDateTime createdAt) {
+    AuditLog log = new AuditLog();
+    log.setPharmacyId(pharmacyId);
+    log.setStatus(status);
+    log.setFailureReason(failureReason);
+    log.setCreatedAt(createdAt);
+    return log;
+  }
+}
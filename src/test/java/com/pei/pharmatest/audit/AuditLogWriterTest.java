@@ -0,0 +1,198 @@
+package com.pei.pharmatest.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogWriterTest {
+
+  @Mock
+  private AuditLogRepository auditLogRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private AuditLogDrugCodec drugCodec;
+
+  @TempDir
+  private Path spoolDir;
+
+  private SimpleMeterRegistry meterRegistry;
+  private AuditLogSpool spool;
+  private AuditLogWriter writer;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    spool = new AuditLogSpool(new ObjectMapper().findAndRegisterModules(),
+        spoolDir.resolve("audit-spool.ndjson"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (writer != null) {
+      writer.stop();
+    }
+  }
+
+  @Test
+  void writeAll_ShouldInsertQueuedLogsInOneBatch() {
+    // Given
+    startWriter(true, 100, 3, Duration.ofSeconds(2));
+
+    // When
+    writer.writeAll(List.of(auditLog(1L), auditLog(2L)));
+    writer.write(auditLog(3L));
+
+    // Then
+    verify(auditLogRepository, timeout(5000)).saveAll(argThat(logs -> size(logs) == 3));
+    writer.stop();
+    assertThat(meterRegistry.get("pharma.audit.writer.flush").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void writeAll_WhenDatabaseFails_ShouldSpoolAndReplayLater() throws Exception {
+    // Given
+    when(auditLogRepository.saveAll(any()))
+        .thenThrow(new DataAccessResourceFailureException("Connection refused"))
+        .thenReturn(List.of());
+    startWriter(true, 100, 2, Duration.ofMillis(10));
+
+    // When
+    writer.writeAll(List.of(auditLog(1L), auditLog(2L)));
+
+    // Then
+    verify(auditLogRepository, timeout(5000).times(2))
+        .saveAll(argThat(logs -> size(logs) == 2));
+    awaitEmptySpool();
+    assertThat(meterRegistry.get("pharma.audit.writer.spooled").counter().count())
+        .isEqualTo(2);
+  }
+
+  @Test
+  void writeAll_WhenQueueIsFull_ShouldSpoolOverflow() throws Exception {
+    // Given
+    CountDownLatch release = new CountDownLatch(1);
+    when(auditLogRepository.saveAll(any())).thenAnswer(invocation -> {
+      release.await(5, TimeUnit.SECONDS);
+      return List.of();
+    });
+    startWriter(true, 1, 1, Duration.ofMillis(10));
+    writer.write(auditLog(1L));
+    verify(auditLogRepository, timeout(5000)).saveAll(any());
+
+    // When
+    writer.write(auditLog(2L));
+    writer.write(auditLog(3L));
+
+    // Then
+    assertThat(spool.size()).isPositive();
+    assertThat(meterRegistry.get("pharma.audit.writer.spooled").counter().count())
+        .isEqualTo(1);
+    assertThat(meterRegistry.get("pharma.audit.writer.queue.depth").gauge().value())
+        .isEqualTo(1);
+    release.countDown();
+  }
+
+  @Test
+  void stop_ShouldDrainQueuedLogs() {
+    // Given
+    startWriter(true, 100, 10, Duration.ofMillis(200));
+    writer.writeAll(List.of(auditLog(1L), auditLog(2L)));
+
+    // When
+    writer.stop();
+
+    // Then
+    verify(auditLogRepository).saveAll(argThat(logs -> size(logs) == 2));
+    assertThat(spool.size()).isZero();
+  }
+
+  @Test
+  void writeAll_WhenDisabled_ShouldInsertOnCallingThread() {
+    // Given
+    startWriter(false, 100, 10, Duration.ofSeconds(2));
+
+    // When
+    writer.write(auditLog(1L));
+
+    // Then
+    verify(auditLogRepository, times(1)).saveAll(argThat(logs -> size(logs) == 1));
+  }
+
+  @Test
+  void writeAll_InCompactEncoding_ShouldInsertCompactedCopies() {
+    // Given
+    startWriter(false, 100, 10, Duration.ofSeconds(2));
+    AuditLog log = auditLog(1L);
+    AuditLog compacted = auditLog(1L);
+    when(drugCodec.isCompact()).thenReturn(true);
+    when(drugCodec.compactAll(List.of(log))).thenReturn(List.of(compacted));
+
+    // When
+    writer.write(log);
+
+    // Then
+    verify(auditLogRepository).saveAll(List.of(compacted));
+  }
+
+  private void startWriter(boolean enabled, int queueCapacity, int maxBatchSize,
+      Duration flushInterval) {
+    writer = new AuditLogWriter(auditLogRepository, drugCodec, transactionManager, spool,
+        meterRegistry, enabled, queueCapacity, maxBatchSize, flushInterval, Duration.ofSeconds(5),
+        Duration.ofMillis(10), Duration.ZERO, Duration.ofSeconds(5));
+    writer.start();
+  }
+
+  private void awaitEmptySpool() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (spool.size() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(spool.size()).isZero();
+  }
+
+  private static int size(Iterable<?> logs) {
+    int size = 0;
+    for (Object ignored : logs) {
+      size++;
+    }
+    return size;
+  }
+
+  private static AuditLog auditLog(Long prescriptionId) {
+    AuditLog log = new AuditLog();
+    log.setPrescriptionId(prescriptionId);
+    log.setPatientId(1L);
+    log.setPharmacyId(1L);
+    log.setDrugsRequested(List.of());
+    log.setDrugsDispensed(List.of());
+    log.setStatus("SUCCESS");
+    return log;
+  }
+}
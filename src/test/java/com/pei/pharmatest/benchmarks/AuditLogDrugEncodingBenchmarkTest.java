@@ -0,0 +1,256 @@
+package com.pei.pharmatest.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.audit.AuditLogDrugCodec;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
+import com.pei.pharmatest.dto.PrescriptionDrugResponse;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.migrations.DrugsRequestedIndexMigration;
+import com.pei.pharmatest.migrations.RequestedDrugIdsIndexMigration;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares the drug lists of audit logs stored as JSON documents with the compact encoding of
+ * {@link AuditLogDrugCodec}, at one million rows: the p50 and p99 latencies of writing a batch of
+ * the audit log writer's default size, including serialization or encoding, the per-row cost of
+ * serializing and encoding alone, and the table and per-row column sizes. Each scratch table has
+ * the index of its drug filter, the GIN index on {@code drugs_requested} or on
+ * {@code requested_drug_ids}. Audit logs request one to five of a few thousand drugs, and
+ * successful ones list them as dispensed as well.
+ *
+ * <p>Needs the PostgreSQL database from {@code application.properties}, and adds the dosages and
+ * dispensed drug details it generates to its {@code audit_drug_dictionary}. Takes a few minutes
+ * and is excluded from the default build. Run it with
+ * {@code mvn test -Dgroups=benchmark -DexcludedGroups=none}.
+ */
+@Tag("benchmark")
+@SpringBootTest
+class AuditLogDrugEncodingBenchmarkTest {
+
+  private static final String JSON_TABLE = "audit_logs_json_bench";
+  private static final String COMPACT_TABLE = "audit_logs_compact_bench";
+  private static final int ROWS = 1_000_000;
+  private static final int BATCH_SIZE = 500;
+  private static final int DRUGS = 5_000;
+  private static final String[] DOSAGES =
+      {"50mg", "100mg", "250mg", "500mg", "1g", "5ml", "10ml", "1 tablet", "2 tablets", "1 puff"};
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private AuditLogDrugCodec drugCodec;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Test
+  void writeLatencyAndSizeOfJsonAndCompactDrugLists() throws JsonProcessingException {
+    createTables();
+    try {
+      TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+      Random random = new Random(42);
+      int batches = ROWS / BATCH_SIZE;
+      long[] jsonNanos = new long[batches];
+      long[] compactNanos = new long[batches];
+      long serializeNanos = 0;
+      long encodeNanos = 0;
+      for (int batch = 0; batch < batches; batch++) {
+        List<AuditLog> logs = auditLogs(random, batch * (long) BATCH_SIZE);
+
+        // Alternate which encoding goes first, so that neither always finds a warmer cache
+        for (int pass = 0; pass < 2; pass++) {
+          long start = System.nanoTime();
+          if ((batch + pass) % 2 == 0) {
+            List<String[]> documents = new ArrayList<>(logs.size());
+            for (AuditLog log : logs) {
+              documents.add(new String[] {objectMapper.writeValueAsString(log.getDrugsRequested()),
+                  log.getDrugsDispensed() == null ? null
+                      : objectMapper.writeValueAsString(log.getDrugsDispensed())});
+            }
+            serializeNanos += System.nanoTime() - start;
+            transaction.executeWithoutResult(status -> insertJson(logs, documents));
+            jsonNanos[batch] = System.nanoTime() - start;
+          } else {
+            List<AuditLog> compacted = drugCodec.compactAll(logs);
+            encodeNanos += System.nanoTime() - start;
+            transaction.executeWithoutResult(status -> insertCompact(compacted));
+            compactNanos[batch] = System.nanoTime() - start;
+          }
+        }
+      }
+      jdbcTemplate.execute("VACUUM ANALYZE " + JSON_TABLE);
+      jdbcTemplate.execute("VACUUM ANALYZE " + COMPACT_TABLE);
+
+      double[] json = percentiles(jsonNanos);
+      double[] compact = percentiles(compactNanos);
+      System.out.printf("%-10s %14s %14s %14s %12s %12s %14s%n", "encoding", "batch p50",
+          "batch p99", "encode/row", "table MB", "index MB", "drugs B/row");
+      System.out.printf("%-10s %12.2fms %12.2fms %12.2fus %12d %12d %14.1f%n", "json", json[0],
+          json[1], serializeNanos / 1e3 / ROWS, tableMegabytes(JSON_TABLE),
+          indexMegabytes(JSON_TABLE),
+          averageBytes(JSON_TABLE, "pg_column_size(drugs_requested)"
+              + " + coalesce(pg_column_size(drugs_dispensed), 0)"));
+      System.out.printf("%-10s %12.2fms %12.2fms %12.2fus %12d %12d %14.1f%n", "compact",
+          compact[0], compact[1], encodeNanos / 1e3 / ROWS, tableMegabytes(COMPACT_TABLE),
+          indexMegabytes(COMPACT_TABLE),
+          averageBytes(COMPACT_TABLE, "pg_column_size(drugs_compact)"
+              + " + pg_column_size(requested_drug_ids)"));
+    } finally {
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + JSON_TABLE);
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + COMPACT_TABLE);
+    }
+  }
+
+  private void createTables() {
+    for (String table : new String[] {JSON_TABLE, COMPACT_TABLE}) {
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+      // Partitioning does not change the cost of a row within one month
+      jdbcTemplate.execute("CREATE TABLE " + table
+          + " (LIKE audit_logs INCLUDING DEFAULTS INCLUDING CONSTRAINTS, PRIMARY KEY (id))");
+    }
+    jdbcTemplate.execute("CREATE INDEX ON " + JSON_TABLE + " "
+        + DrugsRequestedIndexMigration.DEFINITION);
+    jdbcTemplate.execute("CREATE INDEX ON " + COMPACT_TABLE + " "
+        + RequestedDrugIdsIndexMigration.DEFINITION);
+  }
+
+  /**
+   * Generates one batch of audit logs: four in five successful, with the requested drugs
+   * dispensed, the others failed.
+   */
+  private static List<AuditLog> auditLogs(Random random, long firstId) {
+    List<AuditLog> logs = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      AuditLog log = new AuditLog();
+      log.setId(firstId + i + 1);
+      log.setPrescriptionId(log.getId());
+      log.setPatientId(1L + random.nextInt(50_000));
+      log.setPharmacyId(1L + random.nextInt(500));
+      boolean success = random.nextInt(5) > 0;
+      log.setStatus(success ? "SUCCESS" : "FAILURE");
+      log.setFailureReason(success ? null : "Business rule violation: Insufficient stock");
+      List<PrescriptionDrugRequest> requested = new ArrayList<>();
+      List<PrescriptionDrugResponse> dispensed = new ArrayList<>();
+      int drugs = 1 + random.nextInt(5);
+      for (int d = 0; d < drugs; d++) {
+        long drugId = 1 + random.nextInt(DRUGS);
+        int quantity = 1 + random.nextInt(30);
+        PrescriptionDrugRequest request = new PrescriptionDrugRequest();
+        request.setDrugId(drugId);
+        request.setQuantity(quantity);
+        request.setDosage(DOSAGES[random.nextInt(DOSAGES.length)]);
+        requested.add(request);
+        PrescriptionDrugResponse response = new PrescriptionDrugResponse();
+        response.setDrugId(drugId);
+        response.setQuantity(quantity);
+        response.setName("Drug " + drugId);
+        response.setManufacturer("Manufacturer " + drugId % 200);
+        response.setBatchNumber("BATCH-" + drugId);
+        dispensed.add(response);
+      }
+      log.setDrugsRequested(requested);
+      log.setDrugsDispensed(success ? dispensed : null);
+      logs.add(log);
+    }
+    return logs;
+  }
+
+  private void insertJson(List<AuditLog> logs, List<String[]> documents) {
+    jdbcTemplate.batchUpdate("INSERT INTO " + JSON_TABLE + " (id, prescription_id, patient_id,"
+            + " pharmacy_id, drugs_requested, drugs_dispensed, failure_reason, status, created_at)"
+            + " VALUES (?, ?, ?, ?, ?::jsonb, ?::jsonb, ?, ?, ?)",
+        new Rows(logs) {
+          @Override
+          void setDrugs(PreparedStatement ps, int i) throws SQLException {
+            ps.setString(5, documents.get(i)[0]);
+            ps.setString(6, documents.get(i)[1]);
+          }
+        });
+  }
+
+  private void insertCompact(List<AuditLog> logs) {
+    jdbcTemplate.batchUpdate("INSERT INTO " + COMPACT_TABLE + " (id, prescription_id, patient_id,"
+            + " pharmacy_id, drugs_compact, requested_drug_ids, failure_reason, status,"
+            + " created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        new Rows(logs) {
+          @Override
+          void setDrugs(PreparedStatement ps, int i) throws SQLException {
+            AuditLog log = logs.get(i);
+            ps.setBytes(5, log.getDrugsCompact());
+            ps.setArray(6, ps.getConnection().createArrayOf("bigint",
+                log.getRequestedDrugIds()));
+          }
+        });
+  }
+
+  private long tableMegabytes(String table) {
+    return jdbcTemplate.queryForObject(
+        "SELECT pg_table_size('" + table + "') / (1024 * 1024)", Long.class);
+  }
+
+  private long indexMegabytes(String table) {
+    return jdbcTemplate.queryForObject(
+        "SELECT pg_indexes_size('" + table + "') / (1024 * 1024)", Long.class);
+  }
+
+  private double averageBytes(String table, String expression) {
+    return jdbcTemplate.queryForObject(
+        "SELECT avg(" + expression + ") FROM " + table, Double.class);
+  }
+
+  private static double[] percentiles(long[] nanos) {
+    Arrays.sort(nanos);
+    return new double[] {nanos[nanos.length / 2] / 1e6, nanos[nanos.length * 99 / 100] / 1e6};
+  }
+
+  /**
+   * Binds the columns the two tables share, leaving the drug lists to the subclass.
+   */
+  private abstract static class Rows implements BatchPreparedStatementSetter {
+
+    private final List<AuditLog> logs;
+
+    private Rows(List<AuditLog> logs) {
+      this.logs = logs;
+    }
+
+    @Override
+    public void setValues(PreparedStatement ps, int i) throws SQLException {
+      AuditLog log = logs.get(i);
+      ps.setLong(1, log.getId());
+      ps.setLong(2, log.getPrescriptionId());
+      ps.setLong(3, log.getPatientId());
+      ps.setLong(4, log.getPharmacyId());
+      setDrugs(ps, i);
+      ps.setString(7, log.getFailureReason());
+      ps.setString(8, log.getStatus());
+      ps.setTimestamp(9, Timestamp.valueOf(log.getCreatedAt()));
+    }
+
+    @Override
+    public int getBatchSize() {
+      return logs.size();
+    }
+
+    abstract void setDrugs(PreparedStatement ps, int i) throws SQLException;
+  }
+}
@@ -0,0 +1,163 @@
+package com.pei.pharmatest.benchmarks;
+
+import com.pei.pharmatest.migrations.DrugsRequestedIndexMigration;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Records p50 and p99 latencies of the first page of the audit log listing filtered by drug, at
+ * 100 million rows, before and after the GIN index of {@link DrugsRequestedIndexMigration}. One
+ * drug is requested by every tenth prescription and the others by a few ten thousand each; both
+ * are measured with and without the last week as date range, and together with a pharmacy. The
+ * scratch copy of {@code audit_logs} already has the indexes of {@code V13} and {@code V14}, so
+ * the numbers before are those of the tree without the drug index. The build time and size of the
+ * index are printed as well.
+ *
+ * <p>Needs the PostgreSQL database from {@code application.properties} with about 40 GB of free
+ * space, takes more than an hour and is excluded from the default build. Run it with
+ * {@code mvn test -Dgroups=benchmark -DexcludedGroups=none}.
+ */
+@Tag("benchmark")
+@SpringBootTest
+class AuditLogDrugFilterBenchmarkTest {
+
+  private static final String TABLE = "audit_logs_drug_bench";
+  private static final String[] EXISTING_INDEX_MIGRATIONS = {
+      "db/migration/V13__index_audit_logs_by_created_at.sql",
+      "db/migration/V14__index_audit_log_filters.sql"};
+  private static final long ROWS = 100_000_000L;
+  private static final long SEED_CHUNK = 10_000_000L;
+  private static final int DRUGS = 5_000;
+  private static final int PHARMACIES = 500;
+  private static final long HOT_DRUG = 1;
+  private static final int SAMPLES = 20;
+  private static final int PAGE_SIZE = 10;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Test
+  void drugFilterLatenciesBeforeAndAfterIndex() throws IOException {
+    seed();
+    try {
+      String[] labels = {"hot drug", "hot drug, last week", "hot drug + pharmacyId",
+          "typical drug", "typical drug, last week", "typical drug + pharmacyId"};
+      double[][] before = new double[labels.length][];
+      for (int i = 0; i < labels.length; i++) {
+        before[i] = measure(i);
+      }
+
+      long start = System.nanoTime();
+      // One partition's share of the migration, which builds the index per partition
+      jdbcTemplate.execute("CREATE INDEX " + TABLE + "_drugs_requested_idx ON " + TABLE + " "
+          + DrugsRequestedIndexMigration.DEFINITION);
+      jdbcTemplate.execute("ANALYZE " + TABLE);
+      double buildSeconds = (System.nanoTime() - start) / 1e9;
+      Long indexBytes = jdbcTemplate.queryForObject(
+          "SELECT pg_relation_size('" + TABLE + "_drugs_requested_idx')", Long.class);
+
+      System.out.printf("%-28s %12s %12s %12s %12s%n", "filters", "p50 before", "p99 before",
+          "p50 after", "p99 after");
+      for (int i = 0; i < labels.length; i++) {
+        double[] after = measure(i);
+        System.out.printf("%-28s %10.2fms %10.2fms %10.2fms %10.2fms%n", labels[i],
+            before[i][0], before[i][1], after[0], after[1]);
+      }
+      System.out.printf("index build %.1fs, index size %d MB%n", buildSeconds,
+          indexBytes / (1024 * 1024));
+    } finally {
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+    }
+  }
+
+  /**
+   * Seeds one row per second going back from now, each requesting two drugs, in chunks that keep
+   * each transaction to a bounded size.
+   */
+  private void seed() throws IOException {
+    jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+    // Partitioning does not change the plans within one month, and logging only slows the seed
+    jdbcTemplate.execute("CREATE UNLOGGED TABLE " + TABLE
+        + " (LIKE audit_logs INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+    for (long first = 1; first <= ROWS; first += SEED_CHUNK) {
+      jdbcTemplate.update("INSERT INTO " + TABLE + " (id, prescription_id, patient_id,"
+          + " pharmacy_id, drugs_requested, drugs_dispensed, failure_reason, status, created_at)"
+          + " SELECT g, g, 1 + g % 50000, 1 + g % " + PHARMACIES + ", jsonb_build_array("
+          + "   jsonb_build_object('drugId', 2 + g % " + DRUGS + ", 'quantity', 1,"
+          + "     'dosage', '500mg'),"
+          + "   jsonb_build_object('drugId', CASE WHEN g % 10 = 0 THEN " + HOT_DRUG
+          + "     ELSE 2 + (g * 31) % " + DRUGS + " END, 'quantity', 2, 'dosage', '250mg')),"
+          + " NULL, NULL, 'SUCCESS', now() - g * interval '1 second'"
+          + " FROM generate_series(?, ?) g", first, Math.min(ROWS, first + SEED_CHUNK - 1));
+    }
+    jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD PRIMARY KEY (id)");
+    for (String migration : EXISTING_INDEX_MIGRATIONS) {
+      runMigration(migration);
+    }
+  }
+
+  private void runMigration(String migration) throws IOException {
+    String script = new ClassPathResource(migration).getContentAsString(StandardCharsets.UTF_8)
+        .replaceAll("(?m)--.*$", "")
+        .replace("audit_logs", TABLE);
+    for (String statement : script.split(";")) {
+      if (!statement.isBlank()) {
+        jdbcTemplate.execute(statement);
+      }
+    }
+    jdbcTemplate.execute("ANALYZE " + TABLE);
+  }
+
+  /**
+   * Measures the first page of one case, in the order of the labels: the drug alone, with the
+   * last week or with a pharmacy, first for the hot drug and then for a random typical one.
+   */
+  private double[] measure(int filters) {
+    boolean typical = filters >= 3;
+    int variant = filters % 3;
+    StringBuilder sql =
+        new StringBuilder("SELECT * FROM " + TABLE + " WHERE drugs_requested @> ?::jsonb");
+    if (variant == 1) {
+      sql.append(" AND created_at >= ?");
+    } else if (variant == 2) {
+      sql.append(" AND pharmacy_id = ?");
+    }
+    sql.append(" ORDER BY created_at DESC, id DESC LIMIT ").append(PAGE_SIZE + 1);
+
+    Supplier<Object[]> args = () -> {
+      long drugId = typical ? 2 + ThreadLocalRandom.current().nextInt(DRUGS) : HOT_DRUG;
+      String drug = "[{\"drugId\": " + drugId + "}]";
+      if (variant == 1) {
+        return new Object[] {drug, Timestamp.valueOf(LocalDateTime.now().minusWeeks(1))};
+      }
+      if (variant == 2) {
+        return new Object[] {drug, 1 + ThreadLocalRandom.current().nextInt(PHARMACIES)};
+      }
+      return new Object[] {drug};
+    };
+    long[] nanos = new long[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      Object[] values = args.get();
+      long start = System.nanoTime();
+      jdbcTemplate.queryForList(sql.toString(), values);
+      nanos[i] = System.nanoTime() - start;
+    }
+    return percentiles(nanos);
+  }
+
+  private static double[] percentiles(long[] nanos) {
+    Arrays.sort(nanos);
+    return new double[] {nanos[nanos.length / 2] / 1e6, nanos[nanos.length * 99 / 100] / 1e6};
+  }
+}
@@ -0,0 +1,168 @@
+package com.pei.pharmatest.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Records p50 and p99 latencies of the first keyset page of the audit log listing for every
+ * combination of the patient, pharmacy and status filters, and of a lookup by prescription,
+ * before and after the audit log index migrations. The queries run against a scratch copy of
+ * {@code audit_logs} seeded with synthetic rows, and the indexes are created on it from the
+ * migration scripts themselves, so the numbers always reflect the shipped indexes.
+ *
+ * <p>Needs the PostgreSQL database from {@code application.properties}, takes several minutes and
+ * is excluded from the default build. Run it with
+ * {@code mvn test -Dgroups=benchmark -DexcludedGroups=none}.
+ */
+@Tag("benchmark")
+@SpringBootTest
+class AuditLogFilterBenchmarkTest {
+
+  private static final String TABLE = "audit_logs_bench";
+  private static final String[] INDEX_MIGRATIONS = {
+      "db/migration/V13__index_audit_logs_by_created_at.sql",
+      "db/migration/V14__index_audit_log_filters.sql"};
+  private static final int ROWS = 5_000_000;
+  private static final int PATIENTS = 50_000;
+  private static final int PHARMACIES = 500;
+  private static final int FAILURE_EVERY = 50;
+  private static final int SAMPLES = 100;
+  private static final int PAGE_SIZE = 10;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Test
+  void filterLatenciesBeforeAndAfterIndexes() throws IOException {
+    seed();
+    try {
+      List<String> labels = new ArrayList<>();
+      List<double[]> before = new ArrayList<>();
+      for (int filters = 0; filters < 8; filters++) {
+        labels.add(label(filters));
+        before.add(measure(filters));
+      }
+      labels.add("prescriptionId");
+      before.add(measurePrescriptionLookup());
+
+      createIndexes();
+
+      System.out.printf("%-28s %12s %12s %12s %12s%n", "filters", "p50 before", "p99 before",
+          "p50 after", "p99 after");
+      for (int i = 0; i < labels.size(); i++) {
+        double[] after = i < 8 ? measure(i) : measurePrescriptionLookup();
+        System.out.printf("%-28s %10.2fms %10.2fms %10.2fms %10.2fms%n", labels.get(i),
+            before.get(i)[0], before.get(i)[1], after[0], after[1]);
+      }
+    } finally {
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+    }
+  }
+
+  private void seed() {
+    jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+    jdbcTemplate.execute("CREATE TABLE " + TABLE
+        + " (LIKE audit_logs INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+    jdbcTemplate.update("INSERT INTO " + TABLE + " (id, prescription_id, patient_id, pharmacy_id,"
+        + " drugs_requested, drugs_dispensed, failure_reason, status, created_at)"
+        + " SELECT g, g, 1 + g % " + PATIENTS + ", 1 + g % " + PHARMACIES + ","
+        + " '[{\"drugId\": 1, \"quantity\": 2, \"dosage\": \"500mg\"}]'::jsonb, NULL,"
+        + " CASE WHEN g % " + FAILURE_EVERY + " = 0 THEN 'Insufficient stock' END,"
+        + " CASE WHEN g % " + FAILURE_EVERY + " = 0 THEN 'FAILURE' ELSE 'SUCCESS' END,"
+        + " now() - g * interval '1 second'"
+        + " FROM generate_series(1, " + ROWS + ") g");
+    jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD PRIMARY KEY (id)");
+    jdbcTemplate.execute("ANALYZE " + TABLE);
+  }
+
+  private void createIndexes() throws IOException {
+    for (String migration : INDEX_MIGRATIONS) {
+      String script = new ClassPathResource(migration).getContentAsString(StandardCharsets.UTF_8)
+          .replaceAll("(?m)--.*$", "")
+          .replace("audit_logs", TABLE);
+      for (String statement : script.split(";")) {
+        if (!statement.isBlank()) {
+          jdbcTemplate.execute(statement);
+        }
+      }
+    }
+    jdbcTemplate.execute("ANALYZE " + TABLE);
+  }
+
+  /**
+   * Measures the first page of one filter combination, with bit 0 standing for the patient, bit
+   * 1 for the pharmacy and bit 2 for the FAILURE status.
+   */
+  private double[] measure(int filters) {
+    StringBuilder sql = new StringBuilder("SELECT * FROM " + TABLE + " WHERE TRUE");
+    if ((filters & 1) != 0) {
+      sql.append(" AND patient_id = ?");
+    }
+    if ((filters & 2) != 0) {
+      sql.append(" AND pharmacy_id = ?");
+    }
+    if ((filters & 4) != 0) {
+      sql.append(" AND status = 'FAILURE'");
+    }
+    sql.append(" ORDER BY created_at DESC, id DESC LIMIT ").append(PAGE_SIZE + 1);
+
+    long[] nanos = new long[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      List<Object> args = new ArrayList<>();
+      // Patient IDs are spread so that each patient visits one pharmacy, as the seed does
+      int patientId = 1 + ThreadLocalRandom.current().nextInt(PATIENTS);
+      if ((filters & 1) != 0) {
+        args.add(patientId);
+      }
+      if ((filters & 2) != 0) {
+        args.add((filters & 1) != 0 ? 1 + (patientId - 1) % PHARMACIES
+            : 1 + ThreadLocalRandom.current().nextInt(PHARMACIES));
+      }
+      long start = System.nanoTime();
+      jdbcTemplate.queryForList(sql.toString(), args.toArray());
+      nanos[i] = System.nanoTime() - start;
+    }
+    return percentiles(nanos);
+  }
+
+  private double[] measurePrescriptionLookup() {
+    long[] nanos = new long[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      long prescriptionId = 1 + ThreadLocalRandom.current().nextInt(ROWS);
+      long start = System.nanoTime();
+      jdbcTemplate.queryForList("SELECT * FROM " + TABLE + " WHERE prescription_id = ?",
+          prescriptionId);
+      nanos[i] = System.nanoTime() - start;
+    }
+    return percentiles(nanos);
+  }
+
+  private static double[] percentiles(long[] nanos) {
+    Arrays.sort(nanos);
+    return new double[] {nanos[nanos.length / 2] / 1e6, nanos[nanos.length * 99 / 100] / 1e6};
+  }
+
+  private static String label(int filters) {
+    List<String> names = new ArrayList<>();
+    if ((filters & 1) != 0) {
+      names.add("patientId");
+    }
+    if ((filters & 2) != 0) {
+      names.add("pharmacyId");
+    }
+    if ((filters & 4) != 0) {
+      names.add("status=FAILURE");
+    }
+    return names.isEmpty() ? "(none)" : String.join("+", names);
+  }
+}
@@ -0,0 +1,116 @@
+package com.pei.pharmatest.benchmarks;
+
+import com.pei.pharmatest.entities.Drug;
+import com.pei.pharmatest.entities.Pharmacy;
+import com.pei.pharmatest.entities.PharmacyDrug;
+import com.pei.pharmatest.inventory.ContractIndex;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the contract and allocation checks of a three-drug prescription done against the
+ * {@link ContractIndex} with the previous approach of collecting the pharmacy's contract entities
+ * into a map with {@code Collectors.toMap} for every prescription. The GC profiler reports the
+ * bytes allocated per check as {@code gc.alloc.rate.norm}.
+ *
+ * <p>Does not need a database, but takes a few minutes and is excluded from the default build.
+ * Run it with {@code mvn test -Dgroups=benchmark -DexcludedGroups=none}.
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContractLookupBenchmarkTest {
+
+  private static final long PHARMACY_ID = 42L;
+  private static final int PHARMACY_COUNT = 1000;
+
+  @Param({"10", "100", "1000"})
+  public int contractsPerPharmacy;
+
+  private Pharmacy pharmacy;
+  private ContractIndex index;
+  private long[] requestedDrugIds;
+
+  @Test
+  void compareContractLookups() throws Exception {
+    new Runner(new OptionsBuilder()
+        .include(ContractLookupBenchmarkTest.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+
+  /**
+   * Builds the same contracts as entities of one pharmacy and as rows of the index, which holds
+   * the contracts of all pharmacies.
+   */
+  @Setup
+  public void setUp() {
+    pharmacy = new Pharmacy();
+    pharmacy.setId(PHARMACY_ID);
+    Set<PharmacyDrug> pharmacyDrugs = new HashSet<>();
+    ContractIndex.Builder builder = new ContractIndex.Builder();
+    for (long pharmacyId = 1; pharmacyId <= PHARMACY_COUNT; pharmacyId++) {
+      for (long drugId = 1; drugId <= contractsPerPharmacy; drugId++) {
+        builder.add(pharmacyId, drugId, 1000, 10);
+        if (pharmacyId == PHARMACY_ID) {
+          Drug drug = new Drug();
+          drug.setId(drugId);
+          PharmacyDrug pharmacyDrug = new PharmacyDrug();
+          pharmacyDrug.setPharmacy(pharmacy);
+          pharmacyDrug.setDrug(drug);
+          pharmacyDrug.setAllocatedAmount(1000);
+          pharmacyDrug.setConsumedAmount(10);
+          pharmacyDrugs.add(pharmacyDrug);
+        }
+      }
+    }
+    pharmacy.setPharmacyDrugs(pharmacyDrugs);
+    index = new ContractIndex();
+    index.replaceAll(builder);
+    requestedDrugIds = new long[] {1, contractsPerPharmacy / 2 + 1, contractsPerPharmacy};
+  }
+
+  @Benchmark
+  public void collectorsToMap(Blackhole blackhole) {
+    Map<Long, PharmacyDrug> pharmacyDrugMap = pharmacy.getPharmacyDrugs().stream()
+        .collect(Collectors.toMap(pd -> pd.getDrug().getId(), Function.identity()));
+    for (long drugId : requestedDrugIds) {
+      PharmacyDrug pharmacyDrug = pharmacyDrugMap.get(drugId);
+      blackhole.consume(pharmacyDrug != null);
+      blackhole.consume(pharmacyDrug.getAllocatedAmount() - pharmacyDrug.getConsumedAmount());
+    }
+  }
+
+  @Benchmark
+  public void contractIndex(Blackhole blackhole) {
+    for (long drugId : requestedDrugIds) {
+      blackhole.consume(index.isContracted(PHARMACY_ID, drugId));
+      blackhole.consume(index.remainingAllocation(PHARMACY_ID, drugId));
+    }
+  }
+}
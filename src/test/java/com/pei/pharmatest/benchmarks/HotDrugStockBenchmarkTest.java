@@ -0,0 +1,120 @@
+package com.pei.pharmatest.benchmarks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pei.pharmatest.entities.Drug;
+import com.pei.pharmatest.repositories.DrugRepository;
+import com.pei.pharmatest.repositories.StockDecrement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Measures how many stock decrements per second a single hot drug sustains as the number of
+ * stock shards and concurrent fulfilling threads grows. Each operation is the stock step of a
+ * fulfillment in its own transaction, which is where fulfillments of the same drug serialize.
+ *
+ * <p>Needs the PostgreSQL database from {@code application.properties} and is excluded from the
+ * default build. Run it with {@code mvn test -Dgroups=benchmark -DexcludedGroups=none}.
+ */
+@Tag("benchmark")
+@SpringBootTest
+class HotDrugStockBenchmarkTest {
+
+  private static final int[] SHARD_COUNTS = {0, 4, 16, 64};
+  private static final int[] THREAD_COUNTS = {1, 4, 16, 32};
+  private static final long RUN_MILLIS = 5_000;
+  private static final int INITIAL_STOCK = 1_000_000_000;
+
+  @Autowired
+  private DrugRepository drugRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Test
+  void fulfillThroughputForOneHotDrug() throws Exception {
+    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+    long drugId = createHotDrug();
+    try {
+      System.out.printf("%8s %8s %14s%n", "shards", "threads", "fulfills/sec");
+      for (int shards : SHARD_COUNTS) {
+        for (int threads : THREAD_COUNTS) {
+          resetStock(transactionTemplate, drugId, shards);
+          double throughput = measure(transactionTemplate, drugId, shards, threads);
+          System.out.printf("%8d %8d %14.0f%n", shards, threads, throughput);
+        }
+      }
+    } finally {
+      jdbcTemplate.update("DELETE FROM drug_stock_shards WHERE drug_id = ?", drugId);
+      jdbcTemplate.update("DELETE FROM drugs WHERE id = ?", drugId);
+    }
+  }
+
+  private long createHotDrug() {
+    Drug drug = new Drug();
+    drug.setName("Benchmark Aspirin");
+    drug.setManufacturer("Benchmark");
+    drug.setBatchNumber("BENCH-" + System.nanoTime());
+    drug.setExpiryDate(LocalDate.now().plusYears(1));
+    drug.setStock(INITIAL_STOCK);
+    drug.setCreatedAt(LocalDateTime.now());
+    return drugRepository.save(drug).getId();
+  }
+
+  private void resetStock(TransactionTemplate transactionTemplate, long drugId, int shards) {
+    transactionTemplate.executeWithoutResult(status -> {
+      drugRepository.reshardStock(drugId, 0);
+      jdbcTemplate.update("UPDATE drugs SET stock = ? WHERE id = ?", INITIAL_STOCK, drugId);
+      drugRepository.reshardStock(drugId, shards);
+    });
+  }
+
+  private double measure(TransactionTemplate transactionTemplate, long drugId, int shards,
+      int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+    LocalDate today = LocalDate.now();
+    List<StockDecrement> decrement = List.of(new StockDecrement(drugId, 1, shards));
+
+    for (int i = 0; i < threads; i++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        int fulfilled = 0;
+        while (System.currentTimeMillis() < deadline) {
+          int[] updateCounts = transactionTemplate.execute(
+              status -> drugRepository.decrementStock(decrement, today));
+          assertThat(updateCounts).containsExactly(1);
+          fulfilled++;
+        }
+        return fulfilled;
+      }));
+    }
+    start.countDown();
+
+    long total = 0;
+    for (Future<Integer> result : results) {
+      total += result.get(RUN_MILLIS * 2, TimeUnit.MILLISECONDS);
+    }
+    executor.shutdown();
+    return total * 1000.0 / RUN_MILLIS;
+  }
+}
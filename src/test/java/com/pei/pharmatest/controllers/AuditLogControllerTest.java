@@ -0,0 +1,257 @@
+package com.pei.pharmatest.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.pei.pharmatest.dto.AuditLogScrollResponse;
+import com.pei.pharmatest.dto.AuditLogStatsResponse;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.exceptions.GlobalExceptionHandler;
+import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.services.AuditLogService;
+import com.pei.pharmatest.services.AuditLogStatisticsService;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogControllerTest {
+
+  @Mock
+  private AuditLogService auditLogService;
+
+  @Mock
+  private AuditLogStatisticsService auditLogStatisticsService;
+
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  void setUp() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.findAndRegisterModules();
+    objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    mockMvc = MockMvcBuilders
+        .standaloneSetup(new AuditLogController(auditLogService, auditLogStatisticsService,
+            objectMapper))
+        .setControllerAdvice(new GlobalExceptionHandler()).build();
+  }
+
+  @Test
+  void getAuditLogs_WithoutPageOrCursor_ShouldReturnFirstPageWithTotal() throws Exception {
+    // Given
+    PageRequest firstPage = PageRequest.of(0, 10,
+        Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+    when(auditLogService.getAuditLogs(isNull(), eq(3L), isNull(), isNull(), isNull(), isNull(),
+        eq(firstPage))).thenReturn(
+            new PageImpl<>(List.of(auditLog(1L, "SUCCESS", null)), firstPage, 1));
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/audit-logs").param("pharmacyId", "3"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[0].id").value(1))
+        .andExpect(jsonPath("$.totalElements").value(1));
+    verify(auditLogService, never()).scrollAuditLogs(any(), any(), any(), any(), any(), any(),
+        any(), anyInt(), anyBoolean());
+  }
+
+  @Test
+  void getAuditLogs_WithKeysetPaging_ShouldScrollFromTheNewest() throws Exception {
+    // Given
+    AuditLogScrollResponse response = new AuditLogScrollResponse();
+    response.setContent(List.of(auditLog(2L, "SUCCESS", null)));
+    response.setNextCursor("next");
+    when(auditLogService.scrollAuditLogs(isNull(), isNull(), isNull(), isNull(), isNull(),
+        isNull(), isNull(), eq(10), eq(false))).thenReturn(response);
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/audit-logs").param("paging", "keyset"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[0].id").value(2))
+        .andExpect(jsonPath("$.nextCursor").value("next"));
+  }
+
+  @Test
+  void getAuditLogs_WithCursor_ShouldScrollFromTheCursor() throws Exception {
+    // Given
+    AuditLogScrollResponse response = new AuditLogScrollResponse();
+    response.setContent(List.of(auditLog(1L, "SUCCESS", null)));
+    when(auditLogService.scrollAuditLogs(isNull(), isNull(), isNull(), isNull(), isNull(),
+        isNull(), eq("next"), eq(10), eq(true))).thenReturn(response);
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/audit-logs").param("cursor", "next")
+            .param("total", "estimated"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[0].id").value(1))
+        .andExpect(jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  @Test
+  void getAuditLogs_WithPageAndCursor_ShouldReturnBadRequest() throws Exception {
+    mockMvc.perform(get("/api/v1/audit-logs").param("page", "1").param("cursor", "next"))
+        .andExpect(status().isBadRequest());
+    mockMvc.perform(get("/api/v1/audit-logs").param("paging", "offset")
+            .param("cursor", "next"))
+        .andExpect(status().isBadRequest());
+    verifyNoInteractions(auditLogService);
+  }
+
+  @Test
+  void exportAuditLogs_ShouldStreamGzippedCsv_WhenClientAcceptsGzip() throws Exception {
+    // Given
+    doAnswer(invocation -> {
+      Consumer<AuditLog> sink = invocation.getArgument(6);
+      sink.accept(auditLog(2L, "FAILURE", "Insufficient stock, drug 1"));
+      sink.accept(auditLog(1L, "SUCCESS", null));
+      return null;
+    }).when(auditLogService).exportAuditLogs(isNull(), eq(3L), isNull(), isNull(), isNull(),
+        isNull(), any());
+
+    // When
+    MvcResult result = mockMvc.perform(get("/api/v1/audit-logs/export")
+            .param("pharmacyId", "3").param("format", "csv")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+        .andExpect(request().asyncStarted()).andReturn();
+
+    // Then
+    byte[] body = mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=\"audit-logs.csv\""))
+        .andReturn().getResponse().getContentAsByteArray();
+    String[] lines;
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+      lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\r\n");
+    }
+    assertEquals(3, lines.length);
+    assertEquals("2,2,1,3,FAILURE,\"Insufficient stock, drug 1\",2025-05-17T22:17:33,"
+        + "\"[{\"\"drugId\"\":1,\"\"quantity\"\":2,\"\"dosage\"\":null}]\",", lines[1]);
+    assertEquals("1,1,1,3,SUCCESS,,2025-05-17T22:17:33,"
+        + "\"[{\"\"drugId\"\":1,\"\"quantity\"\":2,\"\"dosage\"\":null}]\",", lines[2]);
+  }
+
+  @Test
+  void exportAuditLogs_ShouldStreamPlainNdjson_WithoutAcceptEncoding() throws Exception {
+    // Given
+    doAnswer(invocation -> {
+      Consumer<AuditLog> sink = invocation.getArgument(6);
+      sink.accept(auditLog(1L, "SUCCESS", null));
+      return null;
+    }).when(auditLogService).exportAuditLogs(any(), any(), any(), any(), any(), any(), any());
+
+    // When
+    MvcResult result = mockMvc.perform(get("/api/v1/audit-logs/export"))
+        .andExpect(request().asyncStarted()).andReturn();
+
+    // Then
+    String body = mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+        .andReturn().getResponse().getContentAsString();
+    assertEquals(1, body.split("\n").length);
+    assertEquals("2025-05-17T22:17:33",
+        new ObjectMapper().readTree(body).get("createdAt").asText());
+  }
+
+  @Test
+  void exportAuditLogs_WithInvalidFilters_ShouldFailBeforeStreaming() throws Exception {
+    // Given
+    doThrow(new ValidationException("The start of the date range must be before its end"))
+        .when(auditLogService).validateFilters(any(), any(), any());
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/audit-logs/export")
+            .param("from", "2025-06-01T00:00:00").param("to", "2025-05-01T00:00:00"))
+        .andExpect(status().isBadRequest());
+    verify(auditLogService, never())
+        .exportAuditLogs(any(), any(), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void exportAuditLogs_WithUnknownFormat_ShouldReturnBadRequest() throws Exception {
+    mockMvc.perform(get("/api/v1/audit-logs/export").param("format", "xml"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void getStatistics_ShouldServeTheCounters() throws Exception {
+    // Given
+    AuditLogStatsResponse stats = new AuditLogStatsResponse();
+    stats.setSuccess(7);
+    stats.setFailure(2);
+    stats.setFailureReasons(Map.of("Resource not found", 2L));
+    when(auditLogStatisticsService.getStatistics(48)).thenReturn(stats);
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/audit-logs/stats").param("hours", "48"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.success").value(7))
+        .andExpect(jsonPath("$.failureReasons['Resource not found']").value(2));
+    verifyNoInteractions(auditLogService);
+  }
+
+  @Test
+  void rebuildStatistics_WithInvalidHours_ShouldFailBeforeRebuilding() throws Exception {
+    // Given
+    doThrow(new ValidationException("Hours must be between 1 and 8784"))
+        .when(auditLogStatisticsService).validateHours(0);
+
+    // When & Then
+    mockMvc.perform(post("/api/v1/audit-logs/stats/rebuild").param("hours", "0"))
+        .andExpect(status().isBadRequest());
+    verify(auditLogStatisticsService, never()).rebuildStatistics();
+  }
+
+  private static AuditLog auditLog(Long id, String status, String failureReason) {
+    AuditLog log = new AuditLog();
+    log.setId(id);
+    log.setPrescriptionId(id);
+    log.setPatientId(1L);
+    log.setPharmacyId(3L);
+    log.setStatus(status);
+    log.setFailureReason(failureReason);
+    log.setCreatedAt(LocalDateTime.of(2025, 5, 17, 22, 17, 33));
+    PrescriptionDrugRequest drug = new PrescriptionDrugRequest();
+    drug.setDrugId(1L);
+    drug.setQuantity(2);
+    log.setDrugsRequested(List.of(drug));
+    return log;
+  }
+}
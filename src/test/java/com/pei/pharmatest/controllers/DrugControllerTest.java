@@ -1,10 +1,14 @@
 package com.pei.pharmatest.controllers;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -23,6 +27,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -59,6 +64,7 @@ class DrugControllerTest {
     drugResponse.setExpiryDate(LocalDate.now().plusYears(2));
     drugResponse.setStock(100);
     drugResponse.setCreatedAt(LocalDateTime.now());
+    drugResponse.setVersion("3-0");
 
     when(drugService.getDrug(drugId)).thenReturn(Optional.of(drugResponse));
 
@@ -68,7 +74,40 @@ class DrugControllerTest {
         .andExpect(jsonPath("$.id").value(drugId)).andExpect(jsonPath("$.name").value("Aspirin"))
         .andExpect(jsonPath("$.manufacturer").value("Bayer"))
         .andExpect(jsonPath("$.batchNumber").value("BATCH123"))
-        .andExpect(jsonPath("$.stock").value(100));
+        .andExpect(jsonPath("$.stock").value(100))
+        .andExpect(jsonPath("$.version").doesNotExist())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"drug-1-3-0\""));
+  }
+
+  @Test
+  void getDrug_ShouldReturnNotModified_WithoutLoadingDrug_WhenEtagMatches() throws Exception {
+    // Given
+    when(drugService.getDrugVersion(1L)).thenReturn(Optional.of("3-0"));
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/drugs/{id}", 1L).header(HttpHeaders.IF_NONE_MATCH,
+            "\"drug-1-3-0\""))
+        .andExpect(status().isNotModified())
+        .andExpect(content().bytes(new byte[0]));
+    verify(drugService, never()).getDrug(1L);
+  }
+
+  @Test
+  void getDrug_ShouldReturnDrug_WhenEtagIsStale() throws Exception {
+    // Given
+    DrugResponse drugResponse = new DrugResponse();
+    drugResponse.setId(1L);
+    drugResponse.setStock(90);
+    drugResponse.setVersion("4-0");
+    when(drugService.getDrugVersion(1L)).thenReturn(Optional.of("4-0"));
+    when(drugService.getDrug(1L)).thenReturn(Optional.of(drugResponse));
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/drugs/{id}", 1L).header(HttpHeaders.IF_NONE_MATCH,
+            "\"drug-1-3-0\""))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.stock").value(90))
+        .andExpect(header().string(HttpHeaders.ETAG, "\"drug-1-4-0\""));
   }
 
   @Test
@@ -144,4 +183,35 @@ class DrugControllerTest {
         .andExpect(status().isBadRequest()).andExpect(jsonPath("$.error").value("Validation error"))
         .andExpect(jsonPath("$.message").value(errorMessage));
   }
+
+  @Test
+  void shardStock_ShouldReturnDrugWithTotalStock() throws Exception {
+    // Given
+    Long drugId = 1L;
+    DrugResponse drugResponse = new DrugResponse();
+    drugResponse.setId(drugId);
+    drugResponse.setName("Aspirin");
+    drugResponse.setStock(100);
+
+    when(drugService.shardStock(drugId, 8)).thenReturn(Optional.of(drugResponse));
+
+    // When & Then
+    mockMvc.perform(put("/api/v1/drugs/{id}/stock-shards", drugId).param("count", "8"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.id").value(drugId))
+        .andExpect(jsonPath("$.stock").value(100));
+  }
+
+  @Test
+  void shardStock_ShouldReturnNotFound_WhenDrugDoesNotExist() throws Exception {
+    // Given
+    Long drugId = 999L;
+    when(drugService.shardStock(drugId, 8)).thenReturn(Optional.empty());
+
+    // When & Then
+    mockMvc.perform(put("/api/v1/drugs/{id}/stock-shards", drugId).param("count", "8"))
+        .andExpect(status().isNotFound())
+        .andExpect(jsonPath("$.message")
+            .value(String.format("Drug with ID %d does not exist in the inventory", drugId)));
+  }
 }
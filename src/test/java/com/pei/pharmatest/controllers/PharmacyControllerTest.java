@@ -1,22 +1,36 @@
 package com.pei.pharmatest.controllers;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.pei.pharmatest.exceptions.BusinessException;
+import com.pei.pharmatest.exceptions.OutcomeUnknownException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.pei.pharmatest.dto.ContractedDrugResponse;
 import com.pei.pharmatest.dto.PharmacyResponse;
+import com.pei.pharmatest.dto.PrescriptionBatchItemResponse;
 import com.pei.pharmatest.dto.PrescriptionDrugRequest;
 import com.pei.pharmatest.dto.PrescriptionDrugResponse;
 import com.pei.pharmatest.dto.PrescriptionRequest;
@@ -29,8 +43,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 @ExtendWith(MockitoExtension.class)
@@ -45,7 +61,7 @@ class PharmacyControllerTest {
     private MockMvc mockMvc;
 
     @Test
-    void getAllPharmacies_ShouldReturnPharmaciesList() throws Exception {
+    void getPharmacies_ShouldReturnPharmaciesList() throws Exception {
         // Given
         PharmacyResponse pharmacy1 = new PharmacyResponse();
         pharmacy1.setId(1L);
@@ -63,7 +79,8 @@ class PharmacyControllerTest {
 
         pharmacy1.setContractedDrugs(new HashSet<>(List.of(drug1)));
 
-        when(pharmacyService.getAllPharmacies()).thenReturn(List.of(pharmacy1));
+        when(pharmacyService.getAllPharmaciesVersion(true)).thenReturn("4-12-30");
+        when(pharmacyService.getAllPharmacies(true)).thenReturn(List.of(pharmacy1));
 
         mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
 
@@ -75,13 +92,92 @@ class PharmacyControllerTest {
                 .andExpect(jsonPath("$[0].name").value("Pharmacy One"))
                 .andExpect(jsonPath("$[0].address").value("123 Main St"))
                 .andExpect(jsonPath("$[0].contractedDrugs[0].name").value("Drug A"))
-                .andExpect(jsonPath("$[0].contractedDrugs[0].allocatedAmount").value(50));
+                .andExpect(jsonPath("$[0].contractedDrugs[0].allocatedAmount").value(50))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"pharmacies-4-12-30\""))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
     }
 
     @Test
-    void getAllPharmacies_WhenNoPharmacies_ShouldReturnEmptyList() throws Exception {
+    void getPharmacies_WhenEtagMatches_ShouldReturnNotModifiedWithoutLoadingPage()
+            throws Exception {
         // Given
-        when(pharmacyService.getAllPharmacies()).thenReturn(List.of());
+        when(pharmacyService.getAllPharmaciesVersion(true)).thenReturn("4-12-30");
+
+        mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/pharmacies")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"pharmacies-4-12-30\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        verify(pharmacyService, never()).getAllPharmacies(true);
+    }
+
+    @Test
+    void getPharmacies_WhenSizeGiven_ShouldReturnFirstPage() throws Exception {
+        // Given
+        PharmacyResponse pharmacy1 = new PharmacyResponse();
+        pharmacy1.setId(1L);
+        pharmacy1.setName("Pharmacy One");
+        pharmacy1.setAddress("123 Main St");
+
+        when(pharmacyService.getPharmaciesVersion(null, 2, true)).thenReturn("4-12-30");
+        when(pharmacyService.getPharmacies(null, 2, true)).thenReturn(List.of(pharmacy1));
+
+        mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/pharmacies").queryParam("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"pharmacies-4-12-30\""))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+        verify(pharmacyService, never()).getAllPharmacies(true);
+    }
+
+    @Test
+    void getPharmacies_WhenOnlyAfterIdGiven_ShouldUseDefaultPageSize() throws Exception {
+        // Given
+        when(pharmacyService.getPharmaciesVersion(3L, 100, true)).thenReturn("4-12-30");
+        when(pharmacyService.getPharmacies(3L, 100, true)).thenReturn(List.of());
+
+        mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/pharmacies").queryParam("afterId", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    void getPharmacies_WhenPageIsFull_ShouldLinkToNextPage() throws Exception {
+        // Given
+        PharmacyResponse pharmacy1 = new PharmacyResponse();
+        pharmacy1.setId(7L);
+        pharmacy1.setName("Pharmacy Seven");
+        pharmacy1.setAddress("7 Main St");
+
+        when(pharmacyService.getPharmaciesVersion(3L, 1, false)).thenReturn("4");
+        when(pharmacyService.getPharmacies(3L, 1, false)).thenReturn(List.of(pharmacy1));
+
+        mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/pharmacies")
+                .queryParam("afterId", "3").queryParam("size", "1")
+                .queryParam("includeContracts", "false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(7))
+                .andExpect(header().string(HttpHeaders.LINK,
+                        "<http://localhost/api/v1/pharmacies?size=1&includeContracts=false"
+                                + "&afterId=7>; rel=\"next\""));
+    }
+
+    @Test
+    void getPharmacies_WhenNoPharmacies_ShouldReturnEmptyList() throws Exception {
+        // Given
+        when(pharmacyService.getAllPharmaciesVersion(true)).thenReturn("0-0-0");
+        when(pharmacyService.getAllPharmacies(true)).thenReturn(List.of());
 
         mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
 
@@ -200,4 +296,139 @@ class PharmacyControllerTest {
                 .andExpect(jsonPath("$.error").value("Business rule violation"))
                 .andExpect(jsonPath("$.message").value(errorMessage));
     }
+
+    @Test
+    void fulfillPrescription_ShouldReturnServiceUnavailable_WhenOutcomeUnknown() throws Exception {
+        // Given
+        String errorMessage = "Timed out waiting for the fulfillment of prescription 1; "
+                + "check its status before retrying";
+        when(pharmacyService.fulfillPrescription(1L)).thenThrow(new OutcomeUnknownException(
+                errorMessage, new CompletableFuture<>(), Duration.ofSeconds(1)));
+
+        mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController)
+                .setControllerAdvice(new GlobalExceptionHandler()).build();
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/pharmacies/prescriptions/{prescriptionId}/fulfill", 1L))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(jsonPath("$.error").value("Service unavailable"))
+                .andExpect(jsonPath("$.message").value(errorMessage));
+    }
+
+    @Test
+    void createPrescriptions_ShouldReturnOneResultPerRequest() throws Exception {
+        // Given
+        Long pharmacyId = 1L;
+        PrescriptionRequest request = new PrescriptionRequest();
+        request.setPatientId(1L);
+
+        PrescriptionDrugRequest drugRequest = new PrescriptionDrugRequest();
+        drugRequest.setDrugId(1L);
+        drugRequest.setQuantity(10);
+        request.setDrugs(List.of(drugRequest));
+
+        PrescriptionResponse created = new PrescriptionResponse();
+        created.setId(1L);
+        created.setPharmacyId(pharmacyId);
+        created.setStatus("CREATED");
+
+        String errorMessage = "Drug with ID 4 is not contracted with this pharmacy";
+        when(pharmacyService.createPrescriptions(eq(pharmacyId), anyList())).thenReturn(List.of(
+                PrescriptionBatchItemResponse.success(0, created),
+                PrescriptionBatchItemResponse.failure(1, null, errorMessage)));
+
+        mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/pharmacies/{pharmacyId}/prescriptions:batch", pharmacyId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(request, request))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].index").value(0))
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[0].prescriptionId").value(1))
+                .andExpect(jsonPath("$[0].prescription.status").value("CREATED"))
+                .andExpect(jsonPath("$[1].index").value(1))
+                .andExpect(jsonPath("$[1].success").value(false))
+                .andExpect(jsonPath("$[1].error").value(errorMessage));
+    }
+
+    @Test
+    void fulfillPrescriptions_ShouldReturnOneResultPerPrescription() throws Exception {
+        // Given
+        PrescriptionResponse fulfilled = new PrescriptionResponse();
+        fulfilled.setId(1L);
+        fulfilled.setStatus("FULFILLED");
+
+        String errorMessage = "Prescription has already been fulfilled or cancelled";
+        when(pharmacyService.fulfillPrescriptions(List.of(1L, 2L))).thenReturn(List.of(
+                PrescriptionBatchItemResponse.success(0, fulfilled),
+                PrescriptionBatchItemResponse.failure(1, 2L, errorMessage)));
+
+        mockMvc = MockMvcBuilders.standaloneSetup(pharmacyController).build();
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/pharmacies/prescriptions:fulfill")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[0].prescription.status").value("FULFILLED"))
+                .andExpect(jsonPath("$[1].prescriptionId").value(2))
+                .andExpect(jsonPath("$[1].success").value(false))
+                .andExpect(jsonPath("$[1].error").value(errorMessage));
+    }
+
+    @Test
+    void exportPharmacies_ShouldWriteOnePharmacyPerLine() throws Exception {
+        // Given
+        PharmacyResponse pharmacy1 = new PharmacyResponse();
+        pharmacy1.setId(1L);
+        pharmacy1.setName("Pharmacy One");
+        pharmacy1.setAddress("123 Main St");
+
+        ContractedDrugResponse drug1 = new ContractedDrugResponse();
+        drug1.setId(1L);
+        drug1.setName("Drug A");
+        drug1.setExpiryDate(LocalDate.of(2030, 1, 31));
+        drug1.setStock(100);
+        drug1.setAllocatedAmount(50);
+        pharmacy1.setContractedDrugs(new HashSet<>(List.of(drug1)));
+
+        PharmacyResponse pharmacy2 = new PharmacyResponse();
+        pharmacy2.setId(2L);
+        pharmacy2.setName("Pharmacy Two");
+        pharmacy2.setAddress("456 Oak St");
+        pharmacy2.setContractedDrugs(new HashSet<>());
+
+        doAnswer(invocation -> {
+            Consumer<PharmacyResponse> sink = invocation.getArgument(0);
+            sink.accept(pharmacy1);
+            sink.accept(pharmacy2);
+            return null;
+        }).when(pharmacyService).exportPharmacies(any());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new PharmacyController(pharmacyService, objectMapper)).build();
+
+        // When
+        MvcResult result = mockMvc.perform(get("/api/v1/pharmacies/export"))
+                .andExpect(request().asyncStarted()).andReturn();
+
+        // Then
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(1, objectMapper.readTree(lines[0]).get("id").asInt());
+        assertEquals("2030-01-31",
+                objectMapper.readTree(lines[0]).at("/contractedDrugs/0/expiryDate").asText());
+        assertEquals("Pharmacy Two", objectMapper.readTree(lines[1]).get("name").asText());
+    }
 }
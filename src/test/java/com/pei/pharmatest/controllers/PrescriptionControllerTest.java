@@ -0,0 +1,131 @@
+package com.pei.pharmatest.controllers;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.exceptions.GlobalExceptionHandler;
+import com.pei.pharmatest.exceptions.ResourceNotFoundException;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache.CachedResponse;
+import com.pei.pharmatest.services.PrescriptionService;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@ExtendWith(MockitoExtension.class)
+class PrescriptionControllerTest {
+
+  @Mock
+  private PrescriptionService prescriptionService;
+
+  @InjectMocks
+  private PrescriptionController prescriptionController;
+
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  void setUp() {
+    mockMvc = MockMvcBuilders.standaloneSetup(prescriptionController)
+        .setControllerAdvice(new GlobalExceptionHandler()).build();
+  }
+
+  @Test
+  void getPrescription_ShouldReturnPrescription_WhenPrescriptionExists() throws Exception {
+    // Given
+    PrescriptionResponse response = new PrescriptionResponse();
+    response.setId(7L);
+    response.setPharmacyId(1L);
+    response.setPatientId(2L);
+    response.setStatus("FULFILLED");
+    response.setDrugs(List.of());
+    when(prescriptionService.getCachedPrescription(7L)).thenReturn(Optional.empty());
+    when(prescriptionService.getPrescription(7L)).thenReturn(response);
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/prescriptions/{id}", 7L))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"prescription-7-FULFILLED\""))
+        .andExpect(jsonPath("$.id").value(7))
+        .andExpect(jsonPath("$.status").value("FULFILLED"));
+  }
+
+  @Test
+  void getPrescription_ShouldServeCachedBytes_WhenPrescriptionIsCached() throws Exception {
+    // Given
+    byte[] body = "{\"id\":7,\"status\":\"CANCELLED\"}".getBytes(StandardCharsets.UTF_8);
+    when(prescriptionService.getCachedPrescription(7L)).thenReturn(
+        Optional.of(new CachedResponse(body, "\"prescription-7-CANCELLED\"")));
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/prescriptions/{id}", 7L))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"prescription-7-CANCELLED\""))
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(content().bytes(body));
+    verify(prescriptionService, never()).getPrescription(7L);
+  }
+
+  @Test
+  void getPrescription_ShouldReturnNotModified_WhenCachedEtagMatches() throws Exception {
+    // Given
+    byte[] body = "{\"id\":7,\"status\":\"CANCELLED\"}".getBytes(StandardCharsets.UTF_8);
+    when(prescriptionService.getCachedPrescription(7L)).thenReturn(
+        Optional.of(new CachedResponse(body, "\"prescription-7-CANCELLED\"")));
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/prescriptions/{id}", 7L)
+            .header(HttpHeaders.IF_NONE_MATCH, "\"prescription-7-CANCELLED\""))
+        .andExpect(status().isNotModified())
+        .andExpect(content().bytes(new byte[0]));
+  }
+
+  @Test
+  void getPrescription_ShouldCheckStatusBeforeLoading_WhenConditional() throws Exception {
+    // Given
+    when(prescriptionService.getCachedPrescription(7L)).thenReturn(Optional.empty());
+    when(prescriptionService.getPrescriptionStatus(7L)).thenReturn("CREATED");
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/prescriptions/{id}", 7L)
+            .header(HttpHeaders.IF_NONE_MATCH, "\"prescription-7-CREATED\""))
+        .andExpect(status().isNotModified())
+        .andExpect(content().bytes(new byte[0]));
+    verify(prescriptionService, never()).getPrescription(7L);
+  }
+
+  @Test
+  void getPrescription_ShouldReturnNotFound_WhenPrescriptionDoesNotExist() throws Exception {
+    // Given
+    when(prescriptionService.getCachedPrescription(999L)).thenReturn(Optional.empty());
+    when(prescriptionService.getPrescription(999L))
+        .thenThrow(new ResourceNotFoundException("Prescription not found with id: 999"));
+
+    // When & Then
+    mockMvc.perform(get("/api/v1/prescriptions/{id}", 999L))
+        .andExpect(status().isNotFound())
+        .andExpect(jsonPath("$.message").value("Prescription not found with id: 999"));
+  }
+
+  @Test
+  void getPrescription_ShouldReturnBadRequest_WhenIdIsNotPositive() throws Exception {
+    mockMvc.perform(get("/api/v1/prescriptions/{id}", 0L))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error").value("Validation error"));
+  }
+}
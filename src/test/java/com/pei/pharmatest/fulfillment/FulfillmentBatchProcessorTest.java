@@ -0,0 +1,194 @@
+package com.pei.pharmatest.fulfillment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.pei.pharmatest.entities.Drug;
+import com.pei.pharmatest.entities.Patient;
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import com.pei.pharmatest.entities.Pharmacy;
+import com.pei.pharmatest.entities.Prescription;
+import com.pei.pharmatest.entities.Prescription.PrescriptionStatus;
+import com.pei.pharmatest.entities.PrescriptionItem;
+import com.pei.pharmatest.exceptions.BusinessException;
+import com.pei.pharmatest.exceptions.ResourceNotFoundException;
+import com.pei.pharmatest.repositories.DrugRepository;
+import com.pei.pharmatest.repositories.PrescriptionRepository;
+import com.pei.pharmatest.repositories.StockDecrement;
+import com.pei.pharmatest.services.AllocationService;
+import com.pei.pharmatest.services.StockReservationService;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class FulfillmentBatchProcessorTest {
+
+  @Mock
+  private PrescriptionRepository prescriptionRepository;
+
+  @Mock
+  private DrugRepository drugRepository;
+
+  @Mock
+  private StockReservationService stockReservationService;
+
+  @Mock
+  private AllocationService allocationService;
+
+  @Captor
+  private ArgumentCaptor<List<StockDecrement>> decrementsCaptor;
+
+  @InjectMocks
+  private FulfillmentBatchProcessor processor;
+
+  private Pharmacy pharmacy;
+  private Patient patient;
+  private Drug drug;
+
+  @BeforeEach
+  void setUp() {
+    pharmacy = new Pharmacy();
+    pharmacy.setId(1L);
+    patient = new Patient();
+    patient.setId(1L);
+    drug = new Drug();
+    drug.setId(1L);
+    drug.setName("Aspirin");
+    drug.setStock(15);
+    drug.setExpiryDate(LocalDate.now().plusDays(30));
+  }
+
+  @Test
+  void fulfillAll_ShouldAdmitInOrderAndApplyOneDecrementPerDrug() {
+    // Given
+    Prescription first = prescription(1L, 10);
+    Prescription second = prescription(2L, 10);
+    Prescription third = prescription(3L, 5);
+
+    when(prescriptionRepository.findAllWithItemsByIdIn(Set.of(1L, 2L, 3L)))
+        .thenReturn(List.of(first, second, third));
+    when(prescriptionRepository.lockCreated(anyCollection())).thenReturn(List.of(1L, 2L, 3L));
+    when(drugRepository.lockStock(Set.of(1L))).thenReturn(new HashMap<>(Map.of(1L, 15)));
+    when(allocationService.consume(1L, Map.of(1L, 10))).thenReturn(Optional.empty());
+    when(allocationService.consume(1L, Map.of(1L, 5))).thenReturn(Optional.empty());
+    when(drugRepository.decrementStock(decrementsCaptor.capture(), any(LocalDate.class)))
+        .thenReturn(new int[] {1});
+
+    // When
+    List<FulfillmentResult> results = processor.fulfillAll(List.of(1L, 2L, 3L));
+
+    // Then
+    assertThat(results).extracting(FulfillmentResult::isSuccess)
+        .containsExactly(true, false, true);
+    assertThat(results.get(1).getError()).isInstanceOf(BusinessException.class)
+        .hasMessage("Insufficient stock for drug: Aspirin");
+    assertThat(results.get(0).getResponse().getStatus()).isEqualTo("FULFILLED");
+    assertThat(decrementsCaptor.getValue()).hasSize(1);
+    assertThat(decrementsCaptor.getValue().get(0).getQuantity()).isEqualTo(15);
+    verify(prescriptionRepository).transitionStatuses(List.of(1L, 3L),
+        PrescriptionStatus.CREATED, PrescriptionStatus.FULFILLED);
+    verify(stockReservationService).consume(1L);
+    verify(stockReservationService).consume(3L);
+    verify(stockReservationService, never()).consume(2L);
+  }
+
+  @Test
+  void fulfillAll_ShouldLockAllocationsBeforeStock() {
+    // Given
+    Prescription prescription = prescription(1L, 10);
+
+    when(prescriptionRepository.findAllWithItemsByIdIn(Set.of(1L)))
+        .thenReturn(List.of(prescription));
+    when(prescriptionRepository.lockCreated(anyCollection())).thenReturn(List.of(1L));
+    when(drugRepository.lockStock(Set.of(1L))).thenReturn(new HashMap<>(Map.of(1L, 15)));
+    when(allocationService.consume(1L, Map.of(1L, 10))).thenReturn(Optional.empty());
+    when(drugRepository.decrementStock(anyList(), any(LocalDate.class)))
+        .thenReturn(new int[] {1});
+
+    // When
+    processor.fulfillAll(List.of(1L));
+
+    // Then the single path's order: prescriptions, allocations, then stock
+    InOrder lockOrder = inOrder(prescriptionRepository, allocationService, drugRepository);
+    lockOrder.verify(prescriptionRepository).lockCreated(anyCollection());
+    lockOrder.verify(allocationService).lockAllocations(Set.of(new PharmacyDrugId(1L, 1L)));
+    lockOrder.verify(drugRepository).lockStock(Set.of(1L));
+    lockOrder.verify(allocationService).consume(1L, Map.of(1L, 10));
+    lockOrder.verify(drugRepository).decrementStock(anyList(), any(LocalDate.class));
+  }
+
+  @Test
+  void fulfillAll_ShouldReportMissingAndAlreadyProcessedPrescriptions() {
+    // Given
+    Prescription fulfilled = prescription(1L, 10);
+
+    when(prescriptionRepository.findAllWithItemsByIdIn(Set.of(1L, 9L)))
+        .thenReturn(List.of(fulfilled));
+    when(prescriptionRepository.lockCreated(anyCollection())).thenReturn(List.of());
+
+    // When
+    List<FulfillmentResult> results = processor.fulfillAll(List.of(1L, 9L));
+
+    // Then
+    assertThat(results.get(0).getError()).isInstanceOf(BusinessException.class)
+        .hasMessage("Prescription has already been fulfilled or cancelled");
+    assertThat(results.get(1).getError()).isInstanceOf(ResourceNotFoundException.class)
+        .hasMessage("Prescription not found with id: 9");
+    verify(drugRepository, never()).lockStock(anyCollection());
+  }
+
+  @Test
+  void fulfillAll_WhenAllocationExhausted_ShouldSkipPrescription() {
+    // Given
+    Prescription prescription = prescription(1L, 10);
+
+    when(prescriptionRepository.findAllWithItemsByIdIn(Set.of(1L)))
+        .thenReturn(List.of(prescription));
+    when(prescriptionRepository.lockCreated(anyCollection())).thenReturn(List.of(1L));
+    when(drugRepository.lockStock(Set.of(1L))).thenReturn(new HashMap<>(Map.of(1L, 15)));
+    when(allocationService.consume(eq(1L), any())).thenReturn(Optional.of(1L));
+
+    // When
+    List<FulfillmentResult> results = processor.fulfillAll(List.of(1L));
+
+    // Then
+    assertThat(results.get(0).getError()).isInstanceOf(BusinessException.class)
+        .hasMessage("Requested quantity exceeds pharmacy's allocation for drug: Aspirin");
+    verify(drugRepository, never()).decrementStock(any(), any());
+  }
+
+  private Prescription prescription(Long id, int quantity) {
+    Prescription prescription = new Prescription();
+    prescription.setId(id);
+    prescription.setPharmacy(pharmacy);
+    prescription.setPatient(patient);
+    prescription.setStatus(PrescriptionStatus.CREATED);
+
+    PrescriptionItem item = new PrescriptionItem();
+    item.setPrescription(prescription);
+    item.setDrug(drug);
+    item.setQuantity(quantity);
+    prescription.setItems(Set.of(item));
+    return prescription;
+  }
+}
@@ -0,0 +1,192 @@
+package com.pei.pharmatest.fulfillment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.exceptions.BusinessException;
+import com.pei.pharmatest.exceptions.OutcomeUnknownException;
+import com.pei.pharmatest.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class FulfillmentGroupCommitterTest {
+
+  @Mock
+  private FulfillmentBatchProcessor processor;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  private SimpleMeterRegistry meterRegistry;
+  private FulfillmentGroupCommitter committer;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    committer = new FulfillmentGroupCommitter(processor, transactionManager, meterRegistry, true,
+        Duration.ofSeconds(2), 3, 1, 100, Duration.ofSeconds(10));
+    committer.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    committer.stop();
+  }
+
+  @Test
+  void fulfill_ShouldCommitConcurrentRequestsTogether() throws Exception {
+    // Given
+    when(processor.fulfillAll(anyList())).thenAnswer(invocation -> {
+      List<Long> ids = invocation.getArgument(0);
+      return ids.stream().map(id -> id == 2L
+              ? FulfillmentResult.failure(id, new BusinessException("Insufficient stock"))
+              : FulfillmentResult.success(id, response(id)))
+          .collect(Collectors.toList());
+    });
+    ExecutorService callers = Executors.newFixedThreadPool(3);
+
+    // When
+    List<Future<PrescriptionResponse>> futures = new ArrayList<>();
+    for (long id = 1; id <= 3; id++) {
+      long prescriptionId = id;
+      futures.add(callers.submit(() -> committer.fulfill(prescriptionId)));
+    }
+
+    // Then
+    assertThat(futures.get(0).get(5, TimeUnit.SECONDS).getId()).isEqualTo(1L);
+    assertThat(futures.get(2).get(5, TimeUnit.SECONDS).getId()).isEqualTo(3L);
+    assertThatThrownBy(() -> futures.get(1).get(5, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(BusinessException.class);
+    callers.shutdown();
+    assertThat(meterRegistry.get("pharma.fulfillment.group.size").summary().max())
+        .isEqualTo(3);
+  }
+
+  @Test
+  void fulfill_WhenBatchTransactionFails_ShouldRetryRequestsOneByOne() throws Exception {
+    // Given
+    when(processor.fulfillAll(anyList()))
+        .thenThrow(new IllegalStateException("Connection lost"))
+        .thenAnswer(invocation -> {
+          Long id = invocation.<List<Long>>getArgument(0).get(0);
+          return List.of(FulfillmentResult.success(id, response(id)));
+        });
+    ExecutorService callers = Executors.newFixedThreadPool(3);
+
+    // When
+    List<Future<PrescriptionResponse>> futures = new ArrayList<>();
+    for (long id = 1; id <= 3; id++) {
+      long prescriptionId = id;
+      futures.add(callers.submit(() -> committer.fulfill(prescriptionId)));
+    }
+
+    // Then
+    for (int i = 0; i < 3; i++) {
+      assertThat(futures.get(i).get(5, TimeUnit.SECONDS).getId()).isEqualTo(i + 1L);
+    }
+    callers.shutdown();
+  }
+
+  @Test
+  void fulfill_WhenBatchThrowsError_ShouldFailItsRequestsAndKeepTheWorker() throws Exception {
+    // Given
+    when(processor.fulfillAll(anyList()))
+        .thenThrow(new StackOverflowError())
+        .thenAnswer(invocation -> {
+          Long id = invocation.<List<Long>>getArgument(0).get(0);
+          return List.of(FulfillmentResult.success(id, response(id)));
+        });
+    ExecutorService callers = Executors.newFixedThreadPool(3);
+
+    // When
+    List<Future<PrescriptionResponse>> futures = new ArrayList<>();
+    for (long id = 1; id <= 3; id++) {
+      long prescriptionId = id;
+      futures.add(callers.submit(() -> committer.fulfill(prescriptionId)));
+    }
+
+    // Then
+    for (Future<PrescriptionResponse> future : futures) {
+      assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+          .hasRootCauseInstanceOf(StackOverflowError.class);
+    }
+    assertThat(callers.submit(() -> committer.fulfill(4L)).get(5, TimeUnit.SECONDS).getId())
+        .isEqualTo(4L);
+    callers.shutdown();
+  }
+
+  @Test
+  void fulfill_WhenResultTakesTooLong_ShouldStopWaiting() throws Exception {
+    // Given
+    committer.stop();
+    committer = new FulfillmentGroupCommitter(processor, transactionManager, meterRegistry, true,
+        Duration.ZERO, 1, 1, 100, Duration.ofMillis(200));
+    committer.start();
+    CountDownLatch release = new CountDownLatch(1);
+    when(processor.fulfillAll(anyList())).thenAnswer(invocation -> {
+      release.await(5, TimeUnit.SECONDS);
+      Long id = invocation.<List<Long>>getArgument(0).get(0);
+      return List.of(FulfillmentResult.success(id, response(id)));
+    });
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+
+    // When
+    Future<PrescriptionResponse> inBatch = callers.submit(() -> committer.fulfill(1L));
+    Thread.sleep(50);
+    Future<PrescriptionResponse> queued = callers.submit(() -> committer.fulfill(2L));
+
+    // Then
+    ExecutionException timedOut = catchThrowableOfType(
+        () -> inBatch.get(5, TimeUnit.SECONDS), ExecutionException.class);
+    assertThat(timedOut.getCause()).isInstanceOf(OutcomeUnknownException.class)
+        .hasMessageContaining("check its status");
+    assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS))
+        .cause().isExactlyInstanceOf(ServiceUnavailableException.class);
+
+    // The batch still completes, and the outcome reports it
+    release.countDown();
+    Object outcome = ((OutcomeUnknownException) timedOut.getCause()).getOutcome()
+        .toCompletableFuture().get(5, TimeUnit.SECONDS);
+    assertThat(((PrescriptionResponse) outcome).getId()).isEqualTo(1L);
+    callers.shutdown();
+  }
+
+  @Test
+  void fulfill_AfterStop_ShouldFailWithoutQueueing() {
+    // Given
+    committer.stop();
+
+    // When & Then
+    assertThatThrownBy(() -> committer.fulfill(1L))
+        .isInstanceOf(ServiceUnavailableException.class)
+        .hasMessage("Fulfillment stage is shutting down");
+  }
+
+  private PrescriptionResponse response(Long id) {
+    PrescriptionResponse response = new PrescriptionResponse();
+    response.setId(id);
+    response.setStatus("FULFILLED");
+    return response;
+  }
+}
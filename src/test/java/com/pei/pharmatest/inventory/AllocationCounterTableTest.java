@@ -0,0 +1,122 @@
+package com.pei.pharmatest.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AllocationCounterTableTest {
+
+  private static final PharmacyDrugId CONTRACT = new PharmacyDrugId(1L, 1L);
+
+  private AllocationCounterTable counters;
+
+  @BeforeEach
+  void setUp() {
+    counters = new AllocationCounterTable();
+  }
+
+  @Test
+  void tryConsume_ShouldStartFromPersistedConsumption() {
+    // When
+    boolean consumed = counters.tryConsume(CONTRACT, 100, 30, () -> 60);
+
+    // Then
+    assertThat(consumed).isTrue();
+    assertThat(counters.consumed(CONTRACT, () -> 0)).isEqualTo(90);
+  }
+
+  @Test
+  void tryConsume_WhenAllocationWouldBeExceeded_ShouldConsumeNothing() {
+    // When
+    boolean consumed = counters.tryConsume(CONTRACT, 100, 50, () -> 60);
+
+    // Then
+    assertThat(consumed).isFalse();
+    assertThat(counters.consumed(CONTRACT, () -> 0)).isEqualTo(60);
+  }
+
+  @Test
+  void refund_ShouldGiveBackConsumption() {
+    // Given
+    counters.tryConsume(CONTRACT, 100, 40, () -> 0);
+
+    // When
+    counters.refund(CONTRACT, 40);
+
+    // Then
+    assertThat(counters.consumed(CONTRACT, () -> 0)).isZero();
+    assertThat(counters.drainUnflushed()).isEmpty();
+  }
+
+  @Test
+  void drainUnflushed_ShouldReturnCommittedConsumptionOnce() {
+    // Given
+    counters.tryConsume(CONTRACT, 100, 40, () -> 0);
+    counters.recordCommitted(CONTRACT, 40);
+
+    // When
+    Map<PharmacyDrugId, Long> first = counters.drainUnflushed();
+    Map<PharmacyDrugId, Long> second = counters.drainUnflushed();
+
+    // Then
+    assertThat(first).containsExactly(Map.entry(CONTRACT, 40L));
+    assertThat(second).isEmpty();
+  }
+
+  @Test
+  void restoreUnflushed_ShouldKeepConsumptionForNextCheckpoint() {
+    // Given
+    counters.tryConsume(CONTRACT, 100, 40, () -> 0);
+    counters.recordCommitted(CONTRACT, 40);
+    Map<PharmacyDrugId, Long> drained = counters.drainUnflushed();
+
+    // When
+    counters.restoreUnflushed(drained);
+
+    // Then
+    assertThat(counters.drainUnflushed()).containsExactly(Map.entry(CONTRACT, 40L));
+  }
+
+  @Test
+  void tryConsume_WhenConcurrent_ShouldNeverExceedAllocation() throws Exception {
+    // Given
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+
+    // When
+    for (int i = 0; i < threads; i++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        int consumed = 0;
+        for (int j = 0; j < 100; j++) {
+          if (counters.tryConsume(CONTRACT, 500, 1, () -> 0)) {
+            consumed++;
+          }
+        }
+        return consumed;
+      }));
+    }
+    start.countDown();
+    int total = 0;
+    for (Future<Integer> result : results) {
+      total += result.get(10, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    // Then
+    assertThat(total).isEqualTo(500);
+    assertThat(counters.consumed(CONTRACT, () -> 0)).isEqualTo(500);
+  }
+}
@@ -0,0 +1,85 @@
+package com.pei.pharmatest.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ContractIndexTest {
+
+  private ContractIndex index;
+
+  @BeforeEach
+  void setUp() {
+    index = new ContractIndex();
+    ContractIndex.Builder builder = new ContractIndex.Builder();
+    builder.add(1L, 10L, 80, 30);
+    builder.add(1L, 11L, 40, 0);
+    builder.add(2L, 10L, 60, 60);
+    index.replaceAll(builder);
+  }
+
+  @Test
+  void remainingAllocation_ShouldSubtractConsumedFromAllocated() {
+    assertThat(index.remainingAllocation(1L, 10L)).isEqualTo(50);
+    assertThat(index.remainingAllocation(1L, 11L)).isEqualTo(40);
+    assertThat(index.remainingAllocation(2L, 10L)).isZero();
+  }
+
+  @Test
+  void isContracted_ShouldMatchPharmacyAndDrugTogether() {
+    assertThat(index.isContracted(1L, 10L)).isTrue();
+    assertThat(index.isContracted(2L, 10L)).isTrue();
+    assertThat(index.isContracted(2L, 11L)).isFalse();
+    assertThat(index.remainingAllocation(2L, 11L)).isZero();
+  }
+
+  @Test
+  void addConsumed_ShouldReduceRemainingAllocation() {
+    // When
+    index.addConsumed(1L, 10L, 20);
+    index.addConsumed(3L, 10L, 20); // Not contracted, ignored
+
+    // Then
+    assertThat(index.remainingAllocation(1L, 10L)).isEqualTo(30);
+    assertThat(index.isContracted(3L, 10L)).isFalse();
+  }
+
+  @Test
+  void replaceAll_ShouldDropContractsThatAreGone() {
+    // Given
+    ContractIndex.Builder builder = new ContractIndex.Builder();
+    builder.add(1L, 11L, 45, 5);
+
+    // When
+    index.replaceAll(builder);
+
+    // Then
+    assertThat(index.size()).isEqualTo(1);
+    assertThat(index.isContracted(1L, 10L)).isFalse();
+    assertThat(index.remainingAllocation(1L, 11L)).isEqualTo(40);
+  }
+
+  @Test
+  void replaceAll_WithManyContracts_ShouldFindEachOfThem() {
+    // Given
+    ContractIndex.Builder builder = new ContractIndex.Builder();
+    for (long pharmacyId = 1; pharmacyId <= 100; pharmacyId++) {
+      for (long drugId = 1; drugId <= 50; drugId++) {
+        builder.add(pharmacyId, drugId, (int) (pharmacyId * drugId), 0);
+      }
+    }
+
+    // When
+    index.replaceAll(builder);
+
+    // Then
+    assertThat(index.size()).isEqualTo(5000);
+    for (long pharmacyId = 1; pharmacyId <= 100; pharmacyId++) {
+      for (long drugId = 1; drugId <= 50; drugId++) {
+        assertThat(index.remainingAllocation(pharmacyId, drugId)).isEqualTo(pharmacyId * drugId);
+      }
+    }
+    assertThat(index.isContracted(101L, 1L)).isFalse();
+  }
+}
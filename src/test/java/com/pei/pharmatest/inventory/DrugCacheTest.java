@@ -0,0 +1,118 @@
+package com.pei.pharmatest.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pei.pharmatest.dto.DrugResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DrugCacheTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private DrugCache cache;
+  private AtomicInteger loads;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    cache = new DrugCache(meterRegistry, 100, Duration.ofMinutes(1));
+    loads = new AtomicInteger();
+  }
+
+  @Test
+  void get_ShouldReadThroughOnceAndServeFromCache() {
+    // When
+    Optional<DrugResponse> first = cache.get(1L, this::load);
+    Optional<DrugResponse> second = cache.get(1L, this::load);
+
+    // Then
+    assertThat(first).isPresent();
+    assertThat(second).containsSame(first.get());
+    assertThat(loads).hasValue(1);
+    assertThat(meterRegistry.get("cache.gets").tags("cache", "drugs", "result", "hit")
+        .functionCounter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("cache.gets").tags("cache", "drugs", "result", "miss")
+        .functionCounter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void get_WhenDrugDoesNotExist_ShouldNotCacheTheMiss() {
+    // When
+    cache.get(1L, id -> {
+      loads.incrementAndGet();
+      return Optional.empty();
+    });
+    cache.get(1L, this::load);
+
+    // Then
+    assertThat(loads).hasValue(2);
+  }
+
+  @Test
+  void evict_ShouldMakeTheNextReadLoadAgain() {
+    // Given
+    cache.get(1L, this::load);
+
+    // When
+    cache.evict(List.of(1L));
+    Optional<DrugResponse> reloaded = cache.get(1L, this::load);
+
+    // Then
+    assertThat(reloaded.get().getStock()).isEqualTo(2);
+    assertThat(loads).hasValue(2);
+  }
+
+  @Test
+  void evictAfterCommit_WithoutTransaction_ShouldEvictRightAway() {
+    // Given
+    cache.get(1L, this::load);
+
+    // When
+    cache.evictAfterCommit(List.of(1L));
+    cache.get(1L, this::load);
+
+    // Then
+    assertThat(loads).hasValue(2);
+  }
+
+  @Test
+  void get_WhenStockChangesDuringTheRead_ShouldNotCacheWhatWasRead() {
+    // When
+    Optional<DrugResponse> raced = cache.get(1L, id -> {
+      Optional<DrugResponse> read = load(id);
+      cache.evict(List.of(1L)); // Stock change commits while the old row is in hand
+      return read;
+    });
+    Optional<DrugResponse> next = cache.get(1L, this::load);
+
+    // Then
+    assertThat(raced.get().getStock()).isEqualTo(1);
+    assertThat(next.get().getStock()).isEqualTo(2);
+  }
+
+  @Test
+  void get_ShouldNotServeEntriesOlderThanMaxStaleness() throws InterruptedException {
+    // Given
+    cache = new DrugCache(meterRegistry, 100, Duration.ofMillis(50));
+    cache.get(1L, this::load);
+
+    // When
+    Thread.sleep(100);
+    cache.get(1L, this::load);
+
+    // Then
+    assertThat(loads).hasValue(2);
+  }
+
+  private Optional<DrugResponse> load(Long drugId) {
+    DrugResponse response = new DrugResponse();
+    response.setId(drugId);
+    response.setStock(loads.incrementAndGet());
+    return Optional.of(response);
+  }
+}
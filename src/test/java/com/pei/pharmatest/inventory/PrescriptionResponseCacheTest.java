@@ -0,0 +1,67 @@
+package com.pei.pharmatest.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PrescriptionResponseCacheTest {
+
+  private PrescriptionResponseCache cache;
+
+  @BeforeEach
+  void setUp() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.findAndRegisterModules();
+    cache = new PrescriptionResponseCache(objectMapper, new SimpleMeterRegistry(), 1024);
+  }
+
+  @Test
+  void put_WhenFulfilled_ShouldStoreSerializedBodyWithEtag() {
+    // When
+    cache.put(response(7L, "FULFILLED"));
+
+    // Then
+    Optional<PrescriptionResponseCache.CachedResponse> cached = cache.get(7L);
+    assertThat(cached).isPresent();
+    assertThat(cached.get().getEtag()).isEqualTo("\"prescription-7-FULFILLED\"");
+    assertThat(new String(cached.get().getBody(), StandardCharsets.UTF_8))
+        .contains("\"id\":7").contains("\"status\":\"FULFILLED\"");
+  }
+
+  @Test
+  void put_WhenStillOpen_ShouldNotStore() {
+    // When
+    cache.put(response(8L, "CREATED"));
+
+    // Then
+    assertThat(cache.get(8L)).isEmpty();
+  }
+
+  @Test
+  void putAfterCommit_WithoutTransaction_ShouldStoreRightAway() {
+    // When
+    cache.putAfterCommit(response(9L, "CANCELLED"));
+
+    // Then
+    assertThat(cache.get(9L)).isPresent();
+  }
+
+  private PrescriptionResponse response(Long id, String status) {
+    PrescriptionResponse response = new PrescriptionResponse();
+    response.setId(id);
+    response.setPharmacyId(1L);
+    response.setPatientId(2L);
+    response.setCreatedAt(LocalDateTime.of(2025, 5, 17, 10, 0));
+    response.setStatus(status);
+    response.setDrugs(List.of());
+    return response;
+  }
+}
@@ -0,0 +1,105 @@
+package com.pei.pharmatest.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StockReservationLedgerTest {
+
+  private StockReservationLedger ledger;
+
+  @BeforeEach
+  void setUp() {
+    ledger = new StockReservationLedger(4);
+  }
+
+  @Test
+  void tryReserve_WhenStockAvailable_ShouldHoldAllQuantities() {
+    // When
+    Long unavailable = ledger.tryReserve(Map.of(1L, 30, 2L, 10),
+        Map.of(1L, 100, 2L, 10));
+
+    // Then
+    assertThat(unavailable).isNull();
+    assertThat(ledger.reserved(1L)).isEqualTo(30);
+    assertThat(ledger.reserved(2L)).isEqualTo(10);
+  }
+
+  @Test
+  void tryReserve_WhenOneDrugIsShort_ShouldHoldNothing() {
+    // Given
+    ledger.tryReserve(Map.of(2L, 8), Map.of(2L, 10));
+
+    // When
+    Long unavailable = ledger.tryReserve(Map.of(1L, 30, 2L, 5), Map.of(1L, 100, 2L, 10));
+
+    // Then
+    assertThat(unavailable).isEqualTo(2L);
+    assertThat(ledger.reserved(1L)).isZero();
+    assertThat(ledger.reserved(2L)).isEqualTo(8);
+  }
+
+  @Test
+  void release_ShouldMakeStockAvailableAgain() {
+    // Given
+    ledger.tryReserve(Map.of(1L, 30), Map.of(1L, 30));
+
+    // When
+    ledger.release(Map.of(1L, 30));
+
+    // Then
+    assertThat(ledger.reserved(1L)).isZero();
+    assertThat(ledger.tryReserve(Map.of(1L, 30), Map.of(1L, 30))).isNull();
+  }
+
+  @Test
+  void replaceAll_ShouldDropPreviousHolds() {
+    // Given
+    ledger.tryReserve(Map.of(1L, 30), Map.of(1L, 30));
+
+    // When
+    ledger.replaceAll(Map.of(2L, 5));
+
+    // Then
+    assertThat(ledger.reserved(1L)).isZero();
+    assertThat(ledger.reserved(2L)).isEqualTo(5);
+  }
+
+  @Test
+  void tryReserve_WhenCalledConcurrently_ShouldNeverOverCommit() throws Exception {
+    // Given ten requests for the last 30 units
+    ExecutorService executor = Executors.newFixedThreadPool(10);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Long>> results = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        return ledger.tryReserve(Map.of(1L, 30), Map.of(1L, 30));
+      }));
+    }
+
+    // When
+    start.countDown();
+    int held = 0;
+    for (Future<Long> result : results) {
+      if (result.get() == null) {
+        held++;
+      }
+    }
+    executor.shutdown();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+
+    // Then
+    assertThat(held).isEqualTo(1);
+    assertThat(ledger.reserved(1L)).isEqualTo(30);
+  }
+}
@@ -2,11 +2,33 @@ package com.pei.pharmatest.services;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import com.pei.pharmatest.audit.AuditLogArchive;
+import com.pei.pharmatest.audit.AuditLogArchiveQuery;
+import com.pei.pharmatest.audit.AuditLogDrugCodec;
+import com.pei.pharmatest.dto.AuditLogScrollResponse;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
 import com.pei.pharmatest.entities.AuditLog;
 import com.pei.pharmatest.exceptions.ValidationException;
 import com.pei.pharmatest.repositories.AuditLogRepository;
@@ -18,19 +40,33 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.PlatformTransactionManager;
 
 class AuditLogServiceTest {
 
   @Mock
   private AuditLogRepository auditLogRepository;
 
+  @Mock
+  private AuditLogArchive auditLogArchive;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  private AuditLogDrugCodec drugCodec;
+
   private AuditLogService auditLogService;
 
   @BeforeEach
   void setUp() throws Exception {
     MockitoAnnotations.openMocks(this).close();
-    auditLogService = new AuditLogServiceImpl(auditLogRepository);
+    drugCodec = new AuditLogDrugCodec(auditLogRepository, new ObjectMapper(), transactionManager,
+        AuditLogDrugCodec.Encoding.COMPACT);
+    auditLogService = new AuditLogServiceImpl(auditLogRepository, auditLogArchive, drugCodec);
   }
 
   @Test
@@ -119,6 +155,299 @@ class AuditLogServiceTest {
     assertEquals(pharmacyId, result.getContent().get(0).getPharmacyId());
   }
 
+  @Test
+  void getAuditLogSlice_ShouldNotCount() {
+    // Given
+    AuditLog log1 = createAuditLog(1L, 1L, 1L, "SUCCESS");
+    PageRequest pageable = PageRequest.of(3, 1);
+    when(auditLogRepository.findSlice(any(Specification.class), eq(pageable)))
+        .thenReturn(new SliceImpl<>(List.of(log1), pageable, true));
+
+    // When
+    Slice<AuditLog> result =
+        auditLogService.getAuditLogSlice(null, 1L, null, null, null, null, pageable);
+
+    // Then
+    assertEquals(1, result.getNumberOfElements());
+    assertTrue(result.hasNext());
+    verify(auditLogRepository, never()).findAll(any(Specification.class), any(PageRequest.class));
+  }
+
+  @Test
+  void getAuditLogsWithEstimatedTotal_ShouldUsePlannerEstimate() {
+    // Given
+    PageRequest pageable = PageRequest.of(0, 1);
+    when(auditLogRepository.findSlice(any(Specification.class), eq(pageable)))
+        .thenReturn(new SliceImpl<>(List.of(createAuditLog(1L, 1L, 1L, "FAILURE")), pageable,
+            true));
+    when(auditLogRepository.estimateCount(null, null, null, "FAILURE", null, null))
+        .thenReturn(120_000L);
+
+    // When
+    Page<AuditLog> result =
+        auditLogService.getAuditLogsWithEstimatedTotal(null, null, null, "FAILURE", null, null,
+            pageable);
+
+    // Then
+    assertEquals(120_000L, result.getTotalElements());
+  }
+
+  @Test
+  void scrollAuditLogs_ShouldReturnCursorOfLastLog_WhenMoreFollow() {
+    // Given
+    AuditLog log1 = createAuditLog(9L, 1L, 1L, "SUCCESS");
+    log1.setCreatedAt(LocalDateTime.of(2025, 5, 17, 22, 19, 54, 27_963_000));
+    AuditLog log2 = createAuditLog(8L, 1L, 1L, "SUCCESS");
+    log2.setCreatedAt(LocalDateTime.of(2025, 5, 17, 22, 17, 33, 44_690_000));
+    PageRequest firstPage = PageRequest.of(0, 2,
+        Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+    when(auditLogRepository.findSlice(any(Specification.class), eq(firstPage)))
+        .thenReturn(new SliceImpl<>(List.of(log1, log2), firstPage, true));
+
+    // When
+    AuditLogScrollResponse result =
+        auditLogService.scrollAuditLogs(1L, null, null, null, null, null, null, 2, false);
+
+    // Then
+    assertEquals(2, result.getContent().size());
+    assertEquals("2025-05-17T22:17:33.044690|8",
+        new String(Base64.getUrlDecoder().decode(result.getNextCursor()), StandardCharsets.UTF_8));
+    assertNull(result.getEstimatedTotal());
+    verify(auditLogRepository, never()).estimateCount(any(), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void scrollAuditLogs_ShouldOmitCursorAndEstimateTotal_OnLastPage() {
+    // Given
+    String cursor = Base64.getUrlEncoder()
+        .encodeToString("2025-05-17T22:17:33|8".getBytes(StandardCharsets.UTF_8));
+    when(auditLogRepository.findSlice(any(Specification.class), any(PageRequest.class)))
+        .thenReturn(new SliceImpl<>(List.of(createAuditLog(7L, 1L, 1L, "SUCCESS"))));
+    when(auditLogRepository.estimateCount(1L, null, null, null, null, null)).thenReturn(3L);
+
+    // When
+    AuditLogScrollResponse result =
+        auditLogService.scrollAuditLogs(1L, null, null, null, null, null, cursor, 10, true);
+
+    // Then
+    assertEquals(1, result.getContent().size());
+    assertNull(result.getNextCursor());
+    assertEquals(3L, result.getEstimatedTotal());
+  }
+
+  @Test
+  void scrollAuditLogs_WithInvalidCursor_ShouldThrowValidationException() {
+    // When & Then
+    ValidationException exception = assertThrows(ValidationException.class,
+        () -> auditLogService.scrollAuditLogs(null, null, null, null, null, null,
+            "not-a-cursor", 10, false));
+    assertEquals("Invalid cursor", exception.getMessage());
+  }
+
+  @Test
+  void scrollAuditLogs_WithInvalidSize_ShouldThrowValidationException() {
+    // When & Then
+    ValidationException exception = assertThrows(ValidationException.class,
+        () -> auditLogService.scrollAuditLogs(null, null, null, null, null, null, null, 1001,
+            false));
+    assertEquals("Page size must be between 1 and 1000", exception.getMessage());
+  }
+
+  @Test
+  void getAuditLogs_WithDateRange_ShouldPassRangeToQuery() {
+    // Given
+    LocalDateTime from = LocalDateTime.of(2025, 5, 1, 0, 0);
+    LocalDateTime to = LocalDateTime.of(2025, 6, 1, 0, 0);
+    when(auditLogRepository.findAll(any(Specification.class), any(PageRequest.class)))
+        .thenReturn(new PageImpl<>(List.of(createAuditLog(1L, 1L, 1L, "SUCCESS"))));
+
+    // When
+    Page<AuditLog> result =
+        auditLogService.getAuditLogs(null, null, null, null, from, to, PageRequest.of(0, 10));
+
+    // Then
+    assertEquals(1, result.getContent().size());
+  }
+
+  @Test
+  void getAuditLogs_WithEmptyDateRange_ShouldThrowValidationException() {
+    // Given
+    LocalDateTime from = LocalDateTime.of(2025, 6, 1, 0, 0);
+
+    // When & Then
+    ValidationException exception = assertThrows(ValidationException.class,
+        () -> auditLogService.getAuditLogs(null, null, null, null, from, from,
+            PageRequest.of(0, 10)));
+    assertEquals("The start of the date range must be before its end", exception.getMessage());
+  }
+
+  @Test
+  void getAuditLogs_BeforeArchiveHorizon_ShouldReadArchiveOnly() {
+    // Given
+    when(auditLogArchive.getHorizon()).thenReturn(LocalDateTime.of(2025, 3, 1, 0, 0));
+    when(auditLogArchive.search(any(AuditLogArchiveQuery.class), eq(10L), eq(10), eq(true)))
+        .thenReturn(new AuditLogArchive.Matches(
+            List.of(createAuditLog(3L, 1L, 1L, "SUCCESS")), 11));
+
+    // When
+    Page<AuditLog> result = auditLogService.getAuditLogs(1L, null, null, null,
+        LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 2, 1, 0, 0),
+        PageRequest.of(1, 10));
+
+    // Then
+    assertEquals(1, result.getContent().size());
+    assertEquals(11, result.getTotalElements());
+    verify(auditLogRepository, never()).findAll(any(Specification.class), any(PageRequest.class));
+  }
+
+  @Test
+  void getAuditLogs_AcrossArchiveHorizon_ShouldAppendArchivedLogsAfterDatabaseLogs() {
+    // Given
+    PageRequest pageable = PageRequest.of(0, 3);
+    when(auditLogArchive.getHorizon()).thenReturn(LocalDateTime.of(2025, 3, 1, 0, 0));
+    when(auditLogRepository.findAll(any(Specification.class), eq(pageable)))
+        .thenReturn(new PageImpl<>(List.of(createAuditLog(9L, 1L, 1L, "SUCCESS")), pageable, 1));
+    when(auditLogArchive.search(any(AuditLogArchiveQuery.class), eq(0L), eq(2), eq(true)))
+        .thenReturn(new AuditLogArchive.Matches(List.of(createAuditLog(3L, 1L, 1L, "SUCCESS"),
+            createAuditLog(2L, 1L, 1L, "SUCCESS")), 5));
+
+    // When
+    Page<AuditLog> result = auditLogService.getAuditLogs(null, null, null, pageable);
+
+    // Then
+    assertEquals(Arrays.asList(9L, 3L, 2L),
+        result.getContent().stream().map(AuditLog::getId).collect(Collectors.toList()));
+    assertEquals(6, result.getTotalElements());
+  }
+
+  @Test
+  void scrollAuditLogs_WhenDatabaseIsExhausted_ShouldContinueWithArchive() {
+    // Given
+    when(auditLogArchive.getHorizon()).thenReturn(LocalDateTime.of(2025, 3, 1, 0, 0));
+    AuditLog recent = createAuditLog(9L, 1L, 1L, "SUCCESS");
+    recent.setCreatedAt(LocalDateTime.of(2025, 4, 1, 0, 0));
+    AuditLog archived = createAuditLog(3L, 1L, 1L, "SUCCESS");
+    archived.setCreatedAt(LocalDateTime.of(2025, 2, 1, 0, 0));
+    when(auditLogRepository.findSlice(any(Specification.class), any(PageRequest.class)))
+        .thenReturn(new SliceImpl<>(List.of(recent)));
+    when(auditLogArchive.search(any(AuditLogArchiveQuery.class), eq(0L), eq(2), eq(false)))
+        .thenReturn(new AuditLogArchive.Matches(
+            List.of(archived, createAuditLog(2L, 1L, 1L, "SUCCESS")), -1));
+
+    // When
+    AuditLogScrollResponse response =
+        auditLogService.scrollAuditLogs(null, null, null, null, null, null, null, 2, false);
+
+    // Then
+    assertEquals(Arrays.asList(recent, archived), response.getContent());
+    String key = new String(Base64.getUrlDecoder().decode(response.getNextCursor()),
+        StandardCharsets.UTF_8);
+    assertEquals(archived.getCreatedAt() + "|3", key);
+  }
+
+  @Test
+  void scrollAuditLogs_WithCursorBeforeArchiveHorizon_ShouldNotQueryDatabase() {
+    // Given
+    when(auditLogArchive.getHorizon()).thenReturn(LocalDateTime.of(2025, 3, 1, 0, 0));
+    when(auditLogArchive.search(any(AuditLogArchiveQuery.class), anyLong(), anyInt(),
+        anyBoolean())).thenReturn(new AuditLogArchive.Matches(List.of(), -1));
+    String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+        "2025-02-01T00:00|3".getBytes(StandardCharsets.UTF_8));
+
+    // When
+    AuditLogScrollResponse response =
+        auditLogService.scrollAuditLogs(null, null, null, null, null, null, cursor, 10, false);
+
+    // Then
+    assertTrue(response.getContent().isEmpty());
+    assertNull(response.getNextCursor());
+    verify(auditLogRepository, never()).findSlice(any(Specification.class), any());
+  }
+
+  @Test
+  void scrollAuditLogs_WithDrugFilter_ShouldFilterDatabaseAndArchiveByDrug() {
+    // Given
+    LocalDateTime horizon = LocalDateTime.of(2025, 3, 1, 0, 0);
+    when(auditLogArchive.getHorizon()).thenReturn(horizon);
+    when(auditLogRepository.findSlice(any(Specification.class), any(PageRequest.class)))
+        .thenReturn(new SliceImpl<>(List.of()));
+    when(auditLogArchive.search(argThat(query -> Long.valueOf(17L).equals(query.getDrugId())),
+        anyLong(), anyInt(), anyBoolean()))
+        .thenReturn(new AuditLogArchive.Matches(List.of(createAuditLog(3L, 1L, 1L, "SUCCESS")),
+            1));
+    when(auditLogRepository.estimateCount(null, null, 17L, null, horizon, null)).thenReturn(4L);
+
+    // When
+    AuditLogScrollResponse response =
+        auditLogService.scrollAuditLogs(null, null, 17L, null, null, null, null, 10, true);
+
+    // Then
+    assertEquals(1, response.getContent().size());
+    assertEquals(5L, response.getEstimatedTotal());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void exportAuditLogs_AcrossArchiveHorizon_ShouldStreamDatabaseLogsBeforeArchivedLogs() {
+    // Given
+    when(auditLogArchive.getHorizon()).thenReturn(LocalDateTime.of(2025, 3, 1, 0, 0));
+    doAnswer(invocation -> {
+      Consumer<AuditLog> sink = invocation.getArgument(2);
+      sink.accept(createAuditLog(9L, 1L, 1L, "SUCCESS"));
+      return null;
+    }).when(auditLogRepository).streamAll(any(Specification.class), eq(Sort.by(
+        Sort.Order.desc("createdAt"), Sort.Order.desc("id"))), any(Consumer.class));
+    doAnswer(invocation -> {
+      Consumer<AuditLog> sink = invocation.getArgument(1);
+      sink.accept(createAuditLog(3L, 1L, 1L, "SUCCESS"));
+      return null;
+    }).when(auditLogArchive).export(any(AuditLogArchiveQuery.class), any(Consumer.class));
+
+    // When
+    List<AuditLog> exported = new ArrayList<>();
+    auditLogService.exportAuditLogs(null, null, null, null, null, null, exported::add);
+
+    // Then
+    assertEquals(Arrays.asList(9L, 3L),
+        exported.stream().map(AuditLog::getId).collect(Collectors.toList()));
+  }
+
+  @Test
+  void exportAuditLogs_WithInvalidStatus_ShouldThrowValidationException() {
+    // When & Then
+    assertThrows(ValidationException.class, () -> auditLogService.exportAuditLogs(null, null,
+        null, "invalid-status", null, null, log -> { }));
+    verify(auditLogRepository, never()).streamAll(any(), any(), any());
+  }
+
+  @Test
+  void getAuditLogSlice_WithCompactDrugLists_ShouldExpandThem() {
+    // Given
+    when(auditLogRepository.saveDrugDictionaryEntry(any())).thenReturn(5);
+    PrescriptionDrugRequest drug = new PrescriptionDrugRequest();
+    drug.setDrugId(17L);
+    drug.setQuantity(2);
+    drug.setDosage("500mg");
+    AuditLog log = createAuditLog(1L, 1L, 1L, "FAILURE");
+    log.setDrugsRequested(List.of(drug));
+    AuditLog stored = drugCodec.compact(log);
+    when(auditLogRepository.findSlice(any(Specification.class), any(PageRequest.class)))
+        .thenReturn(new SliceImpl<>(List.of(stored)));
+
+    // When
+    Slice<AuditLog> result = auditLogService.getAuditLogSlice(null, null, null, null, null,
+        null, PageRequest.of(0, 10));
+
+    // Then
+    AuditLog expanded = result.getContent().get(0);
+    assertEquals(Long.valueOf(1L), expanded.getId());
+    assertEquals(1, expanded.getDrugsRequested().size());
+    assertEquals(Long.valueOf(17L), expanded.getDrugsRequested().get(0).getDrugId());
+    assertEquals("500mg", expanded.getDrugsRequested().get(0).getDosage());
+    assertNull(expanded.getDrugsDispensed());
+    assertNull(stored.getDrugsRequested());
+  }
+
   private AuditLog createAuditLog(Long id, Long patientId, Long pharmacyId, String status) {
     AuditLog log = new AuditLog();
     log.setId(id);
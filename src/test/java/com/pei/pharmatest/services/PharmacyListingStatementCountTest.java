@@ -0,0 +1,105 @@
+package com.pei.pharmatest.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pei.pharmatest.dto.PharmacyResponse;
+import com.pei.pharmatest.entities.Drug;
+import com.pei.pharmatest.entities.Pharmacy;
+import com.pei.pharmatest.entities.PharmacyDrug;
+import com.pei.pharmatest.entities.PharmacyDrugId;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Counts the SQL statements behind one page of the pharmacy listing, which must not grow with the
+ * number of pharmacies, contracts or drugs on the page. Seeds its own pharmacies, drugs and
+ * contracts in a transaction that is rolled back after each test, and reads only the page after
+ * the pharmacies that existed before.
+ */
+@Transactional
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PharmacyListingStatementCountTest {
+
+  private static final int PHARMACIES = 5;
+  private static final int DRUGS = 3;
+
+  @Autowired
+  private PharmacyService pharmacyService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private Statistics statistics;
+  private long afterId;
+
+  @BeforeEach
+  void setUp() {
+    List<Drug> drugs = new ArrayList<>();
+    for (int i = 0; i < DRUGS; i++) {
+      Drug drug = new Drug();
+      drug.setName("Statement Count Drug " + i);
+      drug.setManufacturer("Statement Count Labs");
+      drug.setBatchNumber("SC-" + i);
+      drug.setExpiryDate(LocalDate.now().plusYears(1));
+      drug.setStock(100);
+      entityManager.persist(drug);
+      drugs.add(drug);
+    }
+    for (int i = 0; i < PHARMACIES; i++) {
+      Pharmacy pharmacy = new Pharmacy();
+      pharmacy.setName("Statement Count Pharmacy " + i);
+      pharmacy.setAddress(i + " Count St");
+      entityManager.persist(pharmacy);
+      if (i == 0) {
+        afterId = pharmacy.getId() - 1;
+      }
+      for (Drug drug : drugs) {
+        PharmacyDrug contract = new PharmacyDrug();
+        contract.setId(new PharmacyDrugId(pharmacy.getId(), drug.getId()));
+        contract.setPharmacy(pharmacy);
+        contract.setDrug(drug);
+        contract.setAllocatedAmount(10);
+        entityManager.persist(contract);
+      }
+    }
+    entityManager.flush();
+    entityManager.clear();
+
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  void pageWithContractsTakesTwoStatements() {
+    List<PharmacyResponse> pharmacies = pharmacyService.getPharmacies(afterId, 1000, true);
+
+    assertThat(pharmacies).hasSize(PHARMACIES);
+    assertThat(pharmacies).allSatisfy(pharmacy ->
+        assertThat(pharmacy.getContractedDrugs()).hasSize(DRUGS));
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+  }
+
+  @Test
+  void pageWithoutContractsTakesOneStatement() {
+    List<PharmacyResponse> pharmacies = pharmacyService.getPharmacies(afterId, 1000, false);
+
+    assertThat(pharmacies).hasSize(PHARMACIES);
+    assertThat(pharmacies).allSatisfy(pharmacy ->
+        assertThat(pharmacy.getContractedDrugs()).isNull());
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+  }
+}
@@ -1,20 +1,25 @@
 package com.pei.pharmatest.services;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.pei.pharmatest.dto.ContractedDrugResponse;
 import com.pei.pharmatest.dto.PharmacyResponse;
-import com.pei.pharmatest.entities.Drug;
-import com.pei.pharmatest.entities.Pharmacy;
-import com.pei.pharmatest.entities.PharmacyDrug;
-import com.pei.pharmatest.entities.PharmacyDrugId;
+import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.repositories.ContractedDrugSummary;
 import com.pei.pharmatest.repositories.PharmacyRepository;
+import com.pei.pharmatest.repositories.PharmacySummary;
 import com.pei.pharmatest.services.impl.PharmacyServiceImpl;
 import java.time.LocalDate;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,79 +27,47 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 
 @ExtendWith(MockitoExtension.class)
 public class PharmacyServiceTest {
 
+  private final ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
+
   @Mock
   private PharmacyRepository pharmacyRepository;
 
   @InjectMocks
   private PharmacyServiceImpl pharmacyService;
 
-  private Pharmacy pharmacy1;
-  private Pharmacy pharmacy2;
-  private Drug drug1;
-  private Drug drug2;
+  private PharmacySummary pharmacy1;
+  private PharmacySummary pharmacy2;
+  private ContractedDrugSummary contract1;
+  private ContractedDrugSummary contract2;
 
   @BeforeEach
   void setUp() {
     // Setup test data
-    pharmacy1 = new Pharmacy();
-    pharmacy1.setId(1L);
-    pharmacy1.setName("Pharmacy One");
-    pharmacy1.setAddress("123 Main St");
-
-    pharmacy2 = new Pharmacy();
-    pharmacy2.setId(2L);
-    pharmacy2.setName("Pharmacy Two");
-    pharmacy2.setAddress("456 Oak St");
-
-    drug1 = new Drug();
-    drug1.setId(1L);
-    drug1.setName("Drug A");
-    drug1.setManufacturer("Manufacturer A");
-    drug1.setBatchNumber("BATCH001");
-    drug1.setExpiryDate(LocalDate.now().plusMonths(6));
-    drug1.setStock(100);
-
-    drug2 = new Drug();
-    drug2.setId(2L);
-    drug2.setName("Drug B");
-    drug2.setManufacturer("Manufacturer B");
-    drug2.setBatchNumber("BATCH002");
-    drug2.setExpiryDate(LocalDate.now().plusMonths(12));
-    drug2.setStock(200);
+    pharmacy1 = pharmacy(1L, "Pharmacy One", "123 Main St");
+    pharmacy2 = pharmacy(2L, "Pharmacy Two", "456 Oak St");
 
     // Setup pharmacy-drug relationships
-    PharmacyDrug pd1 = new PharmacyDrug();
-    PharmacyDrugId id1 = new PharmacyDrugId();
-    id1.setPharmacyId(1L);
-    id1.setDrugId(1L);
-    pd1.setId(id1);
-    pd1.setPharmacy(pharmacy1);
-    pd1.setDrug(drug1);
-    pd1.setAllocatedAmount(50);
-
-    PharmacyDrug pd2 = new PharmacyDrug();
-    PharmacyDrugId id2 = new PharmacyDrugId();
-    id2.setPharmacyId(1L);
-    id2.setDrugId(2L);
-    pd2.setId(id2);
-    pd2.setPharmacy(pharmacy1);
-    pd2.setDrug(drug2);
-    pd2.setAllocatedAmount(100);
-
-    pharmacy1.setPharmacyDrugs(new HashSet<>(Arrays.asList(pd1, pd2)));
+    contract1 = contract(1L, 1L, "Drug A", "BATCH001", LocalDate.now().plusMonths(6), 100, 50);
+    contract2 = contract(1L, 2L, "Drug B", "BATCH002", LocalDate.now().plusMonths(12), 200, 100);
   }
 
   @Test
-  void getAllPharmacies_ShouldReturnAllPharmaciesWithContractedDrugs() {
+  void getPharmacies_ShouldReturnPharmaciesWithContractedDrugs() {
     // Given
-    when(pharmacyRepository.findAll()).thenReturn(Arrays.asList(pharmacy1, pharmacy2));
+    when(pharmacyRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 100)))
+        .thenReturn(List.of(pharmacy1, pharmacy2));
+    when(pharmacyRepository.findContractedDrugs(Set.of(1L, 2L)))
+        .thenReturn(List.of(contract1, contract2));
 
     // When
-    List<PharmacyResponse> result = pharmacyService.getAllPharmacies();
+    List<PharmacyResponse> result = pharmacyService.getPharmacies(null, 100, true);
 
     // Then
     assertThat(result).isNotNull();
@@ -115,18 +88,108 @@ public class PharmacyServiceTest {
     assertThat(firstDrug.getName()).isEqualTo("Drug A");
     assertThat(firstDrug.getAllocatedAmount()).isEqualTo(50);
     assertThat(firstDrug.getStock()).isEqualTo(100);
+    assertThat(result.get(1).getContractedDrugs()).isEmpty();
   }
 
   @Test
-  void getAllPharmacies_WhenNoPharmacies_ShouldReturnEmptyList() {
+  void getPharmacies_ShouldTakeTwoQueriesHoweverManyPharmaciesThereAre() {
     // Given
-    when(pharmacyRepository.findAll()).thenReturn(List.of());
+    List<PharmacySummary> page = List.of(pharmacy1, pharmacy2,
+        pharmacy(3L, "Pharmacy Three", "789 Elm St"), pharmacy(4L, "Pharmacy Four", "1 Pine St"));
+    when(pharmacyRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), any())).thenReturn(page);
+    when(pharmacyRepository.findContractedDrugs(any())).thenReturn(List.of(contract1, contract2,
+        contract(3L, 1L, "Drug A", "BATCH001", LocalDate.now().plusMonths(6), 100, 10),
+        contract(4L, 2L, "Drug B", "BATCH002", LocalDate.now().plusMonths(12), 200, 20)));
 
     // When
-    List<PharmacyResponse> result = pharmacyService.getAllPharmacies();
+    List<PharmacyResponse> result = pharmacyService.getPharmacies(2L, 4, true);
+
+    // Then
+    assertThat(result).extracting(PharmacyResponse::getId).containsExactly(1L, 2L, 3L, 4L);
+    verify(pharmacyRepository).findByIdGreaterThanOrderByIdAsc(2L, PageRequest.of(0, 4));
+    verify(pharmacyRepository).findContractedDrugs(Set.of(1L, 2L, 3L, 4L));
+    verifyNoMoreInteractions(pharmacyRepository);
+  }
+
+  @Test
+  void getPharmacies_WithoutContracts_ShouldTakeOneQuery() {
+    // Given
+    when(pharmacyRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 10)))
+        .thenReturn(List.of(pharmacy1, pharmacy2));
+
+    // When
+    List<PharmacyResponse> result = pharmacyService.getPharmacies(null, 10, false);
+
+    // Then
+    assertThat(result).hasSize(2);
+    assertThat(result.get(0).getContractedDrugs()).isNull();
+    verify(pharmacyRepository, never()).findContractedDrugs(any());
+  }
+
+  @Test
+  void getPharmacies_WhenNoPharmacies_ShouldReturnEmptyList() {
+    // Given
+    when(pharmacyRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 100)))
+        .thenReturn(List.of());
+
+    // When
+    List<PharmacyResponse> result = pharmacyService.getPharmacies(null, 100, true);
 
     // Then
     assertThat(result).isNotNull();
     assertThat(result).isEmpty();
+    verify(pharmacyRepository, never()).findContractedDrugs(any());
+  }
+
+  @Test
+  void getPharmaciesVersion_ShouldReadPageVersionWithoutLoadingPage() {
+    // Given
+    when(pharmacyRepository.findPageVersion(2L, 50)).thenReturn("4-12-30");
+
+    // When
+    String version = pharmacyService.getPharmaciesVersion(2L, 50, true);
+
+    // Then
+    assertThat(version).isEqualTo("4-12-30");
+    verifyNoMoreInteractions(pharmacyRepository);
+  }
+
+  @Test
+  void getPharmaciesVersion_WithoutContracts_ShouldReadCatalogVersion() {
+    // Given
+    when(pharmacyRepository.findCatalogVersion()).thenReturn("4");
+
+    // When
+    String version = pharmacyService.getPharmaciesVersion(null, 50, false);
+
+    // Then
+    assertThat(version).isEqualTo("4");
+    verifyNoMoreInteractions(pharmacyRepository);
+  }
+
+  @Test
+  void getPharmacies_WhenPageSizeOutOfRange_ShouldThrowException() {
+    assertThatThrownBy(() -> pharmacyService.getPharmacies(null, 0, true))
+        .isInstanceOf(ValidationException.class)
+        .hasMessage("Page size must be between 1 and 1000");
+  }
+
+  private PharmacySummary pharmacy(Long id, String name, String address) {
+    return projections.createProjection(PharmacySummary.class,
+        Map.of("id", id, "name", name, "address", address));
+  }
+
+  private ContractedDrugSummary contract(Long pharmacyId, Long drugId, String name,
+      String batchNumber, LocalDate expiryDate, int stock, int allocatedAmount) {
+    Map<String, Object> values = new HashMap<>();
+    values.put("pharmacyId", pharmacyId);
+    values.put("drugId", drugId);
+    values.put("name", name);
+    values.put("manufacturer", "Manufacturer of " + name);
+    values.put("batchNumber", batchNumber);
+    values.put("expiryDate", expiryDate);
+    values.put("stock", stock);
+    values.put("allocatedAmount", allocatedAmount);
+    return projections.createProjection(ContractedDrugSummary.class, values);
   }
-}
\ No newline at end of file
+}
@@ -3,8 +3,16 @@ package com.pei.pharmatest.services;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.pei.pharmatest.dto.PrescriptionBatchItemResponse;
 import com.pei.pharmatest.dto.PrescriptionDrugRequest;
 import com.pei.pharmatest.dto.PrescriptionRequest;
 import com.pei.pharmatest.dto.PrescriptionResponse;
@@ -14,15 +22,22 @@ import com.pei.pharmatest.entities.Pharmacy;
 import com.pei.pharmatest.entities.PharmacyDrug;
 import com.pei.pharmatest.exceptions.BusinessException;
 import com.pei.pharmatest.exceptions.ResourceNotFoundException;
+import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.repositories.DrugRepository;
 import com.pei.pharmatest.repositories.PatientRepository;
 import com.pei.pharmatest.repositories.PharmacyRepository;
 import com.pei.pharmatest.repositories.PrescriptionRepository;
+import com.pei.pharmatest.repositories.PrescriptionValidation;
+import com.pei.pharmatest.repositories.PrescriptionValidation.RequestedDrug;
 import com.pei.pharmatest.services.impl.PharmacyServiceImpl;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -42,6 +57,15 @@ class PrescriptionServiceTest {
   @Mock
   private PrescriptionRepository prescriptionRepository;
 
+  @Mock
+  private DrugRepository drugRepository;
+
+  @Mock
+  private StockReservationService stockReservationService;
+
+  @Mock
+  private AllocationService allocationService;
+
   @InjectMocks
   private PharmacyServiceImpl pharmacyService;
 
@@ -108,9 +132,11 @@ class PrescriptionServiceTest {
 
     request.setDrugs(List.of(drugRequest1));
 
-    when(pharmacyRepository.findById(1L)).thenReturn(Optional.of(pharmacy));
-    when(patientRepository.findById(1L)).thenReturn(Optional.of(patient));
+    stubValidation(1L, true, true);
+    stubContracts();
     when(prescriptionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    when(stockReservationService.reserve(any(), eq(Map.of(1L, 50)), eq(Map.of(1L, 100))))
+        .thenReturn(Optional.empty());
 
     // When
     PrescriptionResponse response = pharmacyService.createPrescription(1L, request);
@@ -123,6 +149,30 @@ class PrescriptionServiceTest {
     assertThat(response.getStatus()).isEqualTo("CREATED");
   }
 
+  @Test
+  void createPrescription_WhenStockAlreadyReserved_ShouldThrowException() {
+    // Given
+    PrescriptionRequest request = new PrescriptionRequest();
+    request.setPatientId(1L);
+
+    PrescriptionDrugRequest drugRequest = new PrescriptionDrugRequest();
+    drugRequest.setDrugId(1L);
+    drugRequest.setQuantity(50);
+    drugRequest.setDosage("500ml");
+
+    request.setDrugs(List.of(drugRequest));
+
+    stubValidation(1L, true, true);
+    stubContracts();
+    when(prescriptionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    when(stockReservationService.reserve(any(), anyMap(), anyMap())).thenReturn(Optional.of(1L));
+
+    // When/Then
+    assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
+        .isInstanceOf(BusinessException.class)
+        .hasMessage("Requested quantity exceeds available stock for drug: Drug A");
+  }
+
   @Test
   void createPrescription_WhenPharmacyNotFound_ShouldThrowException() {
     // Given
@@ -133,7 +183,7 @@ class PrescriptionServiceTest {
     drugRequest1.setDosage("500ml");
     request.setPatientId(1L);
     request.setDrugs(List.of(drugRequest1));
-    when(pharmacyRepository.findById(1L)).thenReturn(Optional.empty());
+    stubValidation(1L, false, true);
 
     // When/Then
     assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
@@ -152,8 +202,7 @@ class PrescriptionServiceTest {
     request.setPatientId(999L);
     request.setDrugs(List.of(drugRequest1));
 
-    when(pharmacyRepository.findById(1L)).thenReturn(Optional.of(pharmacy));
-    when(patientRepository.findById(999L)).thenReturn(Optional.empty());
+    stubValidation(999L, true, false);
 
     // When/Then
     assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
@@ -174,8 +223,7 @@ class PrescriptionServiceTest {
 
     request.setDrugs(List.of(drugRequest));
 
-    when(pharmacyRepository.findById(1L)).thenReturn(Optional.of(pharmacy));
-    when(patientRepository.findById(1L)).thenReturn(Optional.of(patient));
+    stubValidation(1L, true, true);
 
     // When/Then
     assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
@@ -196,8 +244,33 @@ class PrescriptionServiceTest {
 
     request.setDrugs(List.of(drugRequest));
 
-    when(pharmacyRepository.findById(1L)).thenReturn(Optional.of(pharmacy));
-    when(patientRepository.findById(1L)).thenReturn(Optional.of(patient));
+    stubValidation(1L, true, true);
+    stubContracts();
+
+    // When/Then
+    assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
+        .isInstanceOf(BusinessException.class)
+        .hasMessage("Requested quantity exceeds pharmacy's allocation for drug: Drug A");
+  }
+
+  @Test
+  void createPrescription_WhenAllocationAlreadyConsumed_ShouldThrowException() {
+    // Given
+    pharmacy.getPharmacyDrugs().stream().filter(pd -> pd.getDrug().getId().equals(1L))
+        .forEach(pd -> pd.setConsumedAmount(50)); // Leaves 30 of the allocation of 80
+
+    PrescriptionRequest request = new PrescriptionRequest();
+    request.setPatientId(1L);
+
+    PrescriptionDrugRequest drugRequest = new PrescriptionDrugRequest();
+    drugRequest.setDrugId(1L);
+    drugRequest.setQuantity(40);
+    drugRequest.setDosage("500ml");
+
+    request.setDrugs(List.of(drugRequest));
+
+    stubValidation(1L, true, true);
+    stubContracts();
 
     // When/Then
     assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
@@ -218,12 +291,139 @@ class PrescriptionServiceTest {
 
     request.setDrugs(List.of(drugRequest));
 
-    when(pharmacyRepository.findById(1L)).thenReturn(Optional.of(pharmacy));
-    when(patientRepository.findById(1L)).thenReturn(Optional.of(patient));
+    stubValidation(1L, true, true);
+    stubContracts();
 
     // When/Then
     assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
         .isInstanceOf(BusinessException.class)
         .hasMessage("Requested quantity exceeds available stock for drug: Drug C");
   }
-}
\ No newline at end of file
+
+  @Test
+  void createPrescription_WhenDrugListedTwice_ShouldCheckSummedQuantity() {
+    // Given
+    PrescriptionDrugRequest morning = new PrescriptionDrugRequest();
+    morning.setDrugId(1L);
+    morning.setQuantity(40);
+    morning.setDosage("500ml");
+
+    PrescriptionDrugRequest evening = new PrescriptionDrugRequest();
+    evening.setDrugId(1L);
+    evening.setQuantity(45); // Each fits the allocation of 80, together they do not
+    evening.setDosage("250ml");
+
+    PrescriptionRequest request = new PrescriptionRequest();
+    request.setPatientId(1L);
+    request.setDrugs(List.of(morning, evening));
+
+    stubValidation(1L, true, true);
+    stubContracts();
+
+    // When/Then
+    assertThatThrownBy(() -> pharmacyService.createPrescription(1L, request))
+        .isInstanceOf(BusinessException.class)
+        .hasMessage("Requested quantity exceeds pharmacy's allocation for drug: Drug A");
+  }
+
+  @Test
+  void createPrescriptions_ShouldSkipInvalidRequestsAndSaveTheRestTogether() {
+    // Given
+    PrescriptionRequest valid = request(1L, 1L, 50);
+    PrescriptionRequest notContracted = request(1L, 4L, 10);
+    PrescriptionRequest unknownPatient = request(999L, 1L, 10);
+
+    when(pharmacyRepository.findById(1L)).thenReturn(Optional.of(pharmacy));
+    when(patientRepository.findAllById(Set.of(1L, 999L))).thenReturn(List.of(patient));
+    when(drugRepository.findAllById(Set.of(1L, 4L))).thenReturn(List.of(contract(1L).getDrug()));
+    stubContracts();
+    when(prescriptionRepository.saveAll(anyList())).thenAnswer(invocation ->
+        invocation.getArgument(0));
+    when(stockReservationService.hold(Map.of(1L, 50), Map.of(1L, 100)))
+        .thenReturn(Optional.empty());
+
+    // When
+    List<PrescriptionBatchItemResponse> results = pharmacyService.createPrescriptions(1L,
+        List.of(valid, notContracted, unknownPatient));
+
+    // Then
+    assertThat(results).extracting(PrescriptionBatchItemResponse::isSuccess)
+        .containsExactly(true, false, false);
+    assertThat(results.get(0).getPrescription().getStatus()).isEqualTo("CREATED");
+    assertThat(results.get(1).getError())
+        .isEqualTo("Drug with ID 4 is not contracted with this pharmacy");
+    assertThat(results.get(2).getError()).isEqualTo("Patient not found with id: 999");
+    verify(prescriptionRepository).saveAll(argThat(saved -> ((List<?>) saved).size() == 1));
+    verify(stockReservationService).recordHolds(argThat(holds -> holds.size() == 1
+        && holds.values().iterator().next().equals(Map.of(1L, 50))));
+    verify(pharmacyRepository).findById(1L);
+  }
+
+  @Test
+  void createPrescriptions_WhenStockAlreadyReserved_ShouldNotSaveThatPrescription() {
+    // Given
+    PrescriptionRequest request = request(1L, 1L, 50);
+
+    when(pharmacyRepository.findById(1L)).thenReturn(Optional.of(pharmacy));
+    when(patientRepository.findAllById(Set.of(1L))).thenReturn(List.of(patient));
+    when(drugRepository.findAllById(Set.of(1L))).thenReturn(List.of(contract(1L).getDrug()));
+    stubContracts();
+    when(stockReservationService.hold(anyMap(), anyMap())).thenReturn(Optional.of(1L));
+
+    // When
+    List<PrescriptionBatchItemResponse> results =
+        pharmacyService.createPrescriptions(1L, List.of(request));
+
+    // Then
+    assertThat(results.get(0).isSuccess()).isFalse();
+    assertThat(results.get(0).getError())
+        .isEqualTo("Requested quantity exceeds available stock for drug: Drug A");
+    verify(prescriptionRepository, never()).saveAll(anyList());
+    verify(prescriptionRepository, never()).deleteAll(anyList());
+    verify(stockReservationService, never()).recordHolds(anyMap());
+  }
+
+  @Test
+  void createPrescriptions_WhenBatchIsEmpty_ShouldThrowException() {
+    assertThatThrownBy(() -> pharmacyService.createPrescriptions(1L, List.of()))
+        .isInstanceOf(ValidationException.class)
+        .hasMessage("At least one prescription must be specified in the batch");
+  }
+
+  private PrescriptionRequest request(Long patientId, Long drugId, int quantity) {
+    PrescriptionDrugRequest drugRequest = new PrescriptionDrugRequest();
+    drugRequest.setDrugId(drugId);
+    drugRequest.setQuantity(quantity);
+    drugRequest.setDosage("500ml");
+
+    PrescriptionRequest request = new PrescriptionRequest();
+    request.setPatientId(patientId);
+    request.setDrugs(List.of(drugRequest));
+    return request;
+  }
+
+  private void stubValidation(Long patientId, boolean pharmacyFound, boolean patientFound) {
+    Map<Long, RequestedDrug> requestedDrugs = pharmacy.getPharmacyDrugs().stream()
+        .map(PharmacyDrug::getDrug)
+        .collect(Collectors.toMap(Drug::getId, drug -> new RequestedDrug(drug.getId(),
+            drug.getName(), drug.getManufacturer(), drug.getBatchNumber(),
+            drug.getAvailableStock())));
+    when(prescriptionRepository.loadValidation(eq(1L), eq(patientId), any()))
+        .thenReturn(new PrescriptionValidation(pharmacyFound, pharmacy.getName(), patientFound,
+            patient.getName(), requestedDrugs));
+  }
+
+  private void stubContracts() {
+    when(allocationService.isContracted(eq(1L), anyLong()))
+        .thenAnswer(invocation -> contract(invocation.<Long>getArgument(1)) != null);
+    when(allocationService.remainingAllocation(eq(1L), anyLong())).thenAnswer(invocation -> {
+      PharmacyDrug pharmacyDrug = contract(invocation.<Long>getArgument(1));
+      return (long) (pharmacyDrug.getAllocatedAmount() - pharmacyDrug.getConsumedAmount());
+    });
+  }
+
+  private PharmacyDrug contract(long drugId) {
+    return pharmacy.getPharmacyDrugs().stream()
+        .filter(pd -> pd.getDrug().getId() == drugId).findFirst().orElse(null);
+  }
+}
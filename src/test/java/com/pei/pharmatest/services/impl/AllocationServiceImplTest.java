@@ -0,0 +1,78 @@
+package com.pei.pharmatest.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.pei.pharmatest.inventory.AllocationCounterTable;
+import com.pei.pharmatest.inventory.ContractIndex;
+import com.pei.pharmatest.repositories.PharmacyDrugAllocationRepository.ContractRowHandler;
+import com.pei.pharmatest.repositories.PharmacyDrugRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+@ExtendWith(MockitoExtension.class)
+class AllocationServiceImplTest {
+
+  @Mock
+  private PharmacyDrugRepository pharmacyDrugRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Test
+  void refreshContracts_ShouldReadContractsInReadOnlyTransaction() {
+    // Given
+    ContractIndex contractIndex = new ContractIndex();
+    AllocationServiceImpl allocationService = new AllocationServiceImpl(pharmacyDrugRepository,
+        new AllocationCounterTable(), contractIndex, transactionManager,
+        AllocationServiceImpl.Mode.DATABASE);
+    SimpleTransactionStatus status = new SimpleTransactionStatus();
+    when(transactionManager.getTransaction(any())).thenReturn(status);
+    doAnswer(invocation -> {
+      ContractRowHandler handler = invocation.getArgument(0);
+      handler.accept(1L, 2L, 100, 40);
+      return null;
+    }).when(pharmacyDrugRepository).forEachContract(any());
+
+    // When
+    allocationService.refreshContracts();
+
+    // Then
+    verify(transactionManager).getTransaction(argThat(definition -> definition.isReadOnly()));
+    verify(transactionManager).commit(status);
+    assertThat(contractIndex.remainingAllocation(1L, 2L)).isEqualTo(60);
+  }
+
+  @Test
+  void refreshContractsIfChanged_ShouldRebuildOnlyWhenCatalogVersionMoved() {
+    // Given
+    AllocationServiceImpl allocationService = new AllocationServiceImpl(pharmacyDrugRepository,
+        new AllocationCounterTable(), new ContractIndex(), transactionManager,
+        AllocationServiceImpl.Mode.DATABASE);
+    when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    when(pharmacyDrugRepository.findCatalogVersion()).thenReturn(4L);
+    allocationService.refreshContracts();
+
+    // When the version is unchanged
+    allocationService.refreshContractsIfChanged();
+
+    // Then
+    verify(pharmacyDrugRepository, times(1)).forEachContract(any());
+
+    // When the version moved
+    when(pharmacyDrugRepository.findCatalogVersion()).thenReturn(5L);
+    allocationService.refreshContractsIfChanged();
+
+    // Then
+    verify(pharmacyDrugRepository, times(2)).forEachContract(any());
+  }
+}
@@ -0,0 +1,169 @@
+package com.pei.pharmatest.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.audit.AuditLogArchive;
+import com.pei.pharmatest.audit.AuditLogArchiveQuery;
+import com.pei.pharmatest.audit.AuditLogDrugCodec;
+import com.pei.pharmatest.dto.PrescriptionDrugRequest;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.ArchivedAuditLog;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogArchiveServiceImplTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+  @Mock
+  private AuditLogRepository auditLogRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @TempDir
+  private Path directory;
+
+  private AuditLogArchive archive;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    archive = new AuditLogArchive(new ObjectMapper().findAndRegisterModules(), directory);
+    archive.load();
+  }
+
+  @Test
+  void archive_ShouldWriteSegmentsAndDeleteArchivedRowsBlockByBlock() {
+    // Given
+    streamRows(row(1, START), row(2, START.plusMinutes(1)), row(3, START.plusMinutes(1)),
+        row(4, START.plusMinutes(2)), row(5, START.plusMinutes(3)));
+    AuditLogArchiveServiceImpl service = service(true);
+
+    // When
+    service.archive();
+
+    // Then
+    // Three rows in two blocks, split only where the creation time changes, then two in one
+    verify(auditLogRepository).deleteArchived(new long[] {1, 2}, START, START.plusMinutes(1));
+    verify(auditLogRepository).deleteArchived(new long[] {3}, START.plusMinutes(1),
+        START.plusMinutes(1));
+    verify(auditLogRepository).deleteArchived(new long[] {4, 5}, START.plusMinutes(2),
+        START.plusMinutes(3));
+    assertThat(archive.getSegmentsPendingDeletion()).isEmpty();
+    // One short read per block: two full ones and the last, partial one
+    verify(auditLogRepository, times(3)).findCreatedBefore(any(), any(), anyLong(), anyInt());
+    verify(auditLogRepository).findCreatedBefore(any(), eq(START.plusMinutes(1)), eq(2L),
+        eq(2));
+    assertThat(archive.getHorizon()).isAfter(START.plusDays(1));
+    assertThat(archive.search(new AuditLogArchiveQuery(null, null, null, null, null, null), 0,
+        10, true).getTotal()).isEqualTo(5);
+  }
+
+  @Test
+  void archive_WhenDeleteFails_ShouldResumeDeletionOnNextRun() {
+    // Given
+    streamRows(row(1, START), row(2, START.plusMinutes(1)));
+    when(auditLogRepository.deleteArchived(any(), any(), any()))
+        .thenThrow(new DataAccessResourceFailureException("Connection refused"))
+        .thenReturn(2);
+    AuditLogArchiveServiceImpl service = service(true);
+
+    // When
+    service.archive();
+    assertThat(archive.getSegmentsPendingDeletion()).hasSize(1);
+    streamRows();
+    service.archive();
+
+    // Then
+    verify(auditLogRepository, times(2))
+        .deleteArchived(eq(new long[] {1, 2}), eq(START), eq(START.plusMinutes(1)));
+    assertThat(archive.getSegmentsPendingDeletion()).isEmpty();
+  }
+
+  @Test
+  void archive_WhenDisabled_ShouldDoNothing() {
+    // When
+    service(false).archive();
+
+    // Then
+    verify(auditLogRepository, never()).findCreatedBefore(any(), any(), anyLong(), anyInt());
+  }
+
+  @Test
+  void archive_ShouldArchiveCompactDrugListsAsJson() {
+    // Given
+    when(auditLogRepository.saveDrugDictionaryEntry("[\"500mg\"]")).thenReturn(1);
+    AuditLogDrugCodec codec = new AuditLogDrugCodec(auditLogRepository, new ObjectMapper(),
+        transactionManager, AuditLogDrugCodec.Encoding.COMPACT);
+    PrescriptionDrugRequest drug = new PrescriptionDrugRequest();
+    drug.setDrugId(17L);
+    drug.setQuantity(2);
+    drug.setDosage("500mg");
+    AuditLog log = new AuditLog();
+    log.setDrugsRequested(List.of(drug));
+    byte[] compact = codec.compact(log).getDrugsCompact();
+    streamRows(new ArchivedAuditLog(1, 1, 1, 1, null, null, null, "SUCCESS", START, compact));
+    // The archiving codec has not seen the entry yet
+    when(auditLogRepository.findDrugDictionaryEntry(1)).thenReturn("[\"500mg\"]");
+
+    // When
+    service(true).archive();
+
+    // Then
+    List<AuditLog> archived = archive.search(
+        new AuditLogArchiveQuery(null, null, 17L, null, null, null), 0, 10, true).getContent();
+    assertThat(archived).hasSize(1);
+    assertThat(archived.get(0).getDrugsRequested().get(0).getDosage()).isEqualTo("500mg");
+    assertThat(archived.get(0).getDrugsDispensed()).isNull();
+  }
+
+  private AuditLogArchiveServiceImpl service(boolean enabled) {
+    return new AuditLogArchiveServiceImpl(auditLogRepository, archive,
+        new AuditLogDrugCodec(auditLogRepository, new ObjectMapper(), transactionManager,
+            AuditLogDrugCodec.Encoding.JSON),
+        transactionManager, enabled, Duration.ofDays(1), 2, 2);
+  }
+
+  /**
+   * Serves the rows by keyset like the database would, in batches of the requested size.
+   */
+  private void streamRows(ArchivedAuditLog... rows) {
+    doAnswer(invocation -> {
+      LocalDateTime afterCreatedAt = invocation.getArgument(1);
+      long afterId = invocation.getArgument(2);
+      return Stream.of(rows).filter(row -> afterCreatedAt == null
+              || row.getCreatedAt().isAfter(afterCreatedAt)
+              || row.getCreatedAt().equals(afterCreatedAt) && row.getId() > afterId)
+          .limit(invocation.<Integer>getArgument(3)).collect(Collectors.toList());
+    }).when(auditLogRepository).findCreatedBefore(any(LocalDateTime.class), any(), anyLong(),
+        anyInt());
+  }
+
+  private static ArchivedAuditLog row(long id, LocalDateTime createdAt) {
+    return new ArchivedAuditLog(id, id, 1, 1, "[]", "[]", null, "SUCCESS", createdAt);
+  }
+}
@@ -0,0 +1,105 @@
+package com.pei.pharmatest.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pei.pharmatest.audit.AuditLogDrugCodec;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.repositories.AuditLogDrugLists;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogDrugConversionServiceImplTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+  @Mock
+  private AuditLogRepository auditLogRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void convertBatch_ShouldCompactRowsAndContinueAfterTheLastOne() {
+    // Given
+    when(auditLogRepository.saveDrugDictionaryEntry("[\"500mg\"]")).thenReturn(1);
+    when(auditLogRepository.findDrugListsAfter(isNull(), eq(0L), any(), eq(2)))
+        .thenReturn(List.of(
+            new AuditLogDrugLists(1, START, "[{\"drugId\": 17, \"dosage\": \"500mg\"}]", null),
+            new AuditLogDrugLists(2, START.plusMinutes(1), "not json", null)));
+    when(auditLogRepository.findDrugListsAfter(eq(START.plusMinutes(1)), eq(2L), any(), eq(2)))
+        .thenReturn(List.of());
+    when(auditLogRepository.compactDrugLists(anyList())).thenReturn(1);
+    AuditLogDrugConversionServiceImpl service = service(AuditLogDrugCodec.Encoding.COMPACT);
+
+    // When
+    service.convertBatch();
+    service.convertBatch();
+    service.convertBatch();
+
+    // Then
+    ArgumentCaptor<List<AuditLog>> converted = ArgumentCaptor.forClass(List.class);
+    verify(auditLogRepository).compactDrugLists(converted.capture());
+    assertThat(converted.getValue()).hasSize(1);
+    AuditLog log = converted.getValue().get(0);
+    assertThat(log.getId()).isEqualTo(1L);
+    assertThat(log.getCreatedAt()).isEqualTo(START);
+    assertThat(log.getRequestedDrugIds()).containsExactly(17L);
+    assertThat(log.getDrugsCompact()).isNotEmpty();
+    // Continues after the unreadable row, and stops once there is nothing left
+    verify(auditLogRepository, times(2)).findDrugListsAfter(any(), anyLong(), any(), anyInt());
+  }
+
+  @Test
+  void convertBatch_WhenDatabaseFails_ShouldRetryTheSameBatch() {
+    // Given
+    when(auditLogRepository.findDrugListsAfter(isNull(), eq(0L), any(), eq(2)))
+        .thenThrow(new DataAccessResourceFailureException("down"))
+        .thenReturn(List.of());
+    AuditLogDrugConversionServiceImpl service = service(AuditLogDrugCodec.Encoding.COMPACT);
+
+    // When
+    service.convertBatch();
+    service.convertBatch();
+
+    // Then
+    verify(auditLogRepository, times(2)).findDrugListsAfter(isNull(), eq(0L), any(), eq(2));
+  }
+
+  @Test
+  void convertBatch_InJsonEncoding_ShouldDoNothing() {
+    // When
+    service(AuditLogDrugCodec.Encoding.JSON).convertBatch();
+
+    // Then
+    verify(auditLogRepository, never()).findDrugListsAfter(any(), anyLong(), any(), anyInt());
+  }
+
+  private AuditLogDrugConversionServiceImpl service(AuditLogDrugCodec.Encoding encoding) {
+    ObjectMapper objectMapper = new ObjectMapper();
+    AuditLogDrugCodec codec = new AuditLogDrugCodec(auditLogRepository, objectMapper,
+        transactionManager, encoding);
+    return new AuditLogDrugConversionServiceImpl(auditLogRepository, codec, objectMapper,
+        transactionManager, true, 2);
+  }
+}
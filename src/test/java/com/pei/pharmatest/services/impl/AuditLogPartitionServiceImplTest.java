@@ -0,0 +1,160 @@
+package com.pei.pharmatest.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogPartitionServiceImplTest {
+
+  private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(2);
+
+  @Mock
+  private AuditLogRepository auditLogRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Test
+  void maintainPartitions_ShouldCreateCurrentAndComingMonths() {
+    // Given
+    AuditLogPartitionServiceImpl service =
+        new AuditLogPartitionServiceImpl(auditLogRepository, 2, 0, "drop",
+        transactionManager, LOCK_TIMEOUT);
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+
+    // When
+    service.maintainPartitions();
+
+    // Then
+    verify(auditLogRepository).createMonthlyPartition(current);
+    verify(auditLogRepository).createMonthlyPartition(current.plusMonths(1));
+    verify(auditLogRepository).createMonthlyPartition(current.plusMonths(2));
+    verify(auditLogRepository, never()).findPartitionsEndingBefore(any());
+  }
+
+  @Test
+  void maintainPartitions_ShouldDetachAndDropMonthsPastRetention() {
+    // Given
+    AuditLogPartitionServiceImpl service =
+        new AuditLogPartitionServiceImpl(auditLogRepository, 0, 3, "drop",
+        transactionManager, LOCK_TIMEOUT);
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    when(auditLogRepository.findPartitionsEndingBefore(current.minusMonths(2)))
+        .thenReturn(List.of("audit_logs_legacy", "audit_logs_p2025_01"));
+
+    // When
+    service.maintainPartitions();
+
+    // Then
+    verify(auditLogRepository).detachPartition("audit_logs_legacy");
+    verify(auditLogRepository).dropDetachedPartition("audit_logs_legacy");
+    verify(auditLogRepository).detachPartition("audit_logs_p2025_01");
+    verify(auditLogRepository).dropDetachedPartition("audit_logs_p2025_01");
+  }
+
+  @Test
+  void maintainPartitions_WhenDetachOnly_ShouldKeepDetachedTables() {
+    // Given
+    AuditLogPartitionServiceImpl service =
+        new AuditLogPartitionServiceImpl(auditLogRepository, 0, 1, "detach",
+        transactionManager, LOCK_TIMEOUT);
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    when(auditLogRepository.findPartitionsEndingBefore(current))
+        .thenReturn(List.of("audit_logs_p2025_01"));
+
+    // When
+    service.maintainPartitions();
+
+    // Then
+    verify(auditLogRepository).detachPartition("audit_logs_p2025_01");
+    verify(auditLogRepository, never()).dropDetachedPartition(any());
+  }
+
+  @Test
+  void maintainPartitions_WhenMonthCannotBeCreated_ShouldCreateTheOthers() {
+    // Given
+    AuditLogPartitionServiceImpl service =
+        new AuditLogPartitionServiceImpl(auditLogRepository, 1, 0, "drop",
+        transactionManager, LOCK_TIMEOUT);
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    doThrow(new DataIntegrityViolationException("default partition holds rows"))
+        .when(auditLogRepository).createMonthlyPartition(current);
+
+    // When
+    service.maintainPartitions();
+
+    // Then
+    verify(auditLogRepository).createMonthlyPartition(current.plusMonths(1));
+  }
+
+  @Test
+  void constructor_WithUnknownRetentionAction_ShouldThrowException() {
+    assertThatThrownBy(() -> new AuditLogPartitionServiceImpl(auditLogRepository, 3, 12, "delete",
+        transactionManager, LOCK_TIMEOUT))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("pharma.audit.retention-action must be drop or detach, not delete");
+  }
+
+  @Test
+  void maintainPartitions_ShouldRunDdlUnderLockTimeout() {
+    // Given
+    AuditLogPartitionServiceImpl service = new AuditLogPartitionServiceImpl(auditLogRepository,
+        0, 1, "drop", transactionManager, LOCK_TIMEOUT);
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    when(auditLogRepository.findPartitionsEndingBefore(current))
+        .thenReturn(List.of("audit_logs_p2025_01"));
+
+    // When
+    service.maintainPartitions();
+
+    // Then
+    InOrder inOrder = inOrder(transactionManager, auditLogRepository);
+    inOrder.verify(transactionManager).getTransaction(any());
+    inOrder.verify(auditLogRepository).setLocalLockTimeout(LOCK_TIMEOUT);
+    inOrder.verify(auditLogRepository).createMonthlyPartition(current);
+    inOrder.verify(transactionManager).commit(any());
+    inOrder.verify(transactionManager).getTransaction(any());
+    inOrder.verify(auditLogRepository).setLocalLockTimeout(LOCK_TIMEOUT);
+    inOrder.verify(auditLogRepository).detachPartition("audit_logs_p2025_01");
+    inOrder.verify(auditLogRepository).dropDetachedPartition("audit_logs_p2025_01");
+    inOrder.verify(transactionManager).commit(any());
+  }
+
+  @Test
+  void maintainPartitions_WhenLockNotAcquired_ShouldLeaveRetentionToTheNextRun() {
+    // Given
+    AuditLogPartitionServiceImpl service = new AuditLogPartitionServiceImpl(auditLogRepository,
+        0, 3, "drop", transactionManager, LOCK_TIMEOUT);
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    when(auditLogRepository.findPartitionsEndingBefore(current.minusMonths(2)))
+        .thenReturn(List.of("audit_logs_p2025_01", "audit_logs_p2025_02"));
+    doThrow(new CannotAcquireLockException("lock timeout"))
+        .when(auditLogRepository).detachPartition("audit_logs_p2025_01");
+
+    // When
+    service.maintainPartitions();
+
+    // Then
+    verify(auditLogRepository, never()).dropDetachedPartition(any());
+    verify(auditLogRepository, never()).detachPartition("audit_logs_p2025_02");
+  }
+}
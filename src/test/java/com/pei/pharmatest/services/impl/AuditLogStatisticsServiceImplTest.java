@@ -0,0 +1,203 @@
+package com.pei.pharmatest.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.pei.pharmatest.audit.AuditLogArchive;
+import com.pei.pharmatest.audit.AuditLogStatistics;
+import com.pei.pharmatest.dto.AuditLogStatsResponse;
+import com.pei.pharmatest.entities.AuditLog;
+import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.repositories.AuditLogRepository;
+import com.pei.pharmatest.repositories.AuditLogStatisticsKey;
+import com.pei.pharmatest.repositories.AuditLogStatisticsRepository.StatisticsRowHandler;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogStatisticsServiceImplTest {
+
+  @Mock
+  private AuditLogRepository auditLogRepository;
+
+  @Mock
+  private AuditLogArchive auditLogArchive;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  private AuditLogStatistics statistics;
+
+  private AuditLogStatisticsServiceImpl service;
+
+  @BeforeEach
+  void setUp() {
+    statistics = new AuditLogStatistics();
+    service = new AuditLogStatisticsServiceImpl(auditLogRepository, statistics, auditLogArchive,
+        transactionManager);
+  }
+
+  @Test
+  void getStatistics_ShouldGroupCountersWithoutReadingTheDatabase() {
+    // Given
+    LocalDateTime now = LocalDateTime.now();
+    statistics.recordAll(List.of(
+        auditLog(4L, "SUCCESS", null, now),
+        auditLog(3L, "SUCCESS", null, now),
+        auditLog(3L, "FAILURE", "Invalid input: Quantity must be positive", now),
+        auditLog(3L, "FAILURE", "Resource not found: Drug not found", now.minusHours(1)),
+        auditLog(3L, "FAILURE", "Resource not found: Drug not found", now.minusDays(2))));
+
+    // When
+    AuditLogStatsResponse stats = service.getStatistics(2);
+
+    // Then
+    assertThat(stats.getSuccess()).isEqualTo(2);
+    assertThat(stats.getFailure()).isEqualTo(3);
+    assertThat(stats.getPharmacies()).extracting(AuditLogStatsResponse.PharmacyStats::getPharmacyId)
+        .containsExactly(3L, 4L);
+    assertThat(stats.getPharmacies().get(0).getFailure()).isEqualTo(3);
+    assertThat(stats.getFailureReasons()).containsExactly(
+        Map.entry("Resource not found", 2L), Map.entry("Invalid input", 1L));
+    assertThat(stats.getHours()).extracting(AuditLogStatsResponse.HourStats::getHour)
+        .containsExactly(now.truncatedTo(ChronoUnit.HOURS).minusHours(1),
+            now.truncatedTo(ChronoUnit.HOURS));
+    assertThat(stats.getHours()).extracting(AuditLogStatsResponse.HourStats::getFailure)
+        .containsExactly(1L, 1L);
+    assertThat(stats.getHours().get(1).getSuccess()).isEqualTo(2);
+    verify(auditLogRepository, never()).countAuditLogs(any(), any(), any());
+  }
+
+  @Test
+  void getStatistics_WithHoursOutOfRange_ShouldThrowValidationException() {
+    assertThatThrownBy(() -> service.getStatistics(0)).isInstanceOf(ValidationException.class);
+    assertThatThrownBy(() -> service.getStatistics(AuditLogStatisticsServiceImpl.MAX_HOURS + 1))
+        .isInstanceOf(ValidationException.class);
+  }
+
+  @Test
+  void checkpoint_WhenDatabaseFails_ShouldKeepCountsForTheNextCheckpoint() {
+    // Given
+    statistics.record(auditLog(3L, "SUCCESS", null, LocalDateTime.now()));
+    doThrow(new DataAccessResourceFailureException("down"))
+        .when(auditLogRepository).addStatistics(anyMap());
+
+    // When
+    service.checkpoint();
+
+    // Then
+    Map<AuditLogStatisticsKey, Long> deltas = statistics.drainUnflushed();
+    assertThat(deltas).containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 1L);
+  }
+
+  @Test
+  void load_ShouldStartFromCheckpointedCounters() {
+    // Given
+    AuditLogStatisticsKey key = AuditLogStatisticsKey.pharmacy(3L, "FAILURE");
+    when(auditLogRepository.findStatistics()).thenReturn(Map.of(key, 5L));
+
+    // When
+    service.load();
+
+    // Then
+    assertThat(service.getStatistics(1).getFailure()).isEqualTo(5);
+    service.checkpoint();
+    verify(auditLogRepository, never()).addStatistics(anyMap());
+  }
+
+  @Test
+  void rebuildStatistics_ShouldCountDatabaseAboveAndArchiveBelowTheHorizon() {
+    // Given
+    LocalDateTime horizon = LocalDateTime.now().minusDays(90);
+    statistics.record(auditLog(3L, "SUCCESS", null, LocalDateTime.now().minusDays(1)));
+    when(auditLogArchive.getHorizon()).thenReturn(horizon);
+    doAnswer(invocation -> {
+      StatisticsRowHandler handler = invocation.getArgument(2);
+      handler.accept(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 20L);
+      handler.accept(AuditLogStatisticsKey.failureReason(null), 1L);
+      handler.accept(AuditLogStatisticsKey.failureReason(" "), 1L);
+      return null;
+    }).when(auditLogRepository).countAuditLogs(eq(horizon), any(), any());
+    doAnswer(invocation -> {
+      Consumer<AuditLog> sink = invocation.getArgument(1);
+      sink.accept(auditLog(3L, "SUCCESS", null, horizon.minusDays(1)));
+      return null;
+    }).when(auditLogArchive).export(any(), any());
+
+    // When
+    service.rebuildStatistics();
+
+    // Then
+    Map<AuditLogStatisticsKey, Long> counts = statistics.counts();
+    assertThat(counts).containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 21L)
+        .containsEntry(AuditLogStatisticsKey.failureReason(null), 2L)
+        .containsEntry(AuditLogStatisticsKey.hour(horizon.minusDays(1), "SUCCESS"), 1L);
+    verify(auditLogRepository).replaceStatistics(counts);
+    assertThat(statistics.drainUnflushed()).isEmpty();
+  }
+
+  @Test
+  void rebuildStatistics_WhenCountingFails_ShouldKeepCurrentCounters() {
+    // Given
+    statistics.record(auditLog(3L, "SUCCESS", null, LocalDateTime.now()));
+    doThrow(new DataAccessResourceFailureException("down"))
+        .when(auditLogRepository).countAuditLogs(isNull(), any(), any());
+
+    // When & Then
+    assertThatThrownBy(() -> service.rebuildStatistics())
+        .isInstanceOf(DataAccessResourceFailureException.class);
+    assertThat(statistics.counts())
+        .containsEntry(AuditLogStatisticsKey.pharmacy(3L, "SUCCESS"), 1L);
+    verify(auditLogRepository, never()).replaceStatistics(anyMap());
+  }
+
+  @Test
+  void reloadStatistics_ShouldCheckpointBeforeReadingTheTable() {
+    // Given
+    LocalDateTime createdAt = LocalDateTime.of(2025, 5, 17, 22, 10);
+    AuditLogStatisticsKey pharmacy = AuditLogStatisticsKey.pharmacy(3L, "SUCCESS");
+    AuditLogStatisticsKey hour = AuditLogStatisticsKey.hour(createdAt, "SUCCESS");
+    statistics.record(auditLog(3L, "SUCCESS", null, createdAt));
+    when(auditLogRepository.findStatistics()).thenReturn(Map.of(pharmacy, 7L, hour, 7L));
+
+    // When
+    service.reloadStatistics();
+
+    // Then
+    InOrder inOrder = inOrder(auditLogRepository);
+    inOrder.verify(auditLogRepository).addStatistics(Map.of(pharmacy, 1L, hour, 1L));
+    inOrder.verify(auditLogRepository).findStatistics();
+    assertThat(statistics.counts()).containsEntry(pharmacy, 7L).containsEntry(hour, 7L);
+  }
+
+  private static AuditLog auditLog(Long pharmacyId, String status, String failureReason,
+      LocalDateTime createdAt) {
+    AuditLog log = new AuditLog();
+    log.setPharmacyId(pharmacyId);
+    log.setStatus(status);
+    log.setFailureReason(failureReason);
+    log.setCreatedAt(createdAt);
+    return log;
+  }
+}
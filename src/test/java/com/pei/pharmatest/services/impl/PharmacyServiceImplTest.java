@@ -1,13 +1,22 @@
 package com.pei.pharmatest.services.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import com.pei.pharmatest.dto.PrescriptionBatchItemResponse;
 import com.pei.pharmatest.dto.PrescriptionResponse;
 import com.pei.pharmatest.entities.Drug;
 import com.pei.pharmatest.entities.Patient;
@@ -15,15 +24,28 @@ import com.pei.pharmatest.entities.Pharmacy;
 import com.pei.pharmatest.entities.Prescription;
 import com.pei.pharmatest.entities.PrescriptionItem;
 import com.pei.pharmatest.exceptions.BusinessException;
+import com.pei.pharmatest.exceptions.ValidationException;
+import com.pei.pharmatest.fulfillment.FulfillmentBatchProcessor;
+import com.pei.pharmatest.fulfillment.FulfillmentGroupCommitter;
+import com.pei.pharmatest.fulfillment.FulfillmentResult;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache;
 import com.pei.pharmatest.repositories.DrugRepository;
 import com.pei.pharmatest.repositories.PatientRepository;
 import com.pei.pharmatest.repositories.PharmacyRepository;
 import com.pei.pharmatest.repositories.PrescriptionRepository;
+import com.pei.pharmatest.repositories.StockDecrement;
+import com.pei.pharmatest.services.AllocationService;
+import com.pei.pharmatest.services.StockReservationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
 @ExtendWith(MockitoExtension.class)
 class PharmacyServiceImplTest {
@@ -36,12 +58,29 @@ class PharmacyServiceImplTest {
   private PrescriptionRepository prescriptionRepository;
   @Mock
   private DrugRepository drugRepository;
+  @Mock
+  private StockReservationService stockReservationService;
+  @Mock
+  private AllocationService allocationService;
+  @Mock
+  private PlatformTransactionManager transactionManager;
+  @Mock
+  private FulfillmentGroupCommitter groupCommitter;
+  @Mock
+  private FulfillmentBatchProcessor batchProcessor;
+  @Mock
+  private PrescriptionResponseCache responseCache;
+  @Captor
+  private ArgumentCaptor<List<StockDecrement>> decrementsCaptor;
+  private SimpleMeterRegistry meterRegistry;
   private PharmacyServiceImpl pharmacyService;
 
   @BeforeEach
   void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
     pharmacyService = new PharmacyServiceImpl(pharmacyRepository, patientRepository,
-        prescriptionRepository, drugRepository);
+        prescriptionRepository, drugRepository, stockReservationService, allocationService,
+        transactionManager, groupCommitter, batchProcessor, responseCache, meterRegistry);
   }
 
   @Test
@@ -71,17 +110,55 @@ class PharmacyServiceImplTest {
 
     prescription.setItems(Set.of(item1));
 
-    when(prescriptionRepository.findById(prescriptionId)).thenReturn(Optional.of(prescription));
-    when(prescriptionRepository.save(any(Prescription.class))).thenReturn(prescription);
-    when(drugRepository.save(any(Drug.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.transitionStatus(prescriptionId,
+        Prescription.PrescriptionStatus.CREATED, Prescription.PrescriptionStatus.FULFILLED))
+        .thenReturn(1);
+    when(allocationService.consume(1L, Map.of(1L, 10))).thenReturn(Optional.empty());
+    when(drugRepository.decrementStock(anyList(), any(LocalDate.class))).thenReturn(new int[] {1});
 
     // When
     PrescriptionResponse response = pharmacyService.fulfillPrescription(prescriptionId);
 
     // Then
     assertEquals(Prescription.PrescriptionStatus.FULFILLED.name(), response.getStatus());
-    assertEquals(90, drug1.getStock()); // Stock should be reduced
-    verify(prescriptionRepository).save(prescription);
+    // Allocation rows before stock rows, the lock order the batch path follows as well
+    InOrder lockOrder = inOrder(allocationService, drugRepository);
+    lockOrder.verify(allocationService).consume(1L, Map.of(1L, 10));
+    lockOrder.verify(drugRepository).decrementStock(decrementsCaptor.capture(),
+        eq(LocalDate.now()));
+    assertEquals(1, decrementsCaptor.getValue().size());
+    assertEquals(1L, decrementsCaptor.getValue().get(0).getDrugId());
+    assertEquals(10, decrementsCaptor.getValue().get(0).getQuantity()); // Stock should be reduced
+    verify(prescriptionRepository).transitionStatus(prescriptionId,
+        Prescription.PrescriptionStatus.CREATED, Prescription.PrescriptionStatus.FULFILLED);
+    verify(stockReservationService).consume(prescriptionId);
+    verify(responseCache).put(response);
+    assertEquals(1, meterRegistry.get("pharma.fulfillment")
+        .tags("mode", "single", "outcome", "success").timer().count());
+  }
+
+  @Test
+  void fulfillPrescription_WhenGroupCommitEnabled_ShouldDelegateToGroup() {
+    // Given
+    Long prescriptionId = 1L;
+    PrescriptionResponse groupedResponse = new PrescriptionResponse();
+    groupedResponse.setId(prescriptionId);
+    groupedResponse.setStatus(Prescription.PrescriptionStatus.FULFILLED.name());
+
+    when(groupCommitter.isEnabled()).thenReturn(true);
+    when(groupCommitter.fulfill(prescriptionId)).thenReturn(groupedResponse);
+
+    // When
+    PrescriptionResponse response = pharmacyService.fulfillPrescription(prescriptionId);
+
+    // Then
+    assertEquals(groupedResponse, response);
+    verify(prescriptionRepository, never()).findWithItemsById(any());
+    verify(transactionManager, never()).getTransaction(any());
+    assertEquals(1, meterRegistry.get("pharma.fulfillment")
+        .tags("mode", "grouped", "outcome", "success").timer().count());
   }
 
   @Test
@@ -105,7 +182,8 @@ class PharmacyServiceImplTest {
 
     prescription.setItems(Set.of(item1));
 
-    when(prescriptionRepository.findById(prescriptionId)).thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
 
     // When & Then
     BusinessException exception = assertThrows(BusinessException.class,
@@ -120,6 +198,9 @@ class PharmacyServiceImplTest {
 
     Prescription prescription = new Prescription();
     prescription.setId(prescriptionId);
+    Pharmacy pharmacy = new Pharmacy();
+    pharmacy.setId(1L);
+    prescription.setPharmacy(pharmacy);
     prescription.setStatus(Prescription.PrescriptionStatus.CREATED);
 
     Drug drug1 = new Drug();
@@ -135,7 +216,13 @@ class PharmacyServiceImplTest {
 
     prescription.setItems(Set.of(item1));
 
-    when(prescriptionRepository.findById(prescriptionId)).thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.transitionStatus(prescriptionId,
+        Prescription.PrescriptionStatus.CREATED, Prescription.PrescriptionStatus.FULFILLED))
+        .thenReturn(1);
+    when(allocationService.consume(1L, Map.of(1L, 10))).thenReturn(Optional.empty());
+    when(drugRepository.decrementStock(anyList(), any(LocalDate.class))).thenReturn(new int[] {0});
 
     // When & Then
     BusinessException exception = assertThrows(BusinessException.class,
@@ -143,6 +230,46 @@ class PharmacyServiceImplTest {
     assertEquals("Insufficient stock for drug: " + drug1.getName(), exception.getMessage());
   }
 
+  @Test
+  void fulfillPrescription_AllocationExhausted() {
+    // Given
+    Long prescriptionId = 1L;
+
+    Prescription prescription = new Prescription();
+    prescription.setId(prescriptionId);
+    Pharmacy pharmacy = new Pharmacy();
+    pharmacy.setId(1L);
+    prescription.setPharmacy(pharmacy);
+    prescription.setStatus(Prescription.PrescriptionStatus.CREATED);
+
+    Drug drug1 = new Drug();
+    drug1.setId(1L);
+    drug1.setName("Test Drug");
+    drug1.setStock(100);
+    drug1.setExpiryDate(LocalDate.now().plusDays(30));
+
+    PrescriptionItem item1 = new PrescriptionItem();
+    item1.setPrescription(prescription);
+    item1.setDrug(drug1);
+    item1.setQuantity(10);
+
+    prescription.setItems(Set.of(item1));
+
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.transitionStatus(prescriptionId,
+        Prescription.PrescriptionStatus.CREATED, Prescription.PrescriptionStatus.FULFILLED))
+        .thenReturn(1);
+    when(allocationService.consume(1L, Map.of(1L, 10))).thenReturn(Optional.of(1L));
+
+    // When & Then
+    BusinessException exception = assertThrows(BusinessException.class,
+        () -> pharmacyService.fulfillPrescription(prescriptionId));
+    assertEquals("Requested quantity exceeds pharmacy's allocation for drug: Test Drug",
+        exception.getMessage());
+    verify(drugRepository, never()).decrementStock(anyList(), any(LocalDate.class));
+  }
+
   @Test
   void fulfillPrescription_InvalidStatus() {
     // Given
@@ -152,11 +279,128 @@ class PharmacyServiceImplTest {
     prescription.setId(prescriptionId);
     prescription.setStatus(Prescription.PrescriptionStatus.FULFILLED);
 
-    when(prescriptionRepository.findById(prescriptionId)).thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
+
+    // When & Then
+    BusinessException exception = assertThrows(BusinessException.class,
+        () -> pharmacyService.fulfillPrescription(prescriptionId));
+    assertEquals("Prescription has already been fulfilled or cancelled", exception.getMessage());
+  }
+
+  @Test
+  void fulfillPrescription_ConcurrentlyClaimed() {
+    // Given
+    Long prescriptionId = 1L;
+
+    Prescription prescription = new Prescription();
+    prescription.setId(prescriptionId);
+    prescription.setStatus(Prescription.PrescriptionStatus.CREATED);
+
+    Drug drug1 = new Drug();
+    drug1.setId(1L);
+    drug1.setStock(100);
+    drug1.setExpiryDate(LocalDate.now().plusDays(30));
+
+    PrescriptionItem item1 = new PrescriptionItem();
+    item1.setPrescription(prescription);
+    item1.setDrug(drug1);
+    item1.setQuantity(10);
+
+    prescription.setItems(Set.of(item1));
+
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.transitionStatus(prescriptionId,
+        Prescription.PrescriptionStatus.CREATED, Prescription.PrescriptionStatus.FULFILLED))
+        .thenReturn(0);
 
     // When & Then
     BusinessException exception = assertThrows(BusinessException.class,
         () -> pharmacyService.fulfillPrescription(prescriptionId));
     assertEquals("Prescription has already been fulfilled or cancelled", exception.getMessage());
+    verify(drugRepository, never()).decrementStock(anyList(), any(LocalDate.class));
+  }
+
+  @Test
+  void fulfillPrescriptions_ShouldReportEachPrescription() {
+    // Given
+    PrescriptionResponse fulfilled = new PrescriptionResponse();
+    fulfilled.setId(1L);
+    fulfilled.setStatus(Prescription.PrescriptionStatus.FULFILLED.name());
+    when(batchProcessor.fulfillAll(List.of(1L, 2L))).thenReturn(List.of(
+        FulfillmentResult.success(1L, fulfilled),
+        FulfillmentResult.failure(2L, new BusinessException("Insufficient stock for drug: A"))));
+
+    // When
+    List<PrescriptionBatchItemResponse> results =
+        pharmacyService.fulfillPrescriptions(List.of(1L, 2L));
+
+    // Then
+    assertEquals(2, results.size());
+    assertTrue(results.get(0).isSuccess());
+    assertEquals(fulfilled, results.get(0).getPrescription());
+    assertFalse(results.get(1).isSuccess());
+    assertEquals(2L, results.get(1).getPrescriptionId());
+    assertEquals(1, results.get(1).getIndex());
+    assertEquals("Insufficient stock for drug: A", results.get(1).getError());
+    assertEquals(1, meterRegistry.get("pharma.fulfillment")
+        .tags("mode", "batch", "outcome", "success").timer().count());
+  }
+
+  @Test
+  void fulfillPrescriptions_EmptyBatch() {
+    ValidationException exception = assertThrows(ValidationException.class,
+        () -> pharmacyService.fulfillPrescriptions(List.of()));
+    assertEquals("At least one prescription must be specified in the batch",
+        exception.getMessage());
+  }
+
+  @Test
+  void cancelPrescription_Success() {
+    // Given
+    Long prescriptionId = 1L;
+
+    Prescription prescription = new Prescription();
+    prescription.setId(prescriptionId);
+    Pharmacy pharmacy = new Pharmacy();
+    pharmacy.setId(1L);
+    prescription.setPharmacy(pharmacy);
+    Patient patient = new Patient();
+    patient.setId(1L);
+    prescription.setPatient(patient);
+    prescription.setStatus(Prescription.PrescriptionStatus.CREATED);
+
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
+    when(prescriptionRepository.transitionStatus(prescriptionId,
+        Prescription.PrescriptionStatus.CREATED, Prescription.PrescriptionStatus.CANCELLED))
+        .thenReturn(1);
+
+    // When
+    PrescriptionResponse response = pharmacyService.cancelPrescription(prescriptionId);
+
+    // Then
+    assertEquals(Prescription.PrescriptionStatus.CANCELLED.name(), response.getStatus());
+    verify(stockReservationService).release(prescriptionId);
+    verify(responseCache).putAfterCommit(response);
+  }
+
+  @Test
+  void cancelPrescription_AlreadyFulfilled() {
+    // Given
+    Long prescriptionId = 1L;
+
+    Prescription prescription = new Prescription();
+    prescription.setId(prescriptionId);
+    prescription.setStatus(Prescription.PrescriptionStatus.FULFILLED);
+
+    when(prescriptionRepository.findWithItemsById(prescriptionId))
+        .thenReturn(Optional.of(prescription));
+
+    // When & Then
+    BusinessException exception = assertThrows(BusinessException.class,
+        () -> pharmacyService.cancelPrescription(prescriptionId));
+    assertEquals("Prescription has already been fulfilled or cancelled", exception.getMessage());
   }
 }
@@ -0,0 +1,116 @@
+package com.pei.pharmatest.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.pei.pharmatest.dto.PrescriptionResponse;
+import com.pei.pharmatest.entities.Drug;
+import com.pei.pharmatest.entities.Patient;
+import com.pei.pharmatest.entities.Pharmacy;
+import com.pei.pharmatest.entities.Prescription;
+import com.pei.pharmatest.entities.PrescriptionItem;
+import com.pei.pharmatest.exceptions.ResourceNotFoundException;
+import com.pei.pharmatest.inventory.PrescriptionResponseCache;
+import com.pei.pharmatest.repositories.PrescriptionRepository;
+import com.pei.pharmatest.services.PharmacyService;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class PrescriptionServiceImplTest {
+
+  @Mock
+  private PrescriptionRepository prescriptionRepository;
+
+  @Mock
+  private PharmacyService pharmacyService;
+
+  @Mock
+  private PrescriptionResponseCache responseCache;
+
+  @InjectMocks
+  private PrescriptionServiceImpl prescriptionService;
+
+  @Test
+  void getPrescription_ShouldMapPrescriptionReadWithoutLock() {
+    // Given
+    Pharmacy pharmacy = new Pharmacy();
+    pharmacy.setId(1L);
+    pharmacy.setName("Test Pharmacy");
+    Patient patient = new Patient();
+    patient.setId(2L);
+    patient.setName("John Doe");
+    Drug drug = new Drug();
+    drug.setId(3L);
+    drug.setName("Drug A");
+
+    Prescription prescription = new Prescription();
+    prescription.setId(7L);
+    prescription.setPharmacy(pharmacy);
+    prescription.setPatient(patient);
+    prescription.setCreatedAt(LocalDateTime.now());
+    prescription.setStatus(Prescription.PrescriptionStatus.CREATED);
+    PrescriptionItem item = new PrescriptionItem();
+    item.setPrescription(prescription);
+    item.setDrug(drug);
+    item.setQuantity(5);
+    item.setDosage("500mg");
+    prescription.setItems(Set.of(item));
+
+    when(prescriptionRepository.findReadOnlyById(7L)).thenReturn(Optional.of(prescription));
+
+    // When
+    PrescriptionResponse response = prescriptionService.getPrescription(7L);
+
+    // Then
+    assertThat(response.getId()).isEqualTo(7L);
+    assertThat(response.getPharmacyName()).isEqualTo("Test Pharmacy");
+    assertThat(response.getPatientName()).isEqualTo("John Doe");
+    assertThat(response.getStatus()).isEqualTo("CREATED");
+    assertThat(response.getDrugs()).singleElement()
+        .satisfies(drugResponse -> assertThat(drugResponse.getQuantity()).isEqualTo(5));
+    verify(responseCache).put(response);
+  }
+
+  @Test
+  void getPrescription_WhenNotFound_ShouldThrowException() {
+    // Given
+    when(prescriptionRepository.findReadOnlyById(999L)).thenReturn(Optional.empty());
+
+    // When/Then
+    assertThatThrownBy(() -> prescriptionService.getPrescription(999L))
+        .isInstanceOf(ResourceNotFoundException.class)
+        .hasMessage("Prescription not found with id: 999");
+  }
+
+  @Test
+  void getPrescriptionStatus_ShouldReadOnlyTheStatus() {
+    // Given
+    when(prescriptionRepository.findStatusById(7L))
+        .thenReturn(Optional.of(Prescription.PrescriptionStatus.FULFILLED));
+
+    // When/Then
+    assertThat(prescriptionService.getPrescriptionStatus(7L)).isEqualTo("FULFILLED");
+    verify(prescriptionRepository, never()).findReadOnlyById(7L);
+  }
+
+  @Test
+  void getPrescriptionStatus_WhenNotFound_ShouldThrowException() {
+    // Given
+    when(prescriptionRepository.findStatusById(999L)).thenReturn(Optional.empty());
+
+    // When/Then
+    assertThatThrownBy(() -> prescriptionService.getPrescriptionStatus(999L))
+        .isInstanceOf(ResourceNotFoundException.class)
+        .hasMessage("Prescription not found with id: 999");
+  }
+}